@@ -2,6 +2,7 @@
 
 package com.example.ziwanaiagent.advisor;
 
+import com.example.ziwanaiagent.chatmemory.TokenEstimator;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.ai.chat.client.ChatClientMessageAggregator;
@@ -37,6 +38,8 @@ public class LoggerAdvisor implements CallAdvisor, StreamAdvisor {
 
     private ChatClientRequest before(ChatClientRequest request) {
         log.info("AI Request: {}", request.prompt());
+        // 本地估算，与响应中的 PromptTokens 对照可观察记忆窗口裁剪效果
+        log.info("EstimatedPromptTokens: {}", TokenEstimator.estimate(request.prompt().getInstructions()));
         return request;
     }
 
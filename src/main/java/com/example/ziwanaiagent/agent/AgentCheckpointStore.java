@@ -0,0 +1,181 @@
+package com.example.ziwanaiagent.agent;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.example.ziwanaiagent.agent.model.AgentContext;
+import com.example.ziwanaiagent.agent.model.AgentEvent;
+import com.example.ziwanaiagent.agent.model.AgentState;
+import com.example.ziwanaiagent.chatmemory.ChatMessageCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 智能体运行检查点的本地文件存储：{@code <runId>.ckpt}
+ * <p>
+ * 每完成一步整体覆盖写入一次（先写临时文件再原子替换），内容：
+ * [魔数][runId][状态][当前步数 varint][stuck 次数 varint]
+ * [消息数 varint]{[长度 varint][消息记录]}...[事件数 varint]{[id varlong][事件名][内容]}...
+ * 消息记录使用 {@link ChatMessageCodec} 编码，较大的工具返回会被 LZ4 压缩。
+ * 超过保留时长未更新的检查点由后台线程删除。
+ */
+@Slf4j
+@Component
+public class AgentCheckpointStore implements AutoCloseable {
+
+    private static final String FILE_MAGIC = "AGENT_CHECKPOINT_V1";
+    private static final String SUFFIX = ".ckpt";
+    // runId 由服务端生成（UUID），拒绝其他字符防止路径穿越
+    private static final Pattern RUN_ID_PATTERN = Pattern.compile("[A-Za-z0-9-]{1,64}");
+
+    private final File baseDir;
+    private final Duration ttl;
+    private final ChatMessageCodec codec = new ChatMessageCodec(ChatMessageCodec.Compression.LZ4, 1024);
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("agent-checkpoint-cleaner").daemon().priority(Thread.MIN_PRIORITY).factory());
+
+    public AgentCheckpointStore(@Value("${agent.checkpoint.dir:${user.dir}/tmp/agent-checkpoint}") String dir,
+                                @Value("${agent.checkpoint.ttl:1d}") Duration ttl) {
+        this.baseDir = new File(dir);
+        if (!baseDir.exists() && !baseDir.mkdirs()) {
+            throw new RuntimeException("创建目录失败：" + dir);
+        }
+        this.ttl = ttl;
+        long intervalMinutes = Math.max(1, Math.min(60, ttl.toMinutes()));
+        cleaner.scheduleWithFixedDelay(this::purgeExpired, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    public static boolean isValidRunId(String runId) {
+        return runId != null && RUN_ID_PATTERN.matcher(runId).matches();
+    }
+
+    public void save(AgentContext context) {
+        File file = getFile(context.getRunId());
+        File temp = new File(baseDir, file.getName() + ".tmp");
+        try {
+            try (Output output = new Output(new FileOutputStream(temp))) {
+                output.writeString(FILE_MAGIC);
+                output.writeString(context.getRunId());
+                output.writeString(context.getState().name());
+                output.writeVarInt(context.getCurrentStep(), true);
+                output.writeVarInt(context.getStuckCount(), true);
+                List<Message> messages = context.getMessageList();
+                output.writeVarInt(messages.size(), true);
+                for (Message message : messages) {
+                    byte[] record = codec.encode(message);
+                    output.writeVarInt(record.length, true);
+                    output.writeBytes(record);
+                }
+                List<AgentEvent> events = List.copyOf(context.getEvents());
+                output.writeVarInt(events.size(), true);
+                for (AgentEvent event : events) {
+                    output.writeVarLong(event.id(), true);
+                    output.writeString(event.name());
+                    output.writeString(event.data());
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("保存运行 [{}] 检查点失败：{}", context.getRunId(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 读取检查点
+     *
+     * @return 检查点不存在或已损坏时返回 null
+     */
+    public AgentContext load(String runId) {
+        if (!isValidRunId(runId)) {
+            return null;
+        }
+        File file = getFile(runId);
+        if (!file.exists()) {
+            return null;
+        }
+        try (Input input = new Input(new FileInputStream(file))) {
+            if (!FILE_MAGIC.equals(input.readString())) {
+                throw new IOException("非法文件版本或损坏");
+            }
+            AgentContext context = new AgentContext();
+            context.setRunId(input.readString());
+            context.setState(AgentState.valueOf(input.readString()));
+            context.setCurrentStep(input.readVarInt(true));
+            context.setStuckCount(input.readVarInt(true));
+            int messageCount = input.readVarInt(true);
+            List<Message> messages = new ArrayList<>(messageCount);
+            for (int i = 0; i < messageCount; i++) {
+                messages.add(codec.decode(input.readBytes(input.readVarInt(true))));
+            }
+            context.setMessageList(messages);
+            int eventCount = input.readVarInt(true);
+            for (int i = 0; i < eventCount; i++) {
+                context.getEvents().add(new AgentEvent(input.readVarLong(true), input.readString(), input.readString()));
+            }
+            return context;
+        } catch (Exception e) {
+            log.warn("读取运行 [{}] 检查点失败，忽略：{}", runId, e.getMessage());
+            return null;
+        }
+    }
+
+    public void delete(String runId) {
+        if (!isValidRunId(runId)) {
+            return;
+        }
+        File file = getFile(runId);
+        if (file.exists() && !file.delete()) {
+            log.warn("删除文件失败：{}", file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * 删除超过保留时长未更新的检查点
+     *
+     * @return 删除的文件数
+     */
+    public int purgeExpired() {
+        long cutoff = System.currentTimeMillis() - ttl.toMillis();
+        File[] files = baseDir.listFiles((dir, name) -> name.endsWith(SUFFIX) || name.endsWith(SUFFIX + ".tmp"));
+        if (files == null) {
+            return 0;
+        }
+        int purged = 0;
+        for (File file : files) {
+            if (file.lastModified() < cutoff && file.delete()) {
+                purged++;
+            }
+        }
+        if (purged > 0) {
+            log.info("Purged {} expired agent checkpoints", purged);
+        }
+        return purged;
+    }
+
+    private File getFile(String runId) {
+        if (!isValidRunId(runId)) {
+            throw new IllegalArgumentException("非法的 runId：" + runId);
+        }
+        return new File(baseDir, runId + SUFFIX);
+    }
+
+    @Override
+    public void close() {
+        cleaner.shutdownNow();
+    }
+}
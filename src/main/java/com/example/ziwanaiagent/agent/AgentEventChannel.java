@@ -0,0 +1,161 @@
+package com.example.ziwanaiagent.agent;
+
+import com.example.ziwanaiagent.agent.model.AgentContext;
+import com.example.ziwanaiagent.agent.model.AgentEvent;
+import com.example.ziwanaiagent.agent.model.AgentState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+
+/**
+ * 一次流式运行的事件通道
+ * <p>
+ * 事件先追加到运行上下文的事件日志，再推送给当前连接的客户端；客户端断开（超时、发送失败）时运行进入 PAUSED，
+ * 在当前步骤结束后停止并保存检查点。客户端可随时带着 Last-Event-ID 重新连接：先补发之后的事件，再继续接收新事件，
+ * 若运行处于 PAUSED 且尚未停止则恢复为 RUNNING。
+ * <p>
+ * 推送、重连与关闭都在该对象的锁下进行，保证补发与新事件之间不丢失、不重复。
+ */
+@Slf4j
+class AgentEventChannel {
+
+    private final AgentContext context;
+    private SseEmitter emitter;
+    private boolean closed = false;
+
+    AgentEventChannel(AgentContext context) {
+        this.context = context;
+    }
+
+    /**
+     * 记录并推送事件
+     */
+    synchronized void emit(String name, String data) {
+        AgentEvent event = append(name, data);
+        send(event.id(), name, data);
+    }
+
+    /**
+     * 只记录不推送，用于在线客户端已经以其他形式收到、只需在重连时补发的内容
+     */
+    synchronized void record(String name, String data) {
+        append(name, data);
+    }
+
+    /**
+     * 只推送不记录，用于 token 分片等重连后无需补发的内容
+     */
+    synchronized void sendTransient(String name, String data) {
+        send(null, name, data);
+    }
+
+    /**
+     * 连接新的客户端并补发 lastEventId 之后的事件
+     *
+     * @return 通道已关闭时返回 false，调用方应改为从检查点恢复
+     */
+    synchronized boolean attach(SseEmitter newEmitter, long lastEventId) {
+        if (closed) {
+            return false;
+        }
+        if (emitter != null) {
+            emitter.complete();
+        }
+        emitter = newEmitter;
+        newEmitter.onTimeout(() -> detach(newEmitter));
+        newEmitter.onError(e -> detach(newEmitter));
+        if (!replay(newEmitter, context.getEvents(), lastEventId)) {
+            detach(newEmitter);
+            return true;
+        }
+        if (context.getState() == AgentState.PAUSED) {
+            context.setState(AgentState.RUNNING);
+        }
+        return true;
+    }
+
+    /**
+     * 断开客户端，运行在当前步骤结束后暂停
+     */
+    synchronized void detach(SseEmitter oldEmitter) {
+        if (emitter != oldEmitter) {
+            return;
+        }
+        emitter = null;
+        if (context.getState() == AgentState.RUNNING) {
+            context.setState(AgentState.PAUSED);
+            log.info("Agent run {} paused after client disconnected", context.getRunId());
+        }
+    }
+
+    /**
+     * 运行停止后关闭通道
+     *
+     * @return 若暂停期间客户端重新连接、状态已回到 RUNNING，返回 false，会话应继续执行
+     */
+    synchronized boolean close() {
+        if (context.getState() == AgentState.RUNNING) {
+            return false;
+        }
+        closed = true;
+        if (emitter != null) {
+            emitter.complete();
+            emitter = null;
+        }
+        return true;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 向客户端补发 lastEventId 之后的事件
+     *
+     * @return 发送失败时返回 false
+     */
+    static boolean replay(SseEmitter emitter, List<AgentEvent> events, long lastEventId) {
+        try {
+            for (AgentEvent event : events) {
+                if (event.id() > lastEventId) {
+                    emitter.send(toEvent(event.id(), event.name(), event.data()));
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            log.warn("Error replaying agent events: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private AgentEvent append(String name, String data) {
+        List<AgentEvent> events = context.getEvents();
+        AgentEvent event = new AgentEvent(events.size(), name, data);
+        events.add(event);
+        return event;
+    }
+
+    private void send(Long id, String name, String data) {
+        if (emitter == null) {
+            return;
+        }
+        try {
+            emitter.send(toEvent(id, name, data));
+        } catch (Exception e) {
+            log.warn("Error sending SSE message, detaching client: {}", e.getMessage());
+            detach(emitter);
+        }
+    }
+
+    private static SseEmitter.SseEventBuilder toEvent(Long id, String name, String data) {
+        SseEmitter.SseEventBuilder builder = SseEmitter.event().data(data);
+        if (id != null) {
+            builder.id(String.valueOf(id));
+        }
+        if (name != null) {
+            builder.name(name);
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.ziwanaiagent.agent;
+
+import cn.hutool.core.util.StrUtil;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 智能体运行指标，均按 agent（智能体名称）打标签，通过 actuator 的 metrics / prometheus 端点暴露
+ * <ul>
+ *     <li>agent.think：一次思考（模型调用）的耗时，outcome=tool_calls/final/error</li>
+ *     <li>agent.tool：单个工具调用的耗时，tool=工具名，outcome=success/error/timeout</li>
+ *     <li>agent.step：一步（思考 + 执行工具）的耗时</li>
+ *     <li>agent.tokens：每次思考的 token 数，type=prompt/completion</li>
+ *     <li>agent.loop.detected：检测到循环的次数，period=循环周期</li>
+ *     <li>agent.run：结束的运行次数，reason=finished/max_steps/loop/error/paused</li>
+ *     <li>agent.run.steps：每次运行执行的步数，reason 同上</li>
+ * </ul>
+ * 计时器发布直方图桶，便于在 Prometheus 中按 histogram_quantile 计算尾延迟。
+ */
+@Component
+public class AgentMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public AgentMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void recordThink(String agent, long nanos, String outcome) {
+        timer("agent.think", "智能体一次思考（模型调用）的耗时", "agent", agentTag(agent), "outcome", outcome)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordTool(String agent, String tool, long nanos, String outcome) {
+        timer("agent.tool", "单个工具调用的耗时", "agent", agentTag(agent), "tool", tool, "outcome", outcome)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordStep(String agent, long nanos) {
+        timer("agent.step", "智能体一步（思考 + 执行工具）的耗时", "agent", agentTag(agent))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordTokens(String agent, Usage usage) {
+        if (usage == null) {
+            return;
+        }
+        if (usage.getPromptTokens() != null) {
+            tokens(agent, "prompt").record(usage.getPromptTokens());
+        }
+        if (usage.getCompletionTokens() != null) {
+            tokens(agent, "completion").record(usage.getCompletionTokens());
+        }
+    }
+
+    public void recordLoopDetected(String agent, int period) {
+        meterRegistry.counter("agent.loop.detected", "agent", agentTag(agent), "period", String.valueOf(period)).increment();
+    }
+
+    public void recordRunEnd(String agent, String reason, int steps) {
+        meterRegistry.counter("agent.run", "agent", agentTag(agent), "reason", reason).increment();
+        DistributionSummary.builder("agent.run.steps")
+                .description("每次运行执行的步数")
+                .tags("agent", agentTag(agent), "reason", reason)
+                .register(meterRegistry)
+                .record(steps);
+    }
+
+    private static String agentTag(String agent) {
+        return StrUtil.blankToDefault(agent, "unknown");
+    }
+
+    private DistributionSummary tokens(String agent, String type) {
+        return DistributionSummary.builder("agent.tokens")
+                .description("每次思考的 token 数")
+                .baseUnit("tokens")
+                .tags("agent", agentTag(agent), "type", type)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Timer timer(String name, String description, String... tags) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
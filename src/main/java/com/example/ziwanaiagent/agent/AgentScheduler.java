@@ -0,0 +1,129 @@
+package com.example.ziwanaiagent.agent;
+
+import com.example.ziwanaiagent.exception.BusinessException;
+import com.example.ziwanaiagent.exception.ErrorCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 智能体会话调度器
+ * <p>
+ * 每个会话运行在独立的虚拟线程上，不占用公共 ForkJoinPool；同时运行的会话数由信号量限制，
+ * 超出的会话在队列中等待（虚拟线程阻塞几乎没有开销），排队数达到上限或等待超时时拒绝。
+ * 指标：排队数、运行数、排队等待时间、拒绝次数。
+ */
+@Slf4j
+@Component
+public class AgentScheduler {
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("agent-session-", 0).factory());
+
+    private final Semaphore permits;
+    /** 运行数 + 排队数上限 */
+    private final int maxAdmitted;
+    private final Duration maxWait;
+
+    /** 已接纳（排队中或运行中）的会话数 */
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+
+    public AgentScheduler(@Value("${agent.scheduler.max-concurrent:16}") int maxConcurrent,
+                          @Value("${agent.scheduler.max-queued:64}") int maxQueued,
+                          @Value("${agent.scheduler.max-wait:30s}") Duration maxWait,
+                          MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxAdmitted = maxConcurrent + maxQueued;
+        this.maxWait = maxWait;
+        Gauge.builder("agent.scheduler.queued", queued, AtomicInteger::get)
+                .description("排队等待运行的智能体会话数")
+                .register(meterRegistry);
+        Gauge.builder("agent.scheduler.active", active, AtomicInteger::get)
+                .description("正在运行的智能体会话数")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("agent.scheduler.wait")
+                .description("智能体会话排队等待时间")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("agent.scheduler.rejected")
+                .description("因排队已满或等待超时被拒绝的会话数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 提交一个智能体会话
+     *
+     * @param session    会话主体，在虚拟线程上运行
+     * @param onRejected 排队超时被拒绝时的回调（在虚拟线程上执行）
+     * @throws BusinessException 排队数已达上限时立即拒绝
+     */
+    public void submit(Runnable session, Runnable onRejected) {
+        int current;
+        do {
+            current = admitted.get();
+            if (current >= maxAdmitted) {
+                rejectedCounter.increment();
+                throw new BusinessException(ErrorCode.TOO_MANY_REQUEST_ERROR, "智能体繁忙，请稍后再试");
+            }
+        } while (!admitted.compareAndSet(current, current + 1));
+        queued.incrementAndGet();
+        try {
+            executor.execute(() -> run(session, onRejected));
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            admitted.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void run(Runnable session, Runnable onRejected) {
+        long start = System.nanoTime();
+        try {
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            } finally {
+                queued.decrementAndGet();
+            }
+            if (!acquired) {
+                rejectedCounter.increment();
+                log.warn("智能体会话排队超过 {} 秒，拒绝执行", maxWait.toSeconds());
+                onRejected.run();
+                return;
+            }
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            active.incrementAndGet();
+            try {
+                session.run();
+            } finally {
+                active.decrementAndGet();
+                permits.release();
+            }
+        } finally {
+            admitted.decrementAndGet();
+        }
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+}
@@ -1,243 +1,372 @@
 package com.example.ziwanaiagent.agent;
 
 import cn.hutool.core.util.StrUtil;
+import com.example.ziwanaiagent.agent.model.AgentContext;
 import com.example.ziwanaiagent.agent.model.AgentState;
 import com.example.ziwanaiagent.exception.ErrorCode;
 import com.example.ziwanaiagent.exception.ThrowUtils;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
-import org.jetbrains.annotations.NotNull;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
-
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 智能体基类
+ * <p>
+ * 只保存构造时确定的配置（名称、提示词、ChatClient 等），每次运行的状态放在 {@link AgentContext} 中，
+ * 因此同一个实例可以被多个请求并发复用。
+ */
 @Data
 @Slf4j
 public abstract class BaseAgent {
 
     // --- 循环检测配置 ---
     private int duplicateThreshold = 4;  // 连续重复次数阈值
-    private int checkRange = 6;         // 回溯窗口大小
-    private int stuckCount = 0;         // 累积 stuck 次数
+    private int maxLoopPeriod = 2;       // 检测的最长循环周期（A-B-A-B 为 2）
 
     // 核心属性
     private String name;
     private String systemPrompt;
     private String nextStepPrompt;
-    private AgentState state = AgentState.IDLE;
-    private int currentStep = 0;
     private int maxSteps = 10;
     private ChatClient chatClient;
-    private List<Message> messageList = new ArrayList<>();
+
+    // 会话调度器：限制并发运行的会话数，为空时直接在新的虚拟线程上运行
+    private AgentScheduler agentScheduler;
+
+    // 运行指标，为空时不记录
+    private AgentMetrics agentMetrics;
+
+    // 检查点存储：流式运行每步结束后保存，为空时不保存、不可恢复
+    private AgentCheckpointStore agentCheckpointStore;
+
+    // 本节点上正在执行的流式运行，供客户端重连
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final Map<String, AgentEventChannel> activeRuns = new ConcurrentHashMap<>();
+
+    private static final long SSE_TIMEOUT_MILLIS = 300_000L; // 5 分钟超时
 
     /**
      * 执行代理流程,运行代理
      */
     public String run(String userPrompt) {
-        ThrowUtils.throwIf(this.state != AgentState.IDLE, ErrorCode.OPERATION_ERROR, "Cannot run agent from state :" + this.state);
         ThrowUtils.throwIf(StrUtil.isBlank(userPrompt), ErrorCode.PARAM_ERROR, "userPrompt cannot be empty");
 
-        this.state = AgentState.RUNNING;
-        messageList.add(new UserMessage(userPrompt));
+        AgentContext context = newContext();
+        context.setState(AgentState.RUNNING);
+        context.getMessageList().add(new UserMessage(userPrompt));
 
         List<String> resultList = new ArrayList<>();
+        String reason = "finished";
 
         try {
-            while (currentStep < maxSteps && state != AgentState.FINISHED) {
-                currentStep++;
+            while (context.getCurrentStep() < maxSteps && context.getState() != AgentState.FINISHED) {
+                int currentStep = context.getCurrentStep() + 1;
+                context.setCurrentStep(currentStep);
                 log.info("Running step {}, total step {}", currentStep, maxSteps);
 
                 // 单步执行
-                String stepResult = step();
+                String stepResult = timedStep(context);
                 String result = "Step:" + currentStep + ":" + stepResult;
                 resultList.add(result);
 
                 // 检测循环
-                if (isStuck()) {
-                    stuckCount++;
-                    log.warn("Detected potential loop at step {}, stuckCount={}", currentStep, stuckCount);
+                if (detectLoop(context) > 0) {
+                    context.setStuckCount(context.getStuckCount() + 1);
+                    log.warn("Detected potential loop at step {}, stuckCount={}", currentStep, context.getStuckCount());
                     resultList.add("Warning: Detected loop, step " + currentStep);
 
-                    if (stuckCount >= duplicateThreshold) {
+                    if (context.getStuckCount() >= duplicateThreshold) {
                         log.error("Agent terminated due to repeated loop detection.");
                         resultList.add("Terminated: Repeated loop detected.");
-                        this.state = AgentState.FINISHED;
+                        context.setState(AgentState.FINISHED);
+                        reason = "loop";
                         break;
                     }
                 } else {
                     // 如果未检测到循环，重置 stuckCount
-                    stuckCount = 0;
+                    context.setStuckCount(0);
                 }
             }
 
-            if (currentStep >= maxSteps) {
-                this.state = AgentState.FINISHED;
+            if (context.getCurrentStep() >= maxSteps && context.getState() != AgentState.FINISHED) {
+                context.setState(AgentState.FINISHED);
                 resultList.add("Terminated: Reached max step (" + maxSteps + ")");
+                reason = "max_steps";
             }
 
             return String.join("\n", resultList);
 
         } catch (Exception e) {
-            this.state = AgentState.ERROR;
+            context.setState(AgentState.ERROR);
+            reason = "error";
             log.error("Error running agent: {}", e.getMessage(), e);
             return "Error running agent:" + e.getMessage();
         } finally {
-            this.clear();
+            recordRunEnd(context, reason);
         }
     }
 
 
     /**
      * 运行代理（流式输出）
+     * <p>
+     * 第一个事件为 run 事件，内容是本次运行的 runId；思考阶段模型生成的文本以名为 token 的事件逐段推送；
+     * 每步结束后的步骤结果以默认 message 事件发送。除 token 外的事件都带递增的 id，并在每步结束后连同消息上下文
+     * 写入检查点，客户端断开后可通过 {@link #resumeStream(String, long)} 重连。
      *
      * @param userPrompt 用户提示词
      * @return 执行结果的 SSE 流
      */
     public SseEmitter runStream(String userPrompt) {
-        SseEmitter sseEmitter = new SseEmitter(300_000L); // 5 分钟超时
+        SseEmitter sseEmitter = new SseEmitter(SSE_TIMEOUT_MILLIS);
+        // --- 基础校验 ---
+        if (StrUtil.isBlank(userPrompt)) {
+            try {
+                sseEmitter.send("错误：提示词不能为空");
+                sseEmitter.complete();
+            } catch (Exception e) {
+                sseEmitter.completeWithError(e);
+            }
+            return sseEmitter;
+        }
+
+        // --- 初始化 ---
+        AgentContext context = newContext();
+        context.setRunId(UUID.randomUUID().toString());
+        context.setState(AgentState.RUNNING);
+        context.getMessageList().add(new UserMessage(userPrompt));
+        AgentEventChannel channel = new AgentEventChannel(context);
+        activeRuns.put(context.getRunId(), channel);
+        channel.attach(sseEmitter, -1);
+        channel.emit("run", context.getRunId());
+        startSession(context, channel);
+        return sseEmitter;
+    }
 
-        // 异步 执行
-        CompletableFuture.runAsync(() -> {
+    /**
+     * 重新连接一次流式运行
+     * <p>
+     * 先补发 lastEventId 之后的事件：运行仍在本节点执行时继续接收新事件；运行已结束时补发完即关闭；
+     * 运行因客户端断开而暂停、或节点重启中断时，从最后一个检查点继续执行，已完成的步骤不会重新计算。
+     *
+     * @param runId       runStream 返回的运行 id
+     * @param lastEventId 客户端收到的最后一个事件 id，-1 表示从头补发
+     * @return 执行结果的 SSE 流
+     */
+    public SseEmitter resumeStream(String runId, long lastEventId) {
+        SseEmitter sseEmitter = new SseEmitter(SSE_TIMEOUT_MILLIS);
+        AgentEventChannel channel = activeRuns.get(runId);
+        if (channel != null && channel.attach(sseEmitter, lastEventId)) {
+            return sseEmitter;
+        }
+
+        AgentContext context = agentCheckpointStore == null ? null : agentCheckpointStore.load(runId);
+        if (context == null) {
             try {
-                // --- 基础校验 ---
-                if (this.state != AgentState.IDLE) {
-                    sseEmitter.send("错误：无法从状态运行代理：" + this.state);
-                    sseEmitter.complete();
-                    return;
-                }
-                if (StrUtil.isBlank(userPrompt)) {
-                    sseEmitter.send("错误：提示词不能为空");
-                    sseEmitter.complete();
-                    return;
-                }
+                sseEmitter.send("错误：运行不存在或已过期");
+                sseEmitter.complete();
+            } catch (Exception e) {
+                sseEmitter.completeWithError(e);
+            }
+            return sseEmitter;
+        }
+        if (context.getState() == AgentState.FINISHED || context.getState() == AgentState.ERROR) {
+            if (AgentEventChannel.replay(sseEmitter, context.getEvents(), lastEventId)) {
+                sseEmitter.complete();
+            }
+            return sseEmitter;
+        }
 
-                // --- 初始化 ---
-                this.state = AgentState.RUNNING;
-                messageList.add(new UserMessage(userPrompt));
-                stuckCount = 0;
+        // 未完成的运行：从检查点恢复上下文并继续执行
+        LoopDetector loopDetector = new LoopDetector(duplicateThreshold, maxLoopPeriod);
+        for (Message message : context.getMessageList()) {
+            if (message instanceof AssistantMessage assistantMessage) {
+                loopDetector.record(assistantMessage);
+            }
+        }
+        context.setLoopDetector(loopDetector);
+        context.setState(AgentState.PAUSED);
+        AgentEventChannel resumed = new AgentEventChannel(context);
+        AgentEventChannel current = activeRuns.compute(runId,
+                (id, existing) -> existing == null || existing.isClosed() ? resumed : existing);
+        if (current != resumed) {
+            // 另一个请求已先一步恢复了该运行
+            if (!current.attach(sseEmitter, lastEventId)) {
+                sseEmitter.complete();
+            }
+            return sseEmitter;
+        }
+        log.info("Resuming agent run {} from step {}", runId, context.getCurrentStep());
+        resumed.attach(sseEmitter, lastEventId);
+        startSession(context, resumed);
+        return sseEmitter;
+    }
+
+    /**
+     * 通过调度器在虚拟线程上执行会话
+     */
+    private void startSession(AgentContext context, AgentEventChannel channel) {
+        Runnable session = () -> runSession(context, channel);
+        if (agentScheduler == null) {
+            Thread.ofVirtual().name("agent-session").start(session);
+            return;
+        }
+        try {
+            agentScheduler.submit(session, () -> {
+                channel.emit(null, "错误：智能体繁忙，排队超时，请稍后再试");
+                context.setState(AgentState.PAUSED);
+                saveCheckpoint(context);
+                channel.close();
+                activeRuns.remove(context.getRunId(), channel);
+            });
+        } catch (RuntimeException e) {
+            activeRuns.remove(context.getRunId(), channel);
+            throw e;
+        }
+    }
 
+    /**
+     * 会话主体：循环执行步骤直到完成、出错或客户端断开后暂停
+     */
+    private void runSession(AgentContext context, AgentEventChannel channel) {
+        // 思考阶段的文本分片以 token 事件实时推送；整段思考内容在步骤结束后记录，供重连时补发
+        StringBuilder thought = new StringBuilder();
+        context.setStreamListener(token -> {
+            thought.append(token);
+            channel.sendTransient("token", token);
+        });
+        try {
+            while (true) {
                 // --- 循环执行步骤 ---
-                while (currentStep < maxSteps && state != AgentState.FINISHED) {
-                    currentStep++;
+                while (context.getCurrentStep() < maxSteps && context.getState() == AgentState.RUNNING) {
+                    int currentStep = context.getCurrentStep() + 1;
+                    context.setCurrentStep(currentStep);
                     log.info("Executing step {}/{}", currentStep, maxSteps);
 
-                    String stepResult = step();
-                    String result = "Step " + currentStep + ": " + stepResult;
-                    sseEmitter.send(result);
+                    String stepResult = timedStep(context);
+                    if (!thought.isEmpty()) {
+                        channel.record("thought", thought.toString());
+                        thought.setLength(0);
+                    }
+                    channel.emit(null, "Step " + currentStep + ": " + stepResult);
 
                     // 检查循环
-                    if (isStuck()) {
-                        stuckCount++;
+                    if (detectLoop(context) > 0) {
+                        context.setStuckCount(context.getStuckCount() + 1);
                         String warnMsg = "Warning: Detected loop at step " + currentStep;
-                        sseEmitter.send(warnMsg);
+                        channel.emit(null, warnMsg);
                         log.warn(warnMsg);
 
-                        if (stuckCount >= duplicateThreshold) {
-                            state = AgentState.FINISHED;
+                        if (context.getStuckCount() >= duplicateThreshold) {
+                            context.setState(AgentState.FINISHED);
                             String terminateMsg = "Terminated: Repeated loop detected.";
-                            sseEmitter.send(terminateMsg);
+                            channel.emit(null, terminateMsg);
                             log.error(terminateMsg);
-                            break;
                         }
                     } else {
-                        stuckCount = 0;
+                        context.setStuckCount(0);
                     }
+                    saveCheckpoint(context);
                 }
 
-                if (currentStep >= maxSteps) {
-                    state = AgentState.FINISHED;
-                    String maxStepMsg = "Terminated: Reached max steps (" + maxSteps + ")";
-                    sseEmitter.send(maxStepMsg);
+                String reason = context.getStuckCount() >= duplicateThreshold ? "loop"
+                        : context.getState() == AgentState.PAUSED ? "paused" : "finished";
+                if (context.getCurrentStep() >= maxSteps && context.getState() != AgentState.FINISHED) {
+                    context.setState(AgentState.FINISHED);
+                    channel.emit(null, "Terminated: Reached max steps (" + maxSteps + ")");
+                    reason = "max_steps";
                 }
-
-                sseEmitter.complete();
-
-            } catch (Exception e) {
-                state = AgentState.ERROR;
-                log.error("Error executing agent", e);
-                try {
-                    sseEmitter.send("执行错误：" + e.getMessage());
-                } catch (Exception ex) {
-                    log.error("Error sending SSE message", ex);
+                saveCheckpoint(context);
+                if (channel.close()) {
+                    recordRunEnd(context, reason);
+                    break;
                 }
-                sseEmitter.completeWithError(e);
-            } finally {
-                clear(); // 清理资源
+                // 暂停期间客户端已重新连接，继续执行
             }
-        });
 
-        // SSE 超时回调
-        sseEmitter.onTimeout(() -> {
-            state = AgentState.ERROR;
-            clear();
-            log.warn("SSE connection timeout");
-        });
-
-        // SSE 完成回调
-        sseEmitter.onCompletion(() -> {
-            if (state == AgentState.RUNNING) {
-                state = AgentState.FINISHED;
-            }
-            clear();
-            log.info("SSE connection completed");
-        });
-
-        return sseEmitter;
+        } catch (Exception e) {
+            context.setState(AgentState.ERROR);
+            log.error("Error executing agent", e);
+            channel.emit(null, "执行错误：" + e.getMessage());
+            saveCheckpoint(context);
+            channel.close();
+            recordRunEnd(context, "error");
+        } finally {
+            activeRuns.remove(context.getRunId(), channel);
+        }
     }
 
     /**
-     * 循环检测
-     * 检查最近 checkRange 条 assistant 消息中是否有重复回答
+     * 执行一步并记录耗时
      */
-    protected boolean isStuck() {
-        if (messageList.size() < 2) return false;
-
-        List<String> recentMessages = getStrings();
-
-        // 检查重复
-        for (int i = 0; i < recentMessages.size() - duplicateThreshold + 1; i++) {
-            boolean allSame = true;
-            String msg = recentMessages.get(i);
-            for (int j = 1; j < duplicateThreshold; j++) {
-                if (!msg.equals(recentMessages.get(i + j))) {
-                    allSame = false;
-                    break;
-                }
+    private String timedStep(AgentContext context) {
+        long start = System.nanoTime();
+        try {
+            return step(context);
+        } finally {
+            if (agentMetrics != null) {
+                agentMetrics.recordStep(name, System.nanoTime() - start);
             }
-            if (allSame) return true;
         }
-
-        return false;
     }
 
-    @NotNull
-    private List<String> getStrings() {
-        int start = Math.max(0, messageList.size() - checkRange);
-        List<String> recentMessages = new ArrayList<>();
-        for (int i = start; i < messageList.size(); i++) {
-            Message m = messageList.get(i);
-
-            // 判断是否是 Assistant 消息
-            if (m instanceof org.springframework.ai.chat.messages.AssistantMessage) {
-                // 获取内容
-                String content = ((org.springframework.ai.chat.messages.AssistantMessage) m).getText();
-                recentMessages.add(content);
-            }
+    private void recordRunEnd(AgentContext context, String reason) {
+        if (agentMetrics != null) {
+            agentMetrics.recordRunEnd(name, reason, context.getCurrentStep());
         }
-        return recentMessages;
     }
 
+    private void saveCheckpoint(AgentContext context) {
+        if (agentCheckpointStore != null) {
+            agentCheckpointStore.save(context);
+        }
+    }
+    /**
+     * 新建一次运行的上下文
+     */
+    protected AgentContext newContext() {
+        AgentContext context = new AgentContext();
+        context.setLoopDetector(new LoopDetector(duplicateThreshold, maxLoopPeriod));
+        return context;
+    }
 
-    public abstract String step();
-
-    protected void clear() {
-        messageList.clear();
-        currentStep = 0;
-        stuckCount = 0;
+    /**
+     * 循环检测
+     * 把本步产生的助手消息（由 think 写入上下文）的指纹交给增量检测器；
+     * 不按消息下标回查，因为上下文压缩可能在本步中整轮丢弃较早的消息
+     *
+     * @return 检测到的循环周期，未检测到或本步没有助手消息时返回 0
+     */
+    protected int detectLoop(AgentContext context) {
+        AssistantMessage assistantMessage = context.getStepAssistantMessage();
+        context.setStepAssistantMessage(null);
+        if (assistantMessage == null) {
+            return 0;
+        }
+        int period = context.getLoopDetector().record(assistantMessage);
+        if (period > 0 && agentMetrics != null) {
+            agentMetrics.recordLoopDetected(name, period);
+        }
+        return period;
     }
+
+    public abstract String step(AgentContext context);
 }
@@ -0,0 +1,150 @@
+package com.example.ziwanaiagent.agent;
+
+import com.example.ziwanaiagent.chatmemory.TokenEstimator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 智能体上下文压缩
+ * <p>
+ * 每次思考前对消息上下文做三步处理：
+ * <ol>
+ *     <li>每步追加的 nextStepPrompt 只保留最后一条</li>
+ *     <li>已被模型读过（之后出现过助手消息）的工具返回截断到 consumedToolResponseChars 个字符，最近一次的工具返回保持完整</li>
+ *     <li>估算 token 仍超出 maxTokens 时，从最早的一轮（助手消息及其工具返回）开始整轮丢弃，
+ *     保留首条用户消息与最近一轮；仍超出时连最近一次的工具返回也截断</li>
+ * </ol>
+ * 工具调用与其返回总是成对保留或丢弃。无状态，可被多个运行共享。
+ */
+@Slf4j
+@Component
+public class ContextCompactor {
+
+    static final String TRUNCATED_MARKER = "\n...[已截断，原长 ";
+
+    private final int maxTokens;
+    private final int consumedToolResponseChars;
+
+    public ContextCompactor(@Value("${agent.context.max-tokens:16000}") int maxTokens,
+                            @Value("${agent.context.consumed-tool-response-chars:1000}") int consumedToolResponseChars) {
+        this.maxTokens = maxTokens;
+        this.consumedToolResponseChars = consumedToolResponseChars;
+    }
+
+    /**
+     * 压缩消息上下文
+     *
+     * @param messages       当前消息上下文，不会被修改
+     * @param systemPrompt   系统提示词，计入 token 预算
+     * @param nextStepPrompt 每步追加的提示词，为空时不去重
+     * @return 压缩后的新列表
+     */
+    public List<Message> compact(List<Message> messages, String systemPrompt, String nextStepPrompt) {
+        int lastAssistant = -1;
+        int lastNextStep = -1;
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (message instanceof AssistantMessage) {
+                lastAssistant = i;
+            } else if (isNextStepPrompt(message, nextStepPrompt)) {
+                lastNextStep = i;
+            }
+        }
+
+        List<Message> result = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (i != lastNextStep && isNextStepPrompt(message, nextStepPrompt)) {
+                continue;
+            }
+            if (i < lastAssistant && message instanceof ToolResponseMessage toolResponseMessage) {
+                message = truncate(toolResponseMessage, consumedToolResponseChars);
+            }
+            result.add(message);
+        }
+
+        int systemTokens = systemPrompt == null ? 0 : TokenEstimator.estimate(systemPrompt);
+        int tokens = systemTokens + TokenEstimator.estimate(result);
+        if (tokens <= maxTokens) {
+            return result;
+        }
+        int before = tokens;
+
+        // 整轮丢弃最早的工具调用，保留首条用户消息与最近一轮
+        int firstRound = firstAssistantIndex(result, 0);
+        while (tokens > maxTokens && firstRound >= 0) {
+            int nextRound = firstAssistantIndex(result, firstRound + 1);
+            if (nextRound < 0) {
+                break;
+            }
+            List<Message> round = result.subList(firstRound, nextRound);
+            tokens -= TokenEstimator.estimate(round);
+            round.clear();
+        }
+
+        // 最后手段：最近一次的工具返回也截断
+        if (tokens > maxTokens) {
+            for (int i = 0; i < result.size(); i++) {
+                if (result.get(i) instanceof ToolResponseMessage toolResponseMessage) {
+                    result.set(i, truncate(toolResponseMessage, consumedToolResponseChars));
+                }
+            }
+            tokens = systemTokens + TokenEstimator.estimate(result);
+        }
+        log.info("Compacted agent context: {} -> {} estimated tokens, {} -> {} messages",
+                before, tokens, messages.size(), result.size());
+        return result;
+    }
+
+    private static boolean isNextStepPrompt(Message message, String nextStepPrompt) {
+        return nextStepPrompt != null && message instanceof UserMessage
+                && Objects.equals(message.getText(), nextStepPrompt);
+    }
+
+    private static int firstAssistantIndex(List<Message> messages, int from) {
+        for (int i = from; i < messages.size(); i++) {
+            if (messages.get(i) instanceof AssistantMessage) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static ToolResponseMessage truncate(ToolResponseMessage message, int maxChars) {
+        List<ToolResponseMessage.ToolResponse> responses = message.getResponses();
+        List<ToolResponseMessage.ToolResponse> truncated = new ArrayList<>(responses.size());
+        boolean changed = false;
+        for (ToolResponseMessage.ToolResponse response : responses) {
+            String data = truncate(response.responseData(), maxChars);
+            if (data != response.responseData()) {
+                changed = true;
+                response = new ToolResponseMessage.ToolResponse(response.id(), response.name(), data);
+            }
+            truncated.add(response);
+        }
+        return changed ? new ToolResponseMessage(truncated, message.getMetadata()) : message;
+    }
+
+    /**
+     * 截断文本，已截断过的文本原样返回，保证多次压缩结果稳定
+     */
+    static String truncate(String data, int maxChars) {
+        if (data == null || data.length() <= maxChars) {
+            return data;
+        }
+        int marker = data.lastIndexOf(TRUNCATED_MARKER);
+        if (marker >= 0 && marker <= maxChars) {
+            return data;
+        }
+        return data.substring(0, maxChars) + TRUNCATED_MARKER + data.length() + " 字符]";
+    }
+}
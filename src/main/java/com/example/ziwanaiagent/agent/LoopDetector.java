@@ -0,0 +1,91 @@
+package com.example.ziwanaiagent.agent;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import cn.hutool.core.util.StrUtil;
+import com.example.ziwanaiagent.tools.ToolArguments;
+import org.springframework.ai.chat.messages.AssistantMessage;
+
+/**
+ * 增量循环检测
+ * <p>
+ * 每步只记录助手消息的 64 位指纹，放入长度为 maxPeriod 的环形缓冲区，并为每个周期 p 维护
+ * “当前指纹与 p 步之前相同”的连续次数，每步更新为 O(maxPeriod)，与历史长度和消息大小无关（指纹本身除外）。
+ * <ul>
+ *     <li>周期 1（同一回答 / 同一工具调用反复出现）连续出现 repeatThreshold 次判定为循环</li>
+ *     <li>周期 ≥ 2（如 A-B-A-B）完整重复 2 轮即判定为循环，更长的周期每轮消耗的步数更多</li>
+ * </ul>
+ * 指纹：带工具调用的步骤只取工具名与规范化（键排序、去空白）后的参数，忽略每次措辞略有不同的说明文字；
+ * 不调用工具的步骤取规范化（合并空白）后的回答文本。
+ * <p>
+ * 非线程安全，每次运行一个实例。
+ */
+public class LoopDetector {
+
+    private final int repeatThreshold;
+    private final long[] ring;
+    // runs[p] = 连续满足 fingerprint[i] == fingerprint[i - p] 的步数
+    private final int[] runs;
+    private long recorded = 0;
+
+    /**
+     * @param repeatThreshold 周期 1 判定为循环所需的连续相同次数
+     * @param maxPeriod       检测的最大周期
+     */
+    public LoopDetector(int repeatThreshold, int maxPeriod) {
+        if (repeatThreshold < 2 || maxPeriod < 1) {
+            throw new IllegalArgumentException("repeatThreshold 至少为 2，maxPeriod 至少为 1");
+        }
+        this.repeatThreshold = repeatThreshold;
+        this.ring = new long[maxPeriod];
+        this.runs = new int[maxPeriod + 1];
+    }
+
+    /**
+     * 记录一步的助手消息
+     *
+     * @return 检测到的循环周期，未检测到时返回 0
+     */
+    public int record(AssistantMessage message) {
+        return record(fingerprint(message));
+    }
+
+    /**
+     * 记录一步的指纹
+     *
+     * @return 检测到的循环周期（取最短），未检测到时返回 0
+     */
+    public int record(long fingerprint) {
+        int maxPeriod = ring.length;
+        int detected = 0;
+        for (int p = 1; p <= maxPeriod; p++) {
+            if (recorded >= p && ring[(int) ((recorded - p) % maxPeriod)] == fingerprint) {
+                runs[p]++;
+            } else {
+                runs[p] = 0;
+            }
+            // 周期 p 重复 r 轮时 runs[p] = p * (r - 1)
+            int required = p == 1 ? repeatThreshold - 1 : p;
+            if (detected == 0 && runs[p] >= required) {
+                detected = p;
+            }
+        }
+        ring[(int) (recorded % maxPeriod)] = fingerprint;
+        recorded++;
+        return detected;
+    }
+
+    /**
+     * 计算助手消息的指纹
+     */
+    public static long fingerprint(AssistantMessage message) {
+        StringBuilder sb = new StringBuilder();
+        if (message.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : message.getToolCalls()) {
+                sb.append(toolCall.name()).append('\u0000').append(ToolArguments.canonicalize(toolCall.arguments())).append('\u0001');
+            }
+        } else {
+            sb.append(StrUtil.nullToEmpty(message.getText()).trim().replaceAll("\\s+", " "));
+        }
+        return MurmurHash.hash64(sb);
+    }
+}
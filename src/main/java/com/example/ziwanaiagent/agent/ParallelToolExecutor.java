@@ -0,0 +1,175 @@
+package com.example.ziwanaiagent.agent;
+
+import com.example.ziwanaiagent.tools.ToolExecutionPolicy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 并行执行同一步骤中的多个工具调用
+ * <p>
+ * 替代 ToolCallingManager 的逐个执行：连续的可并行工具调用在虚拟线程上同时执行，
+ * 不可并行的工具（如写文件、执行命令）作为屏障单独执行，保证与其前后调用的先后关系。
+ * ToolResponseMessage 中的响应顺序始终与模型返回的调用顺序一致；每个调用按策略表设置超时，
+ * 超时或异常作为该调用的响应文本返回给模型，不影响同一步骤中的其他调用。
+ */
+@Slf4j
+public class ParallelToolExecutor {
+
+    private static final ExecutorService VIRTUAL_EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("agent-tool-", 0).factory());
+
+    /**
+     * 工具调用完成回调，用于记录指标
+     */
+    @FunctionalInterface
+    public interface ToolCallListener {
+
+        /**
+         * @param outcome success / error / timeout
+         */
+        void onToolCall(String toolName, long nanos, String outcome);
+    }
+
+    private final Map<String, ToolCallback> toolCallbacks = new HashMap<>();
+    private final ToolExecutionPolicy policy;
+    private final ToolCallListener listener;
+
+    public ParallelToolExecutor(ToolCallback[] toolCallbacks, ToolExecutionPolicy policy) {
+        this(toolCallbacks, policy, null);
+    }
+
+    public ParallelToolExecutor(ToolCallback[] toolCallbacks, ToolExecutionPolicy policy, ToolCallListener listener) {
+        for (ToolCallback toolCallback : toolCallbacks) {
+            this.toolCallbacks.put(toolCallback.getToolDefinition().name(), toolCallback);
+        }
+        this.policy = policy;
+        this.listener = listener;
+    }
+
+    /**
+     * 执行模型响应中的工具调用，返回包含助手消息与工具响应的完整对话历史
+     */
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        return executeToolCalls(prompt, chatResponse, null);
+    }
+
+    /**
+     * 执行模型响应中的工具调用，与推测执行一致的调用直接使用其结果
+     *
+     * @param prefetch 推测执行的工具调用，可为空
+     */
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse, ToolPrefetch prefetch) {
+        AssistantMessage assistantMessage = chatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(AssistantMessage::hasToolCalls)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("模型响应中没有工具调用"));
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+
+        long start = System.nanoTime();
+        ToolResponseMessage.ToolResponse[] responses = new ToolResponseMessage.ToolResponse[toolCalls.size()];
+        List<Integer> parallelBatch = new ArrayList<>();
+        for (int i = 0; i < toolCalls.size(); i++) {
+            if (policy.get(toolCalls.get(i).name()).parallel()) {
+                parallelBatch.add(i);
+                continue;
+            }
+            // 不可并行的调用作为屏障：先完成之前的并行批次，再单独执行
+            runBatch(toolCalls, parallelBatch, responses, prefetch);
+            parallelBatch.clear();
+            runBatch(toolCalls, List.of(i), responses, prefetch);
+        }
+        runBatch(toolCalls, parallelBatch, responses, prefetch);
+        log.info("执行 {} 个工具调用，耗时 {} ms", toolCalls.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        List<Message> conversationHistory = new ArrayList<>(prompt.getInstructions());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(new ToolResponseMessage(List.of(responses), Map.of()));
+        boolean returnDirect = toolCalls.stream()
+                .map(toolCall -> toolCallbacks.get(toolCall.name()))
+                .allMatch(callback -> callback != null && callback.getToolMetadata().returnDirect());
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    private void runBatch(List<AssistantMessage.ToolCall> toolCalls, List<Integer> indexes,
+                          ToolResponseMessage.ToolResponse[] responses, ToolPrefetch prefetch) {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        Map<Integer, Future<String>> futures = new LinkedHashMap<>();
+        for (int index : indexes) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(index);
+            Future<String> prefetched = prefetch == null ? null : prefetch.claim(toolCall);
+            futures.put(index, prefetched != null ? prefetched : VIRTUAL_EXECUTOR.submit(() -> timedCall(toolCall)));
+        }
+        // 所有调用已同时开始，按各自的截止时间等待
+        long submitted = System.nanoTime();
+        for (Map.Entry<Integer, Future<String>> entry : futures.entrySet()) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(entry.getKey());
+            long timeoutNanos = policy.get(toolCall.name()).timeout().toNanos();
+            long remaining = timeoutNanos - (System.nanoTime() - submitted);
+            responses[entry.getKey()] = new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(),
+                    await(toolCall, entry.getValue(), remaining));
+        }
+    }
+
+    private String timedCall(AssistantMessage.ToolCall toolCall) {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            String result = call(toolCall);
+            if (result != null && !result.startsWith("Error") && !result.startsWith("\"Error")) {
+                outcome = "success";
+            }
+            return result;
+        } finally {
+            // 超时被取消的调用由 await 记录为 timeout
+            if (listener != null && !Thread.currentThread().isInterrupted()) {
+                listener.onToolCall(toolCall.name(), System.nanoTime() - start, outcome);
+            }
+        }
+    }
+
+    private String call(AssistantMessage.ToolCall toolCall) {
+        ToolCallback toolCallback = toolCallbacks.get(toolCall.name());
+        if (toolCallback == null) {
+            return "Error: tool " + toolCall.name() + " not found";
+        }
+        return toolCallback.call(toolCall.arguments());
+    }
+
+    private String await(AssistantMessage.ToolCall toolCall, Future<String> future, long timeoutNanos) {
+        try {
+            return future.get(Math.max(timeoutNanos, 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("工具 {} 执行超时", toolCall.name());
+            if (listener != null) {
+                listener.onToolCall(toolCall.name(), policy.get(toolCall.name()).timeout().toNanos(), "timeout");
+            }
+            return "Error: tool " + toolCall.name() + " timed out after "
+                    + policy.get(toolCall.name()).timeout().toSeconds() + " seconds";
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            log.warn("工具 {} 执行失败：{}", toolCall.name(), cause.getMessage());
+            return "Error executing tool " + toolCall.name() + ": " + cause.getMessage();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return "Error: tool " + toolCall.name() + " interrupted";
+        }
+    }
+}
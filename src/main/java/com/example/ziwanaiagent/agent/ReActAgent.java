@@ -1,5 +1,6 @@
 package com.example.ziwanaiagent.agent;
 
+import com.example.ziwanaiagent.agent.model.AgentContext;
 import com.example.ziwanaiagent.agent.model.AgentState;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -14,19 +15,19 @@ import lombok.extern.slf4j.Slf4j;
 public abstract class ReActAgent extends BaseAgent {
 
     /** 返回是否需要执行 act() */
-    public abstract boolean think();
+    public abstract boolean think(AgentContext context);
 
     /** 执行 act 并返回结果摘要 */
-    public abstract String act();
+    public abstract String act(AgentContext context);
 
     @Override
-    public String step() {
+    public String step(AgentContext context) {
         try {
-            if (!think()) {
-                setState(AgentState.FINISHED);
+            if (!think(context)) {
+                context.setState(AgentState.FINISHED);
                 return "Thought completed — no action required";
             }
-            return act();
+            return act(context);
         } catch (Exception e) {
             log.error("Error in ReAct step: {}", e.getMessage(), e);
             return "Error in ReAct step: " + e.getMessage();
@@ -0,0 +1,149 @@
+package com.example.ziwanaiagent.agent;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 首步推测执行（默认关闭）
+ * <p>
+ * 首次思考通常只是挑一个显而易见的工具：提示词里带网址时抓取网页，带“搜索、最新、天气”等词时搜索。
+ * 开启后按关键词规则猜测首个工具调用，与模型调用同时在虚拟线程上执行；模型选了同一工具且参数一致时直接使用结果，
+ * 否则丢弃。猜错的代价是一次多余的工具调用（搜索会消耗一次 API 配额），因此需显式开启。
+ * 指标：agent.prefetch.requests（result=hit/miss/none）、agent.prefetch.saved（命中时节省的延迟）。
+ */
+@Slf4j
+@Component
+public class SpeculativePrefetcher {
+
+    private static final ExecutorService VIRTUAL_EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("agent-prefetch-", 0).factory());
+
+    private static final Pattern URL_PATTERN = Pattern.compile("https?://[^\\s\"'<>，。、；！？）)]+");
+    private static final List<String> DOWNLOAD_HINTS = List.of("下载", "download");
+    private static final List<String> SEARCH_HINTS = List.of("搜索", "搜一下", "查询", "查一下", "查找", "最新", "新闻",
+            "天气", "推荐", "有哪些", "在哪", "什么是", "search", "latest", "news");
+    private static final Pattern SEARCH_PREFIX = Pattern.compile(
+            "^(请|麻烦)?(你)?(帮我|帮忙)?(在网上|上网)?(搜索|搜一下|查询|查一下|查找|找一下)(一下)?[：:\\s]*");
+    private static final Pattern TRAILING_PUNCTUATION = Pattern.compile("[。！？!?.，,\\s]+$");
+    // 过长的提示词通常是复杂任务，模型不会原样拿去搜索
+    private static final int MAX_QUERY_LENGTH = 40;
+
+    static final String SEARCH_TOOL = "searchWeb";
+    static final String SCRAPE_TOOL = "scrapeWebPage";
+
+    /**
+     * 猜测的工具调用
+     */
+    record Guess(String toolName, String arguments) {
+    }
+
+    private final boolean enabled;
+    private final MeterRegistry meterRegistry;
+    private final Timer savedTimer;
+
+    public SpeculativePrefetcher(@Value("${agent.speculative.enabled:false}") boolean enabled,
+                                 MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.meterRegistry = meterRegistry;
+        this.savedTimer = meterRegistry == null ? null : Timer.builder("agent.prefetch.saved")
+                .description("推测执行命中时节省的首步延迟")
+                .publishPercentiles(0.5, 0.9)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 按提示词猜测首个工具调用并开始执行
+     *
+     * @return 未开启或猜不出时返回 null
+     */
+    public ToolPrefetch start(String userPrompt, ToolCallback[] toolCallbacks) {
+        if (!enabled) {
+            return null;
+        }
+        Guess guess = predict(userPrompt);
+        ToolCallback toolCallback = guess == null ? null : Arrays.stream(toolCallbacks)
+                .filter(callback -> callback.getToolDefinition().name().equals(guess.toolName()))
+                .findFirst()
+                .orElse(null);
+        if (toolCallback == null) {
+            record("none");
+            return null;
+        }
+        log.info("Speculatively prefetching {} {}", guess.toolName(), guess.arguments());
+        CompletableFuture<String> future = CompletableFuture.supplyAsync(
+                () -> toolCallback.call(guess.arguments()), VIRTUAL_EXECUTOR);
+        return new ToolPrefetch(guess.toolName(), guess.arguments(), future);
+    }
+
+    /**
+     * 步骤结束时调用：记录命中情况，未命中的推测被取消
+     */
+    public void finish(ToolPrefetch prefetch, long claimNanos) {
+        if (prefetch == null) {
+            return;
+        }
+        if (prefetch.isClaimed()) {
+            record("hit");
+            if (savedTimer != null) {
+                savedTimer.record(Duration.ofNanos(prefetch.overlapNanos(claimNanos)));
+            }
+        } else {
+            record("miss");
+            prefetch.discard();
+        }
+    }
+
+    private void record(String result) {
+        if (meterRegistry != null) {
+            meterRegistry.counter("agent.prefetch.requests", "result", result).increment();
+        }
+    }
+
+    /**
+     * 关键词规则：带网址（且不是下载）时抓取该网页；带搜索类关键词且足够短时以去掉客套前缀的提示词搜索
+     */
+    static Guess predict(String userPrompt) {
+        if (StrUtil.isBlank(userPrompt)) {
+            return null;
+        }
+        String text = userPrompt.trim();
+        String lower = text.toLowerCase(Locale.ROOT);
+        Matcher url = URL_PATTERN.matcher(text);
+        if (url.find()) {
+            if (DOWNLOAD_HINTS.stream().anyMatch(lower::contains)) {
+                // 下载还需要模型给出文件名，无法猜测
+                return null;
+            }
+            return new Guess(SCRAPE_TOOL, JSONUtil.toJsonStr(Map.of("url", url.group())));
+        }
+        if (SEARCH_HINTS.stream().noneMatch(lower::contains)) {
+            return null;
+        }
+        String query = TRAILING_PUNCTUATION.matcher(SEARCH_PREFIX.matcher(text).replaceFirst("")).replaceFirst("");
+        if (query.isEmpty() || query.length() > MAX_QUERY_LENGTH) {
+            return null;
+        }
+        return new Guess(SEARCH_TOOL, JSONUtil.toJsonStr(Map.of("query", query)));
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.ziwanaiagent.agent;
+
+import cn.hutool.core.util.StrUtil;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 将流式响应的分片拼装为完整的 ChatResponse
+ * <p>
+ * 文本分片直接追加；工具调用分片按 OpenAI 风格的增量协议合并：带新 id（或在已有名称后又出现新名称）的分片开启一个新调用，
+ * 其余分片把名称、参数续写到最后一个调用上。模型一次性给出完整调用时同样适用。
+ * 只有在流结束后 {@link #toChatResponse()} 才返回工具调用，保证执行的都是参数完整的调用。
+ * <p>
+ * 非线程安全，一个实例只用于一次流式调用。
+ */
+public class StreamingChatResponseAssembler {
+
+    private final StringBuilder text = new StringBuilder();
+    private final Map<String, Object> properties = new HashMap<>();
+    private final List<PartialToolCall> toolCalls = new ArrayList<>();
+    private ChatResponseMetadata responseMetadata;
+    private ChatGenerationMetadata generationMetadata;
+
+    /**
+     * 合并一个分片
+     *
+     * @return 该分片新增的文本，没有时返回空串
+     */
+    public String accept(ChatResponse chunk) {
+        if (chunk == null) {
+            return "";
+        }
+        if (chunk.getMetadata() != null) {
+            responseMetadata = chunk.getMetadata();
+        }
+        Generation generation = chunk.getResult();
+        if (generation == null) {
+            return "";
+        }
+        if (generation.getMetadata() != null) {
+            generationMetadata = generation.getMetadata();
+        }
+        AssistantMessage output = generation.getOutput();
+        if (output == null) {
+            return "";
+        }
+        if (output.getMetadata() != null) {
+            properties.putAll(output.getMetadata());
+        }
+        for (AssistantMessage.ToolCall delta : output.getToolCalls()) {
+            mergeToolCall(delta);
+        }
+        String delta = output.getText();
+        if (StrUtil.isEmpty(delta)) {
+            return "";
+        }
+        text.append(delta);
+        return delta;
+    }
+
+    private void mergeToolCall(AssistantMessage.ToolCall delta) {
+        PartialToolCall last = toolCalls.isEmpty() ? null : toolCalls.get(toolCalls.size() - 1);
+        boolean startsNewCall = last == null
+                || (StrUtil.isNotEmpty(delta.id()) && StrUtil.isNotEmpty(last.id) && !delta.id().equals(last.id))
+                || (StrUtil.isEmpty(delta.id()) && StrUtil.isNotEmpty(delta.name()) && StrUtil.isNotEmpty(last.name));
+        if (startsNewCall) {
+            last = new PartialToolCall();
+            toolCalls.add(last);
+        }
+        if (StrUtil.isEmpty(last.id)) {
+            last.id = delta.id();
+        }
+        if (StrUtil.isEmpty(last.type)) {
+            last.type = delta.type();
+        }
+        if (StrUtil.isEmpty(last.name)) {
+            last.name = delta.name();
+        }
+        if (delta.arguments() != null) {
+            last.arguments.append(delta.arguments());
+        }
+    }
+
+    /**
+     * 已累积的文本
+     */
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * 拼装完整响应，应在流结束后调用
+     */
+    public ChatResponse toChatResponse() {
+        List<AssistantMessage.ToolCall> calls = new ArrayList<>(toolCalls.size());
+        for (PartialToolCall call : toolCalls) {
+            calls.add(new AssistantMessage.ToolCall(StrUtil.nullToEmpty(call.id),
+                    StrUtil.blankToDefault(call.type, "function"), StrUtil.nullToEmpty(call.name),
+                    call.arguments.isEmpty() ? "{}" : call.arguments.toString()));
+        }
+        AssistantMessage message = new AssistantMessage(text.toString(), properties, calls);
+        Generation generation = generationMetadata != null
+                ? new Generation(message, generationMetadata)
+                : new Generation(message);
+        return responseMetadata != null
+                ? new ChatResponse(List.of(generation), responseMetadata)
+                : new ChatResponse(List.of(generation));
+    }
+
+    private static final class PartialToolCall {
+        private String id;
+        private String type;
+        private String name;
+        private final StringBuilder arguments = new StringBuilder();
+    }
+}
@@ -3,8 +3,9 @@ package com.example.ziwanaiagent.agent;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.StrUtil;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.example.ziwanaiagent.agent.model.AgentContext;
 import com.example.ziwanaiagent.agent.model.AgentState;
-import com.example.ziwanaiagent.tools.*;
+import com.example.ziwanaiagent.tools.ToolExecutionPolicy;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
@@ -12,15 +13,18 @@ import org.springframework.ai.chat.messages.*;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.model.tool.ToolExecutionResult;
 import org.springframework.ai.tool.ToolCallback;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * 处理工具调用的基础代理类，具体实现了 think 和 act 方法，可以用作创建实例的父类
+ * <p>
+ * 工具定义、工具执行器与模型选项在构造时创建一次，运行期间只读；消息上下文与模型响应保存在 {@link AgentContext} 中。
  */
 @EqualsAndHashCode(callSuper = true)
 @Data
@@ -29,21 +33,31 @@ public class ToolCallAgent extends ReActAgent {
 
     private final ToolCallback[] availableTools;
 
-
-    // 工具调用结果
-    private ChatResponse toolCallChatResponse;
-
-    // 工具调用管理者
-    private final ToolCallingManager toolCallingManager;
+    // 工具执行器：同一步骤中可并行的工具调用并发执行
+    private final ParallelToolExecutor toolExecutor;
 
     // 禁用 Spring AI 内置的工具调用机制，自己维护选项和消息上下文
     private final ChatOptions chatOptions;
 
+    // 上下文压缩：思考前截断已读的工具返回、去重 nextStepPrompt、控制 token 预算，为空时不压缩
+    private ContextCompactor contextCompactor;
+
+    // 首步推测执行：与首次思考并行执行猜测的工具调用，为空时不推测
+    private SpeculativePrefetcher speculativePrefetcher;
+
 
     public ToolCallAgent(ToolCallback[] toolCallbacks) {
+        this(toolCallbacks, ToolExecutionPolicy.defaults(Duration.ofSeconds(60)));
+    }
+
+    public ToolCallAgent(ToolCallback[] toolCallbacks, ToolExecutionPolicy toolExecutionPolicy) {
         super();
         this.availableTools = toolCallbacks;
-        this.toolCallingManager = ToolCallingManager.builder().build();
+        this.toolExecutor = new ParallelToolExecutor(toolCallbacks, toolExecutionPolicy, (toolName, nanos, outcome) -> {
+            if (getAgentMetrics() != null) {
+                getAgentMetrics().recordTool(getName(), toolName, nanos, outcome);
+            }
+        });
         // 禁用 Spring AI 内置的工具调用机制，自己维护选项和消息上下文
         this.chatOptions = DashScopeChatOptions.builder()
                 .withInternalToolExecutionEnabled(false)
@@ -53,29 +67,44 @@ public class ToolCallAgent extends ReActAgent {
 
 
     @Override
-    public boolean think() {
+    public boolean think(AgentContext context) {
         if (StrUtil.isNotBlank(getNextStepPrompt())) {
             UserMessage userMessage = new UserMessage(getNextStepPrompt());
-            getMessageList().add(userMessage);
+            context.getMessageList().add(userMessage);
+        }
+        if (contextCompactor != null) {
+            context.setMessageList(contextCompactor.compact(context.getMessageList(), getSystemPrompt(), getNextStepPrompt()));
         }
         //调用 AI 大模型，获取工具调用结果
-        List<Message> messageList = getMessageList();
+        List<Message> messageList = context.getMessageList();
 
         Prompt prompt = new Prompt(messageList, this.chatOptions);
+        if (speculativePrefetcher != null && context.getCurrentStep() == 1) {
+            context.setToolPrefetch(speculativePrefetcher.start(firstUserPrompt(messageList), this.availableTools));
+        }
+        long thinkStart = System.nanoTime();
         try {
-            ChatResponse chatResponse = getChatClient()
+            ChatResponse chatResponse = context.getStreamListener() != null
+                    ? streamThink(prompt, context.getStreamListener())
+                    : getChatClient()
                     .prompt(prompt)
                     .system(getSystemPrompt())
                     .toolCallbacks(this.availableTools)
                     .call()
                     .chatResponse();
-            this.toolCallChatResponse = chatResponse;
+            context.setToolCallChatResponse(chatResponse);
+            if (getAgentMetrics() != null && chatResponse != null) {
+                getAgentMetrics().recordThink(getName(), System.nanoTime() - thinkStart,
+                        chatResponse.hasToolCalls() ? "tool_calls" : "final");
+                getAgentMetrics().recordTokens(getName(), chatResponse.getMetadata().getUsage());
+            }
 
             //解析工具调用结果，获取要调用的工具
             AssistantMessage assistantMessage = null;
             if (chatResponse != null) {
                 assistantMessage = chatResponse.getResult().getOutput();
             }
+            context.setStepAssistantMessage(assistantMessage);
             String assistantMessageText = null;
             if (assistantMessage != null) {
                 assistantMessageText = assistantMessage.getText();
@@ -93,29 +122,84 @@ public class ToolCallAgent extends ReActAgent {
             log.info(collect);
             if (toolCallList.isEmpty()) {
                 // 只有不调用工具时，才需要手动记录助手消息
-                getMessageList().add(assistantMessage);
+                context.getMessageList().add(assistantMessage);
+                finishPrefetch(context, System.nanoTime());
                 return false;
             } else {
                 return true;
             }
         } catch (Exception e) {
             log.error("{}的思考过程遇到了问题：{}", getName(), e.getMessage());
-            getMessageList().add(new AssistantMessage("处理时遇到了错误：" + e.getMessage()));
+            if (getAgentMetrics() != null) {
+                getAgentMetrics().recordThink(getName(), System.nanoTime() - thinkStart, "error");
+            }
+            AssistantMessage errorMessage = new AssistantMessage("处理时遇到了错误：" + e.getMessage());
+            context.getMessageList().add(errorMessage);
+            context.setStepAssistantMessage(errorMessage);
+            finishPrefetch(context, System.nanoTime());
             return false;
         }
     }
 
+    private static String firstUserPrompt(List<Message> messageList) {
+        return messageList.stream()
+                .filter(message -> message instanceof UserMessage)
+                .map(Message::getText)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * 记录推测执行是否命中，未命中的推测被取消
+     */
+    private void finishPrefetch(AgentContext context, long claimNanos) {
+        if (context.getToolPrefetch() != null) {
+            speculativePrefetcher.finish(context.getToolPrefetch(), claimNanos);
+            context.setToolPrefetch(null);
+        }
+    }
+
+    /**
+     * 流式思考：文本分片到达即转发给 listener，工具调用分片边到边拼装，流结束后才返回完整的工具调用
+     * <p>
+     * 在会话所在的虚拟线程上阻塞等待流结束，act 阶段拿到的与 call() 的结果结构一致。
+     */
+    private ChatResponse streamThink(Prompt prompt, Consumer<String> listener) {
+        StreamingChatResponseAssembler assembler = new StreamingChatResponseAssembler();
+        getChatClient()
+                .prompt(prompt)
+                .system(getSystemPrompt())
+                .toolCallbacks(this.availableTools)
+                .stream()
+                .chatResponse()
+                .doOnNext(chunk -> {
+                    String delta = assembler.accept(chunk);
+                    if (!delta.isEmpty()) {
+                        listener.accept(delta);
+                    }
+                })
+                .blockLast();
+        return assembler.toChatResponse();
+    }
+
     @Override
-    public String act() {
+    public String act(AgentContext context) {
+        ChatResponse toolCallChatResponse = context.getToolCallChatResponse();
         if (!toolCallChatResponse.hasToolCalls()) {
             return "no Tool need use";
         }
         // 调用工具
-        Prompt prompt = new Prompt(getMessageList(), this.chatOptions);
-        ToolExecutionResult toolExecutionResult = toolCallingManager.executeToolCalls(prompt, this.toolCallChatResponse);
+        long actStart = System.nanoTime();
+        Prompt prompt = new Prompt(context.getMessageList(), this.chatOptions);
+        ToolExecutionResult toolExecutionResult;
+        try {
+            toolExecutionResult = toolExecutor.executeToolCalls(prompt, toolCallChatResponse, context.getToolPrefetch());
+        } finally {
+            finishPrefetch(context, actStart);
+        }
 
         // 记录消息上下文，conversationHistory 已经包含了助手消息和工具调用返回的结果
-        setMessageList(toolExecutionResult.conversationHistory());
+        context.setMessageList(toolExecutionResult.conversationHistory());
         ToolResponseMessage message = (ToolResponseMessage) CollUtil.getLast(toolExecutionResult.conversationHistory());
 
         // 判断是否调用了终止工具
@@ -124,7 +208,7 @@ public class ToolCallAgent extends ReActAgent {
         if (terminateToolCalled) {
             log.info("{}终止了工具调用", getName());
             // 设置状态为已完成
-            setState(AgentState.FINISHED);
+            context.setState(AgentState.FINISHED);
 
         }
         String results = message.getResponses()
@@ -0,0 +1,84 @@
+package com.example.ziwanaiagent.agent;
+
+import com.example.ziwanaiagent.tools.ToolArguments;
+import org.springframework.ai.chat.messages.AssistantMessage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一次推测执行的工具调用
+ * <p>
+ * 与模型的首次思考并行执行；模型选择了相同工具且参数一致时，{@link #claim} 交出该调用的结果（可能仍在执行），
+ * 否则在步骤结束时 {@link #discard} 取消并丢弃。
+ */
+public class ToolPrefetch {
+
+    private final String toolName;
+    private final String arguments;
+    private final String matchKey;
+    private final CompletableFuture<String> future;
+    private final long startNanos;
+    private final AtomicBoolean claimed = new AtomicBoolean(false);
+    private volatile long completedNanos = 0;
+
+    ToolPrefetch(String toolName, String arguments, CompletableFuture<String> future) {
+        this.toolName = toolName;
+        this.arguments = arguments;
+        this.matchKey = matchKey(arguments);
+        this.startNanos = System.nanoTime();
+        this.future = future;
+        future.whenComplete((result, e) -> completedNanos = System.nanoTime());
+    }
+
+    public String getToolName() {
+        return toolName;
+    }
+
+    public String getArguments() {
+        return arguments;
+    }
+
+    /**
+     * 参数比较键：规范化 JSON（键排序、去空白）后逐字比较；
+     * 不忽略大小写，URL 的路径与查询参数区分大小写，忽略后可能把另一页面的结果交给模型
+     */
+    private static String matchKey(String arguments) {
+        return ToolArguments.canonicalize(arguments);
+    }
+
+    /**
+     * 模型的工具调用与推测一致时交出结果，每个推测最多被使用一次
+     *
+     * @return 推测执行的结果，不一致或已被使用时返回 null
+     */
+    public Future<String> claim(AssistantMessage.ToolCall toolCall) {
+        if (!toolName.equals(toolCall.name()) || !matchKey.equals(matchKey(toolCall.arguments()))) {
+            return null;
+        }
+        return claimed.compareAndSet(false, true) ? future : null;
+    }
+
+    public boolean isClaimed() {
+        return claimed.get();
+    }
+
+    /**
+     * 推测执行与模型思考重叠的时间，即命中时节省的延迟
+     */
+    public long overlapNanos(long claimNanos) {
+        long completed = completedNanos;
+        long end = completed != 0 && completed < claimNanos ? completed : claimNanos;
+        return Math.max(0, end - startNanos);
+    }
+
+    /**
+     * 未被使用时取消执行
+     */
+    public void discard() {
+        if (!claimed.get()) {
+            future.cancel(true);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.example.ziwanaiagent.agent;
 
 
 import com.example.ziwanaiagent.advisor.LoggerAdvisor;
+import com.example.ziwanaiagent.tools.ToolExecutionPolicy;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.tool.ToolCallback;
@@ -11,8 +12,16 @@ import org.springframework.stereotype.Component;
 @Component
 public class ZiWanManus extends ToolCallAgent {
 
-    public ZiWanManus(ToolCallback[] toolCallbacks, ChatModel dashscopeChatModel) {
-        super(toolCallbacks);
+    public ZiWanManus(ToolCallback[] toolCallbacks, ChatModel dashscopeChatModel, ToolExecutionPolicy toolExecutionPolicy,
+                      AgentScheduler agentScheduler, ContextCompactor contextCompactor,
+                      AgentCheckpointStore agentCheckpointStore, SpeculativePrefetcher speculativePrefetcher,
+                      AgentMetrics agentMetrics) {
+        super(toolCallbacks, toolExecutionPolicy);
+        this.setSpeculativePrefetcher(speculativePrefetcher);
+        this.setAgentCheckpointStore(agentCheckpointStore);
+        this.setContextCompactor(contextCompactor);
+        this.setAgentScheduler(agentScheduler);
+        this.setAgentMetrics(agentMetrics);
         this.setName("ZiWanManus");
 
         String SYSTEM_PROMPT = """
@@ -0,0 +1,44 @@
+package com.example.ziwanaiagent.agent.model;
+
+import com.example.ziwanaiagent.agent.LoopDetector;
+import com.example.ziwanaiagent.agent.ToolPrefetch;
+import lombok.Data;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 单次运行的智能体状态
+ * <p>
+ * 每次 run / runStream 新建一个实例（或从检查点恢复），只在该次运行的线程中修改；
+ * 智能体本身只保存 ChatClient、工具定义、提示词等不可变配置，可被并发的多次运行共享。
+ */
+@Data
+public class AgentContext {
+
+    // 运行 id，流式运行时用于断线重连与从检查点恢复
+    private String runId;
+    // SSE 超时等回调可能在其他线程修改状态
+    private volatile AgentState state = AgentState.IDLE;
+    private int currentStep = 0;
+    // 累积 stuck 次数
+    private int stuckCount = 0;
+    // 增量循环检测器，由智能体按自身配置创建
+    private LoopDetector loopDetector;
+    private List<Message> messageList = new ArrayList<>();
+    // 最近一次思考得到的模型响应（含工具调用）
+    private ChatResponse toolCallChatResponse;
+    // 本步产生的助手消息，交给循环检测后清空；上下文压缩会整轮丢弃消息，不能按下标回查
+    private AssistantMessage stepAssistantMessage;
+    // 已产生的事件，重连时补发；并发追加与读取，且条数很少，使用写时复制列表
+    private List<AgentEvent> events = new CopyOnWriteArrayList<>();
+    // 首步推测执行的工具调用，步骤结束后清空
+    private ToolPrefetch toolPrefetch;
+    // 流式输出回调：非空时思考阶段以流式调用模型，生成的文本分片到达即回调
+    private Consumer<String> streamListener;
+}
@@ -0,0 +1,11 @@
+package com.example.ziwanaiagent.agent.model;
+
+/**
+ * 智能体运行中产生的 SSE 事件，按 id 递增记录，客户端重连时补发 Last-Event-ID 之后的事件
+ *
+ * @param id   事件序号，从 0 开始
+ * @param name 事件名，为空时为默认的 message 事件
+ * @param data 事件内容
+ */
+public record AgentEvent(long id, String name, String data) {
+}
@@ -12,6 +12,11 @@ public enum AgentState {
      */
     RUNNING,
 
+    /**
+     * 暂停状态：客户端断开后在当前步骤结束时停止，可从检查点恢复
+     */
+    PAUSED,
+
     /**
      * 已完成状态
      */
@@ -2,7 +2,6 @@ package com.example.ziwanaiagent.app;
 
 
 import com.example.ziwanaiagent.advisor.LoggerAdvisor;
-import com.example.ziwanaiagent.chatmemory.FileBasedChatMemory;
 import com.example.ziwanaiagent.rag.LoveAppRagCustomAdvisorFactory;
 import com.example.ziwanaiagent.rag.QueryRewriter;
 import lombok.Getter;
@@ -44,8 +43,10 @@ public class LoveApp {
      * 初始化 ChatClient
      *
      * @param dashscopeChatModel 模型
+     * @param loveAppChatMemory  对话记忆
      */
-    public LoveApp(ChatModel dashscopeChatModel, @Value("classpath:prompts/system-message.md") Resource systemResource) {
+    public LoveApp(ChatModel dashscopeChatModel, @Value("classpath:prompts/system-message.md") Resource systemResource,
+                   ChatMemory loveAppChatMemory) {
         this.systemResource = systemResource;
         // 加载外部 system prompt 文件
         try {
@@ -54,9 +55,7 @@ public class LoveApp {
             throw new RuntimeException(e);
         }
 
-        // 初始化基于文件的对话记忆
-        String fileDir = System.getProperty("user.dir") + "/tmp/chat-memory";
-        ChatMemory chatMemory = new FileBasedChatMemory(fileDir);
+        // 对话记忆由 ChatMemoryConfig 统一装配（文件存储 + 内存热数据层）
         // 初始化基于内存的对话记忆
 //        ChatMemory chatMemory = MessageWindowChatMemory.builder()
 //                .chatMemoryRepository(new InMemoryChatMemoryRepository())
@@ -65,7 +64,7 @@ public class LoveApp {
         chatClient = ChatClient.builder(dashscopeChatModel)
                 .defaultSystem(SYSTEM_PROMPT)
                 .defaultAdvisors(
-                        MessageChatMemoryAdvisor.builder(chatMemory).build(),
+                        MessageChatMemoryAdvisor.builder(loveAppChatMemory).build(),
                         new LoggerAdvisor()
 //                        new ForbiddenAdvisor()
                 )
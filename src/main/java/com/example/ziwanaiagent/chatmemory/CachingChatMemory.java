@@ -0,0 +1,341 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 文件型 ChatMemory 前置的 LRU 热数据层
+ * <p>
+ * 按 conversationId 缓存已解码的最近消息窗口，get 命中时不再读盘和反序列化；
+ * add 只更新内存窗口并登记待写消息，由后台线程批量回写（write-behind）到底层存储。
+ * 按条目数和估算字节数淘汰，存在未回写数据的条目不会被淘汰，回写完成后再淘汰。
+ * 窗口内每条消息的估算 token 数在写入时缓存，get 按会话的 {@link ChatMemoryWindow} 裁剪；
+ * 会话窗口被重新设置时回写并丢弃缓存条目，下次访问按新窗口从底层存储重新加载。
+ */
+@Slf4j
+public class CachingChatMemory implements ChatMemory, AutoCloseable {
+
+    /** 单条消息的估算固定开销（对象头、元数据等） */
+    private static final int MESSAGE_OVERHEAD_BYTES = 64;
+
+    private final ChatMemory delegate;
+    private final ChatMemoryWindowPolicy windowPolicy;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    /** 访问顺序的 LRU 表，结构修改由 this 保护 */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chat-memory-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CachingChatMemory(ChatMemory delegate, int maxMessages, int maxEntries, long maxBytes, long flushIntervalMs) {
+        this(delegate, new ChatMemoryWindowPolicy(ChatMemoryWindow.ofMessages(maxMessages)), maxEntries, maxBytes, flushIntervalMs);
+    }
+
+    /**
+     * @param windowPolicy 按会话的读取窗口，应与底层存储使用同一实例
+     */
+    public CachingChatMemory(ChatMemory delegate, ChatMemoryWindowPolicy windowPolicy, int maxEntries, long maxBytes,
+                             long flushIntervalMs) {
+        this.delegate = delegate;
+        this.windowPolicy = windowPolicy;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        windowPolicy.addListener(this::reload);
+        flusher.scheduleWithFixedDelay(this::flushAll, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // ---------------- ChatMemory 接口实现 ---------------- //
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        Entry entry = lockEntry(conversationId);
+        try {
+            entry.pending.addAll(messages);
+            for (Message message : messages) {
+                entry.window.add(message);
+                entry.tokens.add(TokenEstimator.estimate(message));
+            }
+            int maxMessages = windowPolicy.get(conversationId).maxMessages();
+            while (entry.window.size() > maxMessages) {
+                entry.window.removeFirst();
+                entry.tokens.removeFirst();
+            }
+            resize(entry);
+        } finally {
+            entry.lock.unlock();
+        }
+        evictIfNeeded();
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        Entry entry = lockEntry(conversationId);
+        try {
+            Integer[] tokens = entry.tokens.toArray(new Integer[0]);
+            int first = windowPolicy.get(conversationId).firstIndex(tokens.length, i -> tokens[i]);
+            return new ArrayList<>(entry.window.subList(first, tokens.length));
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        Entry entry = lockEntry(conversationId);
+        try {
+            entry.pending.clear();
+            entry.window.clear();
+            entry.tokens.clear();
+            delegate.clear(conversationId);
+            resize(entry);
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    /**
+     * 底层存储已被清理时调用：丢弃缓存窗口中已落盘的旧消息，仍待写的消息回写后淘汰条目
+     * <p>
+     * 阻塞等待条目锁，不会因条目正被访问而跳过，避免旧窗口继续留在缓存中。
+     */
+    public void invalidate(String conversationId) {
+        Entry entry = lockExisting(conversationId);
+        if (entry == null) {
+            return;
+        }
+        try {
+            int keep = Math.min(entry.window.size(), entry.pending.size());
+            while (entry.window.size() > keep) {
+                entry.window.removeFirst();
+                entry.tokens.removeFirst();
+            }
+            resize(entry);
+            flushAndEvict(conversationId, entry);
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    /**
+     * 回写所有待写消息
+     * <p>
+     * 单个会话回写失败时记录日志并保留其待写消息，下一轮重试，不影响其他会话，也不会中断定时回写任务。
+     */
+    public void flushAll() {
+        List<Map.Entry<String, Entry>> dirty;
+        synchronized (this) {
+            dirty = entries.entrySet().stream()
+                    .filter(e -> !e.getValue().pending.isEmpty())
+                    .map(e -> Map.entry(e.getKey(), e.getValue()))
+                    .toList();
+        }
+        for (Map.Entry<String, Entry> e : dirty) {
+            Entry entry = e.getValue();
+            entry.lock.lock();
+            try {
+                flush(e.getKey(), entry);
+            } catch (RuntimeException ex) {
+                log.warn("回写会话 [{}] 的 {} 条消息失败，稍后重试：{}", e.getKey(), entry.pending.size(), ex.getMessage(), ex);
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+        evictIfNeeded();
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        flushAll();
+    }
+
+    // ---------------- 内部实现 ---------------- //
+
+    /**
+     * 获取并锁定会话条目，未命中时从底层存储加载窗口
+     */
+    private Entry lockEntry(String conversationId) {
+        while (true) {
+            Entry entry;
+            synchronized (this) {
+                entry = entries.computeIfAbsent(conversationId, id -> new Entry());
+            }
+            entry.lock.lock();
+            if (entry.evicted) {
+                // 拿到锁之前已被淘汰，重新获取
+                entry.lock.unlock();
+                continue;
+            }
+            if (!entry.loaded) {
+                try {
+                    for (Message message : delegate.get(conversationId)) {
+                        entry.window.add(message);
+                        entry.tokens.add(TokenEstimator.estimate(message));
+                    }
+                    entry.loaded = true;
+                    resize(entry);
+                } catch (RuntimeException e) {
+                    entry.lock.unlock();
+                    throw e;
+                }
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * 会话窗口变更后回写待写消息并丢弃缓存条目；缓存的窗口按旧窗口裁剪过，放宽后需从底层存储重新加载
+     */
+    private void reload(String conversationId) {
+        Entry entry = lockExisting(conversationId);
+        if (entry == null) {
+            return;
+        }
+        try {
+            flushAndEvict(conversationId, entry);
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    /**
+     * 锁定已缓存的会话条目，不存在或已被淘汰时返回 null
+     */
+    private Entry lockExisting(String conversationId) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(conversationId);
+        }
+        if (entry == null) {
+            return null;
+        }
+        entry.lock.lock();
+        if (entry.evicted) {
+            entry.lock.unlock();
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * 回写待写消息后淘汰条目，下次访问从底层存储重新加载；回写失败时保留条目，由定时任务重试。调用方需持有条目锁
+     */
+    private void flushAndEvict(String conversationId, Entry entry) {
+        try {
+            flush(conversationId, entry);
+        } catch (RuntimeException e) {
+            log.warn("回写会话 [{}] 的 {} 条消息失败，暂时保留缓存条目：{}", conversationId, entry.pending.size(), e.getMessage(), e);
+            return;
+        }
+        synchronized (this) {
+            entry.evicted = true;
+            totalBytes -= entry.bytes;
+            entries.remove(conversationId);
+        }
+    }
+
+    /**
+     * 调用方需持有条目锁
+     */
+    private void flush(String conversationId, Entry entry) {
+        if (entry.pending.isEmpty()) {
+            return;
+        }
+        List<Message> batch = new ArrayList<>(entry.pending);
+        delegate.add(conversationId, batch);
+        entry.pending.clear();
+    }
+
+    private void resize(Entry entry) {
+        long bytes = 0;
+        for (Message message : entry.window) {
+            bytes += estimateBytes(message);
+        }
+        for (Message message : entry.pending) {
+            bytes += estimateBytes(message);
+        }
+        synchronized (this) {
+            totalBytes += bytes - entry.bytes;
+        }
+        entry.bytes = bytes;
+    }
+
+    /**
+     * 按 LRU 顺序淘汰干净条目；脏条目跳过，若仍超限则立即触发一次回写
+     */
+    private void evictIfNeeded() {
+        boolean needFlush = false;
+        synchronized (this) {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries || totalBytes > maxBytes) && iterator.hasNext()) {
+                Entry entry = iterator.next().getValue();
+                if (!entry.lock.tryLock()) {
+                    continue;
+                }
+                try {
+                    if (!entry.pending.isEmpty()) {
+                        needFlush = true;
+                        continue;
+                    }
+                    entry.evicted = true;
+                    totalBytes -= entry.bytes;
+                    iterator.remove();
+                } finally {
+                    entry.lock.unlock();
+                }
+            }
+        }
+        if (needFlush && !flusher.isShutdown()) {
+            flusher.execute(this::flushAll);
+        }
+    }
+
+    private static long estimateBytes(Message message) {
+        long bytes = MESSAGE_OVERHEAD_BYTES + charBytes(message.getText());
+        if (message instanceof AssistantMessage assistantMessage) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                bytes += charBytes(toolCall.name()) + charBytes(toolCall.arguments());
+            }
+        } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                bytes += charBytes(response.responseData());
+            }
+        }
+        return bytes;
+    }
+
+    private static long charBytes(String text) {
+        return text == null ? 0 : text.length() * 2L;
+    }
+
+    private static class Entry {
+        private final ReentrantLock lock = new ReentrantLock();
+        /** 最近 maxMessages 条消息 */
+        private final LinkedList<Message> window = new LinkedList<>();
+        /** 与 window 一一对应的估算 token 数 */
+        private final LinkedList<Integer> tokens = new LinkedList<>();
+        /** 尚未回写到底层存储的消息 */
+        private final List<Message> pending = new ArrayList<>();
+        private boolean loaded;
+        private boolean evicted;
+        private long bytes;
+    }
+}
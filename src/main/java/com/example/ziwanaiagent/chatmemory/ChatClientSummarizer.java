@@ -0,0 +1,58 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatModel;
+
+import java.util.List;
+
+/**
+ * 基于大模型的滚动摘要生成器
+ */
+public class ChatClientSummarizer implements ChatSummarizer {
+
+    private static final String SYSTEM_PROMPT = """
+            你是对话记录整理助手。请把"已有摘要"与"新增对话"合并为一份新的摘要：
+            保留用户的基本情况、诉求、已给出的建议和尚未解决的问题，去掉寒暄与重复内容。
+            使用第三人称陈述，不超过 300 字，只输出摘要正文。
+            """;
+
+    /** 单条消息写入提示词的最大字符数，避免长文档撑爆摘要请求 */
+    private static final int MAX_MESSAGE_CHARS = 2000;
+
+    private final ChatClient chatClient;
+
+    public ChatClientSummarizer(ChatModel chatModel) {
+        this.chatClient = ChatClient.builder(chatModel)
+                .defaultSystem(SYSTEM_PROMPT)
+                .build();
+    }
+
+    @Override
+    public String summarize(String previousSummary, List<Message> messages) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("已有摘要：\n").append(previousSummary.isEmpty() ? "（无）" : previousSummary).append("\n\n新增对话：\n");
+        for (Message message : messages) {
+            String text = message instanceof ToolResponseMessage toolResponseMessage
+                    ? toolResponseMessage.getResponses().stream().map(ToolResponseMessage.ToolResponse::responseData).toList().toString()
+                    : message.getText();
+            if (text == null || text.isBlank()) {
+                if (!(message instanceof AssistantMessage assistantMessage) || !assistantMessage.hasToolCalls()) {
+                    continue;
+                }
+                text = "调用工具 " + assistantMessage.getToolCalls().stream().map(AssistantMessage.ToolCall::name).toList();
+            }
+            if (text.length() > MAX_MESSAGE_CHARS) {
+                text = text.substring(0, MAX_MESSAGE_CHARS) + "……";
+            }
+            prompt.append(message.getMessageType().getValue()).append("：").append(text).append('\n');
+        }
+        String summary = chatClient.prompt()
+                .user(prompt.toString())
+                .call()
+                .content();
+        return summary == null ? previousSummary : summary.strip();
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.time.Duration;
+
+/**
+ * 对话记忆配置
+ */
+@Configuration
+public class ChatMemoryConfig {
+
+    /**
+     * 对话记忆文件目录
+     */
+    @Value("${chat-memory.dir:${user.dir}/tmp/chat-memory}")
+    private String chatMemoryDir;
+
+    /**
+     * 存储方式：file（本地文件）/ jdbc（数据库，多节点共享）
+     * <p>
+     * jdbc 模式下不启用内存热数据层：其延迟刷盘与节点内窗口缓存会让其他节点读到过期的窗口。
+     * 滚动摘要仍保存在本节点的 chat-memory.dir 下，多节点部署时各节点的摘要互不共享。
+     */
+    @Value("${chat-memory.store:file}")
+    private String store;
+
+    @Value("${chat-memory.jdbc.max-batch-rows:500}")
+    private int jdbcMaxBatchRows;
+
+    /**
+     * add 等待组提交完成的最长时间，写线程异常时请求线程不会无限期阻塞
+     */
+    @Value("${chat-memory.jdbc.write-timeout-ms:30000}")
+    private long jdbcWriteTimeoutMs;
+
+    /**
+     * 记录块压缩算法：NONE / LZ4 / ZSTD
+     */
+    @Value("${chat-memory.compression:LZ4}")
+    private ChatMessageCodec.Compression compression;
+
+    @Value("${chat-memory.compression-threshold:1024}")
+    private int compressionThreshold;
+
+    /**
+     * 读取窗口：最多返回的历史消息条数与估算 token 总数
+     */
+    @Value("${chat-memory.window.max-messages:10}")
+    private int windowMaxMessages;
+
+    @Value("${chat-memory.window.max-tokens:4000}")
+    private int windowMaxTokens;
+
+    /**
+     * 单独设置窗口的会话数上限，超出时最久未访问的会话恢复为默认窗口
+     */
+    @Value("${chat-memory.window.max-overrides:10000}")
+    private int windowMaxOverrides;
+
+    /**
+     * 是否启用内存热数据层，仅对 file 存储生效
+     */
+    @Value("${chat-memory.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${chat-memory.cache.max-entries:10000}")
+    private int cacheMaxEntries;
+
+    @Value("${chat-memory.cache.max-bytes:67108864}")
+    private long cacheMaxBytes;
+
+    @Value("${chat-memory.cache.flush-interval-ms:1000}")
+    private long cacheFlushIntervalMs;
+
+    /**
+     * 是否启用滚动摘要层：滑出窗口的消息由后台线程合并为摘要
+     */
+    @Value("${chat-memory.summary.enabled:false}")
+    private boolean summaryEnabled;
+
+    @Value("${chat-memory.summary.min-messages:6}")
+    private int summaryMinMessages;
+
+    @Value("${chat-memory.summary.batch-size:20}")
+    private int summaryBatchSize;
+
+    @Value("${chat-memory.summary.max-cached:10000}")
+    private int summaryMaxCached;
+
+    @Value("${chat-memory.summary.interval-ms:10000}")
+    private long summaryIntervalMs;
+
+    /**
+     * 过期清理：会话文件空闲超过 ttl 后删除或归档（archive 为 true 时移入 archive-dir）
+     */
+    @Value("${chat-memory.janitor.ttl:30d}")
+    private Duration janitorTtl;
+
+    @Value("${chat-memory.janitor.interval:1h}")
+    private Duration janitorInterval;
+
+    @Value("${chat-memory.janitor.archive:false}")
+    private boolean janitorArchive;
+
+    @Value("${chat-memory.janitor.archive-dir:${chat-memory.dir:${user.dir}/tmp/chat-memory}-archive}")
+    private String janitorArchiveDir;
+
+    /** 各层实例，供过期清理失效缓存 */
+    private FileBasedChatMemory fileChatMemory;
+    private CachingChatMemory cachingChatMemory;
+    private SummarizingChatMemory summarizingChatMemory;
+
+    /**
+     * 按会话的读取窗口，可通过 set 为单个会话调整上限
+     */
+    @Bean
+    public ChatMemoryWindowPolicy chatMemoryWindowPolicy() {
+        return new ChatMemoryWindowPolicy(new ChatMemoryWindow(windowMaxMessages, windowMaxTokens), windowMaxOverrides);
+    }
+
+    @Bean
+    public ChatMemory loveAppChatMemory(ChatMemoryWindowPolicy chatMemoryWindowPolicy, ChatModel dashscopeChatModel,
+                                        ObjectProvider<DataSource> dataSourceProvider) {
+        ChatMessageCodec codec = new ChatMessageCodec(compression, compressionThreshold);
+        ChatMemory chatMemory;
+        SummarizingChatMemory.HistoryLoader historyLoader;
+        if ("jdbc".equalsIgnoreCase(store)) {
+            // 初始化基于数据库的对话记忆
+            JdbcChatMemory jdbcChatMemory = new JdbcChatMemory(dataSourceProvider.getObject(), codec,
+                    chatMemoryWindowPolicy, jdbcMaxBatchRows, jdbcWriteTimeoutMs);
+            chatMemory = jdbcChatMemory;
+            historyLoader = jdbcChatMemory::loadFrom;
+        } else {
+            // 初始化基于文件的对话记忆
+            fileChatMemory = new FileBasedChatMemory(chatMemoryDir, codec, chatMemoryWindowPolicy);
+            chatMemory = fileChatMemory;
+            historyLoader = fileChatMemory::loadFrom;
+            // 初始化基于追加写分段日志的对话记忆（旧 KRYO_V1 文件可用 KryoV1ChatMemoryMigrator 迁移）
+//            chatMemory = new SegmentedLogChatMemory(chatMemoryDir, 10, 1024 * 1024, 1000, codec);
+        }
+        // 多节点共享数据库时每次都直接读写数据库，不经过节点内缓存
+        if (cacheEnabled && !"jdbc".equalsIgnoreCase(store)) {
+            cachingChatMemory = new CachingChatMemory(chatMemory, chatMemoryWindowPolicy, cacheMaxEntries, cacheMaxBytes, cacheFlushIntervalMs);
+            chatMemory = cachingChatMemory;
+        }
+        if (summaryEnabled) {
+            summarizingChatMemory = new SummarizingChatMemory(chatMemory, historyLoader, chatMemoryWindowPolicy,
+                    new ChatSummaryStore(chatMemoryDir), new ChatClientSummarizer(dashscopeChatModel),
+                    summaryMinMessages, summaryBatchSize, summaryMaxCached, summaryIntervalMs);
+            chatMemory = summarizingChatMemory;
+        }
+        return chatMemory;
+    }
+
+    /**
+     * 文件存储的过期清理任务
+     */
+    @Bean(destroyMethod = "close")
+    @DependsOn("loveAppChatMemory")
+    @ConditionalOnExpression("'${chat-memory.store:file}' == 'file' and ${chat-memory.janitor.enabled:true}")
+    public ChatMemoryJanitor chatMemoryJanitor(MeterRegistry meterRegistry) {
+        ChatMemoryJanitor janitor = new ChatMemoryJanitor(fileChatMemory, janitorTtl,
+                janitorArchive ? new File(janitorArchiveDir) : null,
+                conversationId -> {
+                    if (cachingChatMemory != null) {
+                        cachingChatMemory.invalidate(conversationId);
+                    }
+                    if (summarizingChatMemory != null) {
+                        summarizingChatMemory.invalidate(conversationId);
+                    }
+                }, meterRegistry);
+        janitor.start(janitorInterval);
+        return janitor;
+    }
+}
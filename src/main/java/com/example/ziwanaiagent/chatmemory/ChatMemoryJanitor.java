@@ -0,0 +1,121 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 对话记忆文件的过期清理任务
+ * <p>
+ * 低优先级后台线程定期扫描会话文件，空闲（最后写入）超过 TTL 的会话被删除或移入归档目录，
+ * 随后通知上层（热数据层、摘要层）丢弃对应缓存。会话锁为固定大小的分段锁表，无需随会话清理。
+ * 指标：清理文件数、回收字节数、单轮耗时。
+ */
+@Slf4j
+public class ChatMemoryJanitor implements AutoCloseable {
+
+    private final FileBasedChatMemory chatMemory;
+    private final Duration ttl;
+    private final File archiveDir;
+    private final Consumer<String> onExpired;
+
+    private final Counter sweptCounter;
+    private final Counter reclaimedCounter;
+    private final Timer sweepTimer;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chat-memory-janitor");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * @param archiveDir 归档目录，为 null 时直接删除过期文件
+     * @param onExpired  会话被清理后的回调，用于失效上层缓存
+     */
+    public ChatMemoryJanitor(FileBasedChatMemory chatMemory, Duration ttl, File archiveDir,
+                             Consumer<String> onExpired, MeterRegistry meterRegistry) {
+        this.chatMemory = chatMemory;
+        this.ttl = ttl;
+        this.archiveDir = archiveDir;
+        this.onExpired = onExpired;
+        if (archiveDir != null && !archiveDir.exists() && !archiveDir.mkdirs()) {
+            throw new RuntimeException("创建目录失败：" + archiveDir);
+        }
+        this.sweptCounter = Counter.builder("chat.memory.janitor.swept")
+                .description("过期清理的会话文件数")
+                .register(meterRegistry);
+        this.reclaimedCounter = Counter.builder("chat.memory.janitor.reclaimed")
+                .description("过期清理回收的字节数")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.sweepTimer = Timer.builder("chat.memory.janitor.sweep")
+                .description("单轮过期清理耗时")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 启动定期清理
+     */
+    public void start(Duration interval) {
+        executor.scheduleWithFixedDelay(this::sweepQuietly, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 执行一轮清理
+     *
+     * @return 本轮清理的会话数
+     */
+    public int sweep() throws IOException {
+        long start = System.nanoTime();
+        long cutoff = System.currentTimeMillis() - ttl.toMillis();
+        // 先收集候选再逐个加锁清理，避免边遍历目录边删除
+        List<String> candidates = new ArrayList<>();
+        chatMemory.forEachConversation(candidates::add);
+        int swept = 0;
+        long reclaimed = 0;
+        for (String conversationId : candidates) {
+            long bytes = chatMemory.expireIfIdle(conversationId, cutoff, archiveDir);
+            if (bytes < 0) {
+                continue;
+            }
+            onExpired.accept(conversationId);
+            swept++;
+            reclaimed += bytes;
+        }
+        sweptCounter.increment(swept);
+        reclaimedCounter.increment(reclaimed);
+        long elapsed = System.nanoTime() - start;
+        sweepTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        if (swept > 0) {
+            log.info("对话记忆过期清理：{}/{} 个会话，回收 {} 字节，耗时 {} ms",
+                    swept, candidates.size(), reclaimed, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+        return swept;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (Exception e) {
+            log.warn("对话记忆过期清理失败：{}", e.getMessage());
+        }
+    }
+}
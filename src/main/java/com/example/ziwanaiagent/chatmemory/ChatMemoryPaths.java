@@ -0,0 +1,170 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import com.example.ziwanaiagent.exception.BusinessException;
+import com.example.ziwanaiagent.exception.ErrorCode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Base64;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 对话记忆文件的分片目录布局与 conversationId 文件名转换
+ * <p>
+ * 目录结构：{@code <baseDir>/<aa>/<bb>/<文件名><后缀>}，aa、bb 取文件名 CRC32 的低两个字节，共 65536 个分片目录。
+ * 只含字母、数字、下划线、短横线的 id 原样作为文件名；其余 id（含路径分隔符、"..", 中文等）
+ * 编码为 {@code ~<URL 安全 Base64>}，保证不会跳出基础目录，且可以从文件名还原 id。
+ * 旧版平铺在基础目录下的 {@code <id><后缀>} 文件读取时原地读取，首次写入时移动到分片目录。
+ */
+@Slf4j
+final class ChatMemoryPaths {
+
+    private static final Pattern SAFE_ID = Pattern.compile("[A-Za-z0-9_-]{1,128}");
+    private static final String ENCODED_PREFIX = "~";
+    /** 文件名长度上限（ext4/xfs 为 255 字节，留出后缀空间） */
+    private static final int MAX_NAME_LENGTH = 200;
+    /** 基础目录 + 两级分片目录 + 文件 */
+    private static final int SHARD_DEPTH = 3;
+
+    private ChatMemoryPaths() {
+    }
+
+    /**
+     * conversationId 非空且编码后的文件名不超过长度上限
+     */
+    static boolean isValid(String conversationId) {
+        return conversationId != null && !conversationId.isEmpty() && toName(conversationId).length() <= MAX_NAME_LENGTH;
+    }
+
+    /**
+     * conversationId -> 文件名（不含后缀）
+     *
+     * @throws BusinessException conversationId 为空或过长（PARAM_ERROR）
+     */
+    static String encode(String conversationId) {
+        if (conversationId == null || conversationId.isEmpty()) {
+            throw new BusinessException(ErrorCode.PARAM_ERROR, "conversationId 不能为空");
+        }
+        String name = toName(conversationId);
+        if (name.length() > MAX_NAME_LENGTH) {
+            throw new BusinessException(ErrorCode.PARAM_ERROR, "conversationId 过长");
+        }
+        return name;
+    }
+
+    private static String toName(String conversationId) {
+        if (SAFE_ID.matcher(conversationId).matches()) {
+            return conversationId;
+        }
+        return ENCODED_PREFIX + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(conversationId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 文件名（不含后缀）-> conversationId
+     */
+    static String decode(String name) {
+        if (name.startsWith(ENCODED_PREFIX)) {
+            return new String(Base64.getUrlDecoder().decode(name.substring(ENCODED_PREFIX.length())), StandardCharsets.UTF_8);
+        }
+        return name;
+    }
+
+    /**
+     * 会话所在的分片目录（不创建）
+     */
+    static File shardDir(File baseDir, String name) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(name.getBytes(StandardCharsets.UTF_8));
+        long hash = crc32.getValue();
+        return new File(baseDir, String.format("%02x/%02x", hash & 0xFF, (hash >>> 8) & 0xFF));
+    }
+
+    /**
+     * 只读定位会话文件：分片文件不存在而旧版平铺文件存在时返回旧文件，不移动任何文件
+     * <p>
+     * 供只持有读锁的读取使用，迁移留给下一次持有写锁的 {@link #resolve}。
+     */
+    static File locate(File baseDir, String conversationId, String suffix) {
+        String name = encode(conversationId);
+        File file = new File(shardDir(baseDir, name), name + suffix);
+        if (file.exists()) {
+            return file;
+        }
+        File legacy = legacyFile(baseDir, conversationId, suffix);
+        return legacy != null && legacy.isFile() ? legacy : file;
+    }
+
+    /**
+     * 解析会话文件路径，旧版平铺文件存在时移动到分片目录
+     * <p>
+     * 调用方需持有该会话的写锁。
+     */
+    static File resolve(File baseDir, String conversationId, String suffix) {
+        String name = encode(conversationId);
+        File shardDir = shardDir(baseDir, name);
+        File file = new File(shardDir, name + suffix);
+        if (file.exists()) {
+            return file;
+        }
+        File legacy = legacyFile(baseDir, conversationId, suffix);
+        if (legacy != null && legacy.isFile()) {
+            try {
+                Files.createDirectories(shardDir.toPath());
+                Files.move(legacy.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                log.info("会话文件迁移到分片目录：{} -> {}", legacy.getName(), file.getPath());
+            } catch (NoSuchFileException e) {
+                // 已被其他线程迁移
+            } catch (IOException e) {
+                log.warn("迁移会话文件 [{}] 失败，继续使用原路径：{}", legacy.getName(), e.getMessage());
+                return legacy;
+            }
+        }
+        return file;
+    }
+
+    /**
+     * 解析会话文件路径，并确保分片目录存在，用于写入
+     */
+    static File resolveForWrite(File baseDir, String conversationId, String suffix) {
+        File file = resolve(baseDir, conversationId, suffix);
+        File parent = file.getParentFile();
+        if (!parent.exists() && !parent.mkdirs() && !parent.exists()) {
+            throw new RuntimeException("创建目录失败：" + parent);
+        }
+        return file;
+    }
+
+    /**
+     * 遍历分片目录与旧版平铺文件中的所有会话 id
+     */
+    static void forEach(File baseDir, String suffix, Consumer<String> action) throws IOException {
+        if (!baseDir.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(baseDir.toPath(), SHARD_DEPTH)) {
+            paths.filter(path -> path.getFileName().toString().endsWith(suffix) && Files.isRegularFile(path))
+                    .forEach(path -> {
+                        String fileName = path.getFileName().toString();
+                        action.accept(decode(fileName.substring(0, fileName.length() - suffix.length())));
+                    });
+        }
+    }
+
+    /**
+     * 旧版平铺布局下的文件；id 含路径成分时不存在合法的旧文件
+     */
+    private static File legacyFile(File baseDir, String conversationId, String suffix) {
+        if (conversationId.contains("/") || conversationId.contains("\\") || conversationId.startsWith(".")
+                || conversationId.indexOf('\0') >= 0) {
+            return null;
+        }
+        return new File(baseDir, conversationId + suffix);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * 对话记忆读取窗口：从最新消息往前取，条数不超过 maxMessages 且估算 token 总数不超过 maxTokens
+ *
+ * @param maxMessages 最多返回的消息条数
+ * @param maxTokens   返回消息的估算 token 总数上限
+ */
+public record ChatMemoryWindow(int maxMessages, int maxTokens) {
+
+    /** 不限制，用于读取全部历史 */
+    public static final ChatMemoryWindow UNBOUNDED = new ChatMemoryWindow(Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    public ChatMemoryWindow {
+        if (maxMessages <= 0 || maxTokens <= 0) {
+            throw new IllegalArgumentException("窗口条数与 token 上限必须大于 0");
+        }
+    }
+
+    public static ChatMemoryWindow ofMessages(int maxMessages) {
+        return new ChatMemoryWindow(maxMessages, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 计算窗口起始下标：从末尾往前累加，超出任一上限即停止
+     *
+     * @param count    消息总数
+     * @param tokensOf 下标 -> 该条消息的估算 token 数
+     */
+    public int firstIndex(int count, IntUnaryOperator tokensOf) {
+        int limit = Math.max(count - maxMessages, 0);
+        int first = count;
+        long total = 0;
+        while (first > limit) {
+            int tokens = tokensOf.applyAsInt(first - 1);
+            if (total + tokens > maxTokens) {
+                break;
+            }
+            total += tokens;
+            first--;
+        }
+        return first;
+    }
+
+    /**
+     * 按窗口裁剪消息列表，token 数现场估算
+     */
+    public List<Message> apply(List<Message> messages) {
+        int first = firstIndex(messages.size(), i -> TokenEstimator.estimate(messages.get(i)));
+        return new ArrayList<>(messages.subList(first, messages.size()));
+    }
+}
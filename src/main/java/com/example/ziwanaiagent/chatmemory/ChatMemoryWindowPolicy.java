@@ -0,0 +1,105 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 按会话配置的读取窗口：未单独设置的会话使用默认窗口
+ * <p>
+ * 单独设置的窗口按访问顺序保留最多 maxOverrides 个，超出时最久未访问的会话恢复为默认窗口；
+ * 设置、恢复或被淘汰时通知监听方（如 {@link CachingChatMemory} 丢弃按旧窗口缓存的消息）。
+ */
+public class ChatMemoryWindowPolicy {
+
+    public static final int DEFAULT_MAX_OVERRIDES = 10000;
+
+    @Getter
+    private final ChatMemoryWindow defaultWindow;
+
+    /** 访问顺序的 LRU 表，由自身监视器保护 */
+    private final Map<String, ChatMemoryWindow> overrides;
+
+    /** 最近一次 put 淘汰的会话，由 overrides 的监视器保护 */
+    private String evictedId;
+
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    public ChatMemoryWindowPolicy(ChatMemoryWindow defaultWindow) {
+        this(defaultWindow, DEFAULT_MAX_OVERRIDES);
+    }
+
+    /**
+     * @param maxOverrides 单独设置窗口的会话数上限
+     */
+    public ChatMemoryWindowPolicy(ChatMemoryWindow defaultWindow, int maxOverrides) {
+        this.defaultWindow = defaultWindow;
+        this.overrides = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ChatMemoryWindow> eldest) {
+                if (size() <= maxOverrides) {
+                    return false;
+                }
+                evictedId = eldest.getKey();
+                return true;
+            }
+        };
+    }
+
+    public ChatMemoryWindow get(String conversationId) {
+        ChatMemoryWindow window;
+        synchronized (overrides) {
+            window = overrides.get(conversationId);
+        }
+        return window == null ? defaultWindow : window;
+    }
+
+    /**
+     * 为单个会话设置窗口，下一次 get 生效
+     */
+    public void set(String conversationId, ChatMemoryWindow window) {
+        String evicted;
+        synchronized (overrides) {
+            overrides.put(conversationId, window);
+            evicted = evictedId;
+            evictedId = null;
+        }
+        notifyListeners(conversationId);
+        if (evicted != null) {
+            notifyListeners(evicted);
+        }
+    }
+
+    /**
+     * 恢复为默认窗口
+     */
+    public void reset(String conversationId) {
+        synchronized (overrides) {
+            overrides.remove(conversationId);
+        }
+        notifyListeners(conversationId);
+    }
+
+    /**
+     * 会话窗口被设置、恢复或淘汰后回调，参数为 conversationId
+     */
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    int overrideCount() {
+        synchronized (overrides) {
+            return overrides.size();
+        }
+    }
+
+    private void notifyListeners(String conversationId) {
+        for (Consumer<String> listener : listeners) {
+            listener.accept(conversationId);
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.github.luben.zstd.Zstd;
+import lombok.Getter;
+import net.jpountz.lz4.LZ4Factory;
+import org.springframework.ai.chat.messages.*;
+import org.springframework.ai.content.Media;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 对话消息的紧凑二进制编解码器
+ * <p>
+ * 为 UserMessage / AssistantMessage（含工具调用）/ SystemMessage / ToolResponseMessage 注册手写的 Kryo 序列化器，
+ * 只写入字段本身（变长整数长度 + UTF-8），不写全限定类名，也不反射遍历 Spring AI 的内部结构；
+ * 元数据只保留字符串、数值和布尔类型的值。超过阈值的记录可选 LZ4 / Zstd 块压缩。
+ * <p>
+ * 记录格式：[标记字节 0xC0 | 压缩算法][压缩时：varint 原始长度][消息字节]
+ * 文件头格式：[魔数 "ZWCM"][版本][压缩算法][2 字节保留]
+ */
+public class ChatMessageCodec {
+
+    /** 文件头魔数 */
+    private static final byte[] HEADER_MAGIC = "ZWCM".getBytes(StandardCharsets.US_ASCII);
+    public static final int HEADER_BYTES = 8;
+    public static final byte FORMAT_VERSION = 3;
+
+    /** 记录标记字节的高两位，用于与旧 Kryo 记录区分 */
+    private static final int RECORD_MARKER = 0xC0;
+    private static final int RECORD_MARKER_MASK = 0xC0;
+    private static final int COMPRESSION_MASK = 0x3F;
+
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+    private static final int ZSTD_LEVEL = 3;
+    private static final LZ4Factory LZ4_FACTORY = LZ4Factory.fastestInstance();
+
+    // 元数据值类型标签
+    private static final byte TAG_STRING = 0;
+    private static final byte TAG_INT = 1;
+    private static final byte TAG_LONG = 2;
+    private static final byte TAG_DOUBLE = 3;
+    private static final byte TAG_BOOLEAN = 4;
+
+    /**
+     * 压缩算法，id 写入文件头与记录标记字节
+     */
+    @Getter
+    public enum Compression {
+        NONE(0), LZ4(1), ZSTD(2);
+
+        private final int id;
+
+        Compression(int id) {
+            this.id = id;
+        }
+
+        public static Compression of(int id) {
+            for (Compression compression : values()) {
+                if (compression.id == id) {
+                    return compression;
+                }
+            }
+            throw new IllegalArgumentException("未知的压缩算法：" + id);
+        }
+    }
+
+    /** 注册制 Kryo，线程隔离 */
+    private static final ThreadLocal<Kryo> kryoThreadLocal = ThreadLocal.withInitial(() -> {
+        Kryo kryo = new Kryo();
+        kryo.setRegistrationRequired(true);
+        kryo.setReferences(false);
+        // 固定注册 id，修改会破坏已有数据的兼容性
+        kryo.register(UserMessage.class, new UserMessageSerializer(), 20);
+        kryo.register(AssistantMessage.class, new AssistantMessageSerializer(), 21);
+        kryo.register(SystemMessage.class, new SystemMessageSerializer(), 22);
+        kryo.register(ToolResponseMessage.class, new ToolResponseMessageSerializer(), 23);
+        return kryo;
+    });
+
+    @Getter
+    private final Compression compression;
+    private final int compressionThreshold;
+
+    public ChatMessageCodec() {
+        this(Compression.NONE, DEFAULT_COMPRESSION_THRESHOLD);
+    }
+
+    /**
+     * @param compression          压缩算法
+     * @param compressionThreshold 记录超过该字节数才压缩
+     */
+    public ChatMessageCodec(Compression compression, int compressionThreshold) {
+        this.compression = compression;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    // ---------------- 记录编解码 ---------------- //
+
+    public byte[] encode(Message message) {
+        Output body = new Output(256, -1);
+        kryoThreadLocal.get().writeClassAndObject(body, message);
+        byte[] raw = body.toBytes();
+
+        if (compression != Compression.NONE && raw.length >= compressionThreshold) {
+            byte[] compressed = compress(raw);
+            if (compressed.length < raw.length) {
+                Output output = new Output(compressed.length + 6, -1);
+                output.writeByte(RECORD_MARKER | compression.getId());
+                output.writeVarInt(raw.length, true);
+                output.writeBytes(compressed);
+                return output.toBytes();
+            }
+        }
+        byte[] record = new byte[raw.length + 1];
+        record[0] = (byte) (RECORD_MARKER | Compression.NONE.getId());
+        System.arraycopy(raw, 0, record, 1, raw.length);
+        return record;
+    }
+
+    public Message decode(byte[] record) {
+        Input input = new Input(record);
+        Compression recordCompression = Compression.of(input.readByte() & COMPRESSION_MASK);
+        if (recordCompression == Compression.NONE) {
+            return (Message) kryoThreadLocal.get().readClassAndObject(input);
+        }
+        int rawLength = input.readVarInt(true);
+        byte[] compressed = input.readBytes(record.length - input.position());
+        byte[] raw = switch (recordCompression) {
+            case LZ4 -> LZ4_FACTORY.fastDecompressor().decompress(compressed, rawLength);
+            case ZSTD -> Zstd.decompress(compressed, rawLength);
+            default -> throw new IllegalStateException();
+        };
+        return (Message) kryoThreadLocal.get().readClassAndObject(new Input(raw));
+    }
+
+    /**
+     * 是否为本编解码器写出的记录（用于兼容旧的 Kryo 全类名记录）
+     */
+    public static boolean isCodecRecord(byte[] record) {
+        return record.length > 0 && (record[0] & RECORD_MARKER_MASK) == RECORD_MARKER;
+    }
+
+    private byte[] compress(byte[] raw) {
+        return switch (compression) {
+            case LZ4 -> LZ4_FACTORY.fastCompressor().compress(raw);
+            case ZSTD -> Zstd.compress(raw, ZSTD_LEVEL);
+            default -> raw;
+        };
+    }
+
+    // ---------------- 文件头 ---------------- //
+
+    public byte[] header() {
+        byte[] header = new byte[HEADER_BYTES];
+        System.arraycopy(HEADER_MAGIC, 0, header, 0, HEADER_MAGIC.length);
+        header[4] = FORMAT_VERSION;
+        header[5] = (byte) compression.getId();
+        return header;
+    }
+
+    /**
+     * 判断文件头是否为编解码器格式
+     */
+    public static boolean isCodecHeader(byte[] header) {
+        if (header.length < HEADER_BYTES) {
+            return false;
+        }
+        for (int i = 0; i < HEADER_MAGIC.length; i++) {
+            if (header[i] != HEADER_MAGIC[i]) {
+                return false;
+            }
+        }
+        return header[4] == FORMAT_VERSION;
+    }
+
+    // ---------------- 序列化器 ---------------- //
+
+    private static void writeMetadata(Output output, Map<String, Object> metadata) {
+        List<Map.Entry<String, Object>> entries = new ArrayList<>(metadata.size());
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            Object value = entry.getValue();
+            // messageType 由消息类型本身决定，无需存储
+            if (AbstractMessage.MESSAGE_TYPE.equals(entry.getKey())) {
+                continue;
+            }
+            if (value instanceof String || value instanceof Integer || value instanceof Long
+                    || value instanceof Double || value instanceof Boolean) {
+                entries.add(entry);
+            }
+        }
+        output.writeVarInt(entries.size(), true);
+        for (Map.Entry<String, Object> entry : entries) {
+            output.writeString(entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof String s) {
+                output.writeByte(TAG_STRING);
+                output.writeString(s);
+            } else if (value instanceof Integer i) {
+                output.writeByte(TAG_INT);
+                output.writeVarInt(i, false);
+            } else if (value instanceof Long l) {
+                output.writeByte(TAG_LONG);
+                output.writeVarLong(l, false);
+            } else if (value instanceof Double d) {
+                output.writeByte(TAG_DOUBLE);
+                output.writeDouble(d);
+            } else {
+                output.writeByte(TAG_BOOLEAN);
+                output.writeBoolean((Boolean) value);
+            }
+        }
+    }
+
+    private static Map<String, Object> readMetadata(Input input) {
+        int size = input.readVarInt(true);
+        Map<String, Object> metadata = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String key = input.readString();
+            byte tag = input.readByte();
+            Object value = switch (tag) {
+                case TAG_STRING -> input.readString();
+                case TAG_INT -> input.readVarInt(false);
+                case TAG_LONG -> input.readVarLong(false);
+                case TAG_DOUBLE -> input.readDouble();
+                case TAG_BOOLEAN -> input.readBoolean();
+                default -> throw new IllegalStateException("未知的元数据类型：" + tag);
+            };
+            metadata.put(key, value);
+        }
+        return metadata;
+    }
+
+    private static void writeMedia(Output output, List<Media> mediaList) {
+        output.writeVarInt(mediaList.size(), true);
+        for (Media media : mediaList) {
+            output.writeString(media.getMimeType().toString());
+            output.writeString(media.getId());
+            output.writeString(media.getName());
+            if (media.getData() instanceof byte[] bytes) {
+                output.writeBoolean(true);
+                output.writeVarInt(bytes.length, true);
+                output.writeBytes(bytes);
+            } else {
+                output.writeBoolean(false);
+                output.writeString(String.valueOf(media.getData()));
+            }
+        }
+    }
+
+    private static List<Media> readMedia(Input input) {
+        int size = input.readVarInt(true);
+        List<Media> mediaList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Media.Builder builder = Media.builder()
+                    .mimeType(MimeType.valueOf(input.readString()))
+                    .id(input.readString())
+                    .name(input.readString());
+            if (input.readBoolean()) {
+                builder.data(input.readBytes(input.readVarInt(true)));
+            } else {
+                builder.data(input.readString());
+            }
+            mediaList.add(builder.build());
+        }
+        return mediaList;
+    }
+
+    private static class UserMessageSerializer extends Serializer<UserMessage> {
+        @Override
+        public void write(Kryo kryo, Output output, UserMessage message) {
+            output.writeString(message.getText());
+            writeMetadata(output, message.getMetadata());
+            writeMedia(output, message.getMedia());
+        }
+
+        @Override
+        public UserMessage read(Kryo kryo, Input input, Class<? extends UserMessage> type) {
+            return UserMessage.builder()
+                    .text(input.readString())
+                    .metadata(readMetadata(input))
+                    .media(readMedia(input))
+                    .build();
+        }
+    }
+
+    private static class AssistantMessageSerializer extends Serializer<AssistantMessage> {
+        @Override
+        public void write(Kryo kryo, Output output, AssistantMessage message) {
+            output.writeString(message.getText());
+            writeMetadata(output, message.getMetadata());
+            List<AssistantMessage.ToolCall> toolCalls = message.getToolCalls();
+            output.writeVarInt(toolCalls.size(), true);
+            for (AssistantMessage.ToolCall toolCall : toolCalls) {
+                output.writeString(toolCall.id());
+                output.writeString(toolCall.type());
+                output.writeString(toolCall.name());
+                output.writeString(toolCall.arguments());
+            }
+            writeMedia(output, message.getMedia());
+        }
+
+        @Override
+        public AssistantMessage read(Kryo kryo, Input input, Class<? extends AssistantMessage> type) {
+            String text = input.readString();
+            Map<String, Object> metadata = readMetadata(input);
+            int size = input.readVarInt(true);
+            List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                toolCalls.add(new AssistantMessage.ToolCall(
+                        input.readString(), input.readString(), input.readString(), input.readString()));
+            }
+            return new AssistantMessage(text, metadata, toolCalls, readMedia(input));
+        }
+    }
+
+    private static class SystemMessageSerializer extends Serializer<SystemMessage> {
+        @Override
+        public void write(Kryo kryo, Output output, SystemMessage message) {
+            output.writeString(message.getText());
+            writeMetadata(output, message.getMetadata());
+        }
+
+        @Override
+        public SystemMessage read(Kryo kryo, Input input, Class<? extends SystemMessage> type) {
+            return SystemMessage.builder()
+                    .text(input.readString())
+                    .metadata(readMetadata(input))
+                    .build();
+        }
+    }
+
+    private static class ToolResponseMessageSerializer extends Serializer<ToolResponseMessage> {
+        @Override
+        public void write(Kryo kryo, Output output, ToolResponseMessage message) {
+            List<ToolResponseMessage.ToolResponse> responses = message.getResponses();
+            output.writeVarInt(responses.size(), true);
+            for (ToolResponseMessage.ToolResponse response : responses) {
+                output.writeString(response.id());
+                output.writeString(response.name());
+                output.writeString(response.responseData());
+            }
+            writeMetadata(output, message.getMetadata());
+        }
+
+        @Override
+        public ToolResponseMessage read(Kryo kryo, Input input, Class<? extends ToolResponseMessage> type) {
+            int size = input.readVarInt(true);
+            List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                responses.add(new ToolResponseMessage.ToolResponse(
+                        input.readString(), input.readString(), input.readString()));
+            }
+            return new ToolResponseMessage(responses, readMetadata(input));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 对话摘要生成器：把一批较早的消息并入已有摘要
+ */
+@FunctionalInterface
+public interface ChatSummarizer {
+
+    /**
+     * @param previousSummary 已有摘要，首次为空字符串
+     * @param messages        需要并入摘要的消息，按时间顺序
+     * @return 新的完整摘要
+     */
+    String summarize(String previousSummary, List<Message> messages);
+}
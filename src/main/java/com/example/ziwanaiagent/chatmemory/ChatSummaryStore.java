@@ -0,0 +1,89 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 会话滚动摘要的文件存储，与对话记录放在同一分片目录：{@code <id>.summary}
+ * <p>
+ * 文件内容：[魔数][已并入摘要的消息条数 varint][摘要正文]，先写临时文件再原子替换。
+ */
+@Slf4j
+public class ChatSummaryStore {
+
+    private static final String FILE_MAGIC = "SUMMARY_V1";
+    private static final String SUFFIX = ".summary";
+
+    private final File baseDir;
+
+    public ChatSummaryStore(String dir) {
+        this.baseDir = new File(dir);
+        if (!baseDir.exists() && !baseDir.mkdirs()) {
+            throw new RuntimeException("创建目录失败：" + dir);
+        }
+    }
+
+    public ChatSummary load(String conversationId) {
+        File file = getFile(conversationId);
+        if (!file.exists()) {
+            return ChatSummary.EMPTY;
+        }
+        try (Input input = new Input(new FileInputStream(file))) {
+            if (!FILE_MAGIC.equals(input.readString())) {
+                throw new IOException("非法文件版本或损坏");
+            }
+            int foldedCount = input.readVarInt(true);
+            return new ChatSummary(foldedCount, input.readString());
+        } catch (Exception e) {
+            log.warn("读取会话 [{}] 摘要失败，忽略：{}", conversationId, e.getMessage());
+            return ChatSummary.EMPTY;
+        }
+    }
+
+    public void save(String conversationId, ChatSummary summary) {
+        File file = ChatMemoryPaths.resolveForWrite(baseDir, conversationId, SUFFIX);
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            try (Output output = new Output(new FileOutputStream(temp))) {
+                output.writeString(FILE_MAGIC);
+                output.writeVarInt(summary.foldedCount(), true);
+                output.writeString(summary.text());
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("保存会话 [{}] 摘要失败：{}", conversationId, e.getMessage(), e);
+        }
+    }
+
+    public void delete(String conversationId) {
+        File file = getFile(conversationId);
+        if (file.exists() && !file.delete()) {
+            log.warn("删除文件失败：{}", file.getAbsolutePath());
+        }
+    }
+
+    private File getFile(String conversationId) {
+        return ChatMemoryPaths.resolve(baseDir, conversationId, SUFFIX);
+    }
+
+    /**
+     * @param foldedCount 已并入摘要的消息条数（从会话开头算起）
+     * @param text        摘要正文
+     */
+    public record ChatSummary(int foldedCount, String text) {
+
+        public static final ChatSummary EMPTY = new ChatSummary(0, "");
+
+        public boolean isEmpty() {
+            return text.isEmpty();
+        }
+    }
+}
@@ -9,27 +9,73 @@ import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Consumer;
 
 /**
  * 线程安全 + 自动修复 + 版本校验 的 Kryo 文件型 ChatMemory 实现
  * 支持并发访问、多会话隔离与类结构变更检测
+ * <p>
+ * 文件布局（Kryo 定长整数为小端序）：[文件头][记录 int 长度 + 消息字节]...[偏移表 long × n][token 表 int × n][long 废弃字节数][尾部 int n + long 偏移表位置 + int 魔数]
+ * get 按位置读取尾部偏移表与 token 表（不做内存映射），按会话的 {@link ChatMemoryWindow} 算出窗口后只解码窗口内的记录；
+ * add 在文件末尾（旧尾部之后）追加新记录与新的表和尾部，旧表成为废弃字节，每条消息的估算 token 数在写入时计算一次。
+ * 追加过程中崩溃时旧尾部仍完整，读取时从末尾向前找到最后一个有效尾部，下一次追加前截掉残缺部分；
+ * 废弃字节超过 4KB 且超过文件一半时整体重写，整体重写先写临时文件再原子替换。
+ * 没有废弃字节数的尾部（KRF3）与没有 token 表的旧尾部（KRF2）仍可读取，后者窗口内的 token 数现场估算，下一次写入时整体重写。
+ * 新文件使用 {@link ChatMessageCodec} 的版本化文件头与紧凑记录；
+ * 旧的 KRYO_V1 整列表文件与 KRYO_V2 全类名记录文件仍可读取，下一次写入时整体转换为新格式。
+ * 文件按 {@link ChatMemoryPaths} 的两级哈希分片目录存放，旧版平铺文件在首次写入时迁移。
+ * 读取只持有读锁、不修改文件；迁移、截断与删除损坏文件都在写锁下进行。
  */
 @Slf4j
 public class FileBasedChatMemory implements ChatMemory {
 
     private final String BASE_DIR;
     private static final String FILE_MAGIC = "KRYO_V1";
+    private static final String FILE_MAGIC_V2 = "KRYO_V2";
+    private static final String FILE_SUFFIX = ".kryo";
+    private static final String TEMP_SUFFIX = ".tmp";
+    /** 尾部魔数 "KRF2"：只有偏移表 */
+    private static final int TRAILER_MAGIC = 0x4B524632;
+    /** 尾部魔数 "KRF3"：偏移表 + token 表 */
+    private static final int TRAILER_MAGIC_V3 = 0x4B524633;
+    /** 尾部魔数 "KRF4"：偏移表 + token 表 + 废弃字节数 */
+    private static final int TRAILER_MAGIC_V4 = 0x4B524634;
+    /** 尾部：记录数 + 偏移表位置 + 魔数 */
+    private static final int TRAILER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    /** 文件头最大长度，用于识别文件版本 */
+    private static final int HEADER_PROBE_BYTES = 16;
+    private static final int WINDOW_SIZE = 10;
+    /** 废弃字节超过该值且超过文件一半时整体重写，小文件不频繁重写 */
+    private static final long COMPACT_MIN_DEAD_BYTES = 4096;
+    /** 会话文件大小上限 */
+    static final long MAX_FILE_BYTES = Integer.MAX_VALUE;
+    /** 查找有效尾部时每次向前读取的字节数 */
+    private static final int FOOTER_SCAN_BYTES = 64 * 1024;
 
-    /** 每个 conversationId 使用独立锁，避免并发写入损坏文件 */
-    private final ConcurrentHashMap<String, Object> fileLocks = new ConcurrentHashMap<>();
+    private final ChatMessageCodec codec;
+    private final ChatMemoryWindowPolicy windowPolicy;
 
-    private Object getLock(String conversationId) {
-        return fileLocks.computeIfAbsent(conversationId, id -> new Object());
+    private enum FileFormat {
+        /** 文件不存在或无法识别 */
+        UNKNOWN,
+        /** 整列表 Kryo 序列化 */
+        KRYO_V1,
+        /** 逐条 Kryo 全类名记录 + 尾部偏移表 */
+        KRYO_V2,
+        /** ChatMessageCodec 版本化文件头 + 紧凑记录 + 尾部偏移表 */
+        CODEC
     }
 
+    /** 分段读写锁：同一会话并发读共享，写入互斥，锁表大小固定 */
+    private final StripedLock fileLocks = new StripedLock();
+
     /** Kryo 实例线程隔离 */
     private static final ThreadLocal<Kryo> kryoThreadLocal = ThreadLocal.withInitial(() -> {
         Kryo kryo = new Kryo();
@@ -47,12 +93,30 @@ public class FileBasedChatMemory implements ChatMemory {
         return kryo;
     });
 
-    private static Kryo getKryo() {
+    static Kryo getKryo() {
         return kryoThreadLocal.get();
     }
 
+    /**
+     * conversationId 能否作为会话文件名：非空，编码后不超过文件名长度上限
+     * （该上限同时保证不超过 jdbc 存储的 conversation_id 列宽）
+     */
+    public static boolean isValidConversationId(String conversationId) {
+        return ChatMemoryPaths.isValid(conversationId);
+    }
+
     public FileBasedChatMemory(String dir) {
+        this(dir, new ChatMessageCodec());
+    }
+
+    public FileBasedChatMemory(String dir, ChatMessageCodec codec) {
+        this(dir, codec, new ChatMemoryWindowPolicy(ChatMemoryWindow.ofMessages(WINDOW_SIZE)));
+    }
+
+    public FileBasedChatMemory(String dir, ChatMessageCodec codec, ChatMemoryWindowPolicy windowPolicy) {
         this.BASE_DIR = dir;
+        this.codec = codec;
+        this.windowPolicy = windowPolicy;
         File baseDir = new File(dir);
         if (!baseDir.exists() && !baseDir.mkdirs()) {
             throw new RuntimeException("创建目录失败：" + dir);
@@ -68,66 +132,472 @@ public class FileBasedChatMemory implements ChatMemory {
 
     @Override
     public void add(String conversationId, List<Message> messages) {
-        synchronized (getLock(conversationId)) {
+        Lock lock = fileLocks.get(conversationId).writeLock();
+        lock.lock();
+        try {
+            File file = getFile(conversationId);
+            if (detectFormat(file) == FileFormat.CODEC) {
+                try {
+                    if (append(file, messages)) {
+                        return;
+                    }
+                } catch (Exception e) {
+                    log.warn("追加会话 [{}] 消息失败，回退为整文件重写：{}", conversationId, e.getMessage());
+                }
+            }
             List<Message> messageList = load(conversationId);
             messageList.addAll(messages);
             save(conversationId, messageList);
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
     public List<Message> get(String conversationId) {
-        synchronized (getLock(conversationId)) {
-            List<Message> messageList = load(conversationId);
-            return messageList.stream()
-                    .skip(Math.max(messageList.size() - 10, 0))
-                    .toList();
-        }
+        return read(conversationId, windowPolicy.get(conversationId));
     }
 
     @Override
     public void clear(String conversationId) {
-        File file = getFile(conversationId);
-        synchronized (getLock(conversationId)) {
+        Lock lock = fileLocks.get(conversationId).writeLock();
+        lock.lock();
+        try {
+            File file = getFile(conversationId);
             if (file.exists() && !file.delete()) {
                 log.warn("删除文件失败：{}", file.getAbsolutePath());
             }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 会话文件在 cutoffMillis 之后没有再写入时，删除或移入归档目录
+     * <p>
+     * 持有该会话的写锁并重新检查修改时间，与并发写入互斥。
+     *
+     * @param archiveDir 归档目录，为 null 时直接删除
+     * @return 回收的字节数；文件不存在或仍活跃时返回 -1
+     */
+    long expireIfIdle(String conversationId, long cutoffMillis, File archiveDir) {
+        Lock lock = fileLocks.get(conversationId).writeLock();
+        lock.lock();
+        try {
+            File file = getFile(conversationId);
+            long lastModified = file.lastModified();
+            if (lastModified == 0 || lastModified >= cutoffMillis) {
+                return -1;
+            }
+            long bytes = file.length();
+            if (archiveDir == null) {
+                Files.delete(file.toPath());
+            } else {
+                File archived = ChatMemoryPaths.resolveForWrite(archiveDir, conversationId, FILE_SUFFIX);
+                Files.move(file.toPath(), archived.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return bytes;
+        } catch (IOException e) {
+            log.warn("清理会话 [{}] 文件失败：{}", conversationId, e.getMessage());
+            return -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 遍历目录下所有会话 id
+     */
+    void forEachConversation(Consumer<String> action) throws IOException {
+        ChatMemoryPaths.forEach(new File(BASE_DIR), FILE_SUFFIX, action);
+    }
+
+    /**
+     * 读取会话的全部历史消息（不截断窗口），供迁移工具使用
+     */
+    List<Message> loadAll(String conversationId) {
+        return read(conversationId, ChatMemoryWindow.UNBOUNDED);
+    }
+
+    /**
+     * 读取会话从第 fromIndex 条（从 0 开始）起的历史消息，供摘要层从水位线处增量读取
+     * <p>
+     * 带偏移表的文件只解码 fromIndex 之后的记录；旧的整列表文件整体解码后截取。
+     */
+    List<Message> loadFrom(String conversationId, int fromIndex) {
+        Lock lock = fileLocks.get(conversationId).readLock();
+        lock.lock();
+        try {
+            File file = ChatMemoryPaths.locate(new File(BASE_DIR), conversationId, FILE_SUFFIX);
+            if (!file.exists()) {
+                return new ArrayList<>();
+            }
+            FileFormat format = detectFormat(file);
+            if (format == FileFormat.CODEC || format == FileFormat.KRYO_V2) {
+                return readFrom(file, fromIndex, format);
+            }
+        } catch (Exception e) {
+            // 损坏的文件交给 loadAll 在写锁下处理
+        } finally {
+            lock.unlock();
+        }
+        List<Message> messages = loadAll(conversationId);
+        return new ArrayList<>(messages.subList(Math.min(Math.max(fromIndex, 0), messages.size()), messages.size()));
+    }
+
+    /**
+     * 读取会话的全部历史消息，文件无法读取时抛出异常且不删除文件，供需要区分“空会话”与“读取失败”的调用方使用
+     *
+     * @throws IOException 文件损坏或无法解码
+     */
+    List<Message> readAll(String conversationId) throws IOException {
+        Lock lock = fileLocks.get(conversationId).readLock();
+        lock.lock();
+        try {
+            return readFile(ChatMemoryPaths.locate(new File(BASE_DIR), conversationId, FILE_SUFFIX), ChatMemoryWindow.UNBOUNDED);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("解码会话 [" + conversationId + "] 失败：" + e.getMessage(), e);
+        } finally {
+            lock.unlock();
         }
     }
 
     // ---------------- 内部实现 ---------------- //
 
     private void save(String conversationId, List<Message> messages) {
-        File file = getFile(conversationId);
-        try (Output output = new Output(new FileOutputStream(file))) {
-            output.writeString(FILE_MAGIC); // 文件头标记
-            getKryo().writeObject(output, messages);
+        File file = ChatMemoryPaths.resolveForWrite(new File(BASE_DIR), conversationId, FILE_SUFFIX);
+        // 先写临时文件再原子替换，写到一半崩溃不影响原文件
+        File temp = new File(file.getParentFile(), file.getName() + TEMP_SUFFIX);
+        try {
+            try (Output output = new Output(new FileOutputStream(temp))) {
+                output.writeBytes(codec.header()); // 版本化文件头
+                long[] offsets = new long[messages.size()];
+                int[] tokens = new int[messages.size()];
+                for (int i = 0; i < messages.size(); i++) {
+                    offsets[i] = output.total();
+                    tokens[i] = TokenEstimator.estimate(messages.get(i));
+                    writeRecord(output, messages.get(i));
+                }
+                writeFooter(output, offsets, tokens, 0, 0);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
             log.error("保存会话 [{}] 消息失败：{}", conversationId, e.getMessage(), e);
         }
     }
 
+    /**
+     * 读取会话窗口：先持有读锁只读文件（旧版平铺文件原地读取，不迁移）；
+     * 文件损坏时改持写锁重新读取，仍然损坏才删除
+     */
+    private List<Message> read(String conversationId, ChatMemoryWindow window) {
+        ReadWriteLock locks = fileLocks.get(conversationId);
+        Lock lock = locks.readLock();
+        lock.lock();
+        try {
+            return readFile(ChatMemoryPaths.locate(new File(BASE_DIR), conversationId, FILE_SUFFIX), window);
+        } catch (Exception e) {
+            // 损坏的文件在写锁下处理
+        } finally {
+            lock.unlock();
+        }
+        lock = locks.writeLock();
+        lock.lock();
+        try {
+            return load(conversationId, window);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读取会话消息，文件损坏时删除；调用方需持有该会话的写锁
+     */
     private List<Message> load(String conversationId) {
+        return load(conversationId, ChatMemoryWindow.UNBOUNDED);
+    }
+
+    private List<Message> load(String conversationId, ChatMemoryWindow window) {
         File file = getFile(conversationId);
-        if (!file.exists()) {
+        // 超过大小上限不是损坏，不能删除
+        checkFileSize(file.length());
+        try {
+            return readFile(file, window);
+        } catch (Exception e) {
+            log.warn("读取会话 [{}] 文件失败或损坏，删除重建：{}", conversationId, file.getName());
+            file.delete();
             return new ArrayList<>();
         }
+    }
 
-        List<Message> messages = new ArrayList<>();
+    /**
+     * 按文件格式读取窗口内的消息，不修改文件
+     */
+    private List<Message> readFile(File file, ChatMemoryWindow window) throws IOException {
+        if (!file.exists()) {
+            return new ArrayList<>();
+        }
+        FileFormat format = detectFormat(file);
+        if (format == FileFormat.CODEC || format == FileFormat.KRYO_V2) {
+            return readTail(file, window, format);
+        }
         try (Input input = new Input(new FileInputStream(file))) {
             String magic = input.readString();
             if (!FILE_MAGIC.equals(magic)) {
                 throw new IOException("非法文件版本或损坏");
             }
-            messages = getKryo().readObject(input, ArrayList.class);
-        } catch (Exception e) {
-            log.warn("读取会话 [{}] 文件失败或损坏，删除重建：{}", conversationId, file.getName());
-            file.delete();
+            return window.apply(getKryo().readObject(input, ArrayList.class));
+        }
+    }
+
+    /**
+     * 在最后一个有效尾部之后追加新记录、偏移表、token 表与尾部，不覆盖已有字节
+     * <p>
+     * 写入完成前文件末尾的旧尾部保持完整；上一次追加残缺的字节在本次写入前截掉。
+     *
+     * @return 旧尾部没有 token 表或废弃字节过多时返回 false，由调用方整文件重写
+     */
+    private boolean append(File file, List<Message> messages) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            Footer footer = findFooter(channel);
+            if (!footer.hasTokens) {
+                return false;
+            }
+            // 旧的两张表与尾部在追加后成为废弃字节
+            long deadBytes = footer.deadBytes + (footer.end - footer.tableOffset);
+            if (deadBytes > COMPACT_MIN_DEAD_BYTES && deadBytes * 2 > footer.end) {
+                return false;
+            }
+            long[] offsets = new long[footer.count + messages.size()];
+            int[] tokens = new int[footer.count + messages.size()];
+            ByteBuffer tables = readAt(channel, footer.tableOffset, footer.count * (Long.BYTES + Integer.BYTES));
+            for (int i = 0; i < footer.count; i++) {
+                offsets[i] = tables.getLong(i * Long.BYTES);
+                tokens[i] = tables.getInt(footer.count * Long.BYTES + i * Integer.BYTES);
+            }
+
+            long position = footer.end;
+            if (size > position) {
+                log.warn("会话文件 {} 末尾有 {} 字节残缺的追加，已截断", file.getName(), size - position);
+                channel.truncate(position);
+            }
+            Output output = new Output(1024, -1);
+            for (int i = 0; i < messages.size(); i++) {
+                offsets[footer.count + i] = position + output.position();
+                tokens[footer.count + i] = TokenEstimator.estimate(messages.get(i));
+                writeRecord(output, messages.get(i));
+            }
+            writeFooter(output, offsets, tokens, position, deadBytes);
+            ByteBuffer buffer = ByteBuffer.wrap(output.getBuffer(), 0, output.position());
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 按位置读取尾部 token 表算出窗口，只读取并解码窗口内的记录
+     */
+    private List<Message> readTail(File file, ChatMemoryWindow window, FileFormat format) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Footer footer = findFooter(channel);
+            if (!footer.hasTokens) {
+                // 旧尾部：先按条数解码，再现场估算 token 裁剪
+                int first = Math.max(footer.count - window.maxMessages(), 0);
+                return window.apply(decodeRange(channel, footer, first, format));
+            }
+            ByteBuffer tokens = readAt(channel, footer.tableOffset + (long) footer.count * Long.BYTES,
+                    footer.count * Integer.BYTES);
+            int first = window.firstIndex(footer.count, i -> tokens.getInt(i * Integer.BYTES));
+            return decodeRange(channel, footer, first, format);
+        }
+    }
+
+    private List<Message> readFrom(File file, int fromIndex, FileFormat format) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Footer footer = findFooter(channel);
+            return decodeRange(channel, footer, Math.min(Math.max(fromIndex, 0), footer.count), format);
+        }
+    }
+
+    /**
+     * 解码第 first 条到最后一条记录：一次读出这段偏移表，再逐条读取记录
+     */
+    private List<Message> decodeRange(FileChannel channel, Footer footer, int first, FileFormat format) throws IOException {
+        int n = footer.count - first;
+        List<Message> messages = new ArrayList<>(n);
+        if (n == 0) {
+            return messages;
+        }
+        ByteBuffer offsets = readAt(channel, footer.tableOffset + (long) first * Long.BYTES, n * Long.BYTES);
+        for (int i = 0; i < n; i++) {
+            long offset = offsets.getLong(i * Long.BYTES);
+            int length = readAt(channel, offset, Integer.BYTES).getInt(0);
+            if (length < 0 || offset + Integer.BYTES + length > footer.tableOffset) {
+                throw new IOException("非法记录长度或损坏");
+            }
+            byte[] payload = readAt(channel, offset + Integer.BYTES, length).array();
+            messages.add(format == FileFormat.CODEC
+                    ? codec.decode(payload)
+                    : (Message) getKryo().readClassAndObject(new Input(payload)));
         }
         return messages;
     }
 
-    private File getFile(String conversationId) {
-        return new File(BASE_DIR, conversationId + ".kryo");
+    private void writeRecord(Output output, Message message) {
+        byte[] record = codec.encode(message);
+        output.writeInt(record.length);
+        output.writeBytes(record);
+    }
+
+    /**
+     * @param baseOffset output 起始位置在文件中的偏移
+     * @param deadBytes  文件中已废弃的字节数（旧表与旧尾部）
+     */
+    private static void writeFooter(Output output, long[] offsets, int[] tokens, long baseOffset, long deadBytes) {
+        long tableOffset = baseOffset + output.total();
+        for (long offset : offsets) {
+            output.writeLong(offset);
+        }
+        for (int token : tokens) {
+            output.writeInt(token);
+        }
+        output.writeLong(deadBytes);
+        output.writeInt(offsets.length);
+        output.writeLong(tableOffset);
+        output.writeInt(TRAILER_MAGIC_V4);
+    }
+
+    /**
+     * 定位最后一个有效尾部：先看文件末尾，无效时（追加写到一半崩溃）从末尾向前分块逐字节查找
+     */
+    private static Footer findFooter(FileChannel channel) throws IOException {
+        long size = channel.size();
+        checkFileSize(size);
+        long last = size - TRAILER_BYTES;
+        if (last < 0) {
+            throw new IOException("非法文件尾部或损坏");
+        }
+        long start = Math.max(last - Long.BYTES, 0);
+        Footer footer = parseFooter(readAt(channel, start, (int) (size - start)), start, last);
+        long end = last + TRAILER_BYTES - 1;
+        while (footer == null && end >= TRAILER_BYTES) {
+            start = Math.max(end - FOOTER_SCAN_BYTES, 0);
+            ByteBuffer chunk = readAt(channel, start, (int) (end - start));
+            // 尾部前的废弃字节数（8 字节）需要在同一块内，块首的 8 个位置留给下一块
+            long lowest = start == 0 ? 0 : start + Long.BYTES;
+            for (long position = end - TRAILER_BYTES; footer == null && position >= lowest; position--) {
+                footer = parseFooter(chunk, start, position);
+            }
+            if (start == 0) {
+                break;
+            }
+            end = start + Long.BYTES - 1 + TRAILER_BYTES;
+        }
+        if (footer == null) {
+            throw new IOException("非法文件尾部或损坏");
+        }
+        return footer;
+    }
+
+    /**
+     * 解析文件中 position 处的尾部，魔数或表范围不符时返回 null
+     *
+     * @param buffer      从文件 bufferStart 处读出的字节，需包含 [position - 8, position + TRAILER_BYTES)
+     * @param bufferStart buffer 第一个字节在文件中的位置
+     */
+    private static Footer parseFooter(ByteBuffer buffer, long bufferStart, long position) {
+        int index = (int) (position - bufferStart);
+        int magic = buffer.getInt(index + Integer.BYTES + Long.BYTES);
+        int entryBytes;
+        int extraBytes = 0;
+        if (magic == TRAILER_MAGIC) {
+            entryBytes = Long.BYTES;
+        } else if (magic == TRAILER_MAGIC_V3) {
+            entryBytes = Long.BYTES + Integer.BYTES;
+        } else if (magic == TRAILER_MAGIC_V4) {
+            entryBytes = Long.BYTES + Integer.BYTES;
+            extraBytes = Long.BYTES;
+        } else {
+            return null;
+        }
+        int count = buffer.getInt(index);
+        long tableOffset = buffer.getLong(index + Integer.BYTES);
+        if (count < 0 || tableOffset < 0 || tableOffset + (long) count * entryBytes + extraBytes != position) {
+            return null;
+        }
+        long deadBytes = extraBytes > 0 ? buffer.getLong(index - Long.BYTES) : 0;
+        return new Footer(count, tableOffset, magic != TRAILER_MAGIC, deadBytes, position + TRAILER_BYTES);
+    }
+
+    /**
+     * 从 position 处读取 length 字节到小端序的堆缓冲区
+     */
+    private static ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("文件提前结束");
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * 偏移表与记录长度按 int 寻址，超过上限的文件直接拒绝，不当作损坏文件删除
+     */
+    static void checkFileSize(long size) {
+        if (size > MAX_FILE_BYTES) {
+            throw new IllegalStateException("会话文件大小 " + size + " 字节超过上限 " + MAX_FILE_BYTES + " 字节");
+        }
+    }
+
+    /**
+     * 通过文件头识别文件格式
+     */
+    private static FileFormat detectFormat(File file) {
+        if (!file.exists()) {
+            return FileFormat.UNKNOWN;
+        }
+        byte[] header = new byte[HEADER_PROBE_BYTES];
+        int length;
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            length = inputStream.readNBytes(header, 0, HEADER_PROBE_BYTES);
+        } catch (IOException e) {
+            return FileFormat.UNKNOWN;
+        }
+        if (length >= ChatMessageCodec.HEADER_BYTES && ChatMessageCodec.isCodecHeader(header)) {
+            return FileFormat.CODEC;
+        }
+        try {
+            String magic = new Input(header, 0, length).readString();
+            if (FILE_MAGIC_V2.equals(magic)) {
+                return FileFormat.KRYO_V2;
+            }
+            if (FILE_MAGIC.equals(magic)) {
+                return FileFormat.KRYO_V1;
+            }
+        } catch (Exception ignored) {
+            // 无法识别的文件头
+        }
+        return FileFormat.UNKNOWN;
+    }
+
+    /**
+     * 会话文件路径（必要时迁移旧版平铺文件），调用方需持有该会话的写锁
+     */
+    File getFile(String conversationId) {
+        return ChatMemoryPaths.resolve(new File(BASE_DIR), conversationId, FILE_SUFFIX);
+    }
+
+    /**
+     * @param end 尾部结束位置，其后的字节是残缺的追加
+     */
+    private record Footer(int count, long tableOffset, boolean hasTokens, long deadBytes, long end) {
     }
 }
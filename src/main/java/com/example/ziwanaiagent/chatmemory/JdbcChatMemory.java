@@ -0,0 +1,272 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 基于 JDBC 的 ChatMemory，多个节点可共享同一份对话记录
+ * <p>
+ * 每条消息一行，主键 (conversation_id, seq) 即窗口查询所用索引；消息体使用 {@link ChatMessageCodec} 编码，
+ * 写入时一并保存估算 token 数，窗口读取是一条按主键倒序、窗口函数累加 token 的查询。
+ * add 采用组提交：请求线程把消息放入队列并等待，单个写线程把队列中所有会话的消息合并为一次批量插入、一个事务，
+ * 提交后再唤醒等待的请求，既合并了并发写入，也保证 add 返回后立即可读。
+ * 请求线程最多等待 writeTimeoutMs；关闭或写线程退出时，队列中尚未写入的请求立即以异常结束。
+ */
+@Slf4j
+public class JdbcChatMemory implements ChatMemory, AutoCloseable {
+
+    private static final String TABLE = "chat_memory_message";
+
+    private static final String CREATE_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS chat_memory_message (
+                conversation_id VARCHAR(255) NOT NULL,
+                seq BIGINT NOT NULL,
+                message_type VARCHAR(16) NOT NULL,
+                tokens INT NOT NULL,
+                payload BYTEA NOT NULL,
+                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+                PRIMARY KEY (conversation_id, seq)
+            )""";
+
+    private static final String INSERT_SQL = "INSERT INTO " + TABLE
+            + " (conversation_id, seq, message_type, tokens, payload) VALUES (?, ?, ?, ?, ?)";
+
+    /** 先按主键倒序取最近 maxMessages 条，再按 token 累加裁剪 */
+    private static final String WINDOW_SQL = """
+            SELECT payload FROM (
+                SELECT seq, payload, SUM(tokens) OVER (ORDER BY seq DESC) AS running_tokens
+                FROM (SELECT seq, tokens, payload FROM chat_memory_message
+                      WHERE conversation_id = ? ORDER BY seq DESC LIMIT ?) recent
+            ) windowed
+            WHERE running_tokens <= ?
+            ORDER BY seq""";
+
+    private static final String MAX_SEQ_SQL = "SELECT conversation_id, MAX(seq) AS max_seq FROM " + TABLE
+            + " WHERE conversation_id IN (:ids) GROUP BY conversation_id";
+
+    /** 多节点同时写入同一会话导致主键冲突时的重试次数 */
+    private static final int MAX_RETRIES = 3;
+
+    private static final long DEFAULT_WRITE_TIMEOUT_MS = 30_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ChatMessageCodec codec;
+    private final ChatMemoryWindowPolicy windowPolicy;
+    private final int maxBatchRows;
+    private final long writeTimeoutMs;
+
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+    /** 写线程已退出（先置位再清空队列），之后入队的请求由请求线程自行结束 */
+    private volatile boolean writerExited = false;
+
+    /** 写线程空闲时检查关闭标志的间隔 */
+    private static final long POLL_INTERVAL_MS = 100;
+
+    public JdbcChatMemory(DataSource dataSource, ChatMessageCodec codec, ChatMemoryWindowPolicy windowPolicy,
+                          int maxBatchRows) {
+        this(dataSource, codec, windowPolicy, maxBatchRows, DEFAULT_WRITE_TIMEOUT_MS);
+    }
+
+    /**
+     * @param maxBatchRows   单次批量插入的最大行数
+     * @param writeTimeoutMs add 等待写入完成的最长时间
+     */
+    public JdbcChatMemory(DataSource dataSource, ChatMessageCodec codec, ChatMemoryWindowPolicy windowPolicy,
+                          int maxBatchRows, long writeTimeoutMs) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.codec = codec;
+        this.windowPolicy = windowPolicy;
+        this.maxBatchRows = maxBatchRows;
+        this.writeTimeoutMs = writeTimeoutMs;
+        jdbcTemplate.execute(CREATE_TABLE_SQL);
+        this.writer = new Thread(this::writeLoop, "chat-memory-jdbc-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // ---------------- ChatMemory 接口实现 ---------------- //
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        if (!running) {
+            throw new IllegalStateException("对话记忆已关闭");
+        }
+        PendingWrite write = new PendingWrite(conversationId, List.copyOf(messages), new CompletableFuture<>());
+        queue.add(write);
+        if (writerExited) {
+            // 写线程已在入队前退出，不会再处理队列
+            failPending(new IllegalStateException("对话记忆写线程已退出"));
+        }
+        try {
+            write.done.get(writeTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待写入会话 [" + conversationId + "] 被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("写入会话 [" + conversationId + "] 失败", e.getCause());
+        } catch (TimeoutException e) {
+            // 仍在队列中说明尚未写入，移出后不会再写；否则写入结果未知
+            boolean dequeued = queue.remove(write);
+            throw new IllegalStateException("等待写入会话 [" + conversationId + "] 超时"
+                    + (dequeued ? "，未写入" : "，写入结果未知"), e);
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        ChatMemoryWindow window = windowPolicy.get(conversationId);
+        return jdbcTemplate.query(WINDOW_SQL, (rs, rowNum) -> codec.decode(rs.getBytes(1)),
+                conversationId, window.maxMessages(), window.maxTokens());
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE conversation_id = ?", conversationId);
+    }
+
+    /**
+     * 读取会话的全部历史消息（不截断窗口）
+     */
+    List<Message> loadAll(String conversationId) {
+        return loadFrom(conversationId, 0);
+    }
+
+    /**
+     * 读取会话从第 fromIndex 条（从 0 开始）起的历史消息，供摘要层从水位线处增量读取；
+     * seq 从 1 开始连续递增，按主键范围查询
+     */
+    List<Message> loadFrom(String conversationId, int fromIndex) {
+        return jdbcTemplate.query("SELECT payload FROM " + TABLE + " WHERE conversation_id = ? AND seq > ? ORDER BY seq",
+                (rs, rowNum) -> codec.decode(rs.getBytes(1)), conversationId, (long) Math.max(fromIndex, 0));
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failPending(new IllegalStateException("对话记忆已关闭"));
+    }
+
+    // ---------------- 内部实现 ---------------- //
+
+    private void writeLoop() {
+        try {
+            drainLoop();
+        } catch (Throwable e) {
+            log.error("对话记忆写线程异常退出：{}", e.getMessage(), e);
+            throw e;
+        } finally {
+            writerExited = true;
+            failPending(new IllegalStateException("对话记忆写线程已退出"));
+        }
+    }
+
+    private void drainLoop() {
+        List<PendingWrite> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int rows = first.messages.size();
+                // 合并队列中已到达的写入，直到行数上限
+                PendingWrite next;
+                while (rows < maxBatchRows && (next = queue.poll()) != null) {
+                    batch.add(next);
+                    rows += next.messages.size();
+                }
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                // writeBatch 未捕获的异常（如 Error）也要结束本批请求
+                for (PendingWrite write : batch) {
+                    if (!write.done.isDone()) {
+                        write.done.completeExceptionally(new IllegalStateException("对话记忆批量写入异常中断"));
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 以异常结束队列中所有尚未写入的请求
+     */
+    private void failPending(RuntimeException e) {
+        PendingWrite write;
+        while ((write = queue.poll()) != null) {
+            write.done.completeExceptionally(e);
+        }
+    }
+
+    private void writeBatch(List<PendingWrite> batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> insert(batch));
+                batch.forEach(write -> write.done.complete(null));
+                return;
+            } catch (DuplicateKeyException e) {
+                if (attempt >= MAX_RETRIES) {
+                    batch.forEach(write -> write.done.completeExceptionally(e));
+                    return;
+                }
+                log.warn("对话记忆批量写入主键冲突，重新分配序号后重试：{}", e.getMessage());
+            } catch (RuntimeException e) {
+                log.error("对话记忆批量写入失败：{}", e.getMessage(), e);
+                batch.forEach(write -> write.done.completeExceptionally(e));
+                return;
+            }
+        }
+    }
+
+    private void insert(List<PendingWrite> batch) {
+        Set<String> conversationIds = new LinkedHashSet<>();
+        batch.forEach(write -> conversationIds.add(write.conversationId));
+        Map<String, Long> nextSeq = new HashMap<>();
+        namedJdbcTemplate.query(MAX_SEQ_SQL, new MapSqlParameterSource("ids", conversationIds),
+                (RowCallbackHandler) rs -> nextSeq.put(rs.getString("conversation_id"), rs.getLong("max_seq") + 1));
+
+        List<Object[]> rows = new ArrayList<>();
+        for (PendingWrite write : batch) {
+            long seq = nextSeq.getOrDefault(write.conversationId, 1L);
+            for (Message message : write.messages) {
+                rows.add(new Object[]{write.conversationId, seq++, message.getMessageType().getValue(),
+                        TokenEstimator.estimate(message), codec.encode(message)});
+            }
+            nextSeq.put(write.conversationId, seq);
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+    }
+
+    private record PendingWrite(String conversationId, List<Message> messages, CompletableFuture<Void> done) {
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 将 {@link FileBasedChatMemory} 写出的 KRYO_V1 整文件迁移到 {@link SegmentedLogChatMemory}
+ * <p>
+ * 迁移成功的源文件会被重命名为 {@code <id>.kryo.migrated}，重复执行是幂等的；无法读取或写入目标失败的源文件原样保留，不计入迁移成功。
+ */
+@Slf4j
+public class KryoV1ChatMemoryMigrator {
+
+    private static final String MIGRATED_SUFFIX = ".migrated";
+
+    private final FileBasedChatMemory source;
+    private final SegmentedLogChatMemory target;
+
+    public KryoV1ChatMemoryMigrator(String sourceDir, SegmentedLogChatMemory target) {
+        this.source = new FileBasedChatMemory(sourceDir);
+        this.target = target;
+    }
+
+    /**
+     * 迁移目录下所有 KRYO_V1 会话文件
+     *
+     * @return 成功迁移的会话数
+     */
+    public int migrateAll() {
+        List<String> conversationIds = new ArrayList<>();
+        try {
+            source.forEachConversation(conversationIds::add);
+        } catch (IOException e) {
+            log.error("遍历会话目录失败：{}", e.getMessage(), e);
+            return 0;
+        }
+        int migrated = 0;
+        for (String conversationId : conversationIds) {
+            if (migrate(conversationId)) {
+                migrated++;
+            }
+        }
+        log.info("KRYO_V1 会话迁移完成：{}/{}", migrated, conversationIds.size());
+        return migrated;
+    }
+
+    /**
+     * 迁移单个会话
+     * <p>
+     * 写入后核对目标日志的消息条数，一致才重命名源文件。目标日志已存在时：条数与源文件一致视为上次迁移已写完、
+     * 只差重命名；不一致（上次迁移中途崩溃或已有新数据）记为失败并保留源文件，需人工处理。
+     *
+     * @return 是否完成迁移
+     */
+    public boolean migrate(String conversationId) {
+        File file = source.getFile(conversationId);
+        if (!file.exists()) {
+            return false;
+        }
+        List<Message> messages;
+        try {
+            messages = source.readAll(conversationId);
+        } catch (IOException e) {
+            // 保留源文件，修复后可重新迁移
+            log.error("读取会话 [{}] 源文件失败，跳过迁移：{}", conversationId, e.getMessage());
+            return false;
+        }
+        if (target.exists(conversationId)) {
+            long existing = target.count(conversationId);
+            if (existing != messages.size()) {
+                log.error("会话 [{}] 目标日志已存在且条数不一致（{}/{}），保留源文件，跳过迁移",
+                        conversationId, existing, messages.size());
+                return false;
+            }
+            log.info("会话 [{}] 目标日志已完整写入，补做源文件重命名", conversationId);
+        } else {
+            try {
+                target.append(conversationId, messages);
+            } catch (IOException e) {
+                log.error("写入会话 [{}] 目标日志失败，保留源文件：{}", conversationId, e.getMessage(), e);
+                target.clear(conversationId);
+                return false;
+            }
+            long written = target.count(conversationId);
+            if (written != messages.size()) {
+                log.error("会话 [{}] 目标日志条数不一致（{}/{}），保留源文件", conversationId, written, messages.size());
+                target.clear(conversationId);
+                return false;
+            }
+        }
+        File migratedFile = new File(file.getParentFile(), file.getName() + MIGRATED_SUFFIX);
+        if (file.exists() && !file.renameTo(migratedFile)) {
+            log.warn("重命名已迁移文件失败：{}", file.getAbsolutePath());
+        }
+        log.info("会话 [{}] 迁移 {} 条消息", conversationId, messages.size());
+        return true;
+    }
+}
@@ -0,0 +1,421 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import com.esotericsoftware.kryo.io.Input;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 基于追加写分段日志的 ChatMemory 实现
+ * <p>
+ * 目录结构：{@code <baseDir>/<conversationId>/<起始序号>.log|.idx}，conversationId 经 {@link ChatMemoryPaths#encode} 转换
+ * <ul>
+ *     <li>.log：长度前缀记录 [int 长度][int CRC32][消息字节]，只追加不改写；消息字节由 {@link ChatMessageCodec} 编码</li>
+ *     <li>.idx：每条记录在 .log 中的起始偏移（long），用于从尾部定位最近 N 条记录</li>
+ * </ul>
+ * add 的代价只与新增消息数相关，get 只读取并反序列化最后 N 条记录。
+ * 段文件写满后滚动，滚动时压缩：整段早于保留窗口的旧段直接删除。
+ */
+@Slf4j
+public class SegmentedLogChatMemory implements ChatMemory {
+
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    /** 记录头：长度 + CRC32 */
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int OFFSET_BYTES = Long.BYTES;
+
+    private static final int DEFAULT_MAX_MESSAGES = 10;
+    private static final long DEFAULT_SEGMENT_BYTES = 1024 * 1024;
+    private static final int DEFAULT_RETAIN_MESSAGES = 1000;
+
+    private final File baseDir;
+    /** get 返回的最近消息条数 */
+    private final int maxMessages;
+    /** 单个段文件的滚动阈值（字节） */
+    private final long segmentBytes;
+    /** 压缩时至少保留的最近消息条数 */
+    private final int retainMessages;
+    private final ChatMessageCodec codec;
+
+    /** 分段读写锁：同一会话并发读共享，写入互斥，锁表大小固定 */
+    private final StripedLock fileLocks = new StripedLock();
+
+    public SegmentedLogChatMemory(String dir) {
+        this(dir, DEFAULT_MAX_MESSAGES, DEFAULT_SEGMENT_BYTES, DEFAULT_RETAIN_MESSAGES);
+    }
+
+    public SegmentedLogChatMemory(String dir, int maxMessages, long segmentBytes, int retainMessages) {
+        this(dir, maxMessages, segmentBytes, retainMessages, new ChatMessageCodec());
+    }
+
+    public SegmentedLogChatMemory(String dir, int maxMessages, long segmentBytes, int retainMessages,
+                                  ChatMessageCodec codec) {
+        if (maxMessages <= 0 || segmentBytes <= 0 || retainMessages < maxMessages) {
+            throw new IllegalArgumentException("非法的分段日志参数");
+        }
+        this.baseDir = new File(dir);
+        this.maxMessages = maxMessages;
+        this.segmentBytes = segmentBytes;
+        this.retainMessages = retainMessages;
+        this.codec = codec;
+        if (!baseDir.exists() && !baseDir.mkdirs()) {
+            throw new RuntimeException("创建目录失败：" + dir);
+        }
+    }
+
+    // ---------------- ChatMemory 接口实现 ---------------- //
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        try {
+            append(conversationId, messages);
+        } catch (IOException e) {
+            log.error("追加会话 [{}] 消息失败：{}", conversationId, e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        Lock lock = fileLocks.get(conversationId).readLock();
+        lock.lock();
+        try {
+            return readTail(conversationId, maxMessages);
+        } catch (IOException e) {
+            log.warn("读取会话 [{}] 日志失败：{}", conversationId, e.getMessage());
+            return new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        Lock lock = fileLocks.get(conversationId).writeLock();
+        lock.lock();
+        try {
+            File dir = getConversationDir(conversationId);
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!file.delete()) {
+                        log.warn("删除文件失败：{}", file.getAbsolutePath());
+                    }
+                }
+            }
+            if (dir.exists() && !dir.delete()) {
+                log.warn("删除目录失败：{}", dir.getAbsolutePath());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 追加消息，写入失败时抛出异常，供需要确认写入结果的调用方（如迁移工具）使用
+     *
+     * @throws IOException 日志或索引写入失败
+     */
+    public void append(String conversationId, List<Message> messages) throws IOException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        Lock lock = fileLocks.get(conversationId).writeLock();
+        lock.lock();
+        try {
+            appendRecords(conversationId, messages);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 会话累计写入的消息条数（含已被压缩删除的旧段）
+     */
+    public long count(String conversationId) {
+        Lock lock = fileLocks.get(conversationId).readLock();
+        lock.lock();
+        try {
+            File dir = getConversationDir(conversationId);
+            List<Long> segments = listSegments(dir);
+            if (segments.isEmpty()) {
+                return 0;
+            }
+            long last = segments.get(segments.size() - 1);
+            return last + recordCount(dir, last);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 会话是否已有日志数据
+     */
+    public boolean exists(String conversationId) {
+        return !listSegments(getConversationDir(conversationId)).isEmpty();
+    }
+
+    // ---------------- 写路径 ---------------- //
+
+    private void appendRecords(String conversationId, List<Message> messages) throws IOException {
+        File dir = getConversationDir(conversationId);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("创建会话目录失败：" + dir.getAbsolutePath());
+        }
+        List<Long> segments = listSegments(dir);
+        long activeBase;
+        if (segments.isEmpty()) {
+            activeBase = 0;
+            segments.add(activeBase);
+        } else {
+            activeBase = segments.get(segments.size() - 1);
+            long size = repair(dir, activeBase);
+            if (size >= segmentBytes) {
+                // 滚动新段，并顺带压缩旧段
+                activeBase = activeBase + recordCount(dir, activeBase);
+                segments.add(activeBase);
+                compact(dir, segments);
+            }
+        }
+
+        File logFile = logFile(dir, activeBase);
+        try (FileChannel logChannel = FileChannel.open(logFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileChannel indexChannel = FileChannel.open(indexFile(dir, activeBase).toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long position = logChannel.size();
+            ByteBuffer offsets = ByteBuffer.allocate(messages.size() * OFFSET_BYTES);
+            List<byte[]> payloads = new ArrayList<>(messages.size());
+            int total = 0;
+            for (Message message : messages) {
+                byte[] payload = encode(message);
+                payloads.add(payload);
+                offsets.putLong(position + total);
+                total += RECORD_HEADER_BYTES + payload.length;
+            }
+            ByteBuffer records = ByteBuffer.allocate(total);
+            for (byte[] payload : payloads) {
+                records.putInt(payload.length);
+                records.putInt(crc(payload));
+                records.put(payload);
+            }
+            records.flip();
+            offsets.flip();
+            // 先写日志再写索引：崩溃时最多留下未被索引的尾部字节，下次写入前会被截掉
+            writeFully(logChannel, records, position);
+            writeFully(indexChannel, offsets, indexChannel.size());
+        }
+    }
+
+    /**
+     * 校验活动段的日志与索引是否一致，截掉未完成写入的尾部，返回日志有效长度
+     */
+    private long repair(File dir, long base) throws IOException {
+        File logFile = logFile(dir, base);
+        File indexFile = indexFile(dir, base);
+        try (FileChannel logChannel = FileChannel.open(logFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileChannel indexChannel = FileChannel.open(indexFile.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long indexSize = indexChannel.size() - indexChannel.size() % OFFSET_BYTES;
+            long logSize = logChannel.size();
+            while (indexSize > 0) {
+                long lastOffset = readLong(indexChannel, indexSize - OFFSET_BYTES);
+                if (lastOffset + RECORD_HEADER_BYTES <= logSize) {
+                    ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+                    readFully(logChannel, header, lastOffset);
+                    long end = lastOffset + RECORD_HEADER_BYTES + header.flip().getInt();
+                    if (end <= logSize) {
+                        logSize = end;
+                        break;
+                    }
+                }
+                // 索引指向了不完整的记录，丢弃该索引项
+                indexSize -= OFFSET_BYTES;
+            }
+            if (indexSize == 0) {
+                logSize = 0;
+            }
+            if (indexChannel.size() != indexSize) {
+                indexChannel.truncate(indexSize);
+            }
+            if (logChannel.size() != logSize) {
+                log.warn("会话日志 [{}] 存在未完成的写入，截断到 {} 字节", logFile.getName(), logSize);
+                logChannel.truncate(logSize);
+            }
+            return logSize;
+        }
+    }
+
+    /**
+     * 压缩：删除整段都早于保留窗口的旧段
+     */
+    private void compact(File dir, List<Long> segments) {
+        long nextSeq = segments.get(segments.size() - 1);
+        long retainFrom = nextSeq - retainMessages;
+        // 段 i 的结束序号即段 i+1 的起始序号
+        while (segments.size() > 1 && segments.get(1) <= retainFrom) {
+            long base = segments.remove(0);
+            boolean logDeleted = logFile(dir, base).delete();
+            boolean indexDeleted = indexFile(dir, base).delete();
+            if (!logDeleted || !indexDeleted) {
+                log.warn("压缩删除旧段失败：{}/{}", dir.getName(), base);
+            }
+        }
+    }
+
+    // ---------------- 读路径 ---------------- //
+
+    private List<Message> readTail(String conversationId, int count) throws IOException {
+        File dir = getConversationDir(conversationId);
+        List<Long> segments = listSegments(dir);
+        LinkedList<Message> result = new LinkedList<>();
+        for (int i = segments.size() - 1; i >= 0 && result.size() < count; i--) {
+            List<Message> segmentTail = readSegmentTail(dir, segments.get(i), count - result.size());
+            for (int j = segmentTail.size() - 1; j >= 0; j--) {
+                result.addFirst(segmentTail.get(j));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    private List<Message> readSegmentTail(File dir, long base, int count) throws IOException {
+        File logFile = logFile(dir, base);
+        File indexFile = indexFile(dir, base);
+        if (!logFile.exists() || !indexFile.exists()) {
+            return List.of();
+        }
+        try (FileChannel logChannel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ);
+             FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            long records = indexChannel.size() / OFFSET_BYTES;
+            if (records == 0) {
+                return List.of();
+            }
+            long first = Math.max(0, records - count);
+            int n = (int) (records - first);
+            ByteBuffer offsetBuffer = ByteBuffer.allocate(n * OFFSET_BYTES);
+            readFully(indexChannel, offsetBuffer, first * OFFSET_BYTES);
+            offsetBuffer.flip();
+            long start = offsetBuffer.getLong(0);
+            long logSize = logChannel.size();
+            if (start >= logSize) {
+                return List.of();
+            }
+            ByteBuffer data = ByteBuffer.allocate((int) (logSize - start));
+            readFully(logChannel, data, start);
+            data.flip();
+
+            List<Message> messages = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int position = (int) (offsetBuffer.getLong(i * OFFSET_BYTES) - start);
+                if (position + RECORD_HEADER_BYTES > data.limit()) {
+                    break;
+                }
+                int length = data.getInt(position);
+                int checksum = data.getInt(position + Integer.BYTES);
+                if (length < 0 || position + RECORD_HEADER_BYTES + length > data.limit()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                data.get(position + RECORD_HEADER_BYTES, payload);
+                if (crc(payload) != checksum) {
+                    log.warn("会话日志 [{}] 记录校验失败，跳过", logFile.getName());
+                    continue;
+                }
+                messages.add(decode(payload));
+            }
+            return messages;
+        }
+    }
+
+    // ---------------- 内部实现 ---------------- //
+
+    private byte[] encode(Message message) {
+        return codec.encode(message);
+    }
+
+    private Message decode(byte[] payload) {
+        if (ChatMessageCodec.isCodecRecord(payload)) {
+            return codec.decode(payload);
+        }
+        // 兼容编解码器引入前写入的 Kryo 全类名记录
+        return (Message) FileBasedChatMemory.getKryo().readClassAndObject(new Input(payload));
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload);
+        return (int) crc32.getValue();
+    }
+
+    private long recordCount(File dir, long base) {
+        return indexFile(dir, base).length() / OFFSET_BYTES;
+    }
+
+    private static long readLong(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        readFully(channel, buffer, position);
+        return buffer.flip().getLong();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("文件提前结束");
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private List<Long> listSegments(File dir) {
+        Path path = dir.toPath();
+        if (!Files.isDirectory(path)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(LOG_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length())))
+                    .sorted()
+                    .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        } catch (IOException | NumberFormatException e) {
+            log.warn("列出会话段文件失败：{}", dir.getAbsolutePath());
+            return new ArrayList<>();
+        }
+    }
+
+    private File getConversationDir(String conversationId) {
+        // 过滤路径成分，避免 id 跳出基础目录
+        return new File(baseDir, ChatMemoryPaths.encode(conversationId));
+    }
+
+    private static File logFile(File dir, long base) {
+        return new File(dir, String.format("%020d", base) + LOG_SUFFIX);
+    }
+
+    private static File indexFile(File dir, long base) {
+        return new File(dir, String.format("%020d", base) + INDEX_SUFFIX);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 固定大小的分段读写锁表
+ * <p>
+ * conversationId 按哈希映射到固定数量的锁上，内存占用与会话数量无关；
+ * 同一会话的并发读共享读锁，写入与删除持有写锁。
+ * 使用 j.u.c 锁而非 synchronized，虚拟线程阻塞时不会钉住载体线程。
+ */
+public class StripedLock {
+
+    public static final int DEFAULT_STRIPES = 256;
+
+    private final ReadWriteLock[] stripes;
+    private final int mask;
+
+    public StripedLock() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes 锁数量，向上取整为 2 的幂
+     */
+    public StripedLock(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("锁数量必须大于 0");
+        }
+        int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new ReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantReadWriteLock();
+        }
+        this.mask = size - 1;
+    }
+
+    public ReadWriteLock get(String key) {
+        int h = key.hashCode();
+        // 扰动高位，避免相近 id 落到同一把锁
+        h ^= (h >>> 16);
+        return stripes[h & mask];
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import com.example.ziwanaiagent.chatmemory.ChatSummaryStore.ChatSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 带滚动摘要层的 ChatMemory
+ * <p>
+ * get 返回「摘要 + 最近窗口」：滑出窗口的较早消息由后台线程定期、按批次合并进会话摘要，
+ * 摘要与对话记录存放在同一目录。摘要生成（大模型调用）全部在后台线程完成，不占用请求线程；
+ * 摘要尚未追上时，刚滑出窗口的消息会暂时不可见，下一轮摘要后补回。
+ * 每轮只读取摘要水位线（已并入摘要的条数）之后的历史，读取量与会话总长度无关。
+ */
+@Slf4j
+public class SummarizingChatMemory implements ChatMemory, AutoCloseable {
+
+    public static final String SUMMARY_METADATA_KEY = "chatSummary";
+
+    /**
+     * 按位置读取会话历史
+     */
+    @FunctionalInterface
+    public interface HistoryLoader {
+        /**
+         * @param fromIndex 起始位置（从 0 开始），即已并入摘要的消息条数
+         * @return 第 fromIndex 条及之后的全部消息
+         */
+        List<Message> loadFrom(String conversationId, int fromIndex);
+    }
+
+    private static final String SUMMARY_PREFIX = "以下是与用户此前对话的摘要，请结合它理解后续对话：\n";
+
+    private final ChatMemory delegate;
+    private final HistoryLoader historyLoader;
+    private final ChatMemoryWindowPolicy windowPolicy;
+    private final ChatSummaryStore store;
+    private final ChatSummarizer summarizer;
+    private final int minMessages;
+    private final int batchSize;
+
+    /** 有新消息、等待检查是否需要摘要的会话 */
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    /** 正在生成摘要的会话，clear 时移除，用于丢弃过期结果 */
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    /** 摘要的有界 LRU 缓存，由自身监视器保护 */
+    private final Map<String, ChatSummary> summaries;
+
+    /** 摘要文件读写锁：保存与清空互斥 */
+    private final StripedLock summaryLocks = new StripedLock();
+
+    private final ScheduledExecutorService summarizerExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chat-memory-summarizer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param delegate      提供最近窗口的 ChatMemory（可带热数据层）
+     * @param historyLoader 读取会话从指定位置起的历史，如 {@link FileBasedChatMemory#loadFrom}
+     * @param windowPolicy  与 delegate 相同的读取窗口策略，用于判断哪些消息已滑出窗口
+     * @param minMessages   滑出窗口且未摘要的消息达到该条数才触发摘要，合并多轮为一次调用
+     * @param batchSize     每轮最多处理的会话数
+     * @param maxCached     内存中缓存的摘要数量上限
+     */
+    public SummarizingChatMemory(ChatMemory delegate, HistoryLoader historyLoader,
+                                 ChatMemoryWindowPolicy windowPolicy, ChatSummaryStore store, ChatSummarizer summarizer,
+                                 int minMessages, int batchSize, int maxCached, long intervalMs) {
+        this.delegate = delegate;
+        this.historyLoader = historyLoader;
+        this.windowPolicy = windowPolicy;
+        this.store = store;
+        this.summarizer = summarizer;
+        this.minMessages = minMessages;
+        this.batchSize = batchSize;
+        this.summaries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ChatSummary> eldest) {
+                return size() > maxCached;
+            }
+        };
+        summarizerExecutor.scheduleWithFixedDelay(this::summarizePending, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // ---------------- ChatMemory 接口实现 ---------------- //
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        delegate.add(conversationId, messages);
+        dirty.add(conversationId);
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        List<Message> window = delegate.get(conversationId);
+        ChatSummary summary = getSummary(conversationId);
+        if (summary.isEmpty()) {
+            return window;
+        }
+        List<Message> messages = new ArrayList<>(window.size() + 1);
+        messages.add(SystemMessage.builder()
+                .text(SUMMARY_PREFIX + summary.text())
+                .metadata(Map.of(SUMMARY_METADATA_KEY, true))
+                .build());
+        messages.addAll(window);
+        return messages;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        Lock lock = summaryLocks.get(conversationId).writeLock();
+        lock.lock();
+        try {
+            delegate.clear(conversationId);
+            invalidate(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 删除会话摘要（对话记录已被清理时调用），不影响底层存储
+     */
+    public void invalidate(String conversationId) {
+        Lock lock = summaryLocks.get(conversationId).writeLock();
+        lock.lock();
+        try {
+            store.delete(conversationId);
+            synchronized (summaries) {
+                summaries.remove(conversationId);
+            }
+            dirty.remove(conversationId);
+            inFlight.remove(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 处理一批待检查的会话，由后台线程定期调用
+     *
+     * @return 本轮更新了摘要的会话数
+     */
+    public int summarizePending() {
+        List<String> batch = new ArrayList<>(batchSize);
+        Iterator<String> iterator = dirty.iterator();
+        while (batch.size() < batchSize && iterator.hasNext()) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        int updated = 0;
+        for (String conversationId : batch) {
+            try {
+                if (summarize(conversationId)) {
+                    updated++;
+                }
+            } catch (Exception e) {
+                // 失败的会话留待下一轮重试
+                dirty.add(conversationId);
+                log.warn("会话 [{}] 摘要失败：{}", conversationId, e.getMessage());
+            }
+        }
+        return updated;
+    }
+
+    @Override
+    public void close() {
+        summarizerExecutor.shutdown();
+        if (delegate instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.warn("关闭对话记忆失败：{}", e.getMessage());
+            }
+        }
+    }
+
+    // ---------------- 内部实现 ---------------- //
+
+    private ChatSummary getSummary(String conversationId) {
+        synchronized (summaries) {
+            ChatSummary summary = summaries.get(conversationId);
+            if (summary != null) {
+                return summary;
+            }
+        }
+        Lock lock = summaryLocks.get(conversationId).readLock();
+        lock.lock();
+        try {
+            ChatSummary summary = store.load(conversationId);
+            synchronized (summaries) {
+                summaries.put(conversationId, summary);
+            }
+            // 首次访问的会话检查一次，已有的长对话也能补上摘要
+            dirty.add(conversationId);
+            return summary;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean summarize(String conversationId) {
+        inFlight.add(conversationId);
+        try {
+            return doSummarize(conversationId);
+        } finally {
+            inFlight.remove(conversationId);
+        }
+    }
+
+    private boolean doSummarize(String conversationId) {
+        ChatSummary previous = getSummary(conversationId);
+        // 只读取水位线之后的消息；窗口从末尾向前计算，起点早于水位线时 unfolded 为 0
+        List<Message> tail = historyLoader.loadFrom(conversationId, previous.foldedCount());
+        int unfolded = windowPolicy.get(conversationId)
+                .firstIndex(tail.size(), i -> TokenEstimator.estimate(tail.get(i)));
+        if (unfolded < minMessages) {
+            return false;
+        }
+        int first = previous.foldedCount() + unfolded;
+        String text = summarizer.summarize(previous.text(), tail.subList(0, unfolded));
+        ChatSummary next = new ChatSummary(first, text);
+
+        Lock lock = summaryLocks.get(conversationId).writeLock();
+        lock.lock();
+        try {
+            // 摘要生成期间会话被清空或已被其他轮次更新，则放弃本次结果
+            if (!inFlight.contains(conversationId)
+                    || store.load(conversationId).foldedCount() != previous.foldedCount()) {
+                return false;
+            }
+            store.save(conversationId, next);
+            synchronized (summaries) {
+                summaries.put(conversationId, next);
+            }
+        } finally {
+            lock.unlock();
+        }
+        log.info("会话 [{}] 摘要已更新，并入 {} 条消息", conversationId, first - previous.foldedCount());
+        return true;
+    }
+}
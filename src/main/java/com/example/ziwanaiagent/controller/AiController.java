@@ -1,17 +1,21 @@
 package com.example.ziwanaiagent.controller;
 
 
+import com.example.ziwanaiagent.agent.AgentCheckpointStore;
 import com.example.ziwanaiagent.agent.ZiWanManus;
 import com.example.ziwanaiagent.app.LoveApp;
+import com.example.ziwanaiagent.chatmemory.FileBasedChatMemory;
 import com.example.ziwanaiagent.common.BaseResponse;
 import com.example.ziwanaiagent.common.ResultUtils;
+import com.example.ziwanaiagent.exception.ErrorCode;
+import com.example.ziwanaiagent.exception.ThrowUtils;
 import jakarta.annotation.Resource;
-import org.springframework.ai.chat.model.ChatModel;
-import org.springframework.ai.tool.ToolCallback;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import reactor.core.publisher.Flux;
@@ -25,11 +29,9 @@ public class AiController {
     @Resource
     private LoveApp loveApp;
 
+    // 智能体单例：运行状态保存在每次运行的上下文中，可被并发请求共享
     @Resource
-    private ToolCallback[] allTools;
-
-    @Resource
-    private ChatModel dashscopeChatModel;
+    private ZiWanManus ziWanManus;
 
 
     /**
@@ -41,6 +43,7 @@ public class AiController {
      */
     @GetMapping("/love_app/chat/sync")
     public BaseResponse<String> doChatWithLoveAppSync(String message, String chatId) {
+        checkChatId(chatId);
         String result = loveApp.doChat(message, chatId);
         return ResultUtils.success(result);
     }
@@ -54,6 +57,7 @@ public class AiController {
      */
     @GetMapping(value = "/love_app/chat/sse", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public BaseResponse<Flux<String>> doChatWithLoveAppSSE(String message, String chatId) {
+        checkChatId(chatId);
         Flux<String> stringFlux = loveApp.doChatByStream(message, chatId);
         return ResultUtils.success(stringFlux);
     }
@@ -67,6 +71,7 @@ public class AiController {
      */
     @GetMapping(value = "/love_app/chat/server_sent_event")
     public BaseResponse<Flux<ServerSentEvent<String>>> doChatWithLoveAppServerSentEvent(String message, String chatId) {
+        checkChatId(chatId);
         Flux<ServerSentEvent<String>> map = loveApp.doChatByStream(message, chatId)
                 .map(chunk -> ServerSentEvent.<String>builder()
                         .data(chunk)
@@ -83,6 +88,7 @@ public class AiController {
      */
     @GetMapping(value = "/love_app/chat/sse_emitter")
     public BaseResponse<SseEmitter> doChatWithLoveAppServerSseEmitter(String message, String chatId) {
+        checkChatId(chatId);
         // 创建一个超时时间较长的 SseEmitter
         SseEmitter sseEmitter = new SseEmitter(180000L); // 3 分钟超时
         // 获取 Flux 响应式数据流并且直接通过订阅推送给 SseEmitter
@@ -106,8 +112,28 @@ public class AiController {
      */
     @GetMapping("/manus/chat")
     public BaseResponse<SseEmitter> doChatWithManus(String message) {
-        ZiWanManus ziWanManus = new ZiWanManus(allTools, dashscopeChatModel);
         SseEmitter sseEmitter = ziWanManus.runStream(message);
         return ResultUtils.success(sseEmitter);
     }
+
+    /**
+     * 重新连接 Manus 超级智能体的一次运行，补发错过的事件；运行已中断时从最后一个检查点继续
+     *
+     * @param runId       运行 ID（runStream 的第一个 run 事件）
+     * @param lastEventId 收到的最后一个事件 ID，浏览器 EventSource 重连时通过 Last-Event-ID 请求头携带
+     * @return 输出流
+     */
+    @GetMapping("/manus/chat/resume")
+    public BaseResponse<SseEmitter> resumeChatWithManus(String runId,
+                                                        @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                                        @RequestParam(value = "lastEventId", required = false) Long lastEventIdParam) {
+        ThrowUtils.throwIf(!AgentCheckpointStore.isValidRunId(runId), ErrorCode.PARAM_ERROR, "runId 不合法");
+        long from = lastEventId != null ? lastEventId : lastEventIdParam != null ? lastEventIdParam : -1;
+        SseEmitter sseEmitter = ziWanManus.resumeStream(runId, from);
+        return ResultUtils.success(sseEmitter);
+    }
+
+    private static void checkChatId(String chatId) {
+        ThrowUtils.throwIf(!FileBasedChatMemory.isValidConversationId(chatId), ErrorCode.PARAM_ERROR, "chatId 不合法");
+    }
 }
@@ -11,6 +11,7 @@ public enum ErrorCode {
     NO_AUTO_ERROR(40102, "无权限"),
     NOT_FOUND_ERROR(40400, "请求数据不存在"),
     REQUEST_FORBIDDEN_ERROR(40300, "请求被禁止"),
+    TOO_MANY_REQUEST_ERROR(42900, "请求过多，请稍后再试"),
     SYSTEM_ERROR(50000, "服务器错误"),
     OPERATION_ERROR(50001, "操作失败"),
     ;
@@ -0,0 +1,244 @@
+package com.example.ziwanaiagent.rag;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.util.StringUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带两级缓存的向量模型装饰器，避免相同文本（重复的文档分块、重复的用户问题）反复调用向量化接口
+ * <p>
+ * 缓存键为 SHA-256(模型名, 维度, 文本)：请求选项里指定了模型或维度时以请求为准，否则取构造时给定的默认值。
+ * 先查堆内 LRU，再查 {@link EmbeddingDiskCache}，磁盘命中的向量回填到堆内；
+ * 一次请求中所有未命中的文本去重后合并为一次模型调用，结果写入缓存后按原顺序返回。
+ * 只有文档的向量化（{@link #embed(Document)}、{@link #embed(List, EmbeddingOptions, BatchingStrategy)}、
+ * {@link #callForDocuments}）会写入磁盘；{@link #call} 与 {@link #embed(String)} 用于检索问题，只进堆内 LRU，
+ * 磁盘文件的大小只取决于知识库，不随不同问题的数量增长。
+ * 知识库目录被清空或换机器重建时，只要缓存文件还在，重新入库几乎不产生模型调用。
+ * <p>
+ * 指标：rag.embedding.cache.requests（result=memory_hit/disk_hit/miss，按文本计数）、
+ * rag.embedding.cache.size、rag.embedding.cache.disk.size。
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private final EmbeddingModel delegate;
+    private final String defaultModel;
+    private final int defaultDimensions;
+    private final int maxEntries;
+    private final EmbeddingDiskCache diskCache;
+    private final MeterRegistry meterRegistry;
+
+    // 访问顺序的 LinkedHashMap 实现 LRU，所有访问在 synchronized(memory) 下进行
+    private final LinkedHashMap<EmbeddingDiskCache.Key, float[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param delegate          实际调用的向量模型
+     * @param dir               磁盘缓存目录，为空时只用堆内缓存
+     * @param defaultModel      请求未指定模型时使用的模型名，应与 delegate 的默认配置一致
+     * @param defaultDimensions 请求未指定维度时使用的维度，应与 delegate 的默认配置一致
+     * @param maxEntries        堆内缓存最大条目数
+     * @param meterRegistry     指标注册表，为空时不记录指标
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, File dir, String defaultModel, int defaultDimensions,
+                                 int maxEntries, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.defaultModel = defaultModel;
+        this.defaultDimensions = defaultDimensions;
+        this.maxEntries = maxEntries;
+        this.diskCache = dir == null ? null : new EmbeddingDiskCache(new File(dir, "embeddings.bin"));
+        this.meterRegistry = meterRegistry;
+        if (diskCache != null) {
+            log.info("向量缓存已加载 {} 条磁盘记录", diskCache.size());
+        }
+        if (meterRegistry != null) {
+            Gauge.builder("rag.embedding.cache.size", this, CachingEmbeddingModel::size)
+                    .description("向量缓存堆内条目数")
+                    .register(meterRegistry);
+            if (diskCache != null) {
+                Gauge.builder("rag.embedding.cache.disk.size", diskCache, EmbeddingDiskCache::size)
+                        .description("向量缓存磁盘条目数")
+                        .register(meterRegistry);
+            }
+        }
+    }
+
+    /**
+     * 检索问题等临时文本的向量化：读两级缓存，新结果只写入堆内
+     */
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return call(request, false);
+    }
+
+    /**
+     * 文档分块的向量化：新结果同时写入磁盘缓存
+     */
+    public EmbeddingResponse callForDocuments(EmbeddingRequest request) {
+        return call(request, true);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        EmbeddingRequest request = new EmbeddingRequest(List.of(document.getFormattedContent(MetadataMode.EMBED)),
+                EmbeddingOptionsBuilder.builder().build());
+        return callForDocuments(request).getResult().getOutput();
+    }
+
+    /**
+     * 与默认实现相同按批次调用，但走文档路径写入磁盘缓存
+     */
+    @Override
+    public List<float[]> embed(List<Document> documents, EmbeddingOptions options, BatchingStrategy batchingStrategy) {
+        List<float[]> embeddings = new ArrayList<>(documents.size());
+        for (List<Document> batch : batchingStrategy.batch(documents)) {
+            List<String> texts = batch.stream().map(Document::getText).toList();
+            for (Embedding embedding : callForDocuments(new EmbeddingRequest(texts, options)).getResults()) {
+                embeddings.add(embedding.getOutput());
+            }
+        }
+        return embeddings;
+    }
+
+    /**
+     * @param persist 新向量是否写入磁盘缓存
+     */
+    private EmbeddingResponse call(EmbeddingRequest request, boolean persist) {
+        List<String> texts = request.getInstructions();
+        EmbeddingOptions options = request.getOptions();
+        String model = options != null && StringUtils.hasText(options.getModel()) ? options.getModel() : defaultModel;
+        int dimensions = options != null && options.getDimensions() != null ? options.getDimensions() : defaultDimensions;
+
+        float[][] vectors = new float[texts.size()][];
+        EmbeddingDiskCache.Key[] keys = new EmbeddingDiskCache.Key[texts.size()];
+        // 未命中的文本按缓存键去重：键 → 在 misses 中的位置
+        Map<EmbeddingDiskCache.Key, Integer> missIndex = new LinkedHashMap<>();
+        List<String> misses = new ArrayList<>();
+        int memoryHits = 0;
+        int diskHits = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            EmbeddingDiskCache.Key key = key(model, dimensions, texts.get(i));
+            keys[i] = key;
+            float[] vector = getFromMemory(key);
+            if (vector != null) {
+                memoryHits++;
+            } else if (diskCache != null && (vector = diskCache.get(key)) != null) {
+                diskHits++;
+                putToMemory(key, vector);
+                vector = vector.clone();
+            } else if (missIndex.putIfAbsent(key, misses.size()) == null) {
+                misses.add(texts.get(i));
+            }
+            vectors[i] = vector;
+        }
+        record("memory_hit", memoryHits);
+        record("disk_hit", diskHits);
+        record("miss", texts.size() - memoryHits - diskHits);
+
+        if (!misses.isEmpty()) {
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(misses, options));
+            List<Embedding> results = response.getResults();
+            if (results.size() != misses.size()) {
+                throw new IllegalStateException("向量模型返回 " + results.size() + " 条结果，请求 " + misses.size() + " 条");
+            }
+            float[][] embedded = new float[misses.size()][];
+            for (int i = 0; i < results.size(); i++) {
+                embedded[results.get(i).getIndex()] = results.get(i).getOutput();
+            }
+            Map<EmbeddingDiskCache.Key, float[]> fresh = new LinkedHashMap<>();
+            for (Map.Entry<EmbeddingDiskCache.Key, Integer> entry : missIndex.entrySet()) {
+                float[] vector = embedded[entry.getValue()];
+                fresh.put(entry.getKey(), vector);
+                putToMemory(entry.getKey(), vector.clone());
+            }
+            if (persist && diskCache != null) {
+                diskCache.putAll(fresh);
+            }
+            for (int i = 0; i < vectors.length; i++) {
+                if (vectors[i] == null) {
+                    vectors[i] = embedded[missIndex.get(keys[i])].clone();
+                }
+            }
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(vectors.length);
+        for (int i = 0; i < vectors.length; i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public int dimensions() {
+        return defaultDimensions > 0 ? defaultDimensions : delegate.dimensions();
+    }
+
+    public int size() {
+        synchronized (memory) {
+            return memory.size();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (diskCache != null) {
+            diskCache.close();
+        }
+    }
+
+    private float[] getFromMemory(EmbeddingDiskCache.Key key) {
+        float[] vector;
+        synchronized (memory) {
+            vector = memory.get(key);
+        }
+        // 返回副本，调用方修改向量不影响缓存
+        return vector == null ? null : vector.clone();
+    }
+
+    private void putToMemory(EmbeddingDiskCache.Key key, float[] vector) {
+        synchronized (memory) {
+            memory.put(key, vector);
+            if (memory.size() > maxEntries) {
+                memory.pollFirstEntry();
+            }
+        }
+    }
+
+    private void record(String result, int count) {
+        if (meterRegistry != null && count > 0) {
+            meterRegistry.counter("rag.embedding.cache.requests", "result", result).increment(count);
+        }
+    }
+
+    static EmbeddingDiskCache.Key key(String model, int dimensions, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(model).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Integer.toString(dimensions).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return EmbeddingDiskCache.Key.of(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
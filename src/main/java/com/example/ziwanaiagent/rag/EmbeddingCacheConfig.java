@@ -0,0 +1,51 @@
+package com.example.ziwanaiagent.rag;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.File;
+
+/**
+ * 向量缓存配置
+ * <p>
+ * dashscopeEmbeddingModel 由 DashScope 自动配置注册且带 @Primary，这里不再注册第二个 @Primary，
+ * 需要缓存的向量存储通过 @Qualifier("cachingEmbeddingModel") 显式注入。
+ */
+@Configuration
+public class EmbeddingCacheConfig {
+
+    @Value("${embedding-cache.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 磁盘缓存目录，为空时只用堆内缓存
+     */
+    @Value("${embedding-cache.dir:${user.dir}/tmp/embedding-cache}")
+    private String dir;
+
+    @Value("${embedding-cache.max-entries:10000}")
+    private int maxEntries;
+
+    /**
+     * 请求未指定模型与维度时计入缓存键的默认值，须与 spring.ai.dashscope.embedding.options 保持一致
+     */
+    @Value("${embedding-cache.model:text-embedding-v1}")
+    private String model;
+
+    @Value("${embedding-cache.dimensions:1536}")
+    private int dimensions;
+
+    @Bean
+    public EmbeddingModel cachingEmbeddingModel(@Qualifier("dashscopeEmbeddingModel") EmbeddingModel dashscopeEmbeddingModel,
+                                                MeterRegistry meterRegistry) {
+        if (!enabled) {
+            return dashscopeEmbeddingModel;
+        }
+        File cacheDir = dir == null || dir.isBlank() ? null : new File(dir);
+        return new CachingEmbeddingModel(dashscopeEmbeddingModel, cacheDir, model, dimensions, maxEntries, meterRegistry);
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.ziwanaiagent.rag;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * 向量缓存的磁盘层：只追加的单文件，键为 32 字节的 SHA-256 摘要
+ * <p>
+ * 文件格式：[魔数] 之后是若干记录 [int 载荷长度][int CRC32C][32 字节键][int 维度][float32 × 维度]，整型与浮点均为小端。
+ * 启动时只读每条记录的头部与键，在堆内建立 键 → 偏移 的索引，向量留在磁盘上按需读取；
+ * 末尾不完整的记录（写入中断）被截掉，读取时校验 CRC，校验失败按未命中处理。
+ * 同一个键重复写入时索引指向最后一条，旧记录成为无用空间；向量缓存只增不删，不做压缩。
+ */
+@Slf4j
+class EmbeddingDiskCache implements AutoCloseable {
+
+    private static final int MAGIC = 0x454d4231; // "EMB1"
+    static final int KEY_BYTES = 32;
+    /** 记录头：载荷长度 + CRC32C */
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+
+    /**
+     * SHA-256 摘要拆成四个 long，比 byte[] 或十六进制字符串更省内存，可直接作为 Map 的键
+     */
+    record Key(long a, long b, long c, long d) {
+
+        static Key of(byte[] digest) {
+            ByteBuffer buffer = ByteBuffer.wrap(digest);
+            return new Key(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+        }
+
+        void writeTo(ByteBuffer buffer) {
+            buffer.putLong(a).putLong(b).putLong(c).putLong(d);
+        }
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private final Map<Key, Long> offsets = new ConcurrentHashMap<>();
+    // 追加位置，写入在 synchronized(this) 下进行；读取用定位读，不加锁
+    private long end;
+
+    EmbeddingDiskCache(File file) {
+        this.file = file;
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (!parent.exists() && !parent.mkdirs()) {
+                throw new IOException("无法创建目录 " + parent);
+            }
+            this.channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.end = load();
+        } catch (IOException e) {
+            throw new RuntimeException("打开向量缓存文件 [" + file + "] 失败：" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 顺序扫描记录头建立索引，返回有效长度
+     */
+    private long load() throws IOException {
+        long size = channel.size();
+        if (size < Integer.BYTES) {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(MAGIC).flip();
+            writeFully(header, 0);
+            return Integer.BYTES;
+        }
+        long position = Integer.BYTES;
+        // 不关闭流：关闭会连带关闭共用的 channel
+        InputStream stream = Channels.newInputStream(channel.position(0));
+        DataInputStream input = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        if (Integer.reverseBytes(input.readInt()) != MAGIC) {
+            throw new IOException("文件头不是向量缓存格式");
+        }
+        byte[] key = new byte[KEY_BYTES];
+        while (position + RECORD_HEADER_BYTES + KEY_BYTES <= size) {
+            int length;
+            try {
+                length = Integer.reverseBytes(input.readInt());
+                input.readInt();
+                input.readFully(key);
+            } catch (EOFException e) {
+                break;
+            }
+            if (length < KEY_BYTES + Integer.BYTES || position + RECORD_HEADER_BYTES + length > size) {
+                break;
+            }
+            input.skipNBytes(length - KEY_BYTES);
+            offsets.put(Key.of(key), position);
+            position += RECORD_HEADER_BYTES + length;
+        }
+        if (position != size) {
+            log.warn("向量缓存文件 [{}] 存在未完成的写入，截断到 {} 字节", file.getName(), position);
+            channel.truncate(position);
+        }
+        return position;
+    }
+
+    /**
+     * @return 缓存的向量；不存在或校验失败时返回 null
+     */
+    float[] get(Key key) {
+        Long offset = offsets.get(key);
+        if (offset == null) {
+            return null;
+        }
+        try {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, offset);
+            int length = header.flip().getInt();
+            int checksum = header.getInt();
+            ByteBuffer payload = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(payload, offset + RECORD_HEADER_BYTES);
+            payload.flip();
+            if (crc(payload) != checksum) {
+                log.warn("向量缓存文件 [{}] 偏移 {} 处的记录校验失败，忽略", file.getName(), offset);
+                offsets.remove(key, offset);
+                return null;
+            }
+            payload.position(KEY_BYTES);
+            float[] vector = new float[payload.getInt()];
+            payload.asFloatBuffer().get(vector);
+            return vector;
+        } catch (IOException e) {
+            log.warn("读取向量缓存文件 [{}] 失败：{}", file.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 追加一批向量，一次写入
+     */
+    void putAll(Map<Key, float[]> vectors) {
+        int bytes = 0;
+        for (float[] vector : vectors.values()) {
+            bytes += RECORD_HEADER_BYTES + KEY_BYTES + Integer.BYTES + vector.length * Float.BYTES;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (Map.Entry<Key, float[]> entry : vectors.entrySet()) {
+            float[] vector = entry.getValue();
+            int start = buffer.position();
+            buffer.putInt(KEY_BYTES + Integer.BYTES + vector.length * Float.BYTES).putInt(0);
+            int payloadStart = buffer.position();
+            // 键按大端写入，与 Key.of 的读取顺序一致
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            entry.getKey().writeTo(buffer);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(vector.length);
+            buffer.asFloatBuffer().put(vector);
+            buffer.position(buffer.position() + vector.length * Float.BYTES);
+            buffer.putInt(start + Integer.BYTES, crc(buffer.duplicate().position(payloadStart).limit(buffer.position())));
+        }
+        buffer.flip();
+        synchronized (this) {
+            long offset = end;
+            try {
+                writeFully(buffer, offset);
+            } catch (IOException e) {
+                log.warn("写入向量缓存文件 [{}] 失败：{}", file.getName(), e.getMessage());
+                return;
+            }
+            end += bytes;
+            for (Map.Entry<Key, float[]> entry : vectors.entrySet()) {
+                offsets.put(entry.getKey(), offset);
+                offset += RECORD_HEADER_BYTES + KEY_BYTES + Integer.BYTES + entry.getValue().length * Float.BYTES;
+            }
+        }
+    }
+
+    int size() {
+        return offsets.size();
+    }
+
+    synchronized long bytes() {
+        return end;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.force(true);
+            channel.close();
+        } catch (IOException e) {
+            log.warn("关闭向量缓存文件 [{}] 失败：{}", file.getName(), e.getMessage());
+        }
+    }
+
+    private static int crc(ByteBuffer payload) {
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(payload.duplicate());
+        return (int) crc32c.getValue();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("记录超出文件末尾");
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,512 @@
+package com.example.ziwanaiagent.rag;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.IntPredicate;
+
+/**
+ * HNSW（分层可导航小世界图）近似最近邻索引，相似度为余弦
+ * <p>
+ * 全部数据存放在原始类型数组中，单个向量没有对象开销：
+ * <ul>
+ *     <li>向量：归一化后按节点号分页存放在 float[] 中（每页 {@value #PAGE_SIZE} 个节点），余弦相似度即点积，
+ *     由 {@link VectorSimilarity} 计算</li>
+ *     <li>第 0 层邻接表：按页存放在 int[] 中，每个节点占 [邻居数][邻居 × 2M]</li>
+ *     <li>上层邻接表：只有少数节点有上层，按节点存放 int[]，每层占 [邻居数][邻居 × M]</li>
+ * </ul>
+ * 节点号即插入顺序（从 0 开始）。写入非线程安全，需由调用方串行化；构建完成后可被多个线程并发查询。
+ * 查询可传入过滤条件：不满足条件的节点仍参与图上的导航，但不进入结果。
+ */
+public class HnswIndex {
+
+    /**
+     * @param m              上层每个节点的最大邻居数，第 0 层为 2m
+     * @param efConstruction 构建时的候选集大小，越大图质量越好、构建越慢
+     * @param efSearch       查询时的默认候选集大小，越大召回越高、查询越慢
+     */
+    public record Config(int m, int efConstruction, int efSearch) {
+
+        public static final Config DEFAULT = new Config(16, 100, 64);
+
+        public Config {
+            if (m < 2 || efConstruction < 1 || efSearch < 1) {
+                throw new IllegalArgumentException("非法的 HNSW 参数：m=" + m + ", efConstruction=" + efConstruction
+                        + ", efSearch=" + efSearch);
+            }
+        }
+    }
+
+    /**
+     * 查询结果，按相似度从高到低排列
+     */
+    public record Result(int[] nodes, float[] scores) {
+
+        static final Result EMPTY = new Result(new int[0], new float[0]);
+
+        public int size() {
+            return nodes.length;
+        }
+    }
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int MAX_LEVEL = 16;
+
+    /** 访问集合池的容量：超过该并发度的查询临时分配，用完丢弃 */
+    private static final int VISITED_POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private final int dimensions;
+    private final Config config;
+    private final int maxM0;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+
+    private float[][] vectorPages = new float[0][];
+    private int[][] level0Pages = new int[0][];
+    private int[][] upperLinks = new int[0][];
+    private byte[] levels = new byte[0];
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    /**
+     * 可复用的访问集合，按索引共享而不是按线程：查询多在虚拟线程上执行，按线程缓存时每个新线程都要重新分配 int[size]
+     */
+    private final ArrayBlockingQueue<VisitedSet> visitedPool = new ArrayBlockingQueue<>(VISITED_POOL_SIZE);
+
+    public HnswIndex(int dimensions, Config config) {
+        this(dimensions, config, 42);
+    }
+
+    /**
+     * @param seed 层级随机数种子，相同输入与种子构建出相同的图
+     */
+    public HnswIndex(int dimensions, Config config, long seed) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("维度必须大于 0");
+        }
+        this.dimensions = dimensions;
+        this.config = config;
+        this.maxM0 = config.m() * 2;
+        this.levelMultiplier = 1 / Math.log(config.m());
+        this.random = new SplittableRandom(seed);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public Config config() {
+        return config;
+    }
+
+    /**
+     * 插入一个向量
+     *
+     * @return 节点号
+     */
+    public int add(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("向量维度 " + vector.length + " 与索引维度 " + dimensions + " 不一致");
+        }
+        float[] normalized = normalize(vector);
+        int node = size;
+        ensureCapacity(node + 1);
+        System.arraycopy(normalized, 0, vectorPages[node >>> PAGE_BITS], (node & PAGE_MASK) * dimensions, dimensions);
+        int level = randomLevel();
+        levels[node] = (byte) level;
+        if (level > 0) {
+            upperLinks[node] = new int[level * (config.m() + 1)];
+        }
+        size++;
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedySearch(normalized, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NeighborQueue candidates = searchLayer(normalized, current, config.efConstruction(), l, null);
+            int[] selected = selectNeighbors(candidates, maxLinks(l));
+            int[] links = linkArray(node, l);
+            int offset = linkOffset(node, l);
+            links[offset] = selected.length;
+            System.arraycopy(selected, 0, links, offset + 1, selected.length);
+            for (int neighbor : selected) {
+                addLink(neighbor, node, l);
+            }
+            // 下一层从本层最相近的节点出发
+            current = selected.length > 0 ? selected[0] : current;
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+
+    public Result search(float[] query, int k) {
+        return search(query, k, config.efSearch(), null);
+    }
+
+    /**
+     * 查询与 query 最相近的 k 个节点
+     *
+     * @param ef     候选集大小，小于 k 时按 k 处理
+     * @param filter 节点过滤条件，null 表示不过滤
+     */
+    public Result search(float[] query, int k, int ef, IntPredicate filter) {
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("查询向量维度 " + query.length + " 与索引维度 " + dimensions + " 不一致");
+        }
+        if (size == 0 || k <= 0) {
+            return Result.EMPTY;
+        }
+        float[] normalized = normalize(query);
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedySearch(normalized, current, l);
+        }
+        NeighborQueue results = searchLayer(normalized, current, Math.max(ef, k), 0, filter);
+        while (results.size() > k) {
+            results.pop();
+        }
+        int count = results.size();
+        int[] nodes = new int[count];
+        float[] scores = new float[count];
+        for (int i = count - 1; i >= 0; i--) {
+            scores[i] = results.topScore();
+            nodes[i] = results.pop();
+        }
+        return new Result(nodes, scores);
+    }
+
+    /**
+     * 上层导航：沿邻居贪心移动到本层最相近的节点
+     */
+    private int greedySearch(float[] query, int entry, int level) {
+        int current = entry;
+        float currentScore = score(query, current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] links = linkArray(current, level);
+            int offset = linkOffset(current, level);
+            int count = links[offset];
+            for (int i = 1; i <= count; i++) {
+                int neighbor = links[offset + i];
+                float s = score(query, neighbor);
+                if (s > currentScore) {
+                    currentScore = s;
+                    current = neighbor;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在某一层上做候选集大小为 ef 的最佳优先搜索
+     *
+     * @return 最多 ef 个满足过滤条件的结果（小顶堆，堆顶为其中最不相近的）
+     */
+    private NeighborQueue searchLayer(float[] query, int entry, int ef, int level, IntPredicate filter) {
+        VisitedSet visited = visitedPool.poll();
+        if (visited == null) {
+            visited = new VisitedSet();
+        }
+        try {
+            return searchLayer(query, entry, ef, level, filter, visited);
+        } finally {
+            visitedPool.offer(visited);
+        }
+    }
+
+    private NeighborQueue searchLayer(float[] query, int entry, int ef, int level, IntPredicate filter,
+                                      VisitedSet visited) {
+        visited.reset(size);
+        NeighborQueue candidates = new NeighborQueue(ef * 2, true);
+        NeighborQueue results = new NeighborQueue(ef + 1, false);
+        float entryScore = score(query, entry);
+        visited.visit(entry);
+        candidates.push(entry, entryScore);
+        if (filter == null || filter.test(entry)) {
+            results.push(entry, entryScore);
+        }
+        while (candidates.size() > 0) {
+            float candidateScore = candidates.topScore();
+            if (results.size() >= ef && candidateScore < results.topScore()) {
+                break;
+            }
+            int candidate = candidates.pop();
+            int[] links = linkArray(candidate, level);
+            int offset = linkOffset(candidate, level);
+            int count = links[offset];
+            for (int i = 1; i <= count; i++) {
+                int neighbor = links[offset + i];
+                if (!visited.visit(neighbor)) {
+                    continue;
+                }
+                float s = score(query, neighbor);
+                if (results.size() < ef || s > results.topScore()) {
+                    candidates.push(neighbor, s);
+                    if (filter == null || filter.test(neighbor)) {
+                        results.push(neighbor, s);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 启发式选邻（HNSW 论文算法 4）：按相似度从高到低，只保留比已选邻居更接近目标的候选，
+     * 让邻居分散在不同方向上，保持图的连通性
+     *
+     * @param candidates 候选小顶堆，会被清空
+     * @return 选中的节点，按相似度从高到低
+     */
+    private int[] selectNeighbors(NeighborQueue candidates, int max) {
+        int count = candidates.size();
+        int[] nodes = new int[count];
+        float[] scores = new float[count];
+        for (int i = count - 1; i >= 0; i--) {
+            scores[i] = candidates.topScore();
+            nodes[i] = candidates.pop();
+        }
+        return selectDiverse(nodes, scores, count, max);
+    }
+
+    private int[] selectDiverse(int[] nodes, float[] scores, int count, int max) {
+        int[] selected = new int[Math.min(count, max)];
+        int selectedCount = 0;
+        for (int i = 0; i < count && selectedCount < max; i++) {
+            int candidate = nodes[i];
+            boolean diverse = true;
+            for (int j = 0; j < selectedCount; j++) {
+                if (score(candidate, selected[j]) > scores[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[selectedCount++] = candidate;
+            }
+        }
+        return selectedCount == selected.length ? selected : Arrays.copyOf(selected, selectedCount);
+    }
+
+    /**
+     * 为已有节点补充一条反向边，邻居已满时重新选邻
+     */
+    private void addLink(int node, int newNeighbor, int level) {
+        int[] links = linkArray(node, level);
+        int offset = linkOffset(node, level);
+        int count = links[offset];
+        int max = maxLinks(level);
+        if (count < max) {
+            links[offset + 1 + count] = newNeighbor;
+            links[offset] = count + 1;
+            return;
+        }
+        NeighborQueue candidates = new NeighborQueue(count + 1, false);
+        for (int i = 1; i <= count; i++) {
+            int neighbor = links[offset + i];
+            candidates.push(neighbor, score(node, neighbor));
+        }
+        candidates.push(newNeighbor, score(node, newNeighbor));
+        int[] selected = selectNeighbors(candidates, max);
+        links[offset] = selected.length;
+        System.arraycopy(selected, 0, links, offset + 1, selected.length);
+    }
+
+    private int maxLinks(int level) {
+        return level == 0 ? maxM0 : config.m();
+    }
+
+    private int[] linkArray(int node, int level) {
+        return level == 0 ? level0Pages[node >>> PAGE_BITS] : upperLinks[node];
+    }
+
+    private int linkOffset(int node, int level) {
+        return level == 0 ? (node & PAGE_MASK) * (maxM0 + 1) : (level - 1) * (config.m() + 1);
+    }
+
+    private int randomLevel() {
+        double r = 1.0 - random.nextDouble();
+        return Math.min((int) (-Math.log(r) * levelMultiplier), MAX_LEVEL);
+    }
+
+    private void ensureCapacity(int capacity) {
+        int pages = (capacity + PAGE_SIZE - 1) >>> PAGE_BITS;
+        if (pages > vectorPages.length) {
+            int oldPages = vectorPages.length;
+            vectorPages = Arrays.copyOf(vectorPages, pages);
+            level0Pages = Arrays.copyOf(level0Pages, pages);
+            for (int i = oldPages; i < pages; i++) {
+                vectorPages[i] = new float[PAGE_SIZE * dimensions];
+                level0Pages[i] = new int[PAGE_SIZE * (maxM0 + 1)];
+            }
+        }
+        if (capacity > levels.length) {
+            int newLength = Math.max(capacity, levels.length + (levels.length >> 1) + 16);
+            levels = Arrays.copyOf(levels, newLength);
+            upperLinks = Arrays.copyOf(upperLinks, newLength);
+        }
+    }
+
+    private float score(float[] query, int node) {
+        return dot(query, 0, vectorPages[node >>> PAGE_BITS], (node & PAGE_MASK) * dimensions, dimensions);
+    }
+
+    private float score(int a, int b) {
+        return dot(vectorPages[a >>> PAGE_BITS], (a & PAGE_MASK) * dimensions,
+                vectorPages[b >>> PAGE_BITS], (b & PAGE_MASK) * dimensions, dimensions);
+    }
+
+    private static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return VectorSimilarity.dot(a, aOffset, b, bOffset, length);
+    }
+
+    private static float[] normalize(float[] vector) {
+        float norm = VectorSimilarity.norm(vector);
+        float[] normalized = vector.clone();
+        if (norm > 0) {
+            float scale = 1 / norm;
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] *= scale;
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * (相似度, 节点号) 二元组的二叉堆，编码为 long 存放，不产生对象
+     */
+    static final class NeighborQueue {
+
+        private final boolean maxHeap;
+        private long[] heap;
+        private int size;
+
+        NeighborQueue(int initialCapacity, boolean maxHeap) {
+            this.heap = new long[Math.max(initialCapacity, 4)];
+            this.maxHeap = maxHeap;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void push(int node, float score) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            long value = encode(node, score);
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(value, heap[parent])) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        /**
+         * 弹出堆顶
+         *
+         * @return 节点号
+         */
+        int pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < size && before(heap[right], heap[child])) {
+                    child = right;
+                }
+                if (!before(heap[child], last)) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return (int) top;
+        }
+
+        float topScore() {
+            return decodeScore(heap[0]);
+        }
+
+        private boolean before(long a, long b) {
+            return maxHeap ? a > b : a < b;
+        }
+
+        /**
+         * 高 32 位为可按整数比较的相似度，低 32 位为节点号
+         */
+        private static long encode(int node, float score) {
+            int bits = Float.floatToIntBits(score);
+            bits ^= (bits >> 31) & 0x7fffffff;
+            return ((long) bits << 32) | (node & 0xffffffffL);
+        }
+
+        private static float decodeScore(long value) {
+            int bits = (int) (value >> 32);
+            bits ^= (bits >> 31) & 0x7fffffff;
+            return Float.intBitsToFloat(bits);
+        }
+    }
+
+    /**
+     * 按代号标记的访问集合，从索引的池中借出复用，重置时只递增代号
+     */
+    private static final class VisitedSet {
+
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length + (marks.length >> 1))];
+                epoch = 0;
+            }
+            if (++epoch == 0) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        /**
+         * @return 首次访问返回 true
+         */
+        boolean visit(int node) {
+            if (marks[node] == epoch) {
+                return false;
+            }
+            marks[node] = epoch;
+            return true;
+        }
+    }
+}
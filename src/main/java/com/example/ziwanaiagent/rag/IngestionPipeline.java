@@ -0,0 +1,452 @@
+package com.example.ziwanaiagent.rag;
+
+import com.example.ziwanaiagent.chatmemory.TokenEstimator;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.retry.NonTransientAiException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * 向量知识库批量入库流水线：加载 → 切分 → 增强 → 向量化 → 写入
+ * <p>
+ * 每个阶段有独立的并发度，阶段之间用有界队列连接，上游快于下游时自然阻塞（背压），
+ * 文档边加载边向量化，总耗时取决于允许的并发与限流配额，而不是逐批等待的往返延迟之和。
+ * 切分后的文档按 batchSize 攒批（DashScope 向量化接口单次最多 25 条），增强、向量化、写入都以批为单位。
+ * <p>
+ * 向量化阶段先经两个令牌桶限流：每分钟请求数与每分钟估算 token 数，默认值取 DashScope 通用文本向量模型的配额。
+ * 增强、向量化、写入失败时按指数退避加随机抖动重试，{@link NonTransientAiException} 等不可恢复的错误直接失败；
+ * 任一批最终失败时整条流水线停止，已在途的批被丢弃，调用方收到异常。
+ * <p>
+ * 向量存储的 add 会自行向量化，因此向量化阶段要求 embeddingModel 是与存储共用的 {@link CachingEmbeddingModel}：
+ * 流水线并发算出的向量进入缓存，写入时全部命中。缓存键按 Document#getText 计算，
+ * 与 PgVectorStore、{@link MappedFileVectorStore} 整批向量化的方式一致；逐条按格式化内容向量化的存储（如 SimpleVectorStore）不会命中。不是缓存模型时向量化阶段只做限流，由写入阶段的 add 实际调用模型，
+ * 避免同一批文本被向量化两次。
+ * <p>
+ * 指标：rag.ingest.documents（按 stage 区分，各阶段已处理的文档数，用于观察进度）、rag.ingest.retries（按 stage）、
+ * rag.ingest.rate.limit.wait（限流等待时长）。
+ */
+@Slf4j
+public class IngestionPipeline {
+
+    private static final Object END = new Object();
+
+    /**
+     * @param loadConcurrency   加载阶段并发度（读取、解析文件）
+     * @param splitConcurrency  切分阶段并发度
+     * @param enrichConcurrency 增强阶段并发度（如关键词增强会调用对话模型）
+     * @param embedConcurrency  向量化阶段并发度，实际速率同时受令牌桶约束
+     * @param upsertConcurrency 写入阶段并发度
+     * @param batchSize         每批文档数
+     * @param queueCapacity     阶段间队列容量（批数），决定在途数据量上限
+     * @param maxAttempts       每批最多尝试次数（含首次）
+     * @param initialBackoff    首次重试前的等待时长，之后每次翻倍
+     * @param maxBackoff        重试等待时长上限
+     */
+    public record Config(int loadConcurrency, int splitConcurrency, int enrichConcurrency, int embedConcurrency,
+                         int upsertConcurrency, int batchSize, int queueCapacity, int maxAttempts,
+                         Duration initialBackoff, Duration maxBackoff) {
+
+        public static final Config DEFAULT = new Config(4, 2, 4, 8, 2, 25, 16, 5,
+                Duration.ofMillis(500), Duration.ofSeconds(30));
+    }
+
+    /**
+     * 入库结果
+     *
+     * @param sources   处理的数据源数（如文件数）
+     * @param documents 写入的文档数
+     * @param batches   写入的批数
+     * @param retries   各阶段累计重试次数
+     * @param elapsed   总耗时
+     */
+    public record Result(int sources, int documents, int batches, int retries, Duration elapsed) {
+    }
+
+    private record Batch(int index, List<Document> documents) {
+    }
+
+    @FunctionalInterface
+    private interface StageWorker<I> {
+        void process(I item) throws Exception;
+    }
+
+    private final EmbeddingModel embeddingModel;
+    private final TokenBucket requestLimiter;
+    private final TokenBucket tokenLimiter;
+    private final Config config;
+    private final MeterRegistry meterRegistry;
+    private final boolean warmsCache;
+
+    /**
+     * @param embeddingModel 与目标向量存储共用的向量模型，应为 {@link CachingEmbeddingModel}
+     * @param requestLimiter 向量化请求数限流，为空时不限
+     * @param tokenLimiter   向量化估算 token 数限流，为空时不限
+     * @param meterRegistry  指标注册表，为空时不记录指标
+     */
+    public IngestionPipeline(EmbeddingModel embeddingModel, TokenBucket requestLimiter, TokenBucket tokenLimiter,
+                             Config config, MeterRegistry meterRegistry) {
+        this.embeddingModel = embeddingModel;
+        this.requestLimiter = requestLimiter;
+        this.tokenLimiter = tokenLimiter;
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        this.warmsCache = embeddingModel instanceof CachingEmbeddingModel;
+        if (!warmsCache) {
+            log.warn("入库流水线的向量模型不是 CachingEmbeddingModel，向量化阶段只做限流，由写入阶段调用模型");
+        }
+    }
+
+    /**
+     * 流式入库：数据源逐个加载，切分后攒批，经增强、向量化后交给 sink 写入
+     *
+     * @param sources  数据源，如 Markdown 文件
+     * @param loader   把一个数据源解析为文档
+     * @param splitter 切分文档，不需要时传 {@link UnaryOperator#identity()}
+     * @param enricher 增强一批文档（须逐条返回），不需要时传 {@link UnaryOperator#identity()}
+     * @param sink     写入一批文档，通常为 VectorStore::add，须可并发调用
+     */
+    public <S> Result ingest(List<S> sources, Function<S, List<Document>> loader, UnaryOperator<List<Document>> splitter,
+                             UnaryOperator<List<Document>> enricher, Consumer<List<Document>> sink)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        Run run = new Run();
+        BlockingQueue<Object> loadQueue = run.queue();
+        BlockingQueue<Object> splitQueue = run.queue();
+        BlockingQueue<Object> enrichQueue = run.queue();
+        BlockingQueue<Object> embedQueue = run.queue();
+        BlockingQueue<Object> upsertQueue = run.queue();
+        AtomicInteger upserted = new AtomicInteger();
+        AtomicInteger batches = new AtomicInteger();
+        Batcher batcher = new Batcher(enrichQueue);
+
+        run.stage("load", config.loadConcurrency(), loadQueue, (S source) -> {
+            List<Document> documents = loader.apply(source);
+            record("load", documents.size());
+            splitQueue.put(documents);
+        }, () -> run.end(splitQueue));
+        run.stage("split", config.splitConcurrency(), splitQueue, (List<Document> documents) -> {
+            List<Document> chunks = splitter.apply(documents);
+            record("split", chunks.size());
+            batcher.addAll(chunks);
+        }, () -> {
+            if (run.failure.get() == null) {
+                batcher.flush();
+            }
+            run.end(enrichQueue);
+        });
+        startEnrichAndEmbed(run, enrichQueue, embedQueue, upsertQueue, enricher);
+        run.stage("upsert", config.upsertConcurrency(), upsertQueue, (Batch batch) -> {
+            withRetry(run, "upsert", () -> {
+                sink.accept(batch.documents());
+                return null;
+            });
+            record("upsert", batch.documents().size());
+            int total = upserted.addAndGet(batch.documents().size());
+            if (batches.incrementAndGet() % 10 == 0) {
+                log.info("入库进度：已写入 {} 条，{} 条/秒", total, ratePerSecond(total, start));
+            }
+        }, run::complete);
+
+        for (S source : sources) {
+            if (run.failure.get() != null) {
+                break;
+            }
+            loadQueue.put(source);
+        }
+        run.end(loadQueue);
+        run.await();
+
+        Result result = new Result(sources.size(), upserted.get(), batches.get(), run.retries.get(),
+                Duration.ofNanos(System.nanoTime() - start));
+        log.info("入库完成：{} 个数据源，写入 {} 条（{} 批），重试 {} 次，耗时 {} ms，{} 条/秒", result.sources(),
+                result.documents(), result.batches(), result.retries(), result.elapsed().toMillis(),
+                ratePerSecond(result.documents(), start));
+        return result;
+    }
+
+    /**
+     * 只执行增强与向量化两个阶段，按原顺序返回增强后的文档，向量留在 {@link CachingEmbeddingModel} 中，
+     * 可直接作为 {@link MappedFileVectorStore#sync} 的 enricher：sync 只把需要重新向量化的文档交给这里，
+     * 随后它自己的向量化全部命中缓存
+     */
+    public List<Document> prepare(List<Document> documents, UnaryOperator<List<Document>> enricher)
+            throws InterruptedException {
+        if (documents.isEmpty()) {
+            return documents;
+        }
+        int batchSize = Math.max(1, config.batchSize());
+        int batchCount = (documents.size() + batchSize - 1) / batchSize;
+        List<List<Document>> prepared = new ArrayList<>(batchCount);
+        for (int i = 0; i < batchCount; i++) {
+            prepared.add(null);
+        }
+        Run run = new Run();
+        BlockingQueue<Object> enrichQueue = run.queue();
+        BlockingQueue<Object> embedQueue = run.queue();
+        BlockingQueue<Object> doneQueue = run.queue();
+        startEnrichAndEmbed(run, enrichQueue, embedQueue, doneQueue, enricher);
+        run.stage("collect", 1, doneQueue, (Batch batch) -> prepared.set(batch.index(), batch.documents()), run::complete);
+
+        for (int i = 0; i < batchCount && run.failure.get() == null; i++) {
+            int from = i * batchSize;
+            enrichQueue.put(new Batch(i, documents.subList(from, Math.min(from + batchSize, documents.size()))));
+        }
+        run.end(enrichQueue);
+        run.await();
+
+        List<Document> result = new ArrayList<>(documents.size());
+        prepared.forEach(result::addAll);
+        return result;
+    }
+
+    private void startEnrichAndEmbed(Run run, BlockingQueue<Object> enrichQueue, BlockingQueue<Object> embedQueue,
+                                     BlockingQueue<Object> output, UnaryOperator<List<Document>> enricher) {
+        run.stage("enrich", config.enrichConcurrency(), enrichQueue, (Batch batch) -> {
+            List<Document> enriched = withRetry(run, "enrich", () -> enricher.apply(batch.documents()));
+            if (enriched.size() != batch.documents().size()) {
+                throw new IllegalStateException("enricher 必须逐条返回文档");
+            }
+            record("enrich", enriched.size());
+            embedQueue.put(new Batch(batch.index(), enriched));
+        }, () -> run.end(embedQueue));
+        run.stage("embed", config.embedConcurrency(), embedQueue, (Batch batch) -> {
+            embed(run, batch.documents());
+            record("embed", batch.documents().size());
+            output.put(batch);
+        }, () -> run.end(output));
+    }
+
+    private void embed(Run run, List<Document> documents) throws Exception {
+        List<String> texts = documents.stream().map(Document::getText).toList();
+        int tokens = texts.stream().mapToInt(TokenEstimator::estimate).sum();
+        withRetry(run, "embed", () -> {
+            acquire(requestLimiter, 1);
+            acquire(tokenLimiter, tokens);
+            if (!warmsCache) {
+                return null;
+            }
+            // 选项与 VectorStore 内部向量化时一致（不指定模型与维度），保证缓存键相同；走文档路径写入磁盘缓存
+            EmbeddingResponse response = ((CachingEmbeddingModel) embeddingModel)
+                    .callForDocuments(new EmbeddingRequest(texts, EmbeddingOptionsBuilder.builder().build()));
+            if (response.getResults().size() != texts.size()) {
+                throw new IllegalStateException("向量模型返回 " + response.getResults().size() + " 条结果，请求 " + texts.size() + " 条");
+            }
+            return response;
+        });
+    }
+
+    private void acquire(TokenBucket limiter, double permits) throws InterruptedException {
+        if (limiter == null) {
+            return;
+        }
+        Duration waited = limiter.acquire(permits);
+        if (meterRegistry != null && !waited.isZero()) {
+            meterRegistry.timer("rag.ingest.rate.limit.wait").record(waited);
+        }
+    }
+
+    /**
+     * 按指数退避加随机抖动重试，不可恢复的错误直接抛出
+     */
+    private <T> T withRetry(Run run, String stage, Callable<T> action) throws Exception {
+        long backoffNanos = config.initialBackoff().toNanos();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.call();
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                if (attempt >= config.maxAttempts() || !isRetryable(e)) {
+                    throw e;
+                }
+                long sleepNanos = backoffNanos / 2 + ThreadLocalRandom.current().nextLong(backoffNanos / 2 + 1);
+                log.warn("入库 {} 阶段第 {} 次失败，{} ms 后重试：{}", stage, attempt,
+                        TimeUnit.NANOSECONDS.toMillis(sleepNanos), e.getMessage());
+                run.retries.incrementAndGet();
+                if (meterRegistry != null) {
+                    meterRegistry.counter("rag.ingest.retries", "stage", stage).increment();
+                }
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                backoffNanos = Math.min(backoffNanos * 2, config.maxBackoff().toNanos());
+            }
+        }
+    }
+
+    private static boolean isRetryable(Exception e) {
+        return !(e instanceof NonTransientAiException || e instanceof IllegalArgumentException
+                || e instanceof IllegalStateException);
+    }
+
+    private void record(String stage, int documents) {
+        if (meterRegistry != null) {
+            meterRegistry.counter("rag.ingest.documents", "stage", stage).increment(documents);
+        }
+    }
+
+    private static long ratePerSecond(int documents, long startNanos) {
+        long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+        return documents * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * 一次运行的共享状态：各阶段的工作线程、首个失败原因与完成信号
+     */
+    private final class Run {
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicInteger retries = new AtomicInteger();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("rag-ingest-", 0).factory());
+
+        BlockingQueue<Object> queue() {
+            return new ArrayBlockingQueue<>(Math.max(1, config.queueCapacity()));
+        }
+
+        /**
+         * 启动一个阶段：workers 个线程从 input 取元素处理，收到结束标记后放回供同阶段其他线程看到，
+         * 最后一个退出的线程执行 onComplete（通常是向下游发送结束标记）。
+         * 出现失败后各线程继续取元素但不再处理，保证上游不会因队列满而阻塞。
+         */
+        @SuppressWarnings("unchecked")
+        <I> void stage(String name, int workers, BlockingQueue<Object> input, StageWorker<I> worker, Runnable onComplete) {
+            int count = Math.max(1, workers);
+            AtomicInteger remaining = new AtomicInteger(count);
+            for (int i = 0; i < count; i++) {
+                executor.execute(() -> {
+                    try {
+                        while (true) {
+                            Object item = input.take();
+                            if (item == END) {
+                                input.put(END);
+                                break;
+                            }
+                            if (failure.get() != null) {
+                                continue;
+                            }
+                            try {
+                                worker.process((I) item);
+                            } catch (InterruptedException e) {
+                                throw e;
+                            } catch (Throwable e) {
+                                fail(name, e);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        fail(name, e);
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) {
+                            onComplete.run();
+                        }
+                    }
+                });
+            }
+        }
+
+        void end(BlockingQueue<Object> queue) {
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("end", e);
+                complete();
+            }
+        }
+
+        void complete() {
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                fail("await", e);
+                executor.shutdownNow();
+                throw e;
+            }
+            executor.close();
+            Throwable cause = failure.get();
+            if (cause != null) {
+                throw new RuntimeException("入库失败：" + cause.getMessage(), cause);
+            }
+        }
+
+        private void fail(String stage, Throwable e) {
+            if (failure.compareAndSet(null, e)) {
+                log.error("入库 {} 阶段失败，停止流水线", stage, e);
+            }
+        }
+    }
+
+    /**
+     * 把切分阶段各线程产出的文档攒成固定大小的批
+     */
+    private final class Batcher {
+
+        private final BlockingQueue<Object> output;
+        private List<Document> pending = new ArrayList<>();
+        private int nextIndex = 0;
+
+        Batcher(BlockingQueue<Object> output) {
+            this.output = output;
+        }
+
+        void addAll(List<Document> documents) throws InterruptedException {
+            for (Document document : documents) {
+                Batch full = null;
+                synchronized (this) {
+                    pending.add(document);
+                    if (pending.size() >= Math.max(1, config.batchSize())) {
+                        full = take();
+                    }
+                }
+                if (full != null) {
+                    output.put(full);
+                }
+            }
+        }
+
+        void flush() {
+            Batch last;
+            synchronized (this) {
+                last = pending.isEmpty() ? null : take();
+            }
+            if (last != null) {
+                try {
+                    output.put(last);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private Batch take() {
+            Batch batch = new Batch(nextIndex++, pending);
+            pending = new ArrayList<>();
+            return batch;
+        }
+    }
+}
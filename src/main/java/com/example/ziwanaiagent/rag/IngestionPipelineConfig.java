@@ -0,0 +1,71 @@
+package com.example.ziwanaiagent.rag;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 向量知识库入库流水线配置
+ */
+@Configuration
+public class IngestionPipelineConfig {
+
+    @Value("${ingestion.concurrency.load:4}")
+    private int loadConcurrency;
+
+    @Value("${ingestion.concurrency.split:2}")
+    private int splitConcurrency;
+
+    @Value("${ingestion.concurrency.enrich:4}")
+    private int enrichConcurrency;
+
+    @Value("${ingestion.concurrency.embed:8}")
+    private int embedConcurrency;
+
+    @Value("${ingestion.concurrency.upsert:2}")
+    private int upsertConcurrency;
+
+    /**
+     * 每批文档数，DashScope 向量化接口单次最多 25 条
+     */
+    @Value("${ingestion.batch-size:25}")
+    private int batchSize;
+
+    @Value("${ingestion.queue-capacity:16}")
+    private int queueCapacity;
+
+    /**
+     * 向量化限流：每分钟请求数与估算 token 数，小于等于 0 表示不限
+     */
+    @Value("${ingestion.rate-limit.requests-per-minute:1800}")
+    private double requestsPerMinute;
+
+    @Value("${ingestion.rate-limit.tokens-per-minute:1200000}")
+    private double tokensPerMinute;
+
+    @Value("${ingestion.retry.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${ingestion.retry.initial-backoff:500ms}")
+    private Duration initialBackoff;
+
+    @Value("${ingestion.retry.max-backoff:30s}")
+    private Duration maxBackoff;
+
+    @Bean
+    public IngestionPipeline ingestionPipeline(@Qualifier("cachingEmbeddingModel") EmbeddingModel embeddingModel,
+                                               MeterRegistry meterRegistry) {
+        IngestionPipeline.Config config = new IngestionPipeline.Config(loadConcurrency, splitConcurrency,
+                enrichConcurrency, embedConcurrency, upsertConcurrency, batchSize, queueCapacity, maxAttempts,
+                initialBackoff, maxBackoff);
+        return new IngestionPipeline(embeddingModel,
+                requestsPerMinute > 0 ? TokenBucket.perMinute(requestsPerMinute) : null,
+                tokensPerMinute > 0 ? TokenBucket.perMinute(tokensPerMinute) : null,
+                config, meterRegistry);
+    }
+}
@@ -10,6 +10,10 @@ import org.springframework.ai.document.Document;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Component
 @Slf4j
@@ -21,34 +25,73 @@ class LoveAppDocumentLoader {
         this.resourcePatternResolver = resourcePatternResolver;
     }
 
+    /**
+     * 并行解析全部 Markdown 文件，结果按文件顺序拼接
+     * <p>
+     * 任一文件加载失败时抛出异常而不是返回部分结果，避免调用方按不完整的文档集删除已有数据。
+     *
+     * @throws IllegalStateException 列举或解析文件失败、加载被中断
+     */
     public List<Document> loadMarkdowns() {
+        List<Resource> resources = markdownResources();
         List<Document> allDocuments = new ArrayList<>();
-        try {
-            // 多个 Markdown 文件的路径模式
-            Resource[] resources = resourcePatternResolver.getResources("classpath:document/*.md");
+        if (resources.isEmpty()) {
+            return allDocuments;
+        }
+        // 解析是 CPU 密集的，线程数不超过核数
+        int threads = Math.min(resources.size(), Runtime.getRuntime().availableProcessors());
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<List<Document>>> futures = new ArrayList<>(resources.size());
             for (Resource resource : resources) {
-                String fileName = resource.getFilename();
-                // 提取文档倒数第 3 和第 2 个字作为标签
-                String status = "";
-                if (fileName != null) {
-                    status = fileName.substring(fileName.length() - 6, fileName.length() - 4);
-                }
-                MarkdownDocumentReaderConfig config = null;
-                if (fileName != null) {
-                    config = MarkdownDocumentReaderConfig.builder()
-                            .withHorizontalRuleCreateDocument(true)
-                            .withIncludeCodeBlock(false)
-                            .withIncludeBlockquote(false)
-                            .withAdditionalMetadata("filename", fileName)
-                            .withAdditionalMetadata("status", status)
-                            .build();
-                }
-                MarkdownDocumentReader reader = new MarkdownDocumentReader(resource, config);
-                allDocuments.addAll(reader.get());
+                futures.add(executor.submit(() -> load(resource)));
             }
-        } catch (IOException e) {
-            log.error("Markdown 文档加载失败", e);
+            for (Future<List<Document>> future : futures) {
+                allDocuments.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Markdown 文档加载被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Markdown 文档加载失败", e.getCause());
         }
         return allDocuments;
     }
+
+    /**
+     * 知识库中的 Markdown 文件
+     *
+     * @throws IllegalStateException 列举文件失败
+     */
+    public List<Resource> markdownResources() {
+        try {
+            // 多个 Markdown 文件的路径模式
+            return List.of(resourcePatternResolver.getResources("classpath:document/*.md"));
+        } catch (IOException e) {
+            throw new IllegalStateException("Markdown 文档列举失败", e);
+        }
+    }
+
+    /**
+     * 解析单个 Markdown 文件，可作为 {@link IngestionPipeline} 的加载阶段
+     */
+    public List<Document> load(Resource resource) {
+        String fileName = resource.getFilename();
+        // 提取文档倒数第 3 和第 2 个字作为标签
+        String status = "";
+        if (fileName != null) {
+            status = fileName.substring(fileName.length() - 6, fileName.length() - 4);
+        }
+        MarkdownDocumentReaderConfig config = null;
+        if (fileName != null) {
+            config = MarkdownDocumentReaderConfig.builder()
+                    .withHorizontalRuleCreateDocument(true)
+                    .withIncludeCodeBlock(false)
+                    .withIncludeBlockquote(false)
+                    .withAdditionalMetadata("filename", fileName)
+                    .withAdditionalMetadata("status", status)
+                    .build();
+        }
+        MarkdownDocumentReader reader = new MarkdownDocumentReader(resource, config);
+        return reader.get();
+    }
 }
@@ -1,23 +1,25 @@
 package com.example.ziwanaiagent.rag;
 
 import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
-import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.ai.document.Document;
 import org.springframework.context.annotation.Profile;
 
+import java.io.File;
 import java.util.List;
 
 /**
  * 向量知识库配置
  */
-//@Configuration
+@Configuration
 @Profile("!test")
+@Slf4j
 public class LoveAppVectorStoreConfig {
 
     @Resource
@@ -26,22 +28,55 @@ public class LoveAppVectorStoreConfig {
 
     @Resource
     private MyKeywordEnricher myKeywordEnricher;
-    
-    @Bean
-    VectorStore loveAppVectorStore(EmbeddingModel dashscopeEmbeddingModel) {
-        SimpleVectorStore simpleVectorStore = SimpleVectorStore.builder(dashscopeEmbeddingModel)
-                .build();
-        // 加载文档
-        List<Document> documents = loveAppDocumentLoader.loadMarkdowns();
 
-        // 添加关键词
-        List<Document> documentList = myKeywordEnricher.enrichDocuments(documents);
+    @Resource
+    private IngestionPipeline ingestionPipeline;
+
+    /**
+     * 向量文件目录，重启后直接映射加载
+     */
+    @Value("${vector-store.dir:${user.dir}/tmp/vector-store}")
+    private String vectorStoreDir;
 
+    /**
+     * 记录数达到该值时在后台构建 HNSW 近似最近邻索引
+     */
+    @Value("${vector-store.hnsw.threshold:5000}")
+    private int hnswThreshold;
 
-        simpleVectorStore.add(documentList);
+    @Value("${vector-store.hnsw.m:16}")
+    private int hnswM;
 
+    @Value("${vector-store.hnsw.ef-construction:100}")
+    private int hnswEfConstruction;
 
+    @Value("${vector-store.hnsw.ef-search:64}")
+    private int hnswEfSearch;
+
+    @Bean
+    VectorStore loveAppVectorStore(@Qualifier("cachingEmbeddingModel") EmbeddingModel embeddingModel) {
+        MappedFileVectorStore vectorStore = new MappedFileVectorStore(new File(vectorStoreDir), "love-app",
+                embeddingModel, hnswThreshold, new HnswIndex.Config(hnswM, hnswEfConstruction, hnswEfSearch));
+        // 加载文档；加载不完整时不同步，否则缺失的文档会被当作已删除
+        List<Document> documents;
+        try {
+            documents = loveAppDocumentLoader.loadMarkdowns();
+        } catch (IllegalStateException e) {
+            log.error("恋爱知识库文档加载失败，跳过同步，沿用已有的 {} 条向量", vectorStore.size(), e);
+            return vectorStore;
+        }
 
-        return simpleVectorStore;
+        // 只对新增或内容变化的文档添加关键词并向量化：流水线分批并发增强、限流向量化，向量进入缓存后由 sync 直接取用
+        MappedFileVectorStore.SyncResult result = vectorStore.sync(documents, changed -> {
+            try {
+                return ingestionPipeline.prepare(changed, myKeywordEnricher::enrichDocuments);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("恋爱知识库同步被中断", e);
+            }
+        });
+        log.info("恋爱知识库同步完成：沿用 {} 条，重新向量化 {} 条，删除 {} 条",
+                result.reused(), result.embedded(), result.removed());
+        return vectorStore;
     }
 }
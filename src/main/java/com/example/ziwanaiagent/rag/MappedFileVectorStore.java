@@ -0,0 +1,681 @@
+package com.example.ziwanaiagent.rag;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionConverter;
+import org.springframework.ai.vectorstore.filter.converter.SimpleVectorStoreFilterExpressionConverter;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * 持久化到本地文件的向量存储，替代每次启动都全量向量化的 {@link org.springframework.ai.vectorstore.SimpleVectorStore}
+ * <p>
+ * 每个存储由两个文件组成：
+ * <ul>
+ *     <li>{@code <name>.vec}：[魔数][代号 long][维度][条数] 之后是按行排列的 float32 向量（小端），只读内存映射，不进堆</li>
+ *     <li>{@code <name>.meta}：[魔数][代号 varlong][维度][条数]{[id][内容哈希][正文][向量模长][元信息]}...</li>
+ * </ul>
+ * 两个文件的代号必须一致，否则视为写入中断，按空库处理。
+ * 向量文件整体映射，不能超过 2GB：超过时加载与写入都直接抛出异常，而不是按空库处理后全部重新向量化。
+ * 启动时只读元信息文件并映射向量文件，不调用模型；{@link #sync} 按内容哈希比对，
+ * 只对新增或内容变化的文档执行关键词增强与向量化，未变化的文档沿用已保存的向量与元信息。
+ * <p>
+ * 每次写入整体重写两个文件（先写临时文件再原子替换）并重新映射，适合知识库这类读多写少、规模不大的场景；
+ * 查询读取不可变快照，不加锁。
+ * <p>
+ * 记录数达到 annThreshold 时，后台线程为快照构建 {@link HnswIndex}，构建完成前及记录较少时按全量扫描查询。
+ * 对 status、filename 的过滤先经 {@link MetadataFilterIndex} 求出命中集合：命中很少时直接扫描命中的记录，
+ * 否则作为图搜索的过滤条件。
+ */
+@Slf4j
+public class MappedFileVectorStore implements VectorStore {
+
+    private static final int VECTOR_MAGIC = 0x56454331; // "VEC1"
+    private static final String META_MAGIC = "VECTOR_META_V1";
+    private static final int VECTOR_HEADER_BYTES = 4 + 8 + 4 + 4;
+    /**
+     * 向量文件整体映射为一个缓冲区，单个 MappedByteBuffer 最大 2GB（1536 维约 34 万条）
+     */
+    private static final long MAX_VECTOR_FILE_BYTES = Integer.MAX_VALUE;
+
+    private static final String DISTANCE_METADATA_KEY = "distance";
+
+    /**
+     * 默认启用近似最近邻索引的记录数，更少时全量扫描已足够快
+     */
+    public static final int DEFAULT_ANN_THRESHOLD = 5000;
+
+    /**
+     * 建立倒排位图的元信息键（见 LoveAppDocumentLoader）
+     */
+    private static final Set<String> FILTER_INDEXED_KEYS = Set.of("status", "filename");
+
+    /**
+     * 元信息取值类型
+     */
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_BOOLEAN = 5;
+
+    private final String name;
+    private final File vectorFile;
+    private final File metaFile;
+    private final EmbeddingModel embeddingModel;
+    private final int annThreshold;
+    private final HnswIndex.Config hnswConfig;
+    private final ExpressionParser expressionParser = new SpelExpressionParser();
+    private final FilterExpressionConverter filterExpressionConverter = new SimpleVectorStoreFilterExpressionConverter();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * 分词编码表加载耗时上百毫秒，延迟到首次向量化时创建，不拖慢启动加载
+     */
+    private static final class BatchingStrategyHolder {
+        static final BatchingStrategy INSTANCE = new TokenCountBatchingStrategy();
+    }
+
+    /**
+     * 单条记录（向量在快照的映射缓冲区中，按下标定位）
+     */
+    record Entry(String id, String contentHash, String text, float norm, Map<String, Object> metadata) {
+    }
+
+    /**
+     * 不可变快照：记录列表、对应的向量映射、元信息位图，以及后台构建完成后填入的近似最近邻索引
+     */
+    record Snapshot(int dimensions, List<Entry> entries, FloatBuffer vectors, MetadataFilterIndex filterIndex,
+                    AtomicReference<HnswIndex> ann) {
+
+        static final Snapshot EMPTY = of(0, List.of(), FloatBuffer.allocate(0));
+
+        static Snapshot of(int dimensions, List<Entry> entries, FloatBuffer vectors) {
+            MetadataFilterIndex filterIndex = new MetadataFilterIndex(entries.stream().map(Entry::metadata).toList(),
+                    FILTER_INDEXED_KEYS);
+            return new Snapshot(dimensions, entries, vectors, filterIndex, new AtomicReference<>());
+        }
+
+        float[] vector(int index) {
+            float[] vector = new float[dimensions];
+            vectors.get(index * dimensions, vector);
+            return vector;
+        }
+    }
+
+    /**
+     * 同步结果
+     *
+     * @param reused   内容未变化、沿用已有向量的文档数
+     * @param embedded 新增或内容变化、重新向量化的文档数
+     * @param removed  已不在文档集中而被删除的记录数
+     */
+    public record SyncResult(int reused, int embedded, int removed) {
+    }
+
+    /**
+     * @param dir            存储目录
+     * @param name           存储名称，决定文件名
+     * @param embeddingModel 向量模型
+     */
+    public MappedFileVectorStore(File dir, String name, EmbeddingModel embeddingModel) {
+        this(dir, name, embeddingModel, DEFAULT_ANN_THRESHOLD, HnswIndex.Config.DEFAULT);
+    }
+
+    /**
+     * @param annThreshold 记录数达到该值时构建近似最近邻索引，{@link Integer#MAX_VALUE} 表示始终全量扫描
+     * @param hnswConfig   近似最近邻索引参数
+     */
+    public MappedFileVectorStore(File dir, String name, EmbeddingModel embeddingModel, int annThreshold,
+                                 HnswIndex.Config hnswConfig) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new RuntimeException("创建目录失败：" + dir.getAbsolutePath());
+        }
+        this.name = name;
+        this.vectorFile = new File(dir, name + ".vec");
+        this.metaFile = new File(dir, name + ".meta");
+        this.embeddingModel = embeddingModel;
+        this.annThreshold = annThreshold;
+        this.hnswConfig = hnswConfig;
+        publish(load());
+        log.info("向量存储 [{}] 已加载 {} 条，维度 {}", name, snapshot.entries().size(), snapshot.dimensions());
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return snapshot.entries().size();
+    }
+
+    /**
+     * 当前快照的近似最近邻索引是否已构建完成
+     */
+    public boolean isAnnIndexReady() {
+        return snapshot.ann().get() != null;
+    }
+
+    /**
+     * 将存储内容与给定文档集对齐：内容未变化的沿用已保存的向量，新增或变化的经 enricher 处理后向量化，
+     * 文档集中不存在的记录被删除。内容哈希基于 enricher 处理前的正文与元信息计算，相同内容只保留一份。
+     *
+     * @param documents 文档集（通常为加载器的原始输出）
+     * @param enricher  只对需要向量化的文档调用，如关键词增强；不需要时传 {@link UnaryOperator#identity()}
+     */
+    public SyncResult sync(List<Document> documents, UnaryOperator<List<Document>> enricher) {
+        writeLock.lock();
+        try {
+            Snapshot current = snapshot;
+            Map<String, Integer> existing = new HashMap<>();
+            for (int i = 0; i < current.entries().size(); i++) {
+                existing.putIfAbsent(current.entries().get(i).contentHash(), i);
+            }
+            Set<String> seen = new HashSet<>();
+            List<Integer> reusedIndexes = new ArrayList<>(documents.size());
+            List<Document> changed = new ArrayList<>();
+            List<String> changedHashes = new ArrayList<>();
+            for (Document document : documents) {
+                String hash = contentHash(document);
+                if (!seen.add(hash)) {
+                    continue;
+                }
+                Integer index = existing.get(hash);
+                if (index != null) {
+                    reusedIndexes.add(index);
+                } else {
+                    changed.add(document);
+                    changedHashes.add(hash);
+                }
+            }
+            int reused = reusedIndexes.size();
+            int removed = current.entries().size() - reused;
+            if (changed.isEmpty() && removed == 0) {
+                return new SyncResult(reused, 0, 0);
+            }
+            List<Entry> entries = new ArrayList<>(reused + changed.size());
+            List<float[]> vectors = new ArrayList<>(reused + changed.size());
+            for (int index : reusedIndexes) {
+                entries.add(current.entries().get(index));
+                vectors.add(current.vector(index));
+            }
+            if (!changed.isEmpty()) {
+                List<Document> enriched = enricher.apply(changed);
+                if (enriched.size() != changed.size()) {
+                    throw new IllegalStateException("enricher 必须逐条返回文档");
+                }
+                List<float[]> embeddings = embed(enriched);
+                for (int i = 0; i < enriched.size(); i++) {
+                    entries.add(toEntry(enriched.get(i), changedHashes.get(i), embeddings.get(i)));
+                    vectors.add(embeddings.get(i));
+                }
+            }
+            persist(entries, vectors);
+            return new SyncResult(reused, changed.size(), removed);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            List<float[]> embeddings = embed(documents);
+            Set<String> replacedIds = new HashSet<>();
+            for (Document document : documents) {
+                replacedIds.add(document.getId());
+            }
+            Snapshot current = snapshot;
+            List<Entry> entries = new ArrayList<>(current.entries().size() + documents.size());
+            List<float[]> vectors = new ArrayList<>(current.entries().size() + documents.size());
+            for (int i = 0; i < current.entries().size(); i++) {
+                Entry entry = current.entries().get(i);
+                if (!replacedIds.contains(entry.id())) {
+                    entries.add(entry);
+                    vectors.add(current.vector(i));
+                }
+            }
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                entries.add(toEntry(document, contentHash(document), embeddings.get(i)));
+                vectors.add(embeddings.get(i));
+            }
+            persist(entries, vectors);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        Set<String> ids = new HashSet<>(idList);
+        retain(entry -> !ids.contains(entry.id()));
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        Predicate<Map<String, Object>> filter = metadataFilter(filterExpression);
+        retain(entry -> !filter.test(entry.metadata()));
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        Snapshot current = snapshot;
+        if (current.entries().isEmpty() || request.getTopK() <= 0) {
+            return List.of();
+        }
+        float[] query = embeddingModel.embed(request.getQuery());
+        if (query.length != current.dimensions()) {
+            throw new IllegalStateException("查询向量维度 " + query.length + " 与存储维度 " + current.dimensions() + " 不一致");
+        }
+        int topK = request.getTopK();
+        double threshold = request.getSimilarityThreshold();
+        List<Entry> entries = current.entries();
+        // 能用位图求值的过滤条件先求出命中集合，否则逐条求值 SpEL
+        BitSet allowed = null;
+        Predicate<Map<String, Object>> filter = null;
+        if (request.hasFilterExpression()) {
+            allowed = current.filterIndex().evaluate(request.getFilterExpression());
+            if (allowed == null) {
+                filter = metadataFilter(request.getFilterExpression());
+            }
+        }
+        HnswIndex ann = current.ann().get();
+        int ef = Math.max(hnswConfig.efSearch(), topK);
+        if (ann == null || (allowed != null && allowed.cardinality() <= exactScanLimit(entries.size(), ef))) {
+            return exactSearch(current, query, topK, threshold, allowed, filter);
+        }
+        IntPredicate accept = null;
+        if (allowed != null) {
+            accept = allowed::get;
+        } else if (filter != null) {
+            Predicate<Map<String, Object>> metadataFilter = filter;
+            accept = node -> metadataFilter.test(entries.get(node).metadata());
+        }
+        HnswIndex.Result result = ann.search(query, topK, ef, accept);
+        List<Document> results = new ArrayList<>(result.size());
+        for (int i = 0; i < result.size(); i++) {
+            if (result.scores()[i] >= threshold) {
+                results.add(toDocument(entries.get(result.nodes()[i]), result.scores()[i]));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 过滤后命中 c 条时，图搜索约需访问 ef * n / c 个节点，而直接扫描命中记录只需 c 次计算，
+     * 两者在 c = sqrt(ef * n) 附近持平
+     */
+    static int exactScanLimit(int size, int ef) {
+        return (int) Math.sqrt((double) ef * size);
+    }
+
+    /**
+     * 全量扫描（allowed 非空时只扫描命中的记录）
+     */
+    private List<Document> exactSearch(Snapshot current, float[] query, int topK, double threshold, BitSet allowed,
+                                       Predicate<Map<String, Object>> filter) {
+        float queryNorm = norm(query);
+        // 小顶堆保留当前得分最高的 topK 条
+        PriorityQueue<double[]> heap = new PriorityQueue<>(topK + 1, Comparator.comparingDouble(candidate -> candidate[0]));
+        FloatBuffer vectors = current.vectors();
+        int dimensions = current.dimensions();
+        List<Entry> entries = current.entries();
+        // 映射缓冲区逐行批量复制到堆上再计算，批量复制是内存拷贝，比逐个 get 快得多且可以走 SIMD
+        float[] row = new float[dimensions];
+        int i = allowed == null ? 0 : allowed.nextSetBit(0);
+        for (; i >= 0 && i < entries.size(); i = allowed == null ? i + 1 : allowed.nextSetBit(i + 1)) {
+            Entry entry = entries.get(i);
+            vectors.get(i * dimensions, row);
+            double dot = VectorSimilarity.dot(query, row);
+            double score = entry.norm() == 0 || queryNorm == 0 ? 0 : dot / (entry.norm() * queryNorm);
+            if (score < threshold || (heap.size() == topK && score <= heap.peek()[0])) {
+                continue;
+            }
+            // 元信息过滤较慢，只对能进入结果的候选求值
+            if (filter != null && !filter.test(entry.metadata())) {
+                continue;
+            }
+            heap.offer(new double[]{score, i});
+            if (heap.size() > topK) {
+                heap.poll();
+            }
+        }
+        List<Document> results = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            double[] candidate = heap.poll();
+            results.add(toDocument(entries.get((int) candidate[1]), candidate[0]));
+        }
+        return results.reversed();
+    }
+
+    /**
+     * 发布新快照，记录数达到阈值时在后台为其构建近似最近邻索引
+     */
+    private void publish(Snapshot next) {
+        snapshot = next;
+        if (next.entries().size() < annThreshold) {
+            return;
+        }
+        Thread.ofPlatform().name("vector-index-builder-" + name).daemon().priority(Thread.MIN_PRIORITY)
+                .start(() -> buildAnnIndex(next));
+    }
+
+    private void buildAnnIndex(Snapshot target) {
+        long start = System.nanoTime();
+        HnswIndex index = new HnswIndex(target.dimensions(), hnswConfig);
+        for (int i = 0; i < target.entries().size(); i++) {
+            // 构建期间又有新快照发布时放弃，由新快照重新构建
+            if ((i & 1023) == 0 && snapshot != target) {
+                return;
+            }
+            index.add(target.vector(i));
+        }
+        target.ann().set(index);
+        log.info("向量存储 [{}] 近似最近邻索引构建完成：{} 条，耗时 {} ms", name, index.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void retain(Predicate<Entry> keep) {
+        writeLock.lock();
+        try {
+            Snapshot current = snapshot;
+            List<Entry> entries = new ArrayList<>(current.entries().size());
+            List<float[]> vectors = new ArrayList<>(current.entries().size());
+            for (int i = 0; i < current.entries().size(); i++) {
+                Entry entry = current.entries().get(i);
+                if (keep.test(entry)) {
+                    entries.add(entry);
+                    vectors.add(current.vector(i));
+                }
+            }
+            if (entries.size() != current.entries().size()) {
+                persist(entries, vectors);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private List<float[]> embed(List<Document> documents) {
+        List<float[]> embeddings = embeddingModel.embed(documents, EmbeddingOptionsBuilder.builder().build(),
+                BatchingStrategyHolder.INSTANCE);
+        int dimensions = snapshot.dimensions();
+        for (float[] embedding : embeddings) {
+            if (dimensions == 0) {
+                dimensions = embedding.length;
+            }
+            if (embedding.length != dimensions) {
+                throw new IllegalStateException("向量维度 " + embedding.length + " 与存储维度 " + dimensions
+                        + " 不一致，更换向量模型后请删除 " + vectorFile.getName() + " 重建");
+            }
+        }
+        return embeddings;
+    }
+
+    private Entry toEntry(Document document, String contentHash, float[] embedding) {
+        Map<String, Object> metadata = new LinkedHashMap<>(document.getMetadata());
+        metadata.remove(DISTANCE_METADATA_KEY);
+        return new Entry(document.getId(), contentHash, document.getText(), norm(embedding),
+                Collections.unmodifiableMap(metadata));
+    }
+
+    private Document toDocument(Entry entry, double score) {
+        Map<String, Object> metadata = new HashMap<>(entry.metadata());
+        metadata.put(DISTANCE_METADATA_KEY, 1 - score);
+        return Document.builder()
+                .id(entry.id())
+                .text(entry.text())
+                .metadata(metadata)
+                .score(score)
+                .build();
+    }
+
+    /**
+     * 与 SimpleVectorStore 相同：过滤表达式转换为 SpEL，在 #metadata 上求值
+     */
+    private Predicate<Map<String, Object>> metadataFilter(Filter.Expression filterExpression) {
+        Expression expression = expressionParser.parseExpression(filterExpressionConverter.convertExpression(filterExpression));
+        return metadata -> {
+            StandardEvaluationContext context = new StandardEvaluationContext();
+            context.setVariable("metadata", metadata);
+            return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+        };
+    }
+
+    /**
+     * 内容哈希：sha256(正文 + 按键排序的元信息)
+     */
+    static String contentHash(Document document) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(document.getText()).getBytes(StandardCharsets.UTF_8));
+            for (Map.Entry<String, Object> entry : new TreeMap<>(document.getMetadata()).entrySet()) {
+                if (DISTANCE_METADATA_KEY.equals(entry.getKey())) {
+                    continue;
+                }
+                digest.update((byte) 0);
+                digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '=');
+                digest.update(String.valueOf(entry.getValue()).getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static float norm(float[] vector) {
+        return VectorSimilarity.norm(vector);
+    }
+
+    // ---------------------------------------------------------------- 文件读写
+
+    private void persist(List<Entry> entries, List<float[]> vectors) {
+        int dimensions = vectors.isEmpty() ? 0 : vectors.getFirst().length;
+        checkVectorFileSize(VECTOR_HEADER_BYTES + (long) dimensions * entries.size() * Float.BYTES);
+        long generation = ThreadLocalRandom.current().nextLong();
+        File vectorTemp = new File(vectorFile.getParentFile(), vectorFile.getName() + ".tmp");
+        File metaTemp = new File(metaFile.getParentFile(), metaFile.getName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(vectorTemp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(VECTOR_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(VECTOR_MAGIC).putLong(generation).putInt(dimensions).putInt(entries.size()).flip();
+                writeFully(channel, header);
+                ByteBuffer row = ByteBuffer.allocate(Math.max(dimensions, 1) * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                for (float[] vector : vectors) {
+                    row.clear();
+                    row.asFloatBuffer().put(vector);
+                    row.limit(dimensions * Float.BYTES);
+                    writeFully(channel, row);
+                }
+                channel.force(true);
+            }
+            try (Output output = new Output(new FileOutputStream(metaTemp))) {
+                output.writeString(META_MAGIC);
+                output.writeVarLong(generation, false);
+                output.writeVarInt(dimensions, true);
+                output.writeVarInt(entries.size(), true);
+                for (Entry entry : entries) {
+                    output.writeString(entry.id());
+                    output.writeString(entry.contentHash());
+                    output.writeString(entry.text());
+                    output.writeFloat(entry.norm());
+                    writeMetadata(output, entry.metadata());
+                }
+            }
+            // 先替换向量文件：两者之间中断时代号不一致，下次启动按空库重建
+            Files.move(vectorTemp.toPath(), vectorFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(metaTemp.toPath(), metaFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("写入向量存储 [" + name + "] 失败：" + e.getMessage(), e);
+        }
+        publish(load());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * 超过单次映射上限时抛出异常：不能按损坏处理，否则每次启动都会清空并重新向量化
+     */
+    private void checkVectorFileSize(long bytes) {
+        if (bytes > MAX_VECTOR_FILE_BYTES) {
+            throw new IllegalStateException("向量存储 [" + name + "] 的向量文件需要 " + bytes + " 字节，超过单次内存映射上限 "
+                    + MAX_VECTOR_FILE_BYTES + " 字节，请拆分知识库或改用 PgVector 等外部向量库");
+        }
+    }
+
+    private Snapshot load() {
+        if (!vectorFile.exists() || !metaFile.exists()) {
+            return Snapshot.EMPTY;
+        }
+        checkVectorFileSize(vectorFile.length());
+        try (RandomAccessFile raf = new RandomAccessFile(vectorFile, "r");
+             FileChannel channel = raf.getChannel();
+             Input input = new Input(new FileInputStream(metaFile))) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.limit() < VECTOR_HEADER_BYTES || mapped.getInt(0) != VECTOR_MAGIC) {
+                throw new IOException("非法向量文件");
+            }
+            long generation = mapped.getLong(4);
+            int dimensions = mapped.getInt(12);
+            int count = mapped.getInt(16);
+            if ((long) VECTOR_HEADER_BYTES + (long) dimensions * count * Float.BYTES != mapped.limit()) {
+                throw new IOException("向量文件长度不符");
+            }
+            if (!META_MAGIC.equals(input.readString()) || input.readVarLong(false) != generation
+                    || input.readVarInt(true) != dimensions || input.readVarInt(true) != count) {
+                throw new IOException("元信息文件与向量文件不匹配");
+            }
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(new Entry(input.readString(), input.readString(), input.readString(), input.readFloat(),
+                        readMetadata(input)));
+            }
+            FloatBuffer vectors = mapped.position(VECTOR_HEADER_BYTES).slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            return Snapshot.of(dimensions, List.copyOf(entries), vectors);
+        } catch (Exception e) {
+            log.warn("向量存储 [{}] 文件损坏或不完整，按空库处理：{}", name, e.getMessage());
+            return Snapshot.EMPTY;
+        }
+    }
+
+    private static void writeMetadata(Output output, Map<String, Object> metadata) {
+        output.writeVarInt(metadata.size(), true);
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            output.writeString(entry.getKey());
+            Object value = entry.getValue();
+            switch (value) {
+                case null -> output.writeByte(TYPE_NULL);
+                case String s -> {
+                    output.writeByte(TYPE_STRING);
+                    output.writeString(s);
+                }
+                case Integer i -> {
+                    output.writeByte(TYPE_INT);
+                    output.writeVarInt(i, false);
+                }
+                case Long l -> {
+                    output.writeByte(TYPE_LONG);
+                    output.writeVarLong(l, false);
+                }
+                case Number n -> {
+                    output.writeByte(TYPE_DOUBLE);
+                    output.writeDouble(n.doubleValue());
+                }
+                case Boolean b -> {
+                    output.writeByte(TYPE_BOOLEAN);
+                    output.writeBoolean(b);
+                }
+                // 其余类型（列表等）按字符串保存
+                default -> {
+                    output.writeByte(TYPE_STRING);
+                    output.writeString(value.toString());
+                }
+            }
+        }
+    }
+
+    private static Map<String, Object> readMetadata(Input input) throws IOException {
+        int size = input.readVarInt(true);
+        Map<String, Object> metadata = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String key = input.readString();
+            byte type = input.readByte();
+            Object value = switch (type) {
+                case TYPE_NULL -> null;
+                case TYPE_STRING -> input.readString();
+                case TYPE_INT -> input.readVarInt(false);
+                case TYPE_LONG -> input.readVarLong(false);
+                case TYPE_DOUBLE -> input.readDouble();
+                case TYPE_BOOLEAN -> input.readBoolean();
+                default -> throw new IOException("未知的元信息类型：" + type);
+            };
+            if (value != null) {
+                metadata.put(key, value);
+            }
+        }
+        return Collections.unmodifiableMap(metadata);
+    }
+}
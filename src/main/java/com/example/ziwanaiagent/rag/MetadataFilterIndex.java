@@ -0,0 +1,139 @@
+package com.example.ziwanaiagent.rag;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 元信息倒排位图：为指定键（如 status、filename）的每个取值记录命中的记录下标
+ * <p>
+ * 过滤表达式中只涉及已索引键的 EQ / NE / IN / NIN 及其 AND / OR / NOT 组合时，直接按位图求出命中集合，
+ * 不再逐条求值 SpEL；其余表达式返回 null，由调用方回退到逐条求值。
+ * 语义与 SimpleVectorStore 的 SpEL 求值一致：缺少该键的记录满足 NE / NIN。
+ */
+class MetadataFilterIndex {
+
+    private final int size;
+    private final Map<String, Map<String, BitSet>> postings = new HashMap<>();
+
+    /**
+     * @param metadata    按记录下标排列的元信息
+     * @param indexedKeys 需要索引的键，取值不全是字符串的键不建索引
+     */
+    MetadataFilterIndex(List<Map<String, Object>> metadata, Set<String> indexedKeys) {
+        this.size = metadata.size();
+        Set<String> unindexable = new HashSet<>();
+        for (int i = 0; i < metadata.size(); i++) {
+            for (String key : indexedKeys) {
+                Object value = metadata.get(i).get(key);
+                if (value == null || unindexable.contains(key)) {
+                    continue;
+                }
+                if (!(value instanceof String s)) {
+                    unindexable.add(key);
+                    postings.remove(key);
+                    continue;
+                }
+                postings.computeIfAbsent(key, k -> new HashMap<>()).computeIfAbsent(s, v -> new BitSet(size)).set(i);
+            }
+        }
+        for (String key : indexedKeys) {
+            if (!unindexable.contains(key)) {
+                postings.putIfAbsent(key, new HashMap<>());
+            }
+        }
+    }
+
+    /**
+     * @return 命中的记录下标集合；表达式含未索引的键或不支持的运算时返回 null
+     */
+    BitSet evaluate(Filter.Expression expression) {
+        return switch (expression.type()) {
+            case AND -> combine(expression, true);
+            case OR -> combine(expression, false);
+            case NOT -> {
+                BitSet operand = evaluate(expression.left());
+                if (operand == null) {
+                    yield null;
+                }
+                yield complement(operand);
+            }
+            case EQ -> match(expression, false);
+            case IN -> match(expression, true);
+            case NE -> {
+                BitSet matched = match(expression, false);
+                yield matched == null ? null : complement(matched);
+            }
+            case NIN -> {
+                BitSet matched = match(expression, true);
+                yield matched == null ? null : complement(matched);
+            }
+            default -> null;
+        };
+    }
+
+    private BitSet evaluate(Filter.Operand operand) {
+        return switch (operand) {
+            case Filter.Expression expression -> evaluate(expression);
+            case Filter.Group group -> evaluate(group.content());
+            default -> null;
+        };
+    }
+
+    private BitSet combine(Filter.Expression expression, boolean and) {
+        BitSet left = evaluate(expression.left());
+        if (left == null) {
+            return null;
+        }
+        BitSet right = evaluate(expression.right());
+        if (right == null) {
+            return null;
+        }
+        if (and) {
+            left.and(right);
+        } else {
+            left.or(right);
+        }
+        return left;
+    }
+
+    private BitSet match(Filter.Expression expression, boolean multiValue) {
+        if (!(expression.left() instanceof Filter.Key key) || !(expression.right() instanceof Filter.Value value)) {
+            return null;
+        }
+        Map<String, BitSet> valuePostings = postings.get(unquote(key.key()));
+        if (valuePostings == null) {
+            return null;
+        }
+        List<?> values = multiValue && value.value() instanceof List<?> list ? list : List.of(value.value());
+        BitSet result = new BitSet(size);
+        for (Object v : values) {
+            if (!(v instanceof String s)) {
+                return null;
+            }
+            BitSet matched = valuePostings.get(s);
+            if (matched != null) {
+                result.or(matched);
+            }
+        }
+        return result;
+    }
+
+    private BitSet complement(BitSet bits) {
+        BitSet result = (BitSet) bits.clone();
+        result.flip(0, size);
+        return result;
+    }
+
+    private static String unquote(String key) {
+        if (key.length() >= 2 && (key.startsWith("'") && key.endsWith("'") || key.startsWith("\"") && key.endsWith("\""))) {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+}
@@ -3,6 +3,7 @@ package com.example.ziwanaiagent.rag;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -15,11 +16,12 @@ public class PgVectorVectorStoreConfig implements Serializable {
 
 
     @Bean
-    public VectorStore pgVectorVectorStore(JdbcTemplate jdbcTemplate, EmbeddingModel dashscopeEmbeddingModel) {
+    public VectorStore pgVectorVectorStore(JdbcTemplate jdbcTemplate,
+                                           @Qualifier("cachingEmbeddingModel") EmbeddingModel embeddingModel) {
 
 
 
-        return PgVectorStore.builder(jdbcTemplate, dashscopeEmbeddingModel)
+        return PgVectorStore.builder(jdbcTemplate, embeddingModel)
                 .dimensions(1536)                    // Optional: defaults to model dimensions or 1536
                 .distanceType(PgVectorStore.PgDistanceType.COSINE_DISTANCE)       // Optional: defaults to COSINE_DISTANCE
                 .indexType(PgVectorStore.PgIndexType.HNSW)                     // Optional: defaults to HNSW
@@ -0,0 +1,15 @@
+package com.example.ziwanaiagent.rag;
+
+/**
+ * 相似度计算内核，区间参数均为 [offset, offset + length)
+ */
+interface SimilarityKernel {
+
+    String name();
+
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    float cosine(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    float l2Squared(float[] a, int aOffset, float[] b, int bOffset, int length);
+}
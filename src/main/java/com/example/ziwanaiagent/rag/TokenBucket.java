@@ -0,0 +1,82 @@
+package com.example.ziwanaiagent.rag;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶限流器
+ * <p>
+ * 桶容量为 capacity，按 permitsPerSecond 匀速补充。{@link #acquire} 采用预支方式：令牌不足时先记账（余额可为负），
+ * 再在锁外睡眠到预支部分补齐为止，因此多个线程排队时按到达顺序依次放行，不会出现忙等或饥饿。
+ * 单次申请超过容量时按容量计，避免永远等不到。
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double permitsPerNano;
+    private double available;
+    private long lastRefillNanos;
+
+    /**
+     * @param capacity         桶容量，即允许的突发量
+     * @param permitsPerSecond 每秒补充的令牌数
+     */
+    public TokenBucket(double capacity, double permitsPerSecond) {
+        if (capacity <= 0 || permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("capacity 与 permitsPerSecond 必须为正数");
+        }
+        this.capacity = capacity;
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.available = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 按每分钟配额创建，容量为一分钟的配额的 1/6（即最多突发 10 秒的量）
+     */
+    public static TokenBucket perMinute(double permitsPerMinute) {
+        return new TokenBucket(Math.max(1, permitsPerMinute / 6), permitsPerMinute / 60);
+    }
+
+    /**
+     * 申请令牌，不足时阻塞到补齐
+     *
+     * @return 实际等待时长
+     */
+    public Duration acquire(double permits) throws InterruptedException {
+        long waitNanos = reserve(Math.min(permits, capacity));
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return Duration.ofNanos(waitNanos);
+    }
+
+    /**
+     * 令牌充足时立即扣除并返回 true，否则不扣除直接返回 false
+     */
+    public synchronized boolean tryAcquire(double permits) {
+        refill(System.nanoTime());
+        if (available < permits) {
+            return false;
+        }
+        available -= permits;
+        return true;
+    }
+
+    public synchronized double available() {
+        refill(System.nanoTime());
+        return available;
+    }
+
+    private synchronized long reserve(double permits) {
+        long now = System.nanoTime();
+        refill(now);
+        available -= permits;
+        return available >= 0 ? 0 : (long) Math.ceil(-available / permitsPerNano);
+    }
+
+    private void refill(long now) {
+        available = Math.min(capacity, available + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+    }
+}
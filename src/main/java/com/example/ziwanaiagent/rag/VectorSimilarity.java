@@ -0,0 +1,92 @@
+package com.example.ziwanaiagent.rag;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 向量相似度计算：点积、余弦、欧氏距离
+ * <p>
+ * 启动参数包含 {@code --add-modules jdk.incubator.vector} 时使用 JDK Vector API 的 SIMD 实现，
+ * 一次处理一个寄存器宽度（AVX2 为 8 个、AVX-512 为 16 个 float）；未加载该模块或设置
+ * {@code -Dvector.similarity.scalar=true} 时回退到标量实现。两种实现的累加顺序不同，结果可能有末位误差。
+ */
+@Slf4j
+public final class VectorSimilarity {
+
+    private static final SimilarityKernel KERNEL = selectKernel();
+
+    private VectorSimilarity() {
+    }
+
+    /**
+     * 当前使用的实现名称：panama 或 scalar
+     */
+    public static String kernelName() {
+        return KERNEL.name();
+    }
+
+    public static float dot(float[] a, float[] b) {
+        checkLength(a.length, b.length);
+        return KERNEL.dot(a, 0, b, 0, a.length);
+    }
+
+    /**
+     * 计算 a[aOffset, aOffset + length) 与 b[bOffset, bOffset + length) 的点积
+     */
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNEL.dot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * 余弦相似度，任一向量为零向量时返回 0
+     */
+    public static float cosine(float[] a, float[] b) {
+        checkLength(a.length, b.length);
+        return KERNEL.cosine(a, 0, b, 0, a.length);
+    }
+
+    public static float cosine(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNEL.cosine(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * 欧氏距离的平方（比较远近时无需开方）
+     */
+    public static float l2Squared(float[] a, float[] b) {
+        checkLength(a.length, b.length);
+        return KERNEL.l2Squared(a, 0, b, 0, a.length);
+    }
+
+    public static float l2Squared(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNEL.l2Squared(a, aOffset, b, bOffset, length);
+    }
+
+    public static float l2(float[] a, float[] b) {
+        return (float) Math.sqrt(l2Squared(a, b));
+    }
+
+    public static float norm(float[] vector) {
+        return (float) Math.sqrt(KERNEL.dot(vector, 0, vector, 0, vector.length));
+    }
+
+    private static void checkLength(int a, int b) {
+        if (a != b) {
+            throw new IllegalArgumentException("向量维度不一致：" + a + " != " + b);
+        }
+    }
+
+    private static SimilarityKernel selectKernel() {
+        if (Boolean.getBoolean("vector.similarity.scalar")) {
+            return new ScalarSimilarityKernel();
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            log.info("未加载 jdk.incubator.vector 模块，向量相似度使用标量实现（启动参数加 --add-modules jdk.incubator.vector 启用 SIMD）");
+            return new ScalarSimilarityKernel();
+        }
+        try {
+            return new PanamaSimilarityKernel();
+        } catch (LinkageError e) {
+            log.warn("Vector API 不可用，向量相似度使用标量实现：{}", e.getMessage());
+            return new ScalarSimilarityKernel();
+        }
+    }
+}
@@ -6,10 +6,9 @@ import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.ai.document.Document;
 import org.springframework.jdbc.core.JdbcTemplate;
 
-import java.util.List;
+import java.util.function.UnaryOperator;
 
 /**
  * 初始化向量知识库
@@ -22,6 +21,7 @@ public class VectorStoreInitializer {
     private final VectorStore pgVectorVectorStore;
     private final LoveAppDocumentLoader loveAppDocumentLoader;
     private final JdbcTemplate jdbcTemplate;  // 注入 JdbcTemplate
+    private final IngestionPipeline ingestionPipeline;
 
     @Bean
     public ApplicationRunner initVectorStoreRunner() {
@@ -39,19 +39,12 @@ public class VectorStoreInitializer {
             log.info("🚀 向量库为空，开始初始化文档向量化...");
 
 
-            List<Document> documents = loveAppDocumentLoader.loadMarkdowns();
+            // 逐个文件流式加载，分批并发向量化（限流 + 重试）后写入；需要切分或关键词增强时替换对应阶段
+            IngestionPipeline.Result result = ingestionPipeline.ingest(loveAppDocumentLoader.markdownResources(),
+                    loveAppDocumentLoader::load, UnaryOperator.identity(), UnaryOperator.identity(),
+                    pgVectorVectorStore::add);
 
-            int batchSize = 25; // DashScope 限制
-            for (int i = 0; i < documents.size(); i += batchSize) {
-                int end = Math.min(i + batchSize, documents.size());
-                List<Document> batch = documents.subList(i, end);
-
-                pgVectorVectorStore.add(batch);
-
-                log.info("📌 已插入向量文档 {} 条", batch.size());
-            }
-
-            log.info("🎉 全部向量初始化完成，总计：{} 条", documents.size());
+            log.info("🎉 全部向量初始化完成，总计：{} 条", result.documents());
         };
     }
 }
@@ -0,0 +1,68 @@
+package com.example.ziwanaiagent.tools;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.time.Duration;
+
+/**
+ * 带结果缓存的工具装饰器
+ * <p>
+ * 相同工具名与规范化参数的调用在有效期内直接返回缓存结果；工具返回的错误信息不缓存，下次调用会重试。
+ */
+public class CachingToolCallback implements ToolCallback {
+
+    private final ToolCallback delegate;
+    private final ToolResultCache cache;
+    private final Duration ttl;
+    private final String toolName;
+
+    public CachingToolCallback(ToolCallback delegate, ToolResultCache cache, Duration ttl) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.ttl = ttl;
+        this.toolName = delegate.getToolDefinition().name();
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        String key = toolName + '\u0000' + ToolArguments.canonicalize(toolInput);
+        String cached = cache.get(toolName, key);
+        if (cached != null) {
+            return cached;
+        }
+        String result = toolContext == null ? delegate.call(toolInput) : delegate.call(toolInput, toolContext);
+        if (result != null && !isError(result)) {
+            cache.put(key, result, ttl);
+        }
+        return result;
+    }
+
+    /**
+     * 工具约定以 “Error ...” 返回错误信息，经 JSON 序列化后可能带引号
+     */
+    private static boolean isError(String result) {
+        return result.startsWith("Error") || result.startsWith("\"Error");
+    }
+
+    public ToolCallback getDelegate() {
+        return delegate;
+    }
+}
@@ -13,6 +13,7 @@ public class FileOperationTool {
     private final String FILE_DIR = FileConstant.FILE_SAVE_DIR + "/file";
 
     @Tool(description = "Read content from a file")
+    @ToolCache(enabled = false)
     public String readFile(@ToolParam(description = "Name of a file to read") String fileName) {
         String filePath = FILE_DIR + "/" + fileName;
         try {
@@ -23,6 +24,8 @@ public class FileOperationTool {
     }
 
     @Tool(description = "Write content to a file")
+    @ToolConcurrency(parallel = false)
+    @ToolCache(enabled = false)
     public String writeFile(@ToolParam(description = "Name of the file to write") String fileName,
                             @ToolParam(description = "Content to write to the file") String content
     ) {
@@ -20,6 +20,8 @@ import java.io.IOException;
 public class PDFGenerationTool {
 
     @Tool(description = "Generate a PDF file with given content", returnDirect = false)
+    @ToolConcurrency(parallel = false)
+    @ToolCache(enabled = false)
     public String generatePDF(
             @ToolParam(description = "Name of the file to save the generated PDF") String fileName,
             @ToolParam(description = "Content to be included in the PDF") String content) {
@@ -14,6 +14,8 @@ import java.io.File;
 public class ResourceDownloadTool {
 
     @Tool(description = "Download a resource from a given URL")
+    @ToolConcurrency(parallel = false, timeoutSeconds = 120)
+    @ToolCache(enabled = false)
     public String downloadResource(@ToolParam(description = "URL of the resource to download") String url, @ToolParam(description = "Name of the file to save the downloaded resource") String fileName) {
         String fileDir = FileConstant.FILE_SAVE_DIR + "/download";
         String filePath = fileDir + "/" + fileName;
@@ -13,6 +13,8 @@ import java.io.InputStreamReader;
 public class TerminalOperationTool {
 
     @Tool(description = "Execute a command in the terminal")
+    @ToolConcurrency(parallel = false, timeoutSeconds = 120)
+    @ToolCache(enabled = false)
     public String executeTerminalCommand(@ToolParam(description = "Command to execute in the terminal") String command) {
         StringBuilder output = new StringBuilder();
         try {
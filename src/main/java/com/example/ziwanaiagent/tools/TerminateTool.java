@@ -11,6 +11,7 @@ public class TerminateTool {
             Terminate the interaction when the request is met OR if the assistant cannot proceed further with the task.
             "When you have finished all the tasks, call this tool to end the work.
             """)
+    @ToolCache(enabled = false)
     public String doTerminate() {
         return "任务结束";
     }
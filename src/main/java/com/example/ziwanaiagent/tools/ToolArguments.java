@@ -0,0 +1,32 @@
+package com.example.ziwanaiagent.tools;
+
+import cn.hutool.core.util.StrUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * 工具调用参数工具类
+ */
+public final class ToolArguments {
+
+    // 键排序输出，保证参数顺序不同但内容相同的 JSON 得到相同结果
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private ToolArguments() {
+    }
+
+    /**
+     * 规范化 JSON 参数：对象键排序、去掉多余空白；空参数视为 {}，非法 JSON 返回去掉首尾空白的原文
+     */
+    public static String canonicalize(String arguments) {
+        if (StrUtil.isBlank(arguments)) {
+            return "{}";
+        }
+        try {
+            return CANONICAL_MAPPER.writeValueAsString(CANONICAL_MAPPER.readValue(arguments, Object.class));
+        } catch (Exception e) {
+            return arguments.trim();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.ziwanaiagent.tools;
+
+import java.lang.annotation.*;
+
+/**
+ * 声明工具方法的结果缓存策略，与 {@link org.springframework.ai.tool.annotation.Tool} 一起标注在方法上
+ * <p>
+ * 未标注的工具按 工具名 + 规范化参数 缓存结果，有效期使用全局默认值；读写文件、执行命令等结果随外部状态变化
+ * 或有副作用的工具必须设置 enabled = false。
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ToolCache {
+
+    /**
+     * 是否缓存调用结果
+     */
+    boolean enabled() default true;
+
+    /**
+     * 缓存有效期秒数，0 表示使用全局默认值
+     */
+    long ttlSeconds() default 0;
+}
@@ -0,0 +1,24 @@
+package com.example.ziwanaiagent.tools;
+
+import java.lang.annotation.*;
+
+/**
+ * 声明工具方法的并发执行策略，与 {@link org.springframework.ai.tool.annotation.Tool} 一起标注在方法上
+ * <p>
+ * 未标注的工具默认可以与同一步骤中的其他工具并行执行，超时使用全局默认值。
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ToolConcurrency {
+
+    /**
+     * 是否可以与其他工具调用并行执行；有写入等副作用的工具应设为 false
+     */
+    boolean parallel() default true;
+
+    /**
+     * 单次调用超时秒数，0 表示使用全局默认值
+     */
+    long timeoutSeconds() default 0;
+}
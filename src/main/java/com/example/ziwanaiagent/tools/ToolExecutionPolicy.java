@@ -0,0 +1,63 @@
+package com.example.ziwanaiagent.tools;
+
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 工具执行策略表：按工具名记录是否可并行与调用超时
+ */
+public class ToolExecutionPolicy {
+
+    /**
+     * @param parallel 是否可以与其他工具调用并行执行
+     * @param timeout  单次调用超时
+     */
+    public record Policy(boolean parallel, Duration timeout) {
+    }
+
+    private final Policy defaultPolicy;
+    private final Map<String, Policy> policies;
+
+    private ToolExecutionPolicy(Policy defaultPolicy, Map<String, Policy> policies) {
+        this.defaultPolicy = defaultPolicy;
+        this.policies = policies;
+    }
+
+    /**
+     * 所有工具都可并行，使用统一超时
+     */
+    public static ToolExecutionPolicy defaults(Duration defaultTimeout) {
+        return new ToolExecutionPolicy(new Policy(true, defaultTimeout), Map.of());
+    }
+
+    /**
+     * 扫描工具类中 {@link Tool} 方法上的 {@link ToolConcurrency} 注解生成策略表
+     */
+    public static ToolExecutionPolicy fromAnnotations(Duration defaultTimeout, Class<?>... toolClasses) {
+        Map<String, Policy> policies = new HashMap<>();
+        for (Class<?> toolClass : toolClasses) {
+            for (Method method : toolClass.getMethods()) {
+                Tool tool = method.getAnnotation(Tool.class);
+                ToolConcurrency concurrency = method.getAnnotation(ToolConcurrency.class);
+                if (tool == null || concurrency == null) {
+                    continue;
+                }
+                String name = StringUtils.hasText(tool.name()) ? tool.name() : method.getName();
+                Duration timeout = concurrency.timeoutSeconds() > 0
+                        ? Duration.ofSeconds(concurrency.timeoutSeconds())
+                        : defaultTimeout;
+                policies.put(name, new Policy(concurrency.parallel(), timeout));
+            }
+        }
+        return new ToolExecutionPolicy(new Policy(true, defaultTimeout), Map.copyOf(policies));
+    }
+
+    public Policy get(String toolName) {
+        return policies.getOrDefault(toolName, defaultPolicy);
+    }
+}
@@ -1,11 +1,14 @@
 package com.example.ziwanaiagent.tools;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.support.ToolCallbacks;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 /**
  * 集中的工具注册类
  */
@@ -15,9 +18,40 @@ public class ToolRegistration {
     @Value("${search-api.api-key}")
     private String searchApiKey;
 
+    /**
+     * 工具调用默认超时
+     */
+    @Value("${agent.tool.default-timeout:60s}")
+    private Duration toolDefaultTimeout;
+
+    /**
+     * 工具结果缓存，单个工具可用 {@link ToolCache} 调整有效期或关闭
+     */
+    @Value("${agent.tool.cache.enabled:true}")
+    private boolean toolCacheEnabled;
+
+    @Value("${agent.tool.cache.default-ttl:10m}")
+    private Duration toolCacheDefaultTtl;
+
+    @Value("${agent.tool.cache.max-entries:1000}")
+    private int toolCacheMaxEntries;
+
+    @Value("${agent.tool.cache.max-bytes:33554432}")
+    private long toolCacheMaxBytes;
+
+    private static final Class<?>[] TOOL_CLASSES = {
+            FileOperationTool.class,
+            WebSearchTool.class,
+            WebScrapingTool.class,
+            ResourceDownloadTool.class,
+            TerminalOperationTool.class,
+            PDFGenerationTool.class,
+            TerminateTool.class
+    };
+
 
     @Bean
-    public ToolCallback[] allTools() {
+    public ToolCallback[] allTools(MeterRegistry meterRegistry) {
         FileOperationTool fileOperationTool = new FileOperationTool();
         WebSearchTool webSearchTool = new WebSearchTool(searchApiKey);
         WebScrapingTool webScrapingTool = new WebScrapingTool();
@@ -25,7 +59,7 @@ public class ToolRegistration {
         TerminalOperationTool terminalOperationTool = new TerminalOperationTool();
         PDFGenerationTool pdfGenerationTool = new PDFGenerationTool();
         TerminateTool terminateTool = new TerminateTool();
-        return ToolCallbacks.from(
+        ToolCallback[] toolCallbacks = ToolCallbacks.from(
                 fileOperationTool,
                 webSearchTool,
                 webScrapingTool,
@@ -34,6 +68,19 @@ public class ToolRegistration {
                 pdfGenerationTool,
                 terminateTool
         );
+        if (!toolCacheEnabled) {
+            return toolCallbacks;
+        }
+        return ToolResultCache.fromAnnotations(toolCacheDefaultTtl, toolCacheMaxEntries, toolCacheMaxBytes,
+                meterRegistry, TOOL_CLASSES).wrap(toolCallbacks);
 
     }
+
+    /**
+     * 工具并发执行策略，来自各工具方法上的 {@link ToolConcurrency} 注解
+     */
+    @Bean
+    public ToolExecutionPolicy toolExecutionPolicy() {
+        return ToolExecutionPolicy.fromAnnotations(toolDefaultTimeout, TOOL_CLASSES);
+    }
 }
@@ -0,0 +1,166 @@
+package com.example.ziwanaiagent.tools;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 工具调用结果缓存
+ * <p>
+ * 以 工具名 + 规范化参数 为键，多次运行、多个用户共享；每个工具的有效期来自 {@link ToolCache} 注解，
+ * 条目数与估算字节数超出上限时按 LRU 淘汰。
+ * 指标：agent.tool.cache.requests（按 tool、result=hit/miss 区分）、agent.tool.cache.evictions、
+ * agent.tool.cache.size、agent.tool.cache.bytes。
+ */
+public class ToolResultCache {
+
+    private record Entry(String result, long expiresAt, long bytes) {
+    }
+
+    private final Duration defaultTtl;
+    private final Map<String, Duration> ttls;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final MeterRegistry meterRegistry;
+
+    // 访问顺序的 LinkedHashMap 实现 LRU，所有访问在 synchronized(this) 下进行
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    /**
+     * @param defaultTtl    未单独配置的工具的缓存有效期
+     * @param ttls          按工具名的有效期，Duration.ZERO 表示不缓存
+     * @param maxEntries    最大条目数
+     * @param maxBytes      最大估算字节数（按字符数 × 2 估算）
+     * @param meterRegistry 指标注册表，为空时不记录指标
+     */
+    public ToolResultCache(Duration defaultTtl, Map<String, Duration> ttls, int maxEntries, long maxBytes,
+                           MeterRegistry meterRegistry) {
+        this.defaultTtl = defaultTtl;
+        this.ttls = Map.copyOf(ttls);
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.meterRegistry = meterRegistry;
+        if (meterRegistry != null) {
+            Gauge.builder("agent.tool.cache.size", this, ToolResultCache::size)
+                    .description("工具结果缓存条目数")
+                    .register(meterRegistry);
+            Gauge.builder("agent.tool.cache.bytes", this, ToolResultCache::bytes)
+                    .description("工具结果缓存估算字节数")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * 扫描工具类中 {@link Tool} 方法上的 {@link ToolCache} 注解生成各工具的有效期
+     */
+    public static ToolResultCache fromAnnotations(Duration defaultTtl, int maxEntries, long maxBytes,
+                                                  MeterRegistry meterRegistry, Class<?>... toolClasses) {
+        Map<String, Duration> ttls = new HashMap<>();
+        for (Class<?> toolClass : toolClasses) {
+            for (Method method : toolClass.getMethods()) {
+                Tool tool = method.getAnnotation(Tool.class);
+                ToolCache cache = method.getAnnotation(ToolCache.class);
+                if (tool == null || cache == null) {
+                    continue;
+                }
+                String name = StringUtils.hasText(tool.name()) ? tool.name() : method.getName();
+                Duration ttl = !cache.enabled() ? Duration.ZERO
+                        : cache.ttlSeconds() > 0 ? Duration.ofSeconds(cache.ttlSeconds()) : defaultTtl;
+                ttls.put(name, ttl);
+            }
+        }
+        return new ToolResultCache(defaultTtl, ttls, maxEntries, maxBytes, meterRegistry);
+    }
+
+    /**
+     * 工具的缓存有效期，Duration.ZERO 表示不缓存
+     */
+    public Duration ttl(String toolName) {
+        return ttls.getOrDefault(toolName, defaultTtl);
+    }
+
+    /**
+     * 为需要缓存的工具套上 {@link CachingToolCallback}，其余工具原样返回
+     */
+    public ToolCallback[] wrap(ToolCallback[] toolCallbacks) {
+        ToolCallback[] wrapped = new ToolCallback[toolCallbacks.length];
+        for (int i = 0; i < toolCallbacks.length; i++) {
+            ToolCallback toolCallback = toolCallbacks[i];
+            Duration ttl = ttl(toolCallback.getToolDefinition().name());
+            wrapped[i] = ttl.isPositive() ? new CachingToolCallback(toolCallback, this, ttl) : toolCallback;
+        }
+        return wrapped;
+    }
+
+    /**
+     * 查询缓存并记录命中指标
+     *
+     * @return 未过期的结果，未命中时返回 null
+     */
+    String get(String toolName, String key) {
+        String result = null;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt - System.nanoTime() > 0) {
+                    result = entry.result;
+                } else {
+                    entries.remove(key);
+                    bytes -= entry.bytes;
+                }
+            }
+        }
+        if (meterRegistry != null) {
+            meterRegistry.counter("agent.tool.cache.requests", "tool", toolName,
+                    "result", result != null ? "hit" : "miss").increment();
+        }
+        return result;
+    }
+
+    void put(String key, String result, Duration ttl) {
+        long entryBytes = 2L * (key.length() + result.length());
+        if (entryBytes > maxBytes) {
+            return;
+        }
+        int evicted = 0;
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(result, System.nanoTime() + ttl.toNanos(), entryBytes));
+            if (previous != null) {
+                bytes -= previous.bytes;
+            }
+            bytes += entryBytes;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+                bytes -= iterator.next().bytes;
+                iterator.remove();
+                evicted++;
+            }
+        }
+        if (evicted > 0 && meterRegistry != null) {
+            meterRegistry.counter("agent.tool.cache.evictions").increment(evicted);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+}
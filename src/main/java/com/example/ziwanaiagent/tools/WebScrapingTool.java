@@ -11,6 +11,7 @@ import org.springframework.ai.tool.annotation.ToolParam;
 public class WebScrapingTool {
 
     @Tool(description = "Scrape the content of a web page")
+    @ToolCache(ttlSeconds = 1800)
     public String scrapeWebPage(@ToolParam(description = "URL of the web page to scrape") String url) {
         try {
             Document document = Jsoup.connect(url).get();
@@ -0,0 +1,119 @@
+package com.example.ziwanaiagent.agent;
+
+import com.example.ziwanaiagent.agent.model.AgentContext;
+import com.example.ziwanaiagent.agent.model.AgentEvent;
+import com.example.ziwanaiagent.agent.model.AgentState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class AgentCheckpointStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private AgentCheckpointStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new AgentCheckpointStore(dir.toString(), Duration.ofDays(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    private static AgentContext pausedRun(String runId) {
+        AgentContext context = new AgentContext();
+        context.setRunId(runId);
+        context.setState(AgentState.PAUSED);
+        context.setCurrentStep(1);
+        context.getMessageList().add(new UserMessage("帮我查天气"));
+        context.getMessageList().add(new AssistantMessage("", Map.of(),
+                List.of(new AssistantMessage.ToolCall("c1", "function", "searchWeb", "{\"query\":\"杭州天气\"}"))));
+        context.getMessageList().add(new ToolResponseMessage(
+                List.of(new ToolResponseMessage.ToolResponse("c1", "searchWeb", "晴 ".repeat(1000)))));
+        context.getEvents().add(new AgentEvent(0, "run", runId));
+        context.getEvents().add(new AgentEvent(1, null, "Step 1: 工具 searchWeb 返回的结果：晴"));
+        return context;
+    }
+
+    @Test
+    void roundTrip() {
+        AgentContext saved = pausedRun("run-1");
+        store.save(saved);
+
+        AgentContext loaded = store.load("run-1");
+        Assertions.assertNotNull(loaded);
+        Assertions.assertEquals(AgentState.PAUSED, loaded.getState());
+        Assertions.assertEquals(1, loaded.getCurrentStep());
+        Assertions.assertEquals(saved.getMessageList(), loaded.getMessageList());
+        Assertions.assertEquals(saved.getEvents(), loaded.getEvents());
+
+        Assertions.assertNull(store.load("missing"));
+        Assertions.assertNull(store.load("../escape"));
+        store.delete("run-1");
+        Assertions.assertNull(store.load("run-1"));
+    }
+
+    @Test
+    void resumeContinuesFromLastCheckpointWithoutRecomputingSteps() throws InterruptedException {
+        AtomicInteger modelCalls = new AtomicInteger();
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                modelCalls.incrementAndGet();
+                return Flux.just(new ChatResponse(List.of(new Generation(new AssistantMessage("杭州今天晴")))));
+            }
+        };
+        ToolCallAgent agent = new ToolCallAgent(new ToolCallback[0]);
+        agent.setChatClient(ChatClient.builder(chatModel).build());
+        agent.setSystemPrompt("system");
+        agent.setAgentCheckpointStore(store);
+        store.save(pausedRun("run-2"));
+
+        agent.resumeStream("run-2", 1);
+        AgentContext finished = null;
+        for (int i = 0; i < 100; i++) {
+            finished = store.load("run-2");
+            if (finished.getState() == AgentState.FINISHED) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+
+        Assertions.assertEquals(AgentState.FINISHED, finished.getState());
+        Assertions.assertEquals(2, finished.getCurrentStep());
+        Assertions.assertEquals(1, modelCalls.get());
+        Assertions.assertEquals(new AgentEvent(2, "thought", "杭州今天晴"), finished.getEvents().get(2));
+        Assertions.assertTrue(finished.getEvents().get(3).data().startsWith("Step 2: "));
+
+        // 已完成的运行重连时只补发事件
+        agent.resumeStream("run-2", -1);
+        Assertions.assertEquals(1, modelCalls.get());
+    }
+}
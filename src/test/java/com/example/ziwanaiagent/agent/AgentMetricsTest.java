@@ -0,0 +1,56 @@
+package com.example.ziwanaiagent.agent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.annotation.Tool;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class AgentMetricsTest {
+
+    static class EchoTools {
+        @Tool(description = "echo")
+        public String echo(String text) {
+            return "echo " + text;
+        }
+    }
+
+    @Test
+    void recordsThinkToolStepAndRunMetrics() {
+        AtomicInteger calls = new AtomicInteger();
+        ChatModel chatModel = prompt -> {
+            AssistantMessage output = calls.getAndIncrement() == 0
+                    ? new AssistantMessage("", Map.of(), List.of(new AssistantMessage.ToolCall("c1", "function", "echo", "{\"text\":\"hi\"}")))
+                    : new AssistantMessage("done");
+            return new ChatResponse(List.of(new Generation(output)),
+                    ChatResponseMetadata.builder().usage(new DefaultUsage(100, 20)).build());
+        };
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ToolCallAgent agent = new ToolCallAgent(ToolCallbacks.from(new EchoTools()));
+        agent.setName("test");
+        agent.setChatClient(ChatClient.builder(chatModel).build());
+        agent.setSystemPrompt("system");
+        agent.setAgentMetrics(new AgentMetrics(registry));
+
+        agent.run("hi");
+
+        Assertions.assertEquals(1, registry.get("agent.think").tags("agent", "test", "outcome", "tool_calls").timer().count());
+        Assertions.assertEquals(1, registry.get("agent.think").tags("agent", "test", "outcome", "final").timer().count());
+        Assertions.assertEquals(1, registry.get("agent.tool").tags("tool", "echo", "outcome", "success").timer().count());
+        Assertions.assertEquals(2, registry.get("agent.step").tag("agent", "test").timer().count());
+        Assertions.assertEquals(200.0, registry.get("agent.tokens").tag("type", "prompt").summary().totalAmount());
+        Assertions.assertEquals(1.0, registry.get("agent.run").tags("agent", "test", "reason", "finished").counter().count());
+        Assertions.assertEquals(2.0, registry.get("agent.run.steps").tag("reason", "finished").summary().totalAmount());
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.ziwanaiagent.agent;
+
+import com.example.ziwanaiagent.exception.BusinessException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class AgentSchedulerTest {
+
+    @Test
+    void admissionControlAndQueueTimeout() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AgentScheduler scheduler = new AgentScheduler(2, 1, Duration.ofMillis(200), registry);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch rejected = new CountDownLatch(1);
+        Runnable blocking = () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        scheduler.submit(blocking, () -> Assertions.fail("不应被拒绝"));
+        scheduler.submit(blocking, () -> Assertions.fail("不应被拒绝"));
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(2, scheduler.getActive());
+
+        // 第三个会话进入队列，等待超时后被拒绝
+        scheduler.submit(() -> Assertions.fail("不应运行"), rejected::countDown);
+        // 队列已满，第四个会话立即拒绝
+        Assertions.assertThrows(BusinessException.class, () -> scheduler.submit(() -> {
+        }, () -> {
+        }));
+        Assertions.assertTrue(rejected.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(2.0, registry.get("agent.scheduler.rejected").counter().count());
+
+        release.countDown();
+        CountDownLatch done = new CountDownLatch(1);
+        // 有空闲许可后新会话可以运行
+        long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.getActive() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        scheduler.submit(done::countDown, () -> Assertions.fail("不应被拒绝"));
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(3, registry.get("agent.scheduler.wait").timer().count());
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.ziwanaiagent.agent;
+
+import com.example.ziwanaiagent.agent.model.AgentContext;
+import com.example.ziwanaiagent.tools.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次请求的智能体准备开销：每次新建 ZiWanManus vs 复用单例、只新建运行上下文
+ * <p>
+ * 运行：直接执行 main 方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AgentSetupBenchmark {
+
+    private ToolCallback[] toolCallbacks;
+    private ChatModel chatModel;
+    private ToolExecutionPolicy policy;
+
+    @Setup
+    public void setup() {
+        toolCallbacks = createToolCallbacks();
+        chatModel = prompt -> new ChatResponse(List.of());
+        policy = ToolExecutionPolicy.fromAnnotations(Duration.ofSeconds(60), FileOperationTool.class,
+                TerminalOperationTool.class, PDFGenerationTool.class);
+    }
+
+    private static ToolCallback[] createToolCallbacks() {
+        return ToolCallbacks.from(
+                new FileOperationTool(),
+                new WebSearchTool("benchmark"),
+                new WebScrapingTool(),
+                new ResourceDownloadTool(),
+                new TerminalOperationTool(),
+                new PDFGenerationTool(),
+                new TerminateTool());
+    }
+
+    /**
+     * 改造前：每个请求新建智能体（ChatClient、模型选项、工具执行器）
+     */
+    @Benchmark
+    public ZiWanManus newAgentPerRequest() {
+        return new ZiWanManus(toolCallbacks, chatModel, policy, null, null, null, null, null);
+    }
+
+    /**
+     * 每个请求连同工具定义（JSON Schema）一起重建
+     */
+    @Benchmark
+    public ZiWanManus newAgentAndToolsPerRequest() {
+        return new ZiWanManus(createToolCallbacks(), chatModel, policy, null, null, null, null, null);
+    }
+
+    /**
+     * 改造后：复用智能体单例，每个请求只新建运行上下文
+     */
+    @Benchmark
+    public AgentContext sharedAgentNewContext() {
+        AgentContext context = new AgentContext();
+        context.getMessageList().add(new UserMessage("帮我制定一份约会计划"));
+        return context;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AgentSetupBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.ziwanaiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class ContextCompactorTest {
+
+    private static final String NEXT = "next step";
+
+    private static void addRound(List<Message> messages, String id, String data) {
+        messages.add(new AssistantMessage("", Map.of(),
+                List.of(new AssistantMessage.ToolCall(id, "function", "scrape", "{}"))));
+        messages.add(new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse(id, "scrape", data))));
+        messages.add(new UserMessage(NEXT));
+    }
+
+    private static String data(Message message) {
+        return ((ToolResponseMessage) message).getResponses().get(0).responseData();
+    }
+
+    @Test
+    void truncatesConsumedResponsesAndDedupesNextStepPrompt() {
+        List<Message> messages = new ArrayList<>();
+        messages.add(new UserMessage("task"));
+        messages.add(new UserMessage(NEXT));
+        addRound(messages, "1", "a".repeat(5000));
+        addRound(messages, "2", "b".repeat(5000));
+
+        ContextCompactor compactor = new ContextCompactor(100_000, 100);
+        List<Message> compacted = compactor.compact(messages, "system", NEXT);
+
+        Assertions.assertEquals(6, compacted.size());
+        Assertions.assertEquals("task", compacted.get(0).getText());
+        Assertions.assertTrue(data(compacted.get(2)).startsWith("a".repeat(100) + ContextCompactor.TRUNCATED_MARKER));
+        // 最近一次工具返回还没被模型读过，保持完整
+        Assertions.assertEquals(5000, data(compacted.get(4)).length());
+        Assertions.assertEquals(NEXT, compacted.get(5).getText());
+        // 再次压缩结果不变
+        Assertions.assertEquals(compacted, compactor.compact(compacted, "system", NEXT));
+    }
+
+    @Test
+    void dropsOldestRoundsToFitBudget() {
+        List<Message> messages = new ArrayList<>();
+        messages.add(new UserMessage("task"));
+        for (int i = 0; i < 6; i++) {
+            addRound(messages, String.valueOf(i), "x".repeat(2000));
+        }
+        List<Message> compacted = new ContextCompactor(1200, 2000).compact(messages, "system", NEXT);
+
+        Assertions.assertEquals("task", compacted.get(0).getText());
+        Assertions.assertInstanceOf(AssistantMessage.class, compacted.get(1));
+        Assertions.assertEquals("5", ((ToolResponseMessage) compacted.get(compacted.size() - 2)).getResponses().get(0).id());
+        Assertions.assertTrue(compacted.size() < messages.size());
+        // 工具调用与返回成对保留
+        for (int i = 1; i < compacted.size(); i++) {
+            if (compacted.get(i) instanceof ToolResponseMessage response) {
+                AssistantMessage call = (AssistantMessage) compacted.get(i - 1);
+                Assertions.assertEquals(call.getToolCalls().get(0).id(), response.getResponses().get(0).id());
+            }
+        }
+    }
+
+    @Test
+    void truncateIsIdempotent() {
+        String once = ContextCompactor.truncate("y".repeat(300), 50);
+        Assertions.assertEquals(once, ContextCompactor.truncate(once, 50));
+        Assertions.assertEquals("short", ContextCompactor.truncate("short", 50));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.ziwanaiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.annotation.Tool;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class LoopDetectorTest {
+
+    private static AssistantMessage toolStep(String text, String name, String arguments) {
+        return new AssistantMessage(text, Map.of(), List.of(new AssistantMessage.ToolCall("id", "function", name, arguments)));
+    }
+
+    @Test
+    void detectsRepeatedToolCallDespiteDifferentWording() {
+        LoopDetector detector = new LoopDetector(3, 2);
+        Assertions.assertEquals(0, detector.record(toolStep("先搜索一下", "search", "{\"query\":\"杭州\",\"page\":1}")));
+        Assertions.assertEquals(0, detector.record(toolStep("再搜索一次", "search", "{ \"page\": 1, \"query\": \"杭州\" }")));
+        Assertions.assertEquals(1, detector.record(toolStep("还是搜索", "search", "{\"query\":\"杭州\",\"page\":1}")));
+        // 参数不同则不是循环
+        Assertions.assertEquals(0, detector.record(toolStep("", "search", "{\"query\":\"上海\"}")));
+    }
+
+    @Test
+    void detectsAlternatingCycle() {
+        LoopDetector detector = new LoopDetector(4, 2);
+        long a = LoopDetector.fingerprint(toolStep("", "readFile", "{\"name\":\"a.txt\"}"));
+        long b = LoopDetector.fingerprint(new AssistantMessage("文件内容  不对，重新读取"));
+        Assertions.assertEquals(0, detector.record(a));
+        Assertions.assertEquals(0, detector.record(b));
+        Assertions.assertEquals(0, detector.record(a));
+        Assertions.assertEquals(2, detector.record(b));
+        Assertions.assertEquals(2, detector.record(a));
+        Assertions.assertEquals(b, LoopDetector.fingerprint(new AssistantMessage(" 文件内容 不对，重新读取\n")));
+    }
+
+    @Test
+    void distinctStepsAreNotLoops() {
+        LoopDetector detector = new LoopDetector(2, 3);
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(0, detector.record(new AssistantMessage("step " + i)));
+        }
+        Assertions.assertEquals(1, detector.record(new AssistantMessage("step 99")));
+    }
+
+    static class LongResultTools {
+        @Tool(description = "search")
+        public String search(String query) {
+            return "结果".repeat(2000);
+        }
+    }
+
+    @Test
+    void agentDetectsLoopWhileContextIsCompacted() {
+        AtomicInteger calls = new AtomicInteger();
+        ChatModel chatModel = prompt -> {
+            calls.incrementAndGet();
+            return new ChatResponse(List.of(new Generation(toolStep("再搜一次", "search", "{\"query\":\"杭州\"}"))));
+        };
+        ToolCallAgent agent = new ToolCallAgent(ToolCallbacks.from(new LongResultTools()));
+        agent.setName("test");
+        agent.setChatClient(ChatClient.builder(chatModel).build());
+        agent.setSystemPrompt("system");
+        agent.setNextStepPrompt("继续");
+        // 预算只够保留最近一轮，每步思考前都会丢弃较早的轮次，消息数随之减少
+        agent.setContextCompactor(new ContextCompactor(1500, 100));
+        agent.setDuplicateThreshold(4);
+        agent.setMaxSteps(10);
+
+        String result = agent.run("搜索杭州");
+
+        Assertions.assertTrue(result.contains("Terminated: Repeated loop detected."), result);
+        // 第 4 步起每步都检测到循环，累计 4 次后在第 7 步终止
+        Assertions.assertEquals(7, calls.get());
+    }
+}
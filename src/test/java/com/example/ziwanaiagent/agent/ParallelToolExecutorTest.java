@@ -0,0 +1,99 @@
+package com.example.ziwanaiagent.agent;
+
+import com.example.ziwanaiagent.tools.ToolConcurrency;
+import com.example.ziwanaiagent.tools.ToolExecutionPolicy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.annotation.Tool;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+class ParallelToolExecutorTest {
+
+    static class SlowTools {
+
+        final List<String> events = new CopyOnWriteArrayList<>();
+
+        @Tool(description = "search")
+        public String search(String query) throws InterruptedException {
+            Thread.sleep(300);
+            events.add("search:" + query);
+            return "result of " + query;
+        }
+
+        @Tool(description = "write")
+        @ToolConcurrency(parallel = false)
+        public String write(String content) {
+            events.add("write:" + content);
+            return "written";
+        }
+
+        @Tool(description = "hang")
+        @ToolConcurrency(timeoutSeconds = 1)
+        public String hang() throws InterruptedException {
+            Thread.sleep(10_000);
+            return "never";
+        }
+    }
+
+    private static AssistantMessage.ToolCall call(String id, String name, String arguments) {
+        return new AssistantMessage.ToolCall(id, "function", name, arguments);
+    }
+
+    private static List<ToolResponseMessage.ToolResponse> execute(ParallelToolExecutor executor,
+                                                                  AssistantMessage.ToolCall... toolCalls) {
+        AssistantMessage assistantMessage = new AssistantMessage("", Map.of(), List.of(toolCalls));
+        ToolExecutionResult result = executor.executeToolCalls(new Prompt(new UserMessage("hi")),
+                new ChatResponse(List.of(new Generation(assistantMessage))));
+        Assertions.assertEquals(3, result.conversationHistory().size());
+        return ((ToolResponseMessage) result.conversationHistory().get(2)).getResponses();
+    }
+
+    @Test
+    void parallelCallsKeepOrder() {
+        SlowTools tools = new SlowTools();
+        ToolCallback[] callbacks = ToolCallbacks.from(tools);
+        ParallelToolExecutor executor = new ParallelToolExecutor(callbacks,
+                ToolExecutionPolicy.fromAnnotations(Duration.ofSeconds(5), SlowTools.class));
+
+        long start = System.currentTimeMillis();
+        List<ToolResponseMessage.ToolResponse> responses = execute(executor,
+                call("1", "search", "{\"query\":\"a\"}"),
+                call("2", "search", "{\"query\":\"b\"}"),
+                call("3", "search", "{\"query\":\"c\"}"),
+                call("4", "write", "{\"content\":\"x\"}"));
+        long elapsed = System.currentTimeMillis() - start;
+
+        // 三次搜索并行执行，总耗时接近单次
+        Assertions.assertTrue(elapsed < 800, "elapsed " + elapsed);
+        Assertions.assertEquals(List.of("1", "2", "3", "4"), responses.stream().map(ToolResponseMessage.ToolResponse::id).toList());
+        Assertions.assertTrue(responses.get(1).responseData().contains("result of b"));
+        // 不可并行的写入在之前的搜索全部完成后执行
+        Assertions.assertEquals("write:x", tools.events.get(3));
+    }
+
+    @Test
+    void timeoutDoesNotBlockOtherCalls() {
+        ParallelToolExecutor executor = new ParallelToolExecutor(ToolCallbacks.from(new SlowTools()),
+                ToolExecutionPolicy.fromAnnotations(Duration.ofSeconds(5), SlowTools.class));
+        List<ToolResponseMessage.ToolResponse> responses = execute(executor,
+                call("1", "hang", "{}"),
+                call("2", "search", "{\"query\":\"a\"}"),
+                call("3", "missing", "{}"));
+        Assertions.assertTrue(responses.get(0).responseData().contains("timed out"));
+        Assertions.assertTrue(responses.get(1).responseData().contains("result of a"));
+        Assertions.assertTrue(responses.get(2).responseData().contains("not found"));
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.ziwanaiagent.agent;
+
+import com.example.ziwanaiagent.agent.model.AgentContext;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.annotation.Tool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 首步推测执行的延迟收益：按录制的首步样本（提示词、模型选择的首个工具调用、模型与工具耗时）回放，
+ * 比较关闭 / 开启推测执行时首步（think + act）的耗时，输出命中率与节省延迟的中位数。
+ * <p>
+ * 模型与工具用按样本耗时休眠的桩代替，耗时按 TIME_SCALE 缩小回放后再换算回原始毫秒数。
+ * 运行：直接执行 main 方法
+ */
+public class SpeculativePrefetchBenchmark {
+
+    private static final double TIME_SCALE = 0.1;
+
+    /**
+     * 录制的首步样本
+     */
+    record Sample(String prompt, String toolName, String arguments, long modelMillis, long toolMillis) {
+    }
+
+    private static final List<Sample> WORKLOAD = List.of(
+            new Sample("帮我搜索一下杭州明天的天气", "searchWeb", "{\"query\":\"杭州明天的天气\"}", 1400, 900),
+            new Sample("查一下最新的 Java 21 新特性", "searchWeb", "{\"query\":\"最新的 Java 21 新特性\"}", 1600, 1100),
+            new Sample("推荐几家上海适合约会的餐厅", "searchWeb", "{\"query\":\"上海 约会 餐厅 推荐\"}", 1500, 1000),
+            new Sample("总结一下 https://spring.io/blog 的内容", "scrapeWebPage", "{\"url\":\"https://spring.io/blog\"}", 1200, 1300),
+            new Sample("帮我搜索 Spring AI 教程", "searchWeb", "{\"query\":\"Spring AI 教程\"}", 1300, 850),
+            new Sample("今天有哪些科技新闻", "searchWeb", "{\"query\":\"今天有哪些科技新闻\"}", 1700, 950),
+            new Sample("北京周末有什么展览推荐", "searchWeb", "{\"query\":\"北京 周末 展览\"}", 1450, 1000),
+            new Sample("看看 https://github.com/trending 上有什么", "scrapeWebPage", "{\"url\":\"https://github.com/trending\"}", 1250, 1500),
+            new Sample("搜索 深圳 七夕 活动", "searchWeb", "{\"query\":\"深圳 七夕 活动\"}", 1350, 900),
+            new Sample("查询一下成都到重庆的高铁时刻", "searchWeb", "{\"query\":\"成都到重庆的高铁时刻\"}", 1550, 1050),
+            new Sample("写一份约会计划并生成 PDF", "generatePDF", "{\"fileName\":\"plan.pdf\",\"content\":\"...\"}", 2600, 400),
+            new Sample("帮我把笔记写入 notes.txt", "writeFile", "{\"fileName\":\"notes.txt\",\"content\":\"...\"}", 1800, 50),
+            new Sample("最新的 iPhone 价格是多少", "searchWeb", "{\"query\":\"最新 iPhone 价格\"}", 1500, 900),
+            new Sample("什么是向量数据库", "searchWeb", "{\"query\":\"什么是向量数据库\"}", 1400, 950),
+            new Sample("下载 https://example.com/logo.png 保存为 logo.png", "downloadResource",
+                    "{\"url\":\"https://example.com/logo.png\",\"fileName\":\"logo.png\"}", 1300, 700),
+            new Sample("搜一下 杭州 西湖 音乐节 门票", "searchWeb", "{\"query\":\"杭州 西湖 音乐节 门票\"}", 1450, 1000)
+    );
+
+    private static volatile long toolMillis;
+
+    private static void sleepScaled(long millis) {
+        try {
+            Thread.sleep(Math.round(millis * TIME_SCALE));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static class StubTools {
+        @Tool(description = "search")
+        public String searchWeb(String query) {
+            sleepScaled(toolMillis);
+            return "results";
+        }
+
+        @Tool(description = "scrape")
+        public String scrapeWebPage(String url) {
+            sleepScaled(toolMillis);
+            return "<html/>";
+        }
+
+        @Tool(description = "download")
+        public String downloadResource(String url, String fileName) {
+            sleepScaled(toolMillis);
+            return "ok";
+        }
+
+        @Tool(description = "pdf")
+        public String generatePDF(String fileName, String content) {
+            sleepScaled(toolMillis);
+            return "ok";
+        }
+
+        @Tool(description = "write")
+        public String writeFile(String fileName, String content) {
+            sleepScaled(toolMillis);
+            return "ok";
+        }
+    }
+
+    private static long firstStepMillis(Sample sample, SpeculativePrefetcher prefetcher) {
+        ChatModel chatModel = prompt -> {
+            sleepScaled(sample.modelMillis());
+            AssistantMessage.ToolCall call = new AssistantMessage.ToolCall("c1", "function", sample.toolName(), sample.arguments());
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(), List.of(call)))));
+        };
+        ToolCallAgent agent = new ToolCallAgent(ToolCallbacks.from(new StubTools()));
+        agent.setChatClient(ChatClient.builder(chatModel).build());
+        agent.setSystemPrompt("system");
+        agent.setSpeculativePrefetcher(prefetcher);
+        toolMillis = sample.toolMillis();
+
+        AgentContext context = new AgentContext();
+        context.setCurrentStep(1);
+        context.getMessageList().add(new UserMessage(sample.prompt()));
+        long start = System.nanoTime();
+        if (agent.think(context)) {
+            agent.act(context);
+        }
+        return Math.round((System.nanoTime() - start) / 1_000_000.0 / TIME_SCALE);
+    }
+
+    public static void main(String[] args) {
+        SpeculativePrefetcher disabled = new SpeculativePrefetcher(false, null);
+        SpeculativePrefetcher enabled = new SpeculativePrefetcher(true, null);
+        // 预热
+        for (Sample sample : WORKLOAD) {
+            firstStepMillis(sample, disabled);
+            firstStepMillis(sample, enabled);
+        }
+
+        List<Long> saved = new ArrayList<>();
+        List<Long> baseline = new ArrayList<>();
+        int predicted = 0;
+        int hits = 0;
+        for (Sample sample : WORKLOAD) {
+            long off = firstStepMillis(sample, disabled);
+            long on = firstStepMillis(sample, enabled);
+            SpeculativePrefetcher.Guess guess = SpeculativePrefetcher.predict(sample.prompt());
+            boolean hit = guess != null && guess.toolName().equals(sample.toolName())
+                    && new ToolPrefetchProbe(guess).matches(sample);
+            predicted += guess != null ? 1 : 0;
+            hits += hit ? 1 : 0;
+            baseline.add(off);
+            saved.add(off - on);
+            System.out.printf("%-40s off=%5d ms on=%5d ms %s%n", sample.prompt(), off, on,
+                    guess == null ? "-" : hit ? "HIT" : "MISS");
+        }
+        System.out.printf("samples=%d predicted=%d hits=%d%n", WORKLOAD.size(), predicted, hits);
+        System.out.printf("median first step: off=%d ms, saved=%d ms (all runs)%n", median(baseline), median(saved));
+    }
+
+    /**
+     * 用 ToolPrefetch 的参数匹配规则判断样本是否命中
+     */
+    private record ToolPrefetchProbe(SpeculativePrefetcher.Guess guess) {
+        boolean matches(Sample sample) {
+            ToolPrefetch prefetch = new ToolPrefetch(guess.toolName(), guess.arguments(),
+                    CompletableFuture.completedFuture(""));
+            return prefetch.claim(new AssistantMessage.ToolCall("c1", "function", sample.toolName(), sample.arguments())) != null;
+        }
+    }
+
+    private static long median(List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+}
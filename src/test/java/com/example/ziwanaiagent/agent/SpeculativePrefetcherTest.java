@@ -0,0 +1,89 @@
+package com.example.ziwanaiagent.agent;
+
+import com.example.ziwanaiagent.tools.ToolExecutionPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.annotation.Tool;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SpeculativePrefetcherTest {
+
+    @Test
+    void predictsObviousFirstTool() {
+        Assertions.assertEquals(new SpeculativePrefetcher.Guess("searchWeb", "{\"query\":\"杭州明天的天气\"}"),
+                SpeculativePrefetcher.predict("帮我搜索一下杭州明天的天气。"));
+        Assertions.assertEquals(new SpeculativePrefetcher.Guess("scrapeWebPage", "{\"url\":\"https://example.com/a\"}"),
+                SpeculativePrefetcher.predict("总结一下 https://example.com/a 的内容"));
+        Assertions.assertNull(SpeculativePrefetcher.predict("下载 https://example.com/a.png"));
+        Assertions.assertNull(SpeculativePrefetcher.predict("写一首关于春天的诗"));
+        Assertions.assertNull(SpeculativePrefetcher.predict("搜索" + "很长的任务描述".repeat(10)));
+    }
+
+    static class SearchTools {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Tool(description = "search")
+        public String searchWeb(String query) throws InterruptedException {
+            calls.incrementAndGet();
+            Thread.sleep(200);
+            return "result of " + query;
+        }
+    }
+
+    private static ChatResponse toolCall(String arguments) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(),
+                List.of(new AssistantMessage.ToolCall("c1", "function", "searchWeb", arguments))))));
+    }
+
+    @Test
+    void matchingCallUsesPrefetchedResult() {
+        SearchTools tools = new SearchTools();
+        ToolCallback[] callbacks = ToolCallbacks.from(tools);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SpeculativePrefetcher prefetcher = new SpeculativePrefetcher(true, registry);
+        ParallelToolExecutor executor = new ParallelToolExecutor(callbacks, ToolExecutionPolicy.defaults(Duration.ofSeconds(5)));
+
+        ToolPrefetch hit = prefetcher.start("搜索 杭州天气", callbacks);
+        long claim = System.nanoTime();
+        ToolResponseMessage response = (ToolResponseMessage) executor.executeToolCalls(new Prompt(new UserMessage("q")),
+                toolCall("{ \"query\": \"杭州天气\" }"), hit).conversationHistory().get(2);
+        prefetcher.finish(hit, claim);
+        Assertions.assertTrue(response.getResponses().get(0).responseData().contains("result of 杭州天气"));
+        Assertions.assertEquals(1, tools.calls.get());
+
+        ToolPrefetch miss = prefetcher.start("搜索 杭州天气", callbacks);
+        executor.executeToolCalls(new Prompt(new UserMessage("q")), toolCall("{\"query\":\"上海天气\"}"), miss);
+        prefetcher.finish(miss, System.nanoTime());
+        Assertions.assertEquals(3, tools.calls.get());
+
+        Assertions.assertEquals(1.0, registry.get("agent.prefetch.requests").tag("result", "hit").counter().count());
+        Assertions.assertEquals(1.0, registry.get("agent.prefetch.requests").tag("result", "miss").counter().count());
+        Assertions.assertNull(new SpeculativePrefetcher(false, null).start("搜索 杭州天气", callbacks));
+    }
+
+    @Test
+    void argumentsMatchCaseSensitively() {
+        ToolPrefetch prefetch = new ToolPrefetch("scrapeWebPage", "{\"url\":\"https://example.com/Docs?id=A\"}",
+                CompletableFuture.completedFuture("page"));
+        // 路径或查询参数大小写不同是另一个页面
+        Assertions.assertNull(prefetch.claim(new AssistantMessage.ToolCall("c1", "function", "scrapeWebPage",
+                "{\"url\":\"https://example.com/docs?id=a\"}")));
+        Assertions.assertNotNull(prefetch.claim(new AssistantMessage.ToolCall("c1", "function", "scrapeWebPage",
+                "{ \"url\": \"https://example.com/Docs?id=A\" }")));
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.ziwanaiagent.agent;
+
+import com.example.ziwanaiagent.agent.model.AgentContext;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.annotation.Tool;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class StreamingChatResponseAssemblerTest {
+
+    private static ChatResponse chunk(String text, AssistantMessage.ToolCall... toolCalls) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text, Map.of(), List.of(toolCalls)))));
+    }
+
+    private static AssistantMessage.ToolCall delta(String id, String name, String arguments) {
+        return new AssistantMessage.ToolCall(id, "function", name, arguments);
+    }
+
+    @Test
+    void mergesTextAndToolCallDeltas() {
+        StreamingChatResponseAssembler assembler = new StreamingChatResponseAssembler();
+        Assertions.assertEquals("我来", assembler.accept(chunk("我来")));
+        Assertions.assertEquals("搜索", assembler.accept(chunk("搜索")));
+        assembler.accept(chunk(null, delta("call_1", "search", "{\"query\":")));
+        assembler.accept(chunk(null, delta("", "", "\"杭州\"}")));
+        assembler.accept(chunk(null, delta("call_2", "search", "{\"query\":\"上海\"}")));
+        Assertions.assertEquals("", assembler.accept(new ChatResponse(List.of())));
+
+        AssistantMessage output = assembler.toChatResponse().getResult().getOutput();
+        Assertions.assertEquals("我来搜索", output.getText());
+        Assertions.assertEquals(List.of(delta("call_1", "search", "{\"query\":\"杭州\"}"),
+                delta("call_2", "search", "{\"query\":\"上海\"}")), output.getToolCalls());
+    }
+
+    static class EchoTools {
+        @Tool(description = "echo")
+        public String echo(String text) {
+            return "echo " + text;
+        }
+    }
+
+    @Test
+    void streamingThinkForwardsTokensAndDispatchesCompleteCalls() {
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return Flux.just(chunk("先"), chunk("回显"),
+                        chunk(null, delta("c1", "echo", "{\"text\":")),
+                        chunk(null, delta(null, null, "\"hi\"}")));
+            }
+        };
+        ToolCallAgent agent = new ToolCallAgent(ToolCallbacks.from(new EchoTools()));
+        agent.setChatClient(ChatClient.builder(chatModel).build());
+        agent.setSystemPrompt("system");
+
+        List<String> tokens = new ArrayList<>();
+        AgentContext context = new AgentContext();
+        context.getMessageList().add(new UserMessage("hi"));
+        context.setStreamListener(tokens::add);
+
+        Assertions.assertTrue(agent.think(context));
+        Assertions.assertEquals(List.of("先", "回显"), tokens);
+        Assertions.assertEquals("工具 echo 返回的结果：\"echo hi\"", agent.act(context));
+    }
+}
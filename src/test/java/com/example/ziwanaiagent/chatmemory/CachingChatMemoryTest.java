@@ -0,0 +1,104 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class CachingChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writeBehindAndEviction() {
+        FileBasedChatMemory fileMemory = new FileBasedChatMemory(tempDir.toString());
+        try (CachingChatMemory chatMemory = new CachingChatMemory(fileMemory, 10, 2, Long.MAX_VALUE, 60_000)) {
+            for (int i = 0; i < 12; i++) {
+                chatMemory.add("chat-1", new UserMessage("消息" + i));
+            }
+            // 尚未回写，但缓存窗口已可见
+            Assertions.assertTrue(fileMemory.get("chat-1").isEmpty());
+            List<Message> messages = chatMemory.get("chat-1");
+            Assertions.assertEquals(10, messages.size());
+            Assertions.assertEquals("消息11", messages.get(9).getText());
+
+            chatMemory.flushAll();
+            Assertions.assertEquals(10, fileMemory.get("chat-1").size());
+
+            // 超过条目上限后淘汰最久未访问的会话，再次访问时从底层存储加载
+            chatMemory.add("chat-2", new UserMessage("a"));
+            chatMemory.add("chat-3", new UserMessage("b"));
+            chatMemory.flushAll();
+            Assertions.assertEquals("消息11", chatMemory.get("chat-1").get(9).getText());
+        }
+    }
+
+    @Test
+    void failedFlushIsRetriedByScheduledTask() throws InterruptedException {
+        FileBasedChatMemory fileMemory = new FileBasedChatMemory(tempDir.toString());
+        AtomicInteger attempts = new AtomicInteger();
+        // 第一次回写失败，之后恢复
+        ChatMemory flakyMemory = new ChatMemory() {
+            @Override
+            public void add(String conversationId, List<Message> messages) {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IllegalStateException("磁盘暂时不可用");
+                }
+                fileMemory.add(conversationId, messages);
+            }
+
+            @Override
+            public List<Message> get(String conversationId) {
+                return fileMemory.get(conversationId);
+            }
+
+            @Override
+            public void clear(String conversationId) {
+                fileMemory.clear(conversationId);
+            }
+        };
+        try (CachingChatMemory chatMemory = new CachingChatMemory(flakyMemory, 10, 10, Long.MAX_VALUE, 20)) {
+            chatMemory.add("chat-1", List.of(new UserMessage("a"), new UserMessage("b")));
+            for (int i = 0; i < 100 && fileMemory.get("chat-1").isEmpty(); i++) {
+                Thread.sleep(20);
+            }
+            Assertions.assertEquals(2, fileMemory.get("chat-1").size());
+            Assertions.assertTrue(attempts.get() >= 2);
+
+            // 定时任务仍在运行
+            chatMemory.add("chat-1", new UserMessage("c"));
+            for (int i = 0; i < 100 && fileMemory.get("chat-1").size() < 3; i++) {
+                Thread.sleep(20);
+            }
+            Assertions.assertEquals(3, fileMemory.get("chat-1").size());
+        }
+    }
+
+    @Test
+    void invalidateDropsExpiredWindowButKeepsPendingMessages() {
+        FileBasedChatMemory fileMemory = new FileBasedChatMemory(tempDir.toString());
+        try (CachingChatMemory chatMemory = new CachingChatMemory(fileMemory, 10, 10, Long.MAX_VALUE, 60_000)) {
+            chatMemory.add("chat-1", List.of(new UserMessage("旧消息1"), new UserMessage("旧消息2")));
+            chatMemory.flushAll();
+            // 过期清理删除了底层文件，此时又有一条新消息尚未回写
+            fileMemory.clear("chat-1");
+            chatMemory.add("chat-1", new UserMessage("新消息"));
+
+            chatMemory.invalidate("chat-1");
+            Assertions.assertEquals(List.of("新消息"), chatMemory.get("chat-1").stream().map(Message::getText).toList());
+            Assertions.assertEquals(1, fileMemory.get("chat-1").size());
+
+            // 后续回写不会把旧窗口写回
+            chatMemory.add("chat-1", new UserMessage("再一条"));
+            chatMemory.flushAll();
+            Assertions.assertEquals(List.of("新消息", "再一条"), fileMemory.get("chat-1").stream().map(Message::getText).toList());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+class ChatMemoryJanitorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void sweepIdleConversations() throws Exception {
+        File dir = tempDir.resolve("memory").toFile();
+        File archiveDir = tempDir.resolve("archive").toFile();
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(dir.toString());
+        chatMemory.add("cold", new UserMessage("很久以前"));
+        chatMemory.add("hot", new UserMessage("刚刚"));
+        File coldFile = chatMemory.getFile("cold");
+        Assertions.assertTrue(coldFile.setLastModified(System.currentTimeMillis() - Duration.ofDays(40).toMillis()));
+        long coldBytes = coldFile.length();
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        List<String> expired = new ArrayList<>();
+        try (ChatMemoryJanitor janitor = new ChatMemoryJanitor(chatMemory, Duration.ofDays(30), archiveDir,
+                expired::add, registry)) {
+            Assertions.assertEquals(1, janitor.sweep());
+        }
+
+        Assertions.assertEquals(List.of("cold"), expired);
+        Assertions.assertTrue(chatMemory.get("cold").isEmpty());
+        Assertions.assertEquals(1, chatMemory.get("hot").size());
+        Assertions.assertTrue(ChatMemoryPaths.resolve(archiveDir, "cold", ".kryo").exists());
+        Assertions.assertEquals(1.0, registry.get("chat.memory.janitor.swept").counter().count());
+        Assertions.assertEquals(coldBytes, registry.get("chat.memory.janitor.reclaimed").counter().count());
+        Assertions.assertEquals(1, registry.get("chat.memory.janitor.sweep").timer().count());
+    }
+}
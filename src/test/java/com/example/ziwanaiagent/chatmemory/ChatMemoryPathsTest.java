@@ -0,0 +1,69 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import com.esotericsoftware.kryo.io.Output;
+import com.example.ziwanaiagent.exception.BusinessException;
+import com.example.ziwanaiagent.exception.ErrorCode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+class ChatMemoryPathsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void sanitizeConversationId() {
+        Assertions.assertEquals("chat_1-a", ChatMemoryPaths.encode("chat_1-a"));
+        for (String id : List.of("../../etc/passwd", "a/b", "..", "用户 1", "~abc")) {
+            String name = ChatMemoryPaths.encode(id);
+            Assertions.assertTrue(name.matches("~[A-Za-z0-9_-]+"), name);
+            Assertions.assertEquals(id, ChatMemoryPaths.decode(name));
+        }
+        File file = ChatMemoryPaths.resolve(tempDir.toFile(), "../../escape", ".kryo");
+        Assertions.assertTrue(file.toPath().normalize().startsWith(tempDir));
+
+        // 空或过长的 id 作为参数错误返回，而不是服务端异常
+        Assertions.assertFalse(FileBasedChatMemory.isValidConversationId(""));
+        Assertions.assertFalse(FileBasedChatMemory.isValidConversationId("用户".repeat(100)));
+        Assertions.assertTrue(FileBasedChatMemory.isValidConversationId("用户 1"));
+        BusinessException e = Assertions.assertThrows(BusinessException.class, () -> ChatMemoryPaths.encode("用户".repeat(100)));
+        Assertions.assertEquals(ErrorCode.PARAM_ERROR.getCode(), e.getCode());
+    }
+
+    @Test
+    void migrateFlatFileOnFirstWrite() throws Exception {
+        File dir = tempDir.toFile();
+        List<Message> messages = new ArrayList<>(List.of(new UserMessage("旧文件")));
+        File legacy = new File(dir, "old-chat.kryo");
+        try (Output output = new Output(new FileOutputStream(legacy))) {
+            output.writeString("KRYO_V1");
+            FileBasedChatMemory.getKryo().writeObject(output, messages);
+        }
+
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(dir.toString());
+        chatMemory.add("新会话", new UserMessage("你好"));
+        List<String> ids = new ArrayList<>();
+        chatMemory.forEachConversation(ids::add);
+        Assertions.assertEquals(2, ids.size());
+
+        // 读取只持有读锁，原地读取旧文件，不迁移
+        Assertions.assertEquals("旧文件", chatMemory.get("old-chat").get(0).getText());
+        Assertions.assertTrue(legacy.exists());
+        // 首次写入时迁移到分片目录
+        chatMemory.add("old-chat", new UserMessage("新消息"));
+        Assertions.assertFalse(legacy.exists());
+        Assertions.assertEquals(2, chatMemory.get("old-chat").size());
+        File sharded = chatMemory.getFile("old-chat");
+        Assertions.assertEquals(dir, sharded.getParentFile().getParentFile().getParentFile());
+        Assertions.assertEquals("你好", chatMemory.get("新会话").get(0).getText());
+    }
+}
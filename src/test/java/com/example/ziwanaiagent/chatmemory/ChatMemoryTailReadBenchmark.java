@@ -0,0 +1,93 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对话记忆窗口读取基准：KRYO_V1 整文件反序列化 vs KRYO_V2 内存映射尾部读取
+ * <p>
+ * 运行：直接执行 main 方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatMemoryTailReadBenchmark {
+
+    private static final String CHAT_ID = "benchmark";
+
+    @Param({"100", "1000", "10000"})
+    private int messageCount;
+
+    private File dir;
+    private File legacyFile;
+    private FileBasedChatMemory chatMemory;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("chat-memory-bench").toFile();
+        List<Message> messages = new ArrayList<>(messageCount);
+        for (int i = 0; i < messageCount; i++) {
+            messages.add(i % 2 == 0
+                    ? new UserMessage("第 " + i + " 轮提问：我和另一半最近总是因为小事吵架，应该怎么沟通？")
+                    : new AssistantMessage("第 " + i + " 轮回答：先冷静下来，表达自己的感受而不是指责对方。"));
+        }
+
+        // 旧格式：整个列表一次性序列化
+        legacyFile = new File(dir, "legacy.kryo");
+        try (Output output = new Output(new FileOutputStream(legacyFile))) {
+            output.writeString("KRYO_V1");
+            FileBasedChatMemory.getKryo().writeObject(output, messages);
+        }
+
+        chatMemory = new FileBasedChatMemory(dir.getAbsolutePath());
+        chatMemory.add(CHAT_ID, messages);
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public List<Message> legacyFullLoad() throws IOException {
+        try (Input input = new Input(new FileInputStream(legacyFile))) {
+            input.readString();
+            @SuppressWarnings("unchecked")
+            List<Message> messageList = FileBasedChatMemory.getKryo().readObject(input, ArrayList.class);
+            return messageList.stream()
+                    .skip(Math.max(messageList.size() - 10, 0))
+                    .toList();
+        }
+    }
+
+    @Benchmark
+    public List<Message> mappedTailRead() {
+        return chatMemory.get(CHAT_ID);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ChatMemoryTailReadBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Path;
+import java.util.List;
+
+class ChatMemoryWindowTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void estimate() {
+        Assertions.assertEquals(4, TokenEstimator.estimate("你好世界"));
+        Assertions.assertEquals(3, TokenEstimator.estimate("hello world"));
+        Assertions.assertEquals(0, TokenEstimator.estimate((String) null));
+    }
+
+    @Test
+    void tokenBudgetDropsOversizedHistory() {
+        ChatMemoryWindowPolicy policy = new ChatMemoryWindowPolicy(new ChatMemoryWindow(10, 200));
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString(), new ChatMessageCodec(), policy);
+        chatMemory.add("chat-1", List.of(new UserMessage("文档".repeat(5000)), new AssistantMessage("收到")));
+        chatMemory.add("chat-1", List.of(new UserMessage("总结一下"), new AssistantMessage("好的")));
+
+        // 粘贴的长文档超出预算，被整体丢弃
+        List<Message> messages = chatMemory.get("chat-1");
+        Assertions.assertEquals(3, messages.size());
+        Assertions.assertEquals("收到", messages.get(0).getText());
+
+        // 单个会话放宽预算
+        policy.set("chat-1", new ChatMemoryWindow(10, 20_000));
+        Assertions.assertEquals(4, chatMemory.get("chat-1").size());
+
+        // 热数据层与底层存储使用同一策略
+        policy.reset("chat-1");
+        try (CachingChatMemory cachingChatMemory = new CachingChatMemory(chatMemory, policy, 10, Long.MAX_VALUE, 60_000)) {
+            Assertions.assertEquals(3, cachingChatMemory.get("chat-1").size());
+            cachingChatMemory.add("chat-1", new UserMessage("长".repeat(300)));
+            Assertions.assertTrue(cachingChatMemory.get("chat-1").isEmpty());
+        }
+    }
+
+    @Test
+    void raisingOverrideReloadsCachedWindow() {
+        ChatMemoryWindowPolicy policy = new ChatMemoryWindowPolicy(ChatMemoryWindow.ofMessages(2));
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString(), new ChatMessageCodec(), policy);
+        try (CachingChatMemory cachingChatMemory = new CachingChatMemory(chatMemory, policy, 10, Long.MAX_VALUE, 60_000)) {
+            for (int i = 0; i < 5; i++) {
+                cachingChatMemory.add("chat-1", new UserMessage("第 " + i + " 条"));
+            }
+            Assertions.assertEquals(2, cachingChatMemory.get("chat-1").size());
+
+            // 放宽后重新加载，未回写的消息先写入底层存储
+            policy.set("chat-1", ChatMemoryWindow.ofMessages(4));
+            List<Message> messages = cachingChatMemory.get("chat-1");
+            Assertions.assertEquals(List.of("第 1 条", "第 2 条", "第 3 条", "第 4 条"),
+                    messages.stream().map(Message::getText).toList());
+        }
+    }
+
+    @Test
+    void overridesAreBounded() {
+        ChatMemoryWindowPolicy policy = new ChatMemoryWindowPolicy(ChatMemoryWindow.ofMessages(10), 2);
+        policy.set("chat-1", ChatMemoryWindow.ofMessages(20));
+        policy.set("chat-2", ChatMemoryWindow.ofMessages(30));
+        policy.get("chat-1");
+        policy.set("chat-3", ChatMemoryWindow.ofMessages(40));
+
+        Assertions.assertEquals(2, policy.overrideCount());
+        Assertions.assertEquals(20, policy.get("chat-1").maxMessages());
+        // 最久未访问的会话恢复为默认窗口
+        Assertions.assertEquals(10, policy.get("chat-2").maxMessages());
+        Assertions.assertEquals(40, policy.get("chat-3").maxMessages());
+    }
+
+    @Test
+    void evictedOverrideReloadsCachedWindow() {
+        ChatMemoryWindowPolicy policy = new ChatMemoryWindowPolicy(ChatMemoryWindow.ofMessages(10), 1);
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString(), new ChatMessageCodec(), policy);
+        try (CachingChatMemory cachingChatMemory = new CachingChatMemory(chatMemory, policy, 10, Long.MAX_VALUE, 60_000)) {
+            policy.set("chat-1", ChatMemoryWindow.ofMessages(2));
+            for (int i = 0; i < 5; i++) {
+                cachingChatMemory.add("chat-1", new UserMessage("第 " + i + " 条"));
+            }
+            Assertions.assertEquals(2, cachingChatMemory.get("chat-1").size());
+
+            // chat-1 的小窗口被淘汰，恢复默认窗口后重新加载完整历史
+            policy.set("chat-2", ChatMemoryWindow.ofMessages(3));
+            Assertions.assertEquals(10, policy.get("chat-1").maxMessages());
+            Assertions.assertEquals(5, cachingChatMemory.get("chat-1").size());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chat.messages.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单条消息编解码基准：旧的 Kryo 全类名反射序列化 vs ChatMessageCodec（可选压缩）
+ * <p>
+ * 运行：直接执行 main 方法，setup 阶段会打印每条消息的平均字节数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatMessageCodecBenchmark {
+
+    @Param({"kryo", "codec", "codec-lz4", "codec-zstd"})
+    private String format;
+
+    private List<Message> messages;
+    private byte[][] encoded;
+    private ChatMessageCodec codec;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        messages = List.of(
+                new UserMessage("我和另一半最近总是因为小事吵架，应该怎么沟通？"),
+                new AssistantMessage("先冷静下来，表达自己的感受而不是指责对方。".repeat(40), Map.of("finishReason", "STOP")),
+                new AssistantMessage("", Map.of(), List.of(
+                        new AssistantMessage.ToolCall("call_1", "function", "searchWeb", "{\"query\":\"上海 约会 餐厅\"}"))),
+                new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse("call_1", "searchWeb",
+                        "{\"title\":\"上海十大约会餐厅\",\"link\":\"https://example.com\"}".repeat(20)))),
+                new SystemMessage("你是一位恋爱心理专家"));
+        codec = switch (format) {
+            case "codec-lz4" -> new ChatMessageCodec(ChatMessageCodec.Compression.LZ4, 512);
+            case "codec-zstd" -> new ChatMessageCodec(ChatMessageCodec.Compression.ZSTD, 512);
+            default -> new ChatMessageCodec();
+        };
+        encoded = new byte[messages.size()][];
+        long bytes = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            encoded[i] = encode(messages.get(i));
+            bytes += encoded[i].length;
+        }
+        System.out.printf("%n[%s] bytes/message = %.1f%n", format, (double) bytes / messages.size());
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return encode(messages.get(next()));
+    }
+
+    @Benchmark
+    public Message decode() {
+        byte[] record = encoded[next()];
+        if ("kryo".equals(format)) {
+            return (Message) FileBasedChatMemory.getKryo().readClassAndObject(new Input(record));
+        }
+        return codec.decode(record);
+    }
+
+    private byte[] encode(Message message) {
+        if ("kryo".equals(format)) {
+            Output output = new Output(256, -1);
+            FileBasedChatMemory.getKryo().writeClassAndObject(output, message);
+            return output.toBytes();
+        }
+        return codec.encode(message);
+    }
+
+    private int next() {
+        cursor = (cursor + 1) % messages.size();
+        return cursor;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ChatMessageCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.*;
+
+import java.util.List;
+import java.util.Map;
+
+class ChatMessageCodecTest {
+
+    @Test
+    void roundTrip() {
+        ChatMessageCodec codec = new ChatMessageCodec();
+        AssistantMessage assistantMessage = new AssistantMessage("我来搜索一下", Map.of("finishReason", "TOOL_CALLS"),
+                List.of(new AssistantMessage.ToolCall("call_1", "function", "searchWeb", "{\"query\":\"约会地点\"}")));
+        ToolResponseMessage toolResponseMessage = new ToolResponseMessage(
+                List.of(new ToolResponseMessage.ToolResponse("call_1", "searchWeb", "结果")));
+
+        AssistantMessage decodedAssistant = (AssistantMessage) codec.decode(codec.encode(assistantMessage));
+        Assertions.assertEquals("我来搜索一下", decodedAssistant.getText());
+        Assertions.assertEquals("TOOL_CALLS", decodedAssistant.getMetadata().get("finishReason"));
+        Assertions.assertEquals(assistantMessage.getToolCalls(), decodedAssistant.getToolCalls());
+
+        ToolResponseMessage decodedResponse = (ToolResponseMessage) codec.decode(codec.encode(toolResponseMessage));
+        Assertions.assertEquals(toolResponseMessage.getResponses(), decodedResponse.getResponses());
+
+        Message user = codec.decode(codec.encode(new UserMessage("你好")));
+        Assertions.assertInstanceOf(UserMessage.class, user);
+        Message system = codec.decode(codec.encode(new SystemMessage("你是恋爱大师")));
+        Assertions.assertEquals(MessageType.SYSTEM, system.getMessageType());
+    }
+
+    @Test
+    void compression() {
+        String text = "今天和对象去看电影，聊得很开心。".repeat(200);
+        for (ChatMessageCodec.Compression compression : ChatMessageCodec.Compression.values()) {
+            ChatMessageCodec codec = new ChatMessageCodec(compression, 512);
+            byte[] record = codec.encode(new UserMessage(text));
+            if (compression != ChatMessageCodec.Compression.NONE) {
+                Assertions.assertTrue(record.length < text.length());
+            }
+            Assertions.assertEquals(text, codec.decode(record).getText());
+        }
+    }
+}
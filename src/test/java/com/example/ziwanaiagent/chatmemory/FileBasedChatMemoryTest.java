@@ -0,0 +1,112 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+class FileBasedChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+
+    @Test
+    void tornAppendKeepsPreviousMessages() throws Exception {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        chatMemory.add("chat-1", List.of(new UserMessage("你好"), new AssistantMessage("你好，有什么可以帮你")));
+        chatMemory.add("chat-1", new UserMessage("最近总吵架"));
+        File file = chatMemory.getFile("chat-1");
+        long committed = file.length();
+
+        // 模拟追加写到一半崩溃：新记录已写入，新的表与尾部只写了一部分
+        chatMemory.add("chat-1", new AssistantMessage("先试着心平气和地聊聊"));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+        Assertions.assertTrue(file.length() > committed);
+
+        Assertions.assertEquals(List.of("你好", "你好，有什么可以帮你", "最近总吵架"), texts(chatMemory.get("chat-1")));
+        Assertions.assertTrue(file.exists());
+
+        // 下一次追加截掉残缺部分
+        chatMemory.add("chat-1", new AssistantMessage("多倾听对方"));
+        Assertions.assertEquals(List.of("你好", "你好，有什么可以帮你", "最近总吵架", "多倾听对方"),
+                texts(chatMemory.loadAll("chat-1")));
+    }
+
+    @Test
+    void tornLargeAppendFindsFooterAcrossChunks() throws Exception {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        chatMemory.add("chat-1", List.of(new UserMessage("你好"), new AssistantMessage("你好，有什么可以帮你")));
+        File file = chatMemory.getFile("chat-1");
+        // 残缺的追加远大于一次向前查找的块
+        chatMemory.add("chat-1", new UserMessage("长".repeat(100_000)));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        Assertions.assertEquals(List.of("你好", "你好，有什么可以帮你"), texts(chatMemory.get("chat-1")));
+    }
+
+    @Test
+    void repeatedAppendsAreCompacted() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Message message = new UserMessage("第 " + i + " 条消息");
+            messages.add(message);
+            chatMemory.add("chat-1", message);
+        }
+        chatMemory.add("chat-2", messages);
+
+        Assertions.assertEquals(texts(messages), texts(chatMemory.loadAll("chat-1")));
+        // 废弃的旧表超过一半时整体重写，文件不会随追加次数平方增长
+        long appended = chatMemory.getFile("chat-1").length();
+        long written = chatMemory.getFile("chat-2").length();
+        Assertions.assertTrue(appended < 2 * written + 4096, appended + " vs " + written);
+        Assertions.assertEquals(10, chatMemory.get("chat-1").size());
+    }
+
+    @Test
+    void corruptFileIsDeletedUnderWriteLock() throws Exception {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        chatMemory.add("chat-1", new UserMessage("你好"));
+        File file = chatMemory.getFile("chat-1");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            raf.write("not a chat memory file".getBytes());
+        }
+
+        Assertions.assertTrue(chatMemory.get("chat-1").isEmpty());
+        Assertions.assertFalse(file.exists());
+        chatMemory.add("chat-1", new UserMessage("重新开始"));
+        Assertions.assertEquals(List.of("重新开始"), texts(chatMemory.get("chat-1")));
+    }
+
+    @Test
+    void oversizedFileFailsInsteadOfBeingDeleted() throws Exception {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        chatMemory.add("chat-1", new UserMessage("你好"));
+        File file = chatMemory.getFile("chat-1");
+        // 稀疏文件，不实际占用磁盘
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(FileBasedChatMemory.MAX_FILE_BYTES + 1);
+        }
+
+        Assertions.assertThrows(IllegalStateException.class, () -> chatMemory.get("chat-1"));
+        Assertions.assertThrows(IllegalStateException.class, () -> chatMemory.add("chat-1", new UserMessage("再来一条")));
+        Assertions.assertEquals(FileBasedChatMemory.MAX_FILE_BYTES + 1, file.length());
+    }
+}
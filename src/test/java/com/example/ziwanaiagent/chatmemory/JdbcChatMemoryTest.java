@@ -0,0 +1,93 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class JdbcChatMemoryTest {
+
+    private static DriverManagerDataSource dataSource(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+    }
+
+    @Test
+    void windowAndClear() {
+        ChatMemoryWindowPolicy policy = new ChatMemoryWindowPolicy(new ChatMemoryWindow(3, 100));
+        try (JdbcChatMemory chatMemory = new JdbcChatMemory(dataSource("window"), new ChatMessageCodec(), policy, 500)) {
+            chatMemory.add("chat-1", List.of(new UserMessage("你好"), new AssistantMessage("你好，有什么可以帮你")));
+            chatMemory.add("chat-1", new UserMessage("长".repeat(500)));
+            chatMemory.add("chat-1", List.of(new AssistantMessage("收到"), new UserMessage("谢谢")));
+            chatMemory.add("chat-2", new UserMessage("另一个会话"));
+
+            // 最近 3 条中超出 token 预算的长消息及更早的消息被裁掉
+            List<Message> messages = chatMemory.get("chat-1");
+            Assertions.assertEquals(List.of("收到", "谢谢"), messages.stream().map(Message::getText).toList());
+            Assertions.assertEquals(5, chatMemory.loadAll("chat-1").size());
+            Assertions.assertEquals(List.of("收到", "谢谢"),
+                    chatMemory.loadFrom("chat-1", 3).stream().map(Message::getText).toList());
+
+            chatMemory.clear("chat-1");
+            Assertions.assertTrue(chatMemory.get("chat-1").isEmpty());
+            Assertions.assertEquals(1, chatMemory.get("chat-2").size());
+        }
+    }
+
+    @Test
+    void concurrentAddsKeepOrder() throws Exception {
+        ChatMemoryWindowPolicy policy = new ChatMemoryWindowPolicy(ChatMemoryWindow.UNBOUNDED);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (JdbcChatMemory chatMemory = new JdbcChatMemory(dataSource("concurrent"), new ChatMessageCodec(), policy, 500)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < 8; c++) {
+                String conversationId = "chat-" + c;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        chatMemory.add(conversationId, new UserMessage("消息" + i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            for (int c = 0; c < 8; c++) {
+                List<Message> messages = chatMemory.get("chat-" + c);
+                Assertions.assertEquals(50, messages.size());
+                Assertions.assertEquals("消息49", messages.get(49).getText());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void addFailsFastAfterWriterDies() {
+        ChatMessageCodec codec = new ChatMessageCodec() {
+            @Override
+            public byte[] encode(Message message) {
+                if ("崩溃".equals(message.getText())) {
+                    throw new StackOverflowError("模拟写线程崩溃");
+                }
+                return super.encode(message);
+            }
+        };
+        ChatMemoryWindowPolicy policy = new ChatMemoryWindowPolicy(ChatMemoryWindow.UNBOUNDED);
+        try (JdbcChatMemory chatMemory = new JdbcChatMemory(dataSource("writer"), codec, policy, 500, 60_000)) {
+            chatMemory.add("chat-1", new UserMessage("你好"));
+            long start = System.nanoTime();
+            Assertions.assertThrows(IllegalStateException.class, () -> chatMemory.add("chat-1", new UserMessage("崩溃")));
+            // 写线程退出后后续写入立即失败，不会阻塞到超时
+            Assertions.assertThrows(IllegalStateException.class, () -> chatMemory.add("chat-1", new UserMessage("之后")));
+            Assertions.assertTrue(System.nanoTime() - start < 10_000_000_000L);
+            Assertions.assertEquals(1, chatMemory.get("chat-1").size());
+        }
+    }
+}
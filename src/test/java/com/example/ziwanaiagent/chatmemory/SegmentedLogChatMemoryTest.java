@@ -0,0 +1,122 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import com.esotericsoftware.kryo.io.Output;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+class SegmentedLogChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void getReturnsLastWindow() {
+        SegmentedLogChatMemory chatMemory = new SegmentedLogChatMemory(tempDir.toString(), 10, 256, 20);
+        String chatId = "chat-1";
+        for (int i = 0; i < 50; i++) {
+            chatMemory.add(chatId, List.of(new UserMessage("问题" + i), new AssistantMessage("回答" + i)));
+        }
+        List<Message> messages = chatMemory.get(chatId);
+        Assertions.assertEquals(10, messages.size());
+        Assertions.assertEquals("问题45", messages.get(0).getText());
+        Assertions.assertEquals("回答49", messages.get(9).getText());
+
+        // 压缩后保留的段数有上限
+        File[] segments = tempDir.resolve(chatId).toFile().listFiles((dir, name) -> name.endsWith(".log"));
+        Assertions.assertNotNull(segments);
+        Assertions.assertTrue(segments.length < 10);
+    }
+
+    @Test
+    void clear() {
+        SegmentedLogChatMemory chatMemory = new SegmentedLogChatMemory(tempDir.toString());
+        chatMemory.add("chat-2", new UserMessage("你好"));
+        Assertions.assertTrue(chatMemory.exists("chat-2"));
+        chatMemory.clear("chat-2");
+        Assertions.assertFalse(chatMemory.exists("chat-2"));
+        Assertions.assertTrue(chatMemory.get("chat-2").isEmpty());
+    }
+
+    /**
+     * 按旧版格式写出 KRYO_V1 整列表文件
+     */
+    private static File writeKryoV1(FileBasedChatMemory v1, String conversationId, List<Message> messages) throws Exception {
+        File file = v1.getFile(conversationId);
+        Files.createDirectories(file.getParentFile().toPath());
+        try (Output output = new Output(new FileOutputStream(file))) {
+            output.writeString("KRYO_V1");
+            FileBasedChatMemory.getKryo().writeObject(output, new ArrayList<>(messages));
+        }
+        return file;
+    }
+
+    private static List<Message> numbered(int count) {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(new UserMessage("消息" + i));
+        }
+        return messages;
+    }
+
+    @Test
+    void migrateKryoV1() throws Exception {
+        String sourceDir = tempDir.resolve("v1").toString();
+        File file = writeKryoV1(new FileBasedChatMemory(sourceDir), "chat-3", numbered(15));
+        SegmentedLogChatMemory target = new SegmentedLogChatMemory(tempDir.resolve("log").toString());
+        KryoV1ChatMemoryMigrator migrator = new KryoV1ChatMemoryMigrator(sourceDir, target);
+        Assertions.assertEquals(1, migrator.migrateAll());
+        Assertions.assertEquals(0, migrator.migrateAll());
+
+        Assertions.assertFalse(file.exists());
+        Assertions.assertEquals(15, target.count("chat-3"));
+        List<Message> messages = target.get("chat-3");
+        Assertions.assertEquals(10, messages.size());
+        Assertions.assertEquals("消息14", messages.get(9).getText());
+    }
+
+    @Test
+    void migrateChecksExistingTarget() throws Exception {
+        String sourceDir = tempDir.resolve("v1").toString();
+        FileBasedChatMemory v1 = new FileBasedChatMemory(sourceDir);
+        File complete = writeKryoV1(v1, "chat-5", numbered(5));
+        File partial = writeKryoV1(v1, "chat-6", numbered(5));
+        SegmentedLogChatMemory target = new SegmentedLogChatMemory(tempDir.resolve("log").toString());
+        // 上次迁移写完目标后、重命名前崩溃
+        target.append("chat-5", numbered(5));
+        // 上次迁移只写入了一部分
+        target.append("chat-6", numbered(2));
+
+        KryoV1ChatMemoryMigrator migrator = new KryoV1ChatMemoryMigrator(sourceDir, target);
+        Assertions.assertTrue(migrator.migrate("chat-5"));
+        Assertions.assertFalse(complete.exists());
+        Assertions.assertFalse(migrator.migrate("chat-6"));
+        Assertions.assertTrue(partial.exists());
+        Assertions.assertEquals(2, target.count("chat-6"));
+    }
+
+    @Test
+    void migrateKeepsUnreadableSource() throws Exception {
+        String sourceDir = tempDir.resolve("v1").toString();
+        FileBasedChatMemory v1 = new FileBasedChatMemory(sourceDir);
+        v1.add("chat-4", new UserMessage("你好"));
+        File file = v1.getFile("chat-4");
+        Files.write(file.toPath(), "KRYO_V1 损坏的内容".getBytes());
+
+        SegmentedLogChatMemory target = new SegmentedLogChatMemory(tempDir.resolve("log").toString());
+        KryoV1ChatMemoryMigrator migrator = new KryoV1ChatMemoryMigrator(sourceDir, target);
+        Assertions.assertFalse(migrator.migrate("chat-4"));
+        Assertions.assertTrue(file.exists());
+        Assertions.assertFalse(target.exists("chat-4"));
+    }
+}
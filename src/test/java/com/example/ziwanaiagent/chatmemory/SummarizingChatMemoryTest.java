@@ -0,0 +1,72 @@
+package com.example.ziwanaiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SummarizingChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void foldsOlderMessagesIntoSummary() {
+        ChatMemoryWindowPolicy policy = new ChatMemoryWindowPolicy(ChatMemoryWindow.ofMessages(4));
+        FileBasedChatMemory fileMemory = new FileBasedChatMemory(tempDir.toString(), new ChatMessageCodec(), policy);
+        AtomicInteger calls = new AtomicInteger();
+        ChatSummarizer summarizer = (previous, messages) -> {
+            calls.incrementAndGet();
+            return previous + messages.size() + ";";
+        };
+        List<Integer> loadedFrom = new ArrayList<>();
+        SummarizingChatMemory.HistoryLoader loader = (conversationId, fromIndex) -> {
+            loadedFrom.add(fromIndex);
+            return fileMemory.loadFrom(conversationId, fromIndex);
+        };
+        try (SummarizingChatMemory chatMemory = new SummarizingChatMemory(fileMemory, loader, policy,
+                new ChatSummaryStore(tempDir.toString()), summarizer, 3, 10, 100, 60_000)) {
+            for (int i = 0; i < 6; i++) {
+                chatMemory.add("chat-1", new UserMessage("消息" + i));
+            }
+            // 只有 2 条滑出窗口，未达到批量阈值
+            Assertions.assertEquals(0, chatMemory.summarizePending());
+            Assertions.assertEquals(4, chatMemory.get("chat-1").size());
+
+            chatMemory.add("chat-1", new UserMessage("消息6"));
+            Assertions.assertEquals(1, chatMemory.summarizePending());
+            List<Message> messages = chatMemory.get("chat-1");
+            Assertions.assertEquals(5, messages.size());
+            Assertions.assertInstanceOf(SystemMessage.class, messages.get(0));
+            Assertions.assertTrue(messages.get(0).getText().endsWith("3;"));
+            Assertions.assertEquals("消息3", messages.get(1).getText());
+
+            // 摘要持久化在对话记录旁，重启后仍可读取
+            ChatSummaryStore.ChatSummary summary = new ChatSummaryStore(tempDir.toString()).load("chat-1");
+            Assertions.assertEquals(3, summary.foldedCount());
+
+            // 下一轮只从水位线之后读取
+            for (int i = 7; i < 10; i++) {
+                chatMemory.add("chat-1", new UserMessage("消息" + i));
+            }
+            loadedFrom.clear();
+            Assertions.assertEquals(1, chatMemory.summarizePending());
+            Assertions.assertEquals(List.of(3), loadedFrom);
+            messages = chatMemory.get("chat-1");
+            Assertions.assertTrue(messages.get(0).getText().endsWith("3;3;"));
+            Assertions.assertEquals("消息6", messages.get(1).getText());
+            Assertions.assertEquals(6, new ChatSummaryStore(tempDir.toString()).load("chat-1").foldedCount());
+
+            chatMemory.clear("chat-1");
+            Assertions.assertTrue(chatMemory.get("chat-1").isEmpty());
+            Assertions.assertEquals(2, calls.get());
+        }
+    }
+}
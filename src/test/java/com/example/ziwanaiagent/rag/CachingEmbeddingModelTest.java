@@ -0,0 +1,152 @@
+package com.example.ziwanaiagent.rag;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Map;
+
+class CachingEmbeddingModelTest {
+
+    @TempDir
+    File tempDir;
+
+    private static void embedDocuments(CachingEmbeddingModel model, String... texts) {
+        model.callForDocuments(new EmbeddingRequest(List.of(texts), EmbeddingOptionsBuilder.builder().build()));
+    }
+
+    @Test
+    void batchesMissesAndServesRepeatsFromMemory() {
+        FakeEmbeddingModel fake = new FakeEmbeddingModel(8);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (CachingEmbeddingModel model = new CachingEmbeddingModel(fake, tempDir, "m", 8, 100, registry)) {
+            List<float[]> first = model.embed(List.of("恋爱", "婚姻", "恋爱"));
+            Assertions.assertEquals(1, fake.calls.get());
+            // 同一请求内的重复文本只向量化一次
+            Assertions.assertEquals(2, fake.embeddedTexts.get());
+            Assertions.assertArrayEquals(fake.vector("恋爱"), first.get(0));
+            Assertions.assertArrayEquals(fake.vector("婚姻"), first.get(1));
+            Assertions.assertArrayEquals(fake.vector("恋爱"), first.get(2));
+
+            List<float[]> second = model.embed(List.of("婚姻", "单身", "恋爱"));
+            Assertions.assertEquals(2, fake.calls.get());
+            Assertions.assertEquals(3, fake.embeddedTexts.get());
+            Assertions.assertArrayEquals(fake.vector("单身"), second.get(1));
+            Assertions.assertArrayEquals(fake.vector("恋爱"), second.get(2));
+
+            // 修改返回的向量不影响缓存
+            second.get(0)[0] = 42;
+            Assertions.assertArrayEquals(fake.vector("婚姻"), model.embed("婚姻"));
+            Assertions.assertEquals(2, fake.calls.get());
+
+            Assertions.assertEquals(3.0, registry.get("rag.embedding.cache.requests").tags("result", "memory_hit").counter().count());
+            Assertions.assertEquals(4.0, registry.get("rag.embedding.cache.requests").tags("result", "miss").counter().count());
+        }
+    }
+
+    @Test
+    void keysIncludeModelAndDimensions() {
+        FakeEmbeddingModel fake = new FakeEmbeddingModel(8);
+        try (CachingEmbeddingModel model = new CachingEmbeddingModel(fake, null, "m", 8, 100, null)) {
+            model.embed("恋爱");
+            model.call(new EmbeddingRequest(List.of("恋爱"), EmbeddingOptionsBuilder.builder().withModel("m").build()));
+            Assertions.assertEquals(1, fake.calls.get());
+            model.call(new EmbeddingRequest(List.of("恋爱"), EmbeddingOptionsBuilder.builder().withModel("other").build()));
+            model.call(new EmbeddingRequest(List.of("恋爱"), EmbeddingOptionsBuilder.builder().withDimensions(4).build()));
+            Assertions.assertEquals(3, fake.calls.get());
+        }
+    }
+
+    @Test
+    void diskTierSurvivesRestartAndTruncatesTornTail() throws Exception {
+        FakeEmbeddingModel fake = new FakeEmbeddingModel(8);
+        try (CachingEmbeddingModel model = new CachingEmbeddingModel(fake, tempDir, "m", 8, 100, null)) {
+            embedDocuments(model, "恋爱", "婚姻");
+        }
+        // 模拟写入中断：末尾残留半条记录
+        File file = new File(tempDir, "embeddings.bin");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.write(new byte[]{60, 0, 0, 0, 1, 2, 3});
+        }
+        long validLength = file.length() - 7;
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (CachingEmbeddingModel model = new CachingEmbeddingModel(fake, tempDir, "m", 8, 100, registry)) {
+            Assertions.assertEquals(validLength, file.length());
+            Assertions.assertArrayEquals(fake.vector("婚姻"), model.embed("婚姻"));
+            Assertions.assertArrayEquals(fake.vector("恋爱"), model.embed("恋爱"));
+            Assertions.assertEquals(1, fake.calls.get());
+            Assertions.assertEquals(2.0, registry.get("rag.embedding.cache.requests").tags("result", "disk_hit").counter().count());
+
+            embedDocuments(model, "单身");
+            Assertions.assertEquals(2, fake.calls.get());
+        }
+        try (CachingEmbeddingModel model = new CachingEmbeddingModel(fake, tempDir, "m", 8, 100, null)) {
+            model.embed(List.of("恋爱", "婚姻", "单身"));
+            Assertions.assertEquals(2, fake.calls.get());
+        }
+    }
+
+    @Test
+    void corruptedRecordIsTreatedAsMiss() throws Exception {
+        FakeEmbeddingModel fake = new FakeEmbeddingModel(8);
+        try (CachingEmbeddingModel model = new CachingEmbeddingModel(fake, tempDir, "m", 8, 100, null)) {
+            embedDocuments(model, "恋爱");
+        }
+        File file = new File(tempDir, "embeddings.bin");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            raf.write(0x7f);
+        }
+        try (CachingEmbeddingModel model = new CachingEmbeddingModel(fake, tempDir, "m", 8, 100, null)) {
+            Assertions.assertArrayEquals(fake.vector("恋爱"), model.embed("恋爱"));
+            Assertions.assertEquals(2, fake.calls.get());
+        }
+    }
+
+    @Test
+    void reingestionIntoEmptyStoreReusesCachedVectors() {
+        FakeEmbeddingModel fake = new FakeEmbeddingModel(8);
+        List<Document> documents = List.of(
+                new Document("a", "恋爱中如何沟通", Map.of("filename", "a.md")),
+                new Document("b", "婚后如何相处", Map.of("filename", "b.md")));
+        try (CachingEmbeddingModel model = new CachingEmbeddingModel(fake, new File(tempDir, "cache"), "m", 8, 100, null)) {
+            new MappedFileVectorStore(new File(tempDir, "store1"), "kb", model).sync(documents, docs -> docs);
+        }
+        int calls = fake.calls.get();
+        // 向量存储目录被清空后重新入库，向量全部来自磁盘缓存
+        try (CachingEmbeddingModel model = new CachingEmbeddingModel(fake, new File(tempDir, "cache"), "m", 8, 100, null)) {
+            MappedFileVectorStore.SyncResult result =
+                    new MappedFileVectorStore(new File(tempDir, "store2"), "kb", model).sync(documents, docs -> docs);
+            Assertions.assertEquals(2, result.embedded());
+            Assertions.assertEquals(calls, fake.calls.get());
+        }
+    }
+
+    @Test
+    void queryEmbeddingsStayInMemory() {
+        FakeEmbeddingModel fake = new FakeEmbeddingModel(8);
+        File file = new File(tempDir, "embeddings.bin");
+        try (CachingEmbeddingModel model = new CachingEmbeddingModel(fake, tempDir, "m", 8, 100, null)) {
+            embedDocuments(model, "恋爱中如何沟通");
+            long documentsOnly = file.length();
+            for (int i = 0; i < 50; i++) {
+                model.embed("第 " + i + " 个问题");
+            }
+            model.embed("第 0 个问题");
+            Assertions.assertEquals(51, fake.calls.get());
+            // 检索问题不写磁盘，但可以命中磁盘中的文档向量
+            Assertions.assertEquals(documentsOnly, file.length());
+            Assertions.assertArrayEquals(fake.vector("恋爱中如何沟通"), model.embed("恋爱中如何沟通"));
+            Assertions.assertEquals(51, fake.calls.get());
+        }
+    }
+}
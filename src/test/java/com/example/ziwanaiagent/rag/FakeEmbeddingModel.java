@@ -0,0 +1,68 @@
+package com.example.ziwanaiagent.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 测试用向量模型：按字符哈希累加得到确定性的向量，可模拟每次调用的网络耗时，并统计调用次数与向量化的文本数
+ */
+class FakeEmbeddingModel implements EmbeddingModel {
+
+    final AtomicInteger calls = new AtomicInteger();
+    final AtomicInteger embeddedTexts = new AtomicInteger();
+
+    private final int dimensions;
+    private final long latencyMillis;
+
+    FakeEmbeddingModel(int dimensions) {
+        this(dimensions, 0);
+    }
+
+    FakeEmbeddingModel(int dimensions, long latencyMillis) {
+        this.dimensions = dimensions;
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        calls.incrementAndGet();
+        if (latencyMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<Embedding> embeddings = new ArrayList<>();
+        List<String> texts = request.getInstructions();
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings.add(new Embedding(vector(texts.get(i)), i));
+        }
+        embeddedTexts.addAndGet(texts.size());
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    float[] vector(String text) {
+        float[] vector = new float[dimensions];
+        text.codePoints().forEach(c -> vector[Math.floorMod(c * 31 + 7, dimensions)] += 1);
+        return vector;
+    }
+}
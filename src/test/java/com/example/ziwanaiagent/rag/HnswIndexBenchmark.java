@@ -0,0 +1,156 @@
+package com.example.ziwanaiagent.rag;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * HNSW 召回率与查询延迟：在 1 万 / 10 万 / 100 万条向量上，对比不同 efSearch 下的 recall@k、平均与 p99 延迟，
+ * 以及全量扫描的延迟；另测按 status 过滤（命中约 1/3）时的结果。
+ * <p>
+ * 向量为围绕 1000 个聚类中心的高斯分布（比均匀随机更接近真实文本向量），默认 128 维以便 100 万条能放进内存；
+ * 真实的 1536 维向量单次相似度计算约慢 12 倍，构建与查询耗时按比例增加，召回率曲线形状不变。
+ * 运行：直接执行 main 方法，参数依次为 条数列表（逗号分隔）、维度，建议 -Xmx3g 并加 --add-modules jdk.incubator.vector
+ */
+public class HnswIndexBenchmark {
+
+    private static final int QUERIES = 200;
+    private static final int K = 10;
+    private static final int[] EF_SEARCH = {16, 32, 64, 128, 256};
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0
+                ? Arrays.stream(args[0].split(",")).mapToInt(Integer::parseInt).toArray()
+                : new int[]{10_000, 100_000, 1_000_000};
+        int dimensions = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+        for (int size : sizes) {
+            run(size, dimensions);
+        }
+    }
+
+    private static void run(int size, int dimensions) {
+        Random random = new Random(size);
+        float[][] centers = new float[1000][dimensions];
+        for (float[] center : centers) {
+            for (int j = 0; j < dimensions; j++) {
+                center[j] = (float) random.nextGaussian();
+            }
+        }
+        // 向量按行连续存放，全量扫描与标准答案都从这里读
+        float[] data = new float[size * dimensions];
+        for (int i = 0; i < size; i++) {
+            sample(centers, random, data, i * dimensions);
+        }
+        float[][] queries = new float[QUERIES][dimensions];
+        for (float[] query : queries) {
+            sample(centers, random, query, 0);
+        }
+        // 模拟 status 三选一，过滤命中约 1/3
+        BitSet status = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            if (random.nextInt(3) == 0) {
+                status.set(i);
+            }
+        }
+
+        long start = System.nanoTime();
+        HnswIndex index = new HnswIndex(dimensions, HnswIndex.Config.DEFAULT);
+        float[] row = new float[dimensions];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(data, i * dimensions, row, 0, dimensions);
+            index.add(row);
+        }
+        double buildSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%n== %,d 条，%d 维，M=%d，efConstruction=%d，构建 %.1f s（%.0f 条/s）%n", size, dimensions,
+                HnswIndex.Config.DEFAULT.m(), HnswIndex.Config.DEFAULT.efConstruction(), buildSeconds, size / buildSeconds);
+
+        int[][] truth = new int[QUERIES][];
+        int[][] filteredTruth = new int[QUERIES][];
+        long[] scanNanos = new long[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            long t = System.nanoTime();
+            truth[q] = exact(data, dimensions, queries[q], null);
+            scanNanos[q] = System.nanoTime() - t;
+            filteredTruth[q] = exact(data, dimensions, queries[q], status::get);
+        }
+        System.out.printf("%-22s recall@%d %8s  平均 %9.1f us  p99 %9.1f us%n", "全量扫描", K, "1.000",
+                mean(scanNanos) / 1e3, percentile(scanNanos, 0.99) / 1e3);
+
+        for (int ef : EF_SEARCH) {
+            report("HNSW ef=" + ef, index, queries, truth, ef, null);
+        }
+        for (int ef : new int[]{64, 128}) {
+            report("HNSW ef=" + ef + " 过滤 1/3", index, queries, filteredTruth, ef, status::get);
+        }
+    }
+
+    private static void report(String name, HnswIndex index, float[][] queries, int[][] truth, int ef, IntPredicate filter) {
+        // 预热
+        for (float[] query : queries) {
+            index.search(query, K, ef, filter);
+        }
+        long[] nanos = new long[queries.length];
+        double recall = 0;
+        for (int q = 0; q < queries.length; q++) {
+            long t = System.nanoTime();
+            HnswIndex.Result result = index.search(queries[q], K, ef, filter);
+            nanos[q] = System.nanoTime() - t;
+            int[] expected = truth[q];
+            recall += (double) Arrays.stream(result.nodes())
+                    .filter(node -> Arrays.stream(expected).anyMatch(e -> e == node)).count() / expected.length;
+        }
+        System.out.printf("%-22s recall@%d %8.3f  平均 %9.1f us  p99 %9.1f us%n", name, K, recall / queries.length,
+                mean(nanos) / 1e3, percentile(nanos, 0.99) / 1e3);
+    }
+
+    private static void sample(float[][] centers, Random random, float[] target, int offset) {
+        float[] center = centers[random.nextInt(centers.length)];
+        for (int j = 0; j < center.length; j++) {
+            target[offset + j] = center[j] + (float) random.nextGaussian() * 1.2f;
+        }
+    }
+
+    private static int[] exact(float[] data, int dimensions, float[] query, IntPredicate filter) {
+        int size = data.length / dimensions;
+        HnswIndex.NeighborQueue top = new HnswIndex.NeighborQueue(K + 1, false);
+        double queryNorm = 0;
+        for (float v : query) {
+            queryNorm += v * v;
+        }
+        for (int i = 0; i < size; i++) {
+            if (filter != null && !filter.test(i)) {
+                continue;
+            }
+            int base = i * dimensions;
+            float dot = 0;
+            float norm = 0;
+            for (int j = 0; j < dimensions; j++) {
+                dot += data[base + j] * query[j];
+                norm += data[base + j] * data[base + j];
+            }
+            float score = (float) (dot / Math.sqrt(norm * queryNorm));
+            if (top.size() < K || score > top.topScore()) {
+                top.push(i, score);
+                if (top.size() > K) {
+                    top.pop();
+                }
+            }
+        }
+        int[] nodes = new int[top.size()];
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            nodes[i] = top.pop();
+        }
+        return nodes;
+    }
+
+    private static double mean(long[] values) {
+        return Arrays.stream(values).average().orElse(0);
+    }
+
+    private static double percentile(long[] values, double p) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.ziwanaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntPredicate;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 32;
+
+    /**
+     * 围绕若干聚类中心生成的向量，比均匀随机向量更接近真实文本向量的分布
+     */
+    private static float[][] clustered(int count, int clusters, long seed) {
+        Random random = new Random(seed);
+        float[][] centers = new float[clusters][DIMENSIONS];
+        for (float[] center : centers) {
+            for (int j = 0; j < DIMENSIONS; j++) {
+                center[j] = (float) random.nextGaussian();
+            }
+        }
+        float[][] vectors = new float[count][DIMENSIONS];
+        for (int i = 0; i < count; i++) {
+            float[] center = centers[random.nextInt(clusters)];
+            for (int j = 0; j < DIMENSIONS; j++) {
+                vectors[i][j] = center[j] + (float) random.nextGaussian() * 0.5f;
+            }
+        }
+        return vectors;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, na = 0, nb = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            na += a[i] * a[i];
+            nb += b[i] * b[i];
+        }
+        return dot / Math.sqrt(na * nb);
+    }
+
+    private static int[] bruteForce(float[][] vectors, float[] query, int k, IntPredicate filter) {
+        Integer[] order = new Integer[vectors.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        return Arrays.stream(order)
+                .filter(i -> filter == null || filter.test(i))
+                .sorted((a, b) -> Double.compare(cosine(vectors[b], query), cosine(vectors[a], query)))
+                .limit(k)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private static double recall(int[] expected, int[] actual) {
+        long hits = Arrays.stream(actual).filter(node -> Arrays.stream(expected).anyMatch(e -> e == node)).count();
+        return (double) hits / expected.length;
+    }
+
+    @Test
+    void recallAgainstBruteForce() {
+        float[][] vectors = clustered(5000, 50, 1);
+        HnswIndex index = new HnswIndex(DIMENSIONS, HnswIndex.Config.DEFAULT);
+        for (float[] vector : vectors) {
+            index.add(vector);
+        }
+        Assertions.assertEquals(5000, index.size());
+
+        float[][] queries = clustered(50, 50, 2);
+        double total = 0;
+        for (float[] query : queries) {
+            HnswIndex.Result result = index.search(query, 10);
+            Assertions.assertEquals(10, result.size());
+            for (int i = 1; i < result.size(); i++) {
+                Assertions.assertTrue(result.scores()[i - 1] >= result.scores()[i]);
+            }
+            Assertions.assertEquals(cosine(vectors[result.nodes()[0]], query), result.scores()[0], 1e-4);
+            total += recall(bruteForce(vectors, query, 10, null), result.nodes());
+        }
+        Assertions.assertTrue(total / queries.length >= 0.95, "recall@10 = " + total / queries.length);
+    }
+
+    @Test
+    void filteredSearchOnlyReturnsAcceptedNodes() {
+        float[][] vectors = clustered(3000, 30, 3);
+        HnswIndex index = new HnswIndex(DIMENSIONS, HnswIndex.Config.DEFAULT);
+        for (float[] vector : vectors) {
+            index.add(vector);
+        }
+        IntPredicate filter = node -> node % 10 == 3;
+        double total = 0;
+        float[][] queries = clustered(20, 30, 4);
+        for (float[] query : queries) {
+            HnswIndex.Result result = index.search(query, 5, 64, filter);
+            Assertions.assertEquals(5, result.size());
+            Arrays.stream(result.nodes()).forEach(node -> Assertions.assertTrue(filter.test(node)));
+            total += recall(bruteForce(vectors, query, 5, filter), result.nodes());
+        }
+        Assertions.assertTrue(total / queries.length >= 0.9, "filtered recall@5 = " + total / queries.length);
+
+        Assertions.assertEquals(0, index.search(queries[0], 5, 64, node -> false).size());
+    }
+
+    @Test
+    void concurrentVirtualThreadSearchesMatchSequential() throws Exception {
+        float[][] vectors = clustered(2000, 20, 5);
+        HnswIndex index = new HnswIndex(DIMENSIONS, HnswIndex.Config.DEFAULT);
+        for (float[] vector : vectors) {
+            index.add(vector);
+        }
+        float[][] queries = clustered(200, 20, 6);
+        int[][] expected = new int[queries.length][];
+        for (int i = 0; i < queries.length; i++) {
+            expected[i] = index.search(queries[i], 10).nodes();
+        }
+        // 每个查询一个新的虚拟线程，共享池中的访问集合不能串用
+        List<Future<int[]>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (float[] query : queries) {
+                futures.add(executor.submit(() -> index.search(query, 10).nodes()));
+            }
+            for (int i = 0; i < queries.length; i++) {
+                Assertions.assertArrayEquals(expected[i], futures.get(i).get());
+            }
+        }
+    }
+
+    @Test
+    void emptyAndSingleNode() {
+        HnswIndex index = new HnswIndex(3, HnswIndex.Config.DEFAULT);
+        Assertions.assertEquals(0, index.search(new float[]{1, 0, 0}, 3).size());
+        index.add(new float[]{0, 2, 0});
+        HnswIndex.Result result = index.search(new float[]{0, 1, 0}, 3);
+        Assertions.assertArrayEquals(new int[]{0}, result.nodes());
+        Assertions.assertEquals(1f, result.scores()[0], 1e-6);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> index.add(new float[]{1, 2}));
+    }
+
+    @Test
+    void neighborQueueOrdersNegativeScores() {
+        HnswIndex.NeighborQueue min = new HnswIndex.NeighborQueue(2, false);
+        HnswIndex.NeighborQueue max = new HnswIndex.NeighborQueue(2, true);
+        float[] scores = {0.5f, -0.25f, 0f, -1f, 0.75f, -0.5f};
+        for (int i = 0; i < scores.length; i++) {
+            min.push(i, scores[i]);
+            max.push(i, scores[i]);
+        }
+        Assertions.assertEquals(-1f, min.topScore());
+        Assertions.assertEquals(3, min.pop());
+        Assertions.assertEquals(5, min.pop());
+        Assertions.assertEquals(0.75f, max.topScore());
+        Assertions.assertEquals(4, max.pop());
+        Assertions.assertEquals(0, max.pop());
+        Assertions.assertEquals(4, min.size());
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.ziwanaiagent.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * 批量入库吞吐：原 VectorStoreInitializer 逐批串行写入 vs {@link IngestionPipeline} 在不同向量化并发度下的耗时
+ * <p>
+ * 向量模型用休眠的桩代替（每次请求 EMBED_LATENCY_MS），不限流；写入端按 PgVectorStore 的方式整批向量化后存入内存，
+ * 输出耗时、吞吐与模型调用次数。
+ * 运行：直接执行 main 方法
+ */
+public class IngestionPipelineBenchmark {
+
+    private static final int FILES = 40;
+    private static final int DOCUMENTS_PER_FILE = 50;
+    private static final int DIMENSIONS = 1536;
+    private static final long EMBED_LATENCY_MS = 100;
+    private static final int BATCH_SIZE = 25;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.printf("文件 %d 个，每个 %d 段，维度 %d，向量化请求耗时 %dms，每批 %d 条%n",
+                FILES, DOCUMENTS_PER_FILE, DIMENSIONS, EMBED_LATENCY_MS, BATCH_SIZE);
+        List<Integer> files = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            files.add(i);
+        }
+
+        FakeEmbeddingModel serialModel = new FakeEmbeddingModel(DIMENSIONS, EMBED_LATENCY_MS);
+        Consumer<List<Document>> serialStore = store(serialModel);
+        long start = System.nanoTime();
+        List<Document> documents = new ArrayList<>();
+        files.forEach(file -> documents.addAll(load(file)));
+        for (int i = 0; i < documents.size(); i += BATCH_SIZE) {
+            serialStore.accept(documents.subList(i, Math.min(i + BATCH_SIZE, documents.size())));
+        }
+        report("串行 25 条一批", start, documents.size(), serialModel);
+
+        for (int concurrency : new int[]{1, 4, 8, 16}) {
+            FakeEmbeddingModel fake = new FakeEmbeddingModel(DIMENSIONS, EMBED_LATENCY_MS);
+            try (CachingEmbeddingModel model = new CachingEmbeddingModel(fake, null, "bench", DIMENSIONS, 10000, null)) {
+                Consumer<List<Document>> store = store(model);
+                IngestionPipeline pipeline = new IngestionPipeline(model, null, null,
+                        new IngestionPipeline.Config(4, 2, 4, concurrency, 2, BATCH_SIZE, 16, 5,
+                                Duration.ofMillis(500), Duration.ofSeconds(30)), null);
+                start = System.nanoTime();
+                IngestionPipeline.Result result = pipeline.ingest(files, IngestionPipelineBenchmark::load,
+                        UnaryOperator.identity(), UnaryOperator.identity(), store);
+                report("流水线 向量化并发 " + concurrency, start, result.documents(), fake);
+            }
+        }
+    }
+
+    /**
+     * 与 PgVectorStore.add 相同的向量化方式：整批调用 embed(List&lt;Document&gt;, options, batchingStrategy)
+     */
+    private static Consumer<List<Document>> store(EmbeddingModel model) {
+        TokenCountBatchingStrategy batchingStrategy = new TokenCountBatchingStrategy();
+        Map<String, float[]> vectors = new ConcurrentHashMap<>();
+        return batch -> {
+            List<float[]> embeddings = model.embed(batch, EmbeddingOptionsBuilder.builder().build(), batchingStrategy);
+            for (int i = 0; i < batch.size(); i++) {
+                vectors.put(batch.get(i).getId(), embeddings.get(i));
+            }
+        };
+    }
+
+    private static List<Document> load(int file) {
+        List<Document> documents = new ArrayList<>(DOCUMENTS_PER_FILE);
+        for (int i = 0; i < DOCUMENTS_PER_FILE; i++) {
+            documents.add(new Document("文件 " + file + " 第 " + i + " 段：恋爱中多沟通、多倾听，编号 " + (file * 31 + i),
+                    Map.of("filename", "doc-" + file + ".md")));
+        }
+        return documents;
+    }
+
+    private static void report(String name, long startNanos, int documents, FakeEmbeddingModel model) {
+        double millis = (System.nanoTime() - startNanos) / 1e6;
+        System.out.printf("%-20s 耗时 %8.1f ms，%7.1f 条/秒，向量化请求 %4d 次，文本 %5d 条%n", name, millis,
+                documents * 1000 / millis, model.calls.get(), model.embeddedTexts.get());
+    }
+}
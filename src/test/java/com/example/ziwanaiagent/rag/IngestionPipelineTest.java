@@ -0,0 +1,110 @@
+package com.example.ziwanaiagent.rag;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+class IngestionPipelineTest {
+
+    private static final IngestionPipeline.Config CONFIG = new IngestionPipeline.Config(2, 2, 2, 4, 2, 5, 4, 3,
+            Duration.ofMillis(1), Duration.ofMillis(5));
+
+    private static List<Document> file(int file, int documents) {
+        return IntStream.range(0, documents)
+                .mapToObj(i -> new Document("文件 " + file + " 第 " + i + " 段"))
+                .toList();
+    }
+
+    @Test
+    void ingestsEveryDocumentOnceWithCacheWarmedBeforeUpsert() throws Exception {
+        FakeEmbeddingModel fake = new FakeEmbeddingModel(8);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (CachingEmbeddingModel model = new CachingEmbeddingModel(fake, null, "m", 8, 1000, null)) {
+            IngestionPipeline pipeline = new IngestionPipeline(model, null, null, CONFIG, registry);
+            List<Document> upserted = Collections.synchronizedList(new ArrayList<>());
+            IngestionPipeline.Result result = pipeline.ingest(List.of(0, 1, 2, 3, 4, 5, 6), i -> file(i, 7),
+                    UnaryOperator.identity(), UnaryOperator.identity(), batch -> {
+                        Assertions.assertTrue(batch.size() <= 5);
+                        // 与 VectorStore.add 一样再次向量化，应全部命中缓存
+                        model.embed(batch.stream().map(Document::getText).toList());
+                        upserted.addAll(batch);
+                    });
+
+            Assertions.assertEquals(7, result.sources());
+            Assertions.assertEquals(49, result.documents());
+            Assertions.assertEquals(49, upserted.size());
+            Assertions.assertEquals(49, upserted.stream().map(Document::getText).distinct().count());
+            Assertions.assertEquals(49, fake.embeddedTexts.get());
+            Assertions.assertEquals(49.0, registry.get("rag.ingest.documents").tags("stage", "upsert").counter().count());
+        }
+    }
+
+    @Test
+    void prepareKeepsOrderAndRetriesTransientFailures() throws Exception {
+        FakeEmbeddingModel fake = new FakeEmbeddingModel(8);
+        AtomicInteger enrichCalls = new AtomicInteger();
+        try (CachingEmbeddingModel model = new CachingEmbeddingModel(fake, null, "m", 8, 1000, null)) {
+            IngestionPipeline pipeline = new IngestionPipeline(model, null, null, CONFIG, null);
+            List<Document> documents = file(0, 23);
+            List<Document> prepared = pipeline.prepare(documents, batch -> {
+                if (enrichCalls.incrementAndGet() == 2) {
+                    throw new TransientAiException("限流");
+                }
+                batch.forEach(document -> document.getMetadata().put("excerpt_keywords", "沟通"));
+                return batch;
+            });
+
+            Assertions.assertEquals(documents.stream().map(Document::getText).toList(),
+                    prepared.stream().map(Document::getText).toList());
+            Assertions.assertTrue(prepared.stream().allMatch(document -> document.getMetadata().containsKey("excerpt_keywords")));
+            // 5 批加 1 次重试
+            Assertions.assertEquals(6, enrichCalls.get());
+            Assertions.assertEquals(23, fake.embeddedTexts.get());
+        }
+    }
+
+    @Test
+    void nonTransientFailureStopsPipeline() {
+        FakeEmbeddingModel fake = new FakeEmbeddingModel(8);
+        AtomicInteger attempts = new AtomicInteger();
+        IngestionPipeline pipeline = new IngestionPipeline(fake, null, null, CONFIG, null);
+        RuntimeException e = Assertions.assertThrows(RuntimeException.class, () ->
+                pipeline.ingest(List.of(0, 1, 2, 3), i -> file(i, 10), UnaryOperator.identity(), UnaryOperator.identity(),
+                        batch -> {
+                            attempts.incrementAndGet();
+                            throw new NonTransientAiException("鉴权失败");
+                        }));
+        Assertions.assertInstanceOf(NonTransientAiException.class, e.getCause());
+        // 不可恢复的错误不重试，失败后不再处理后续批（并发的写入线程最多各失败一次）
+        Assertions.assertTrue(attempts.get() <= CONFIG.upsertConcurrency());
+        // 不是缓存模型时向量化阶段只限流，不调用模型
+        Assertions.assertEquals(0, fake.calls.get());
+    }
+
+    @Test
+    void tokenBucketLimitsRate() throws Exception {
+        TokenBucket bucket = new TokenBucket(2, 20);
+        Assertions.assertTrue(bucket.tryAcquire(2));
+        Assertions.assertFalse(bucket.tryAcquire(1));
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            bucket.acquire(1);
+        }
+        // 4 个令牌按每秒 20 个补充，约 200ms
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        Assertions.assertTrue(elapsedMillis >= 150, "elapsed " + elapsedMillis);
+        // 超过容量的申请按容量计
+        Assertions.assertTrue(bucket.acquire(100).toMillis() <= 200);
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.ziwanaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+class MappedFileVectorStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private final FakeEmbeddingModel embeddingModel = new FakeEmbeddingModel(32);
+
+    private static List<Document> documents() {
+        return new ArrayList<>(List.of(
+                new Document("单身的时候如何扩大社交圈？多参加兴趣活动。", Map.of("filename", "单身篇.md", "status", "单身")),
+                new Document("恋爱中如何处理争吵？先冷静再沟通。", Map.of("filename", "恋爱篇.md", "status", "恋爱")),
+                new Document("婚后如何分担家务？列出清单轮流负责。", Map.of("filename", "已婚篇.md", "status", "已婚"))));
+    }
+
+    private MappedFileVectorStore open() {
+        return new MappedFileVectorStore(dir.toFile(), "love-app", embeddingModel);
+    }
+
+    @Test
+    void reopenedStoreReusesPersistedVectors() {
+        MappedFileVectorStore.SyncResult first = open().sync(documents(), UnaryOperator.identity());
+        Assertions.assertEquals(new MappedFileVectorStore.SyncResult(0, 3, 0), first);
+        int embedded = embeddingModel.embeddedTexts.get();
+
+        MappedFileVectorStore reopened = open();
+        Assertions.assertEquals(3, reopened.size());
+        int[] enricherCalls = {0};
+        MappedFileVectorStore.SyncResult second = reopened.sync(documents(), docs -> {
+            enricherCalls[0]++;
+            return docs;
+        });
+        Assertions.assertEquals(new MappedFileVectorStore.SyncResult(3, 0, 0), second);
+        Assertions.assertEquals(embedded, embeddingModel.embeddedTexts.get());
+        Assertions.assertEquals(0, enricherCalls[0]);
+
+        List<Document> results = reopened.similaritySearch(SearchRequest.builder().query("恋爱中如何处理争吵").topK(1).build());
+        Assertions.assertEquals(1, results.size());
+        Assertions.assertEquals("恋爱", results.getFirst().getMetadata().get("status"));
+        Assertions.assertTrue(results.getFirst().getScore() > 0.5);
+    }
+
+    @Test
+    void onlyChangedDocumentsAreEnrichedAndEmbedded() {
+        open().sync(documents(), UnaryOperator.identity());
+        int embedded = embeddingModel.embeddedTexts.get();
+
+        List<Document> updated = documents();
+        updated.set(1, new Document("恋爱中如何处理争吵？先冷静，再说出自己的感受。", Map.of("filename", "恋爱篇.md", "status", "恋爱")));
+        MappedFileVectorStore store = open();
+        List<Document> enriched = new ArrayList<>();
+        MappedFileVectorStore.SyncResult result = store.sync(updated, docs -> {
+            enriched.addAll(docs);
+            docs.forEach(doc -> doc.getMetadata().put("excerpt_keywords", "争吵,沟通"));
+            return docs;
+        });
+
+        Assertions.assertEquals(new MappedFileVectorStore.SyncResult(2, 1, 1), result);
+        Assertions.assertEquals(1, enriched.size());
+        Assertions.assertEquals(embedded + 1, embeddingModel.embeddedTexts.get());
+        // 增强后的元信息随记录持久化，重启后不再调用增强
+        Document hit = open().similaritySearch(SearchRequest.builder().query("争吵 感受").topK(1).build()).getFirst();
+        Assertions.assertEquals("争吵,沟通", hit.getMetadata().get("excerpt_keywords"));
+    }
+
+    @Test
+    void filterExpressionOnMetadata() {
+        MappedFileVectorStore store = open();
+        store.sync(documents(), UnaryOperator.identity());
+
+        List<Document> results = store.similaritySearch(SearchRequest.builder()
+                .query("如何处理争吵")
+                .topK(3)
+                .filterExpression(new FilterExpressionBuilder().eq("status", "已婚").build())
+                .build());
+        Assertions.assertEquals(1, results.size());
+        Assertions.assertEquals("已婚篇.md", results.getFirst().getMetadata().get("filename"));
+
+        store.delete(new FilterExpressionBuilder().eq("status", "单身").build());
+        Assertions.assertEquals(2, open().size());
+    }
+
+    @Test
+    void addReplacesSameIdAndDeleteById() {
+        MappedFileVectorStore store = open();
+        store.add(List.of(new Document("doc-1", "第一版", Map.of()), new Document("doc-2", "第二篇", Map.of())));
+        store.add(List.of(new Document("doc-1", "第一篇修改后", Map.of())));
+        Assertions.assertEquals(2, store.size());
+
+        store.delete(List.of("doc-2"));
+        MappedFileVectorStore reopened = open();
+        Assertions.assertEquals(1, reopened.size());
+        Document only = reopened.similaritySearch(SearchRequest.builder().query("第一篇").topK(5).build()).getFirst();
+        Assertions.assertEquals("doc-1", only.getId());
+        Assertions.assertEquals("第一篇修改后", only.getText());
+    }
+
+    @Test
+    void annIndexAndBitmapFilterMatchExactSearch() throws InterruptedException {
+        List<Document> corpus = new ArrayList<>();
+        String[] statuses = {"单身", "恋爱", "已婚"};
+        for (int i = 0; i < 600; i++) {
+            String status = statuses[i % 3];
+            corpus.add(new Document(status + "问题 " + i + "：如何" + "沟通倾听包容理解".substring(i % 7, i % 7 + 2),
+                    Map.of("filename", status + "篇.md", "status", status)));
+        }
+        new MappedFileVectorStore(dir.toFile(), "love-app", embeddingModel).sync(corpus, UnaryOperator.identity());
+        MappedFileVectorStore exact = new MappedFileVectorStore(dir.toFile(), "love-app", embeddingModel,
+                Integer.MAX_VALUE, HnswIndex.Config.DEFAULT);
+        MappedFileVectorStore ann = new MappedFileVectorStore(dir.toFile(), "love-app", embeddingModel,
+                100, new HnswIndex.Config(16, 100, 200));
+        for (int i = 0; i < 100 && !ann.isAnnIndexReady(); i++) {
+            Thread.sleep(50);
+        }
+        Assertions.assertTrue(ann.isAnnIndexReady());
+        Assertions.assertFalse(exact.isAnnIndexReady());
+
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        List<Filter.Expression> filters = List.of(
+                b.eq("status", "恋爱").build(),
+                b.and(b.in("status", "单身", "已婚"), b.ne("filename", "已婚篇.md")).build(),
+                b.not(b.eq("status", "单身")).build(),
+                // 未建位图的键回退到逐条求值
+                b.eq("category", "none").build());
+        for (Filter.Expression filter : filters) {
+            SearchRequest request = SearchRequest.builder().query("恋爱问题 如何沟通").topK(5).filterExpression(filter).build();
+            // 测试向量模型下同分的文档很多，按得分比较
+            List<Document> expected = exact.similaritySearch(request);
+            List<Document> actual = ann.similaritySearch(request);
+            Assertions.assertEquals(expected.size(), actual.size(), filter.toString());
+            for (int i = 0; i < expected.size(); i++) {
+                Assertions.assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-5, filter.toString());
+            }
+        }
+        List<Document> inLove = ann.similaritySearch(SearchRequest.builder().query("如何沟通").topK(10)
+                .filterExpression("status == '恋爱'").build());
+        Assertions.assertEquals(10, inLove.size());
+        inLove.forEach(doc -> Assertions.assertEquals("恋爱", doc.getMetadata().get("status")));
+    }
+
+    @Test
+    void mismatchedFilesAreTreatedAsEmpty() throws IOException {
+        open().sync(documents(), UnaryOperator.identity());
+        File meta = dir.resolve("love-app.meta").toFile();
+        byte[] bytes = Files.readAllBytes(meta.toPath());
+        Files.write(meta.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+
+        MappedFileVectorStore store = open();
+        Assertions.assertEquals(0, store.size());
+        Assertions.assertEquals(new MappedFileVectorStore.SyncResult(0, 3, 0), store.sync(documents(), UnaryOperator.identity()));
+        Assertions.assertEquals(3, open().size());
+    }
+
+    @Test
+    void oversizedVectorFileFailsInsteadOfReembedding() throws IOException {
+        open().sync(documents(), UnaryOperator.identity());
+        File vectors = dir.resolve("love-app.vec").toFile();
+        // 稀疏文件，不实际占用磁盘
+        try (RandomAccessFile raf = new RandomAccessFile(vectors, "rw")) {
+            raf.setLength(3L * 1024 * 1024 * 1024);
+        }
+
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, this::open);
+        Assertions.assertTrue(e.getMessage().contains("超过单次内存映射上限"));
+        // 文件保持原样，没有被当作空库重写
+        Assertions.assertEquals(3L * 1024 * 1024 * 1024, vectors.length());
+    }
+}
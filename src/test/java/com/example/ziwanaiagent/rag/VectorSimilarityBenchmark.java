@@ -0,0 +1,91 @@
+package com.example.ziwanaiagent.rag;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向量相似度内核基准：原逐元素循环 vs 标量四路展开 vs Vector API SIMD，覆盖常见的 1024 / 1536 维
+ * <p>
+ * 运行：直接执行 main 方法（fork 出的 JVM 会加上 --add-modules jdk.incubator.vector）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class VectorSimilarityBenchmark {
+
+    @Param({"1024", "1536"})
+    private int dimensions;
+
+    private float[] a;
+    private float[] b;
+    private final SimilarityKernel scalar = new ScalarSimilarityKernel();
+    private SimilarityKernel panama;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        a = new float[dimensions];
+        b = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            a[i] = (float) random.nextGaussian();
+            b[i] = (float) random.nextGaussian();
+        }
+        panama = new PanamaSimilarityKernel();
+    }
+
+    /**
+     * 改造前各处的写法：单个累加器逐元素相乘
+     */
+    @Benchmark
+    public float dotNaive() {
+        float sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float dotScalar() {
+        return scalar.dot(a, 0, b, 0, dimensions);
+    }
+
+    @Benchmark
+    public float dotPanama() {
+        return panama.dot(a, 0, b, 0, dimensions);
+    }
+
+    @Benchmark
+    public float cosineScalar() {
+        return scalar.cosine(a, 0, b, 0, dimensions);
+    }
+
+    @Benchmark
+    public float cosinePanama() {
+        return panama.cosine(a, 0, b, 0, dimensions);
+    }
+
+    @Benchmark
+    public float l2Scalar() {
+        return scalar.l2Squared(a, 0, b, 0, dimensions);
+    }
+
+    @Benchmark
+    public float l2Panama() {
+        return panama.l2Squared(a, 0, b, 0, dimensions);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(VectorSimilarityBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.ziwanaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+class VectorSimilarityTest {
+
+    private static final int[] LENGTHS = {0, 1, 3, 7, 8, 15, 16, 17, 31, 33, 100, 1024, 1536};
+
+    private final List<SimilarityKernel> kernels = List.of(new ScalarSimilarityKernel(), new PanamaSimilarityKernel());
+
+    private static float[] random(Random random, int length) {
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    @Test
+    void kernelsMatchDoublePrecisionReference() {
+        Random random = new Random(7);
+        for (SimilarityKernel kernel : kernels) {
+            for (int length : LENGTHS) {
+                // 带偏移量，覆盖分块边界与尾部
+                int aOffset = random.nextInt(5);
+                int bOffset = random.nextInt(5);
+                float[] a = random(random, length + aOffset);
+                float[] b = random(random, length + bOffset);
+                double dot = 0, normA = 0, normB = 0, l2 = 0;
+                for (int i = 0; i < length; i++) {
+                    double x = a[aOffset + i];
+                    double y = b[bOffset + i];
+                    dot += x * y;
+                    normA += x * x;
+                    normB += y * y;
+                    l2 += (x - y) * (x - y);
+                }
+                double cosine = normA == 0 || normB == 0 ? 0 : dot / Math.sqrt(normA * normB);
+                double tolerance = 1e-4 * Math.max(1, length);
+                String message = kernel.name() + " length=" + length;
+                Assertions.assertEquals(dot, kernel.dot(a, aOffset, b, bOffset, length), tolerance, message);
+                Assertions.assertEquals(l2, kernel.l2Squared(a, aOffset, b, bOffset, length), tolerance, message);
+                Assertions.assertEquals(cosine, kernel.cosine(a, aOffset, b, bOffset, length), 1e-5, message);
+            }
+        }
+    }
+
+    @Test
+    void facadeHandlesZeroVectorsAndLengthMismatch() {
+        // 测试运行时已加载 jdk.incubator.vector（见 pom 中 surefire 的 argLine）
+        Assertions.assertEquals("panama", VectorSimilarity.kernelName());
+        Assertions.assertEquals(0f, VectorSimilarity.cosine(new float[4], new float[]{1, 2, 3, 4}));
+        Assertions.assertEquals(1f, VectorSimilarity.cosine(new float[]{1, 2, 3}, new float[]{2, 4, 6}), 1e-6);
+        Assertions.assertEquals(5f, VectorSimilarity.l2(new float[]{0, 0}, new float[]{3, 4}), 1e-6);
+        Assertions.assertEquals(5f, VectorSimilarity.norm(new float[]{3, 4}), 1e-6);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> VectorSimilarity.dot(new float[3], new float[4]));
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.ziwanaiagent.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 知识库启动耗时：SimpleVectorStore 每次启动全量增强 + 向量化 vs MappedFileVectorStore 首次构建 / 重启 / 少量文档变化后重启
+ * <p>
+ * 向量模型与关键词增强用休眠的桩代替（每次向量化请求 EMBED_LATENCY_MS，每篇文档增强 ENRICH_LATENCY_MS），
+ * 输出各场景的耗时与模型调用次数。
+ * 运行：直接执行 main 方法
+ */
+public class VectorStoreStartupBenchmark {
+
+    private static final int DOCUMENTS = 1000;
+    private static final int DIMENSIONS = 1536;
+    private static final long EMBED_LATENCY_MS = 50;
+    private static final long ENRICH_LATENCY_MS = 2;
+    private static final int CHANGED = 20;
+
+    public static void main(String[] args) throws IOException {
+        File dir = Files.createTempDirectory("vector-store-bench").toFile();
+        try {
+            List<Document> corpus = corpus(0);
+            System.out.printf("文档数 %d，维度 %d，向量化请求耗时 %dms，单篇增强耗时 %dms%n",
+                    DOCUMENTS, DIMENSIONS, EMBED_LATENCY_MS, ENRICH_LATENCY_MS);
+
+            FakeEmbeddingModel simpleModel = new FakeEmbeddingModel(DIMENSIONS, EMBED_LATENCY_MS);
+            long start = System.nanoTime();
+            SimpleVectorStore simpleVectorStore = SimpleVectorStore.builder(simpleModel).build();
+            simpleVectorStore.add(enrich(corpus));
+            report("SimpleVectorStore 每次启动", start, simpleModel);
+
+            FakeEmbeddingModel model = new FakeEmbeddingModel(DIMENSIONS, EMBED_LATENCY_MS);
+            start = System.nanoTime();
+            new MappedFileVectorStore(dir, "bench", model).sync(corpus(0), VectorStoreStartupBenchmark::enrich);
+            report("MappedFileVectorStore 首次构建", start, model);
+
+            for (int i = 0; i < 3; i++) {
+                model = new FakeEmbeddingModel(DIMENSIONS, EMBED_LATENCY_MS);
+                start = System.nanoTime();
+                MappedFileVectorStore store = new MappedFileVectorStore(dir, "bench", model);
+                report("MappedFileVectorStore 重启加载 #" + (i + 1), start, model);
+                store.sync(corpus(0), VectorStoreStartupBenchmark::enrich);
+                report("MappedFileVectorStore 重启加载 + 同步（无变化）#" + (i + 1), start, model);
+            }
+
+            model = new FakeEmbeddingModel(DIMENSIONS, EMBED_LATENCY_MS);
+            start = System.nanoTime();
+            MappedFileVectorStore store = new MappedFileVectorStore(dir, "bench", model);
+            store.sync(corpus(CHANGED), VectorStoreStartupBenchmark::enrich);
+            report("MappedFileVectorStore 重启（" + CHANGED + " 篇变化）", start, model);
+
+            // 查询结果应与全量重建一致
+            SearchRequest request = SearchRequest.builder().query(corpus.get(42).getText()).topK(3).build();
+            System.out.printf("查询 top1 一致：%s%n", simpleVectorStore.similaritySearch(request).getFirst().getText()
+                    .equals(store.similaritySearch(request).getFirst().getText()));
+        } finally {
+            FileSystemUtils.deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * @param changed 前 changed 篇文档追加修订内容
+     */
+    private static List<Document> corpus(int changed) {
+        String[] statuses = {"单身", "恋爱", "已婚"};
+        List<Document> documents = new ArrayList<>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            String status = statuses[i % statuses.length];
+            StringBuilder text = new StringBuilder("问题 " + i + "：" + status + "阶段常见的困惑与建议。");
+            for (int j = 0; j < 20; j++) {
+                text.append("第 ").append(j).append(" 条建议：多沟通、多倾听，编号 ").append(i * 31 + j).append("。");
+            }
+            if (i < changed) {
+                text.append("（已修订）");
+            }
+            documents.add(new Document(text.toString(), Map.of("filename", "恋爱常见问题和回答 - " + status + "篇.md", "status", status)));
+        }
+        return documents;
+    }
+
+    private static List<Document> enrich(List<Document> documents) {
+        for (Document document : documents) {
+            sleep(ENRICH_LATENCY_MS);
+            document.getMetadata().put("excerpt_keywords", "沟通,倾听");
+        }
+        return documents;
+    }
+
+    private static void report(String name, long startNanos, FakeEmbeddingModel model) {
+        System.out.printf("%-36s 耗时 %8.1f ms，向量化请求 %4d 次，文本 %5d 条%n", name,
+                (System.nanoTime() - startNanos) / 1e6, model.calls.get(), model.embeddedTexts.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.ziwanaiagent.tools;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.annotation.Tool;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ToolResultCacheTest {
+
+    static class CountingTools {
+
+        final AtomicInteger searches = new AtomicInteger();
+        final AtomicInteger writes = new AtomicInteger();
+
+        @Tool(description = "search")
+        public String search(String query, int page) {
+            searches.incrementAndGet();
+            return query.equals("fail") ? "Error searching: boom" : query + "#" + page;
+        }
+
+        @Tool(description = "write")
+        @ToolCache(enabled = false)
+        public String write(String content) {
+            writes.incrementAndGet();
+            return "written";
+        }
+
+        @Tool(description = "quick")
+        @ToolCache(ttlSeconds = 1)
+        public String quick() {
+            return "ok";
+        }
+    }
+
+    private static ToolCallback find(ToolCallback[] callbacks, String name) {
+        return Arrays.stream(callbacks).filter(c -> c.getToolDefinition().name().equals(name)).findFirst().orElseThrow();
+    }
+
+    @Test
+    void cachesByCanonicalArgumentsAndSkipsOptedOutTools() {
+        CountingTools tools = new CountingTools();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ToolResultCache cache = ToolResultCache.fromAnnotations(Duration.ofMinutes(10), 100, 1 << 20, registry,
+                CountingTools.class);
+        ToolCallback[] callbacks = cache.wrap(ToolCallbacks.from(tools));
+
+        Assertions.assertInstanceOf(CachingToolCallback.class, find(callbacks, "search"));
+        Assertions.assertFalse(find(callbacks, "write") instanceof CachingToolCallback);
+        Assertions.assertEquals(Duration.ofSeconds(1), cache.ttl("quick"));
+
+        ToolCallback search = find(callbacks, "search");
+        String first = search.call("{\"query\":\"杭州\",\"page\":1}");
+        String second = search.call("{ \"page\": 1, \"query\": \"杭州\" }");
+        Assertions.assertEquals(first, second);
+        Assertions.assertEquals(1, tools.searches.get());
+
+        // 错误结果不缓存
+        search.call("{\"query\":\"fail\",\"page\":1}");
+        search.call("{\"query\":\"fail\",\"page\":1}");
+        Assertions.assertEquals(3, tools.searches.get());
+
+        find(callbacks, "write").call("{\"content\":\"x\"}");
+        find(callbacks, "write").call("{\"content\":\"x\"}");
+        Assertions.assertEquals(2, tools.writes.get());
+
+        Assertions.assertEquals(1.0, registry.get("agent.tool.cache.requests").tags("tool", "search", "result", "hit").counter().count());
+        Assertions.assertEquals(3.0, registry.get("agent.tool.cache.requests").tags("tool", "search", "result", "miss").counter().count());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedAndExpires() throws InterruptedException {
+        ToolResultCache cache = new ToolResultCache(Duration.ofMinutes(1), Map.of(), 2, 1 << 20, null);
+        cache.put("a", "1", Duration.ofMinutes(1));
+        cache.put("b", "2", Duration.ofMinutes(1));
+        Assertions.assertEquals("1", cache.get("t", "a"));
+        cache.put("c", "3", Duration.ofMinutes(1));
+        Assertions.assertNull(cache.get("t", "b"));
+        Assertions.assertEquals("1", cache.get("t", "a"));
+
+        cache.put("d", "4", Duration.ofMillis(50));
+        Thread.sleep(100);
+        Assertions.assertNull(cache.get("t", "d"));
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertEquals(2L * ("a".length() + "1".length()), cache.bytes());
+    }
+}